@@ -0,0 +1,75 @@
+package no.sikt.oai.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of a 50-hit upstream search response into a {@link RecordsList}. With {@code recordCacheMaxBytes} at 0
+ * every record is rendered on each parse; with the default budget the rendered metadata is served from the cache
+ * after the first invocation, which is what a warm container sees for a re-harvest. The {@code Stream} variants hand
+ * each record to a consumer instead of collecting the page, which is how the handler renders list responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdapterParsingBenchmark {
+
+    public static final String METADATA_PREFIX = "qdc";
+
+    @Param({"ListRecords", "ListIdentifiers"})
+    public String verb;
+
+    @Param({"0", "67108864"})
+    public long recordCacheMaxBytes;
+
+    private Adapter nvaAdapter;
+    private Adapter dlrAdapter;
+    private String nvaPayload;
+    private String dlrPayload;
+
+    @Setup
+    public void setUp() {
+        nvaAdapter = BenchmarkFixtures.adapter(OaiConstants.CLIENT_TYPE_NVA, recordCacheMaxBytes);
+        dlrAdapter = BenchmarkFixtures.adapter(OaiConstants.CLIENT_TYPE_DLR, recordCacheMaxBytes);
+        nvaPayload = BenchmarkFixtures.readResource(BenchmarkFixtures.NVA_PUBLICATIONS);
+        dlrPayload = BenchmarkFixtures.readResource(BenchmarkFixtures.DLR_RESOURCES);
+    }
+
+    @Benchmark
+    public RecordsList nvaParseRecordsList() throws InternalOaiException {
+        return nvaAdapter.parseRecordsListResponse(verb, nvaPayload, METADATA_PREFIX, "");
+    }
+
+    @Benchmark
+    public long nvaStreamRecordsList(Blackhole blackhole) throws InternalOaiException {
+        return nvaAdapter.parseRecordsListResponse(verb, nvaPayload, METADATA_PREFIX, "", blackhole::consume);
+    }
+
+    @Benchmark
+    public RecordsList dlrParseRecordsList() throws InternalOaiException {
+        return dlrAdapter.parseRecordsListResponse(verb, dlrPayload, METADATA_PREFIX, "");
+    }
+
+    @Benchmark
+    public long dlrStreamRecordsList(Blackhole blackhole) throws InternalOaiException {
+        return dlrAdapter.parseRecordsListResponse(verb, dlrPayload, METADATA_PREFIX, "", blackhole::consume);
+    }
+}
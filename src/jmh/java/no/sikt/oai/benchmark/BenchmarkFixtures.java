@@ -0,0 +1,112 @@
+package no.sikt.oai.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.adapter.DlrAdapter;
+import no.sikt.oai.adapter.NvaAdapter;
+import no.unit.nva.auth.AuthorizedBackendClient;
+import nva.commons.apigateway.ApiGatewayHandler;
+import nva.commons.core.Environment;
+
+/**
+ * Fixture payloads and adapters shared by the benchmarks. The payloads are 50-hit search responses as returned by the
+ * NVA and DLR backends. The parsing adapters are built without HTTP clients; {@link #dlrAdapter(String)} gives one
+ * that talks to a local backend.
+ */
+public final class BenchmarkFixtures {
+
+    public static final String NVA_PUBLICATIONS = "/nva-publications-50.json";
+    public static final String DLR_RESOURCES = "/dlr-resources-50.json";
+    public static final String BASE_URL = "https://oai.example.org/oai";
+
+    private BenchmarkFixtures() {
+    }
+
+    public static String readResource(String name) {
+        try (InputStream inputStream = BenchmarkFixtures.class.getResourceAsStream(name)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing benchmark fixture " + name);
+            }
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String recordsPayload(String clientName) {
+        return OaiConstants.CLIENT_TYPE_NVA.equals(clientName)
+                   ? readResource(NVA_PUBLICATIONS)
+                   : readResource(DLR_RESOURCES);
+    }
+
+    /**
+     * Creates the adapter for a client.
+     *
+     * @param clientName          {@link OaiConstants#CLIENT_TYPE_NVA} or {@link OaiConstants#CLIENT_TYPE_DLR}
+     * @param recordCacheMaxBytes size of the rendered metadata cache, 0 to render every record on every parse
+     * @return the adapter
+     */
+    public static Adapter adapter(String clientName, long recordCacheMaxBytes) {
+        Environment environment = environment(BASE_URL, recordCacheMaxBytes);
+        return OaiConstants.CLIENT_TYPE_NVA.equals(clientName)
+                   ? new NvaAdapter(environment, (AuthorizedBackendClient) null)
+                   : new DlrAdapter(environment, (HttpClient) null);
+    }
+
+    /**
+     * Creates a DLR adapter with an HTTP client for a backend at the given address.
+     *
+     * @param baseUrl address of the backend, serving {@code /sets}, {@code /record} and {@code /records}
+     * @return the adapter
+     */
+    public static Adapter dlrAdapter(String baseUrl) {
+        return new DlrAdapter(environment(baseUrl, 0), HttpClient.newHttpClient());
+    }
+
+    /**
+     * Creates the environment of a DLR handler whose backend is at the given address.
+     *
+     * @param baseUrl backend address
+     * @param priming whether the handler primes itself on construction
+     * @return the environment
+     */
+    public static Environment dlrHandlerEnvironment(String baseUrl, boolean priming) {
+        return environment(Map.of(
+            ApiGatewayHandler.ALLOWED_ORIGIN_ENV, "*",
+            OaiConstants.CLIENT_NAME_ENV, OaiConstants.CLIENT_TYPE_DLR,
+            OaiConstants.SETS_URI_ENV, baseUrl + "/sets",
+            OaiConstants.RECORD_URI_ENV, baseUrl + "/record",
+            OaiConstants.RECORDS_URI_ENV, baseUrl + "/records",
+            OaiConstants.PRIMING_ENABLED_ENV, Boolean.toString(priming),
+            OaiConstants.RESUMPTION_TOKEN_SECRET_ENV, "benchmark"));
+    }
+
+    private static Environment environment(String baseUrl, long recordCacheMaxBytes) {
+        return environment(Map.of(
+            OaiConstants.SETS_URI_ENV, baseUrl + "/sets",
+            OaiConstants.RECORD_URI_ENV, baseUrl + "/record",
+            OaiConstants.RECORDS_URI_ENV, baseUrl + "/records",
+            OaiConstants.RECORD_CACHE_MAX_BYTES_ENV, Long.toString(recordCacheMaxBytes)));
+    }
+
+    private static Environment environment(Map<String, String> variables) {
+        return new Environment() {
+            @Override
+            public String readEnv(String name) {
+                return variables.get(name);
+            }
+
+            @Override
+            public Optional<String> readEnvOpt(String name) {
+                return Optional.ofNullable(variables.get(name));
+            }
+        };
+    }
+}
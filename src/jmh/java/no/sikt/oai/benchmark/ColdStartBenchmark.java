@@ -0,0 +1,134 @@
+package no.sikt.oai.benchmark;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.OaiProviderHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of the first ListRecords request a new JVM serves, with and without priming. Every fork is a cold JVM; the
+ * handler is constructed, and primed if enabled, in the unmeasured setup, like a Lambda container's init phase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ColdStartBenchmark {
+
+    public static final String LIST_RECORDS_EVENT = "{\"httpMethod\":\"GET\",\"headers\":{\"Accept\":"
+                                                    + "\"application/xml\"},\"queryStringParameters\":{\"verb\":"
+                                                    + "\"ListRecords\",\"metadataPrefix\":\"oai_dc\"}}";
+
+    @Param({"false", "true"})
+    public boolean priming;
+
+    private StandInSearchBackend backend;
+    private OaiProviderHandler handler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        backend = new StandInSearchBackend(1_000);
+        handler = new OaiProviderHandler(BenchmarkFixtures.dlrHandlerEnvironment(backend.getBaseUrl(), priming),
+                                         null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Benchmark
+    public String firstRequest() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(new ByteArrayInputStream(LIST_RECORDS_EVENT.getBytes(StandardCharsets.UTF_8)), output,
+                              new BenchmarkContext());
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private static class BenchmarkContext implements Context {
+
+        @Override
+        public String getAwsRequestId() {
+            return "cold-start-benchmark";
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return null;
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return null;
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "oai-provider";
+        }
+
+        @Override
+        public String getFunctionVersion() {
+            return null;
+        }
+
+        @Override
+        public String getInvokedFunctionArn() {
+            return null;
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            return 1024;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return new LambdaLogger() {
+                @Override
+                public void log(String message) {
+                }
+
+                @Override
+                public void log(byte[] message) {
+                }
+            };
+        }
+    }
+}
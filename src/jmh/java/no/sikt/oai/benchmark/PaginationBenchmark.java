@@ -0,0 +1,65 @@
+package no.sikt.oai.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of fetching one page at increasing depths of a harvest, by offset and by cursor, from a
+ * {@link StandInSearchBackend} over loopback HTTP. Offset pages get slower with depth; cursor pages should not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaginationBenchmark {
+
+    public static final int RESOURCES = 500_000;
+    public static final int PAGE_SIZE = 50;
+
+    @Param({"0", "50000", "250000", "499950"})
+    public int depth;
+
+    private StandInSearchBackend backend;
+    private Adapter adapter;
+    private String cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        backend = new StandInSearchBackend(RESOURCES);
+        adapter = BenchmarkFixtures.dlrAdapter(backend.getBaseUrl());
+        cursor = depth == 0 ? "" : backend.cursorAt(depth - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.close();
+    }
+
+    @Benchmark
+    public String offset() throws OaiException, InternalOaiException {
+        return adapter.getRecordsList("", "", "", depth, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public String cursor() throws OaiException, InternalOaiException {
+        return adapter.getRecordsListAfter("", "", "", cursor, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,111 @@
+package no.sikt.oai.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.OaiResponseWriter;
+import no.sikt.oai.RecordsPageWriter;
+import no.sikt.oai.ResumptionToken;
+import no.sikt.oai.ResumptionTokenCodec;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.data.Record;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering of a complete ListRecords response for an already parsed 50-record page, per metadata format.
+ * {@link #writeRecords()} and {@link #writeRecordsSplittingMetadata()} render only the records, the latter indenting
+ * their metadata as the writer did before it stopped splitting it into lines with a regular expression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseRenderingBenchmark {
+
+    public static final String METADATA_START = "            <metadata>\n";
+    public static final String METADATA_END = "            </metadata>\n";
+    public static final String RECORD_END = "        </record>\n";
+
+    @Param({"NVA", "DLR"})
+    public String clientName;
+
+    @Param({"qdc", "oai_dc", "oai_datacite"})
+    public String metadataPrefix;
+
+    private final ResumptionTokenCodec codec = new ResumptionTokenCodec(
+        "benchmark".getBytes(StandardCharsets.UTF_8), Duration.ofDays(1), Clock.systemUTC());
+    private RecordsList records;
+    private String resumptionToken;
+    private final StringBuilder buffer = new StringBuilder(1 << 20);
+
+    @Setup
+    public void setUp() throws InternalOaiException {
+        Adapter adapter = BenchmarkFixtures.adapter(clientName, 0);
+        records = adapter.parseRecordsListResponse("ListRecords", BenchmarkFixtures.recordsPayload(clientName),
+                                                   metadataPrefix, "");
+        resumptionToken = codec.encode(new ResumptionToken("lr", System.currentTimeMillis(), "", "", "",
+                                                           metadataPrefix, "50"));
+    }
+
+    /**
+     * Renders the page as the handler does once the upstream page has arrived, with the signed token of the next
+     * page.
+     */
+    @Benchmark
+    public String listRecords() throws OaiException {
+        StringBuilder response = new StringBuilder(1 << 16);
+        OaiResponseWriter writer = new OaiResponseWriter(response);
+        writer.startList("ListRecords", resumptionToken, "", "", metadataPrefix, BenchmarkFixtures.BASE_URL);
+        RecordsPageWriter page = new RecordsPageWriter(response, true, Long.MAX_VALUE);
+        records.forEach(page);
+        ResumptionToken token = codec.decode(resumptionToken);
+        int nextPosition = Integer.parseInt(token.startPosition) + page.getRecordCount();
+        String next = codec.encode(new ResumptionToken(token.command, System.currentTimeMillis(), token.setSpec,
+                                                       token.from, token.until, token.metadataPrefix,
+                                                       Integer.toString(nextPosition)));
+        writer.endList("ListRecords", records.getNumFound(), next, nextPosition);
+        return response.toString();
+    }
+
+    @Benchmark
+    public StringBuilder writeRecords() {
+        buffer.setLength(0);
+        OaiResponseWriter writer = new OaiResponseWriter(buffer);
+        for (Record record : records) {
+            writer.writeRecord(record, true);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public StringBuilder writeRecordsSplittingMetadata() {
+        buffer.setLength(0);
+        OaiResponseWriter writer = new OaiResponseWriter(buffer);
+        for (Record record : records) {
+            writer.writeRecord(record, false);
+            buffer.setLength(buffer.length() - RECORD_END.length());
+            buffer.append(METADATA_START);
+            for (String line : record.getContent().split("\\r?\\n")) {
+                buffer.append("                ").append(line).append('\n');
+            }
+            buffer.append(METADATA_END).append(RECORD_END);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,67 @@
+package no.sikt.oai.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.ResumptionToken;
+import no.sikt.oai.ResumptionTokenCodec;
+import no.sikt.oai.exception.OaiException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResumptionTokenBenchmark {
+
+    public static final String TOKEN = "lr~sikt~2022-01-01T00:00:00Z~2022-12-31T23:59:59Z~oai_datacite~1250";
+
+    private final ResumptionTokenCodec codec = new ResumptionTokenCodec(
+        "benchmark".getBytes(StandardCharsets.UTF_8), Duration.ofDays(1), Clock.systemUTC());
+    private final String signedToken = codec.encode(newToken());
+
+    /**
+     * Parses a token in the older unsigned format, which harvests started before tokens were signed still send.
+     */
+    @Benchmark
+    public ResumptionToken parseLegacy() {
+        return new ResumptionToken(TOKEN);
+    }
+
+    @Benchmark
+    public String encodeSigned() {
+        return codec.encode(newToken());
+    }
+
+    @Benchmark
+    public ResumptionToken decodeSigned() throws OaiException {
+        return codec.decode(signedToken);
+    }
+
+    /**
+     * Verifies a signed token and signs the token of the next page, as the handler does for every list page.
+     */
+    @Benchmark
+    public String createNext() throws OaiException {
+        ResumptionToken token = codec.decode(signedToken);
+        return codec.encode(new ResumptionToken(token.command, System.currentTimeMillis(), token.setSpec, token.from,
+                                                token.until, token.metadataPrefix,
+                                                Integer.toString(Integer.parseInt(token.startPosition) + 50)));
+    }
+
+    private static ResumptionToken newToken() {
+        return new ResumptionToken("lr", System.currentTimeMillis(), "sikt", "2022-01-01T00:00:00Z",
+                                   "2022-12-31T23:59:59Z", "oai_datacite", "1250");
+    }
+}
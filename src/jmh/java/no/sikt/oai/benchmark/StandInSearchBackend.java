@@ -0,0 +1,136 @@
+package no.sikt.oai.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-process stand-in for the DLR backend, serving {@code /records} from a fixed, sorted set of synthetic resources
+ * and a two-institution {@code /sets}. It pages like a search engine does: an offset is found by walking past every earlier hit, so its cost
+ * grows with the depth of the page, while a cursor is found by a binary search over the sort keys.
+ */
+public final class StandInSearchBackend implements AutoCloseable {
+
+    private static final String SETS = "{\"institutions\":[\"unit\",\"ntnu\"]}";
+    private static final long FIRST_UPDATED = Instant.parse("2015-01-01T00:00:00.001Z").toEpochMilli();
+
+    static {
+        // without TCP_NODELAY the JDK server's separate header and body writes add ~40 ms of delayed ACK per request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final String[] cursors;
+    private final String[] resources;
+    private final HttpServer server;
+    private long skipped;
+
+    public StandInSearchBackend(int size) throws IOException {
+        cursors = new String[size];
+        resources = new String[size];
+        for (int i = 0; i < size; i++) {
+            String identifier = String.format(Locale.ROOT, "%08x-0000-4000-8000-%012x", i, i);
+            String timeUpdated = Instant.ofEpochMilli(FIRST_UPDATED + i * 1000L).toString();
+            cursors[i] = timeUpdated + "," + identifier;
+            resources[i] = "\"{\\\"identifier\\\":\\\"" + identifier + "\\\",\\\"features\\\":{"
+                           + "\\\"dlr_title\\\":\\\"Resource " + i + "\\\",\\\"dlr_storage_id\\\":\\\"unit\\\","
+                           + "\\\"dlr_time_updated\\\":\\\"" + timeUpdated + "\\\"},"
+                           + "\\\"creators\\\":[],\\\"contributors\\\":[]}\"";
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/records", this::search);
+        server.createContext("/sets", exchange -> respond(exchange, SETS));
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the cursor of the resource at a position in the sort order.
+     *
+     * @param position position of the resource
+     * @return the cursor, as the DLR adapter would put in a resumption token
+     */
+    public String cursorAt(int position) {
+        return cursors[position];
+    }
+
+    /**
+     * Total length of the sort keys walked past to reach offsets, kept so the walk is not optimised away.
+     *
+     * @return characters of sort keys skipped so far
+     */
+    public long getSkippedKeyLength() {
+        return skipped;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getQuery());
+        int limit = Integer.parseInt(parameters.getOrDefault("limit", "50"));
+        int start = parameters.containsKey("after")
+                        ? positionAfter(parameters.get("after"))
+                        : walkTo(Integer.parseInt(parameters.getOrDefault("offset", "0")));
+        StringBuilder body = new StringBuilder(limit * 256);
+        body.append("{\"offset\":\"").append(start).append("\",\"limit\":\"").append(limit)
+            .append("\",\"numFound\":").append(resources.length).append(",\"resourcesAsJson\":[");
+        for (int i = start; i < Math.min(start + limit, resources.length); i++) {
+            if (i > start) {
+                body.append(',');
+            }
+            body.append(resources[i]);
+        }
+        body.append("]}");
+        respond(exchange, body.toString());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private int walkTo(int offset) {
+        int position = 0;
+        while (position < offset && position < resources.length) {
+            skipped += cursors[position].length();
+            position++;
+        }
+        return position;
+    }
+
+    private int positionAfter(String cursor) {
+        int found = Arrays.binarySearch(cursors, cursor);
+        return found >= 0 ? found + 1 : -found - 1;
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+}
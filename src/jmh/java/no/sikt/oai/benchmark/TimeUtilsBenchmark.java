@@ -0,0 +1,60 @@
+package no.sikt.oai.benchmark;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.TimeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeUtilsBenchmark {
+
+    public static final String ZULU_LONG = "2022-05-05T09:15:40Z";
+    public static final String ZULU_SHORT = "2022-05-05";
+
+    private final Date date = new Date(1_651_742_140_798L);
+    private final StringBuilder buffer = new StringBuilder(64);
+
+    @Benchmark
+    public Date string2DateLong() {
+        return TimeUtils.string2Date(ZULU_LONG, TimeUtils.FORMAT_ZULU_LONG);
+    }
+
+    @Benchmark
+    public Date string2DateShort() {
+        return TimeUtils.string2Date(ZULU_SHORT, TimeUtils.FORMAT_ZULU_SHORT);
+    }
+
+    @Benchmark
+    public String date2StringLong() {
+        return TimeUtils.date2String(date, TimeUtils.FORMAT_ZULU_LONG);
+    }
+
+    @Benchmark
+    public StringBuilder appendZuluLong() {
+        buffer.setLength(0);
+        return TimeUtils.appendZuluLong(buffer, date.getTime());
+    }
+
+    @Benchmark
+    public boolean isUtcDate() {
+        return TimeUtils.isUTCdate(ZULU_LONG);
+    }
+
+    @Benchmark
+    public String responseTime() {
+        return TimeUtils.getResponseTime();
+    }
+}
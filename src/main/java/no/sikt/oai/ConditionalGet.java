@@ -0,0 +1,138 @@
+package no.sikt.oai;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Locale;
+import nva.commons.core.JacocoGenerated;
+
+/**
+ * Validators for conditional GET. A response carries a strong ETag and a Last-Modified date, and a harvester that
+ * sends back a matching If-None-Match, or else an If-Modified-Since that is not older than the response, is answered
+ * with 304 Not Modified and no body.
+ *
+ * <p>A record's ETag is made from its last modification, in the precision the upstream keeps it, and the metadata
+ * format, the two things its rendering depends on. Documents that only depend on the adapter configuration, like
+ * Identify, are rendered once as a {@link Prerendered} response whose ETag is a hash of the document. They have no
+ * Last-Modified date, since nothing records when the configuration changed.
+ */
+public class ConditionalGet {
+
+    public static final DateTimeFormatter HTTP_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+    public static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+    private static final String RESPONSE_DATE_START = "<responseDate>";
+    private static final String RESPONSE_DATE_END = "</responseDate>";
+    private static final long MILLIS_PER_SECOND = 1000;
+
+    @JacocoGenerated
+    public ConditionalGet() {
+    }
+
+    /**
+     * Creates the ETag of a record rendered in a metadata format.
+     *
+     * @param modified       last modification of the record, see {@link no.sikt.oai.data.Record#getModifiedDate()}
+     * @param metadataPrefix metadata format, in any case
+     * @return strong ETag, quoted
+     */
+    public static String etag(Date modified, String metadataPrefix) {
+        return '"' + Long.toString(modified.getTime(), Character.MAX_RADIX) + '-'
+               + metadataPrefix.toLowerCase(Locale.ROOT) + '"';
+    }
+
+    /**
+     * Creates the ETag of a response compressed with a content encoding, which must differ from the ETag of the
+     * uncompressed response since the bytes differ.
+     *
+     * @param etag     ETag of the uncompressed response
+     * @param encoding content encoding
+     * @return strong ETag, quoted
+     */
+    public static String forEncoding(String etag, String encoding) {
+        return etag.substring(0, etag.length() - 1) + '-' + encoding + '"';
+    }
+
+    /**
+     * Decides whether the harvester's copy of a response is still current. If-Modified-Since is only looked at when
+     * there is no If-None-Match, and compares whole seconds since that is what an HTTP date holds.
+     *
+     * @param ifNoneMatch     If-None-Match header of the request, or null
+     * @param ifModifiedSince If-Modified-Since header of the request, or null
+     * @param etag            ETag of the current response
+     * @param lastModified    last modification of the current response, in epoch milliseconds
+     * @return true to answer with 304 Not Modified
+     */
+    public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag, long lastModified) {
+        if (ifNoneMatch != null) {
+            return matches(ifNoneMatch, etag);
+        }
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return lastModified / MILLIS_PER_SECOND <= since / MILLIS_PER_SECOND;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith(WEAK_PREFIX)) {
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (ANY.equals(tag) || etag.equals(tag) || forEncoding(etag, ResponseCompression.GZIP).equals(tag)
+                || forEncoding(etag, ResponseCompression.DEFLATE).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static String httpDate(long epochMilli) {
+        return HTTP_DATE_FORMATTER.format(Instant.ofEpochMilli(epochMilli));
+    }
+
+    /**
+     * A response rendered once, when the handler is created. Only the response date is written per request.
+     */
+    public static class Prerendered {
+
+        public final String etag;
+        private final String head;
+        private final String tail;
+
+        public Prerendered(String document) {
+            int dateStart = document.indexOf(RESPONSE_DATE_START) + RESPONSE_DATE_START.length();
+            int dateEnd = document.indexOf(RESPONSE_DATE_END, dateStart);
+            this.head = document.substring(0, dateStart);
+            this.tail = document.substring(dateEnd);
+            this.etag = '"' + Hashing.sha256().newHasher()
+                    .putString(head, StandardCharsets.UTF_8)
+                    .putString(tail, StandardCharsets.UTF_8)
+                    .hash().toString().substring(0, 32) + '"';
+        }
+
+        /**
+         * Writes the document with the current time as its response date.
+         *
+         * @return the document
+         */
+        public StringBuilder render() {
+            StringBuilder response = new StringBuilder(head.length() + TimeUtils.ZULU_LONG_LENGTH + tail.length());
+            response.append(head);
+            TimeUtils.appendZuluLong(response, System.currentTimeMillis());
+            return response.append(tail);
+        }
+    }
+}
@@ -28,6 +28,9 @@ public class OaiConstants {
                                                                + "for the metadataPrefix argument is not supported by "
                                                                + "the item or by the repository.";
     public static final String UNKNOWN_SET_NAME = "unknown set name: ";
+    public static final String BAD_RESUMPTION_TOKEN = "badResumptionToken";
+    public static final String INVALID_RESUMPTION_TOKEN = "The value of the resumptionToken argument is invalid.";
+    public static final String EXPIRED_RESUMPTION_TOKEN = "The resumptionToken has expired, start the harvest again.";
     public static final String COMBINATION_OF_PARAMS_ERROR = "The combination of the values of the from, until, set "
                                                              + "and metadataPrefix arguments results in an empty list.";
 
@@ -38,6 +41,34 @@ public class OaiConstants {
     public static final String BACKEND_SECRET_ID_ENV = "BACKEND_SECRET_ID";
     public static final String BACKEND_CLIENT_ID_ENV = "BACKEND_CLIENT_ID";
     public static final String CLIENT_NAME_ENV = "OAI_CLIENT_NAME";
+    public static final String SETS_CACHE_TTL_SECONDS_ENV = "SETS_CACHE_TTL_SECONDS";
+    public static final String SETS_CACHE_SERVE_STALE_ENV = "SETS_CACHE_SERVE_STALE";
+    public static final String RECORD_CACHE_MAX_BYTES_ENV = "RECORD_CACHE_MAX_BYTES";
+    public static final String PREFETCH_ENABLED_ENV = "PREFETCH_ENABLED";
+    public static final String PREFETCH_TTL_SECONDS_ENV = "PREFETCH_TTL_SECONDS";
+    public static final String PAGE_SIZE_ENV = "PAGE_SIZE";
+    public static final String PAGE_SIZE_OVERRIDES_ENV = "PAGE_SIZE_OVERRIDES";
+    public static final String PAGE_SIZE_MIN_ENV = "PAGE_SIZE_MIN";
+    public static final String PAGE_SIZE_MAX_ENV = "PAGE_SIZE_MAX";
+    public static final String PAGE_SIZE_ADAPTIVE_ENV = "PAGE_SIZE_ADAPTIVE";
+    public static final String TARGET_RESPONSE_BYTES_ENV = "TARGET_RESPONSE_BYTES";
+    public static final String RESUMPTION_TOKEN_SECRET_ENV = "RESUMPTION_TOKEN_SECRET";
+    public static final String RESUMPTION_TOKEN_TTL_SECONDS_ENV = "RESUMPTION_TOKEN_TTL_SECONDS";
+    public static final String RESUMPTION_TOKEN_LEGACY_UNTIL_ENV = "RESUMPTION_TOKEN_LEGACY_UNTIL";
+    public static final String CURSOR_PAGINATION_ENV = "CURSOR_PAGINATION";
+    public static final String PRIMING_ENABLED_ENV = "PRIMING_ENABLED";
+    public static final String METRICS_ENABLED_ENV = "METRICS_ENABLED";
+    public static final String METRICS_NAMESPACE_ENV = "METRICS_NAMESPACE";
+    public static final String UPSTREAM_CONNECT_TIMEOUT_MILLIS_ENV = "UPSTREAM_CONNECT_TIMEOUT_MILLIS";
+    public static final String UPSTREAM_REQUEST_TIMEOUT_MILLIS_ENV = "UPSTREAM_REQUEST_TIMEOUT_MILLIS";
+    public static final String UPSTREAM_THREADS_ENV = "UPSTREAM_THREADS";
+    public static final String RESPONSE_COMPRESSION_ENABLED_ENV = "RESPONSE_COMPRESSION_ENABLED";
+    public static final String RESPONSE_COMPRESSION_MIN_BYTES_ENV = "RESPONSE_COMPRESSION_MIN_BYTES";
+    public static final String SNAPSHOT_PATH_ENV = "SNAPSHOT_PATH";
+    public static final String RECORD_STORE_PATH_ENV = "RECORD_STORE_PATH";
+    public static final String SNAPSHOT_EXPORT_PAGE_SIZE_ENV = "SNAPSHOT_EXPORT_PAGE_SIZE";
+    public static final String SYNC_OVERLAP_MINUTES_ENV = "SYNC_OVERLAP_MINUTES";
+    public static final String RECORD_STORE_REFRESH_SECONDS_ENV = "RECORD_STORE_REFRESH_SECONDS";
     public static final String CLIENT_TYPE_DLR = "DLR";
     public static final String CLIENT_TYPE_NVA = "NVA";
 
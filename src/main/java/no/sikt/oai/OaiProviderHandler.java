@@ -5,21 +5,45 @@ import static com.google.common.net.MediaType.APPLICATION_XML_UTF_8;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.google.common.net.HttpHeaders;
 import com.google.common.net.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import no.sikt.oai.ConditionalGet.Prerendered;
+import no.sikt.oai.ResponseCompression.Body;
+import no.sikt.oai.ResponseCompression.GatewayResponseStream;
 import no.sikt.oai.adapter.Adapter;
 import no.sikt.oai.adapter.Adapter.OaiSet;
 import no.sikt.oai.adapter.DlrAdapter;
 import no.sikt.oai.adapter.NvaAdapter;
+import no.sikt.oai.adapter.RecordStoreAdapter;
+import no.sikt.oai.adapter.SnapshotAdapter;
+import no.sikt.oai.cache.PrefetchCache;
+import no.sikt.oai.cache.RecordContentCache;
+import no.sikt.oai.cache.SetsCache;
 import no.sikt.oai.data.Record;
-import no.sikt.oai.data.RecordsList;
 import no.sikt.oai.exception.InternalOaiException;
 import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.metrics.MetricsSink;
+import no.sikt.oai.metrics.RequestMetrics;
+import no.sikt.oai.metrics.RequestMetrics.Phase;
+import no.sikt.oai.snapshot.RecordStore;
+import no.sikt.oai.snapshot.Snapshot;
+import no.sikt.oai.transport.UpstreamTransport;
 import nva.commons.apigateway.ApiGatewayHandler;
 import nva.commons.apigateway.RequestInfo;
 import nva.commons.apigateway.exceptions.ApiGatewayException;
@@ -27,6 +51,8 @@ import nva.commons.apigateway.exceptions.UnsupportedAcceptHeaderException;
 import nva.commons.core.Environment;
 import nva.commons.core.JacocoGenerated;
 import nva.commons.core.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @SuppressWarnings({"PMD.GodClass"})
 public class OaiProviderHandler extends ApiGatewayHandler<Void, String> {
@@ -35,7 +61,22 @@ public class OaiProviderHandler extends ApiGatewayHandler<Void, String> {
     public static final String UNKNOWN_CLIENT_NAME = "Could not find clientName %s to initiate adapter.";
     public static final String NO_MATCHING_IDENTIFIER = "No matching identifier in: ";
 
+    private static final Logger LOG = LoggerFactory.getLogger(OaiProviderHandler.class);
+
     private Adapter adapter;
+    private final SetsCache setsCache;
+    private final PrefetchCache prefetchCache;
+    private final PageSizePolicy pageSizePolicy;
+    private final ResumptionTokenCodec tokenCodec;
+    private final boolean cursorPagination;
+    private final MetricsSink metricsSink;
+    private final String metricsNamespace;
+    private final ResponseCompression compression;
+    private final Prerendered identify;
+    private final Prerendered listMetadataFormats;
+    private final Map<String, String> responseHeaders = new ConcurrentHashMap<>();
+    private boolean notModified;
+    private String clientAccept;
 
     @JacocoGenerated
     public OaiProviderHandler() {
@@ -43,14 +84,78 @@ public class OaiProviderHandler extends ApiGatewayHandler<Void, String> {
     }
 
     public OaiProviderHandler(Environment environment, Adapter adapter) {
+        this(environment, adapter, metricsSink(environment));
+    }
+
+    /**
+     * Creates a handler that writes the metrics of every request to the given sink.
+     *
+     * @param environment environment to read the configuration from
+     * @param adapter     adapter to use, or null to create the one named in the environment
+     * @param metricsSink receives one Embedded Metric Format line per request, or null to write no metrics
+     */
+    public OaiProviderHandler(Environment environment, Adapter adapter, MetricsSink metricsSink) {
         super(Void.class, environment);
-        this.adapter = Objects.requireNonNullElseGet(adapter, this::initAdapter);
+        this.adapter = withLocalRecords(Objects.requireNonNullElseGet(adapter, () -> createAdapter(environment)),
+                environment);
+        this.setsCache = new SetsCache(this::fetchSetsList, environment);
+        this.prefetchCache = new PrefetchCache(environment);
+        this.pageSizePolicy = new PageSizePolicy(environment);
+        this.tokenCodec = new ResumptionTokenCodec(environment);
+        this.cursorPagination = environment.readEnvOpt(OaiConstants.CURSOR_PAGINATION_ENV)
+                .map(Boolean::parseBoolean).orElse(false);
+        this.metricsSink = metricsSink;
+        this.metricsNamespace = environment.readEnvOpt(OaiConstants.METRICS_NAMESPACE_ENV)
+                .orElse(RequestMetrics.DEFAULT_NAMESPACE);
+        this.compression = new ResponseCompression(environment);
+        this.identify = new Prerendered(OaiResponse.identify(this.adapter));
+        this.listMetadataFormats = new Prerendered(OaiResponse.listMetadataFormats(this.adapter.getBaseUrl()));
+        if (environment.readEnvOpt(OaiConstants.PRIMING_ENABLED_ENV).map(Boolean::parseBoolean).orElse(false)) {
+            prime();
+        }
+    }
+
+    /**
+     * Override to flag a compressed body as base64 encoded in the gateway response, which the response written by
+     * apigateway 1.25.8 has no field for.
+     */
+    @Override
+    public void handleRequest(InputStream inputStream, OutputStream outputStream, Context context)
+            throws IOException {
+        responseHeaders.clear();
+        notModified = false;
+        clientAccept = null;
+        GatewayResponseStream response = new GatewayResponseStream(outputStream,
+                () -> responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING));
+        super.handleRequest(inputStream, response, context);
+        response.close();
     }
 
     @Override
     protected String processInput(Void input, RequestInfo requestInfo, Context context)
             throws ApiGatewayException {
+        RequestMetrics metrics = new RequestMetrics(metricsNamespace);
+        Body body = compression.body(header(requestInfo, HttpHeaders.ACCEPT_ENCODING), clientAccept(requestInfo));
+        Optional<RecordContentCache> contentCache = adapter.getContentCache();
+        long hits = contentCache.map(RecordContentCache::getHitCount).orElse(0L);
+        long misses = contentCache.map(RecordContentCache::getMissCount).orElse(0L);
+        addAdditionalHeaders(() -> responseHeaders);
+        try {
+            respond(requestInfo, body, metrics);
+            return encode(body, metrics);
+        } finally {
+            metrics.mark(Phase.SERIALIZATION);
+            contentCache.ifPresent(cache -> metrics.setContentCache(cache.getHitCount() - hits,
+                                                                   cache.getMissCount() - misses,
+                                                                   cache.getHitRate()));
+            if (metricsSink != null) {
+                metricsSink.emit(metrics.toEmf());
+            }
+        }
+    }
 
+    private void respond(RequestInfo requestInfo, Body body, RequestMetrics metrics)
+            throws ApiGatewayException {
         String verb = requestInfo.getQueryParameter(ValidParameterKey.VERB.key);
         String resumptionToken = requestInfo.getQueryParameterOpt(ValidParameterKey.RESUMPTIONTOKEN.key)
                 .orElse(EMPTY_STRING);
@@ -65,85 +170,233 @@ public class OaiProviderHandler extends ApiGatewayHandler<Void, String> {
         String identifier = requestInfo.getQueryParameterOpt(ValidParameterKey.IDENTIFIER.key)
                 .orElse(EMPTY_STRING);
 
-        String response;
-
         try {
             validateAllParameters(requestInfo.getQueryParameters(), verb);
             validateVerb(verb);
-
-            long startTime = System.currentTimeMillis();
-
-            RecordsList recordsList;
+            metrics.setVerb(verb);
 
             switch (Verb.valueOf(verb)) {
                 case GetRecord:
                     validateMetadataPrefix(metadataPrefix);
+                    metrics.setMetadataPrefix(metadataPrefix.toLowerCase(Locale.ROOT));
                     OaiIdentifier oaiIdentifier = new OaiIdentifier(identifier, adapter.getIdentifierPrefix());
                     validateIdentifier(oaiIdentifier.getIdentifier(), adapter.getRepositoryName());
-                    Record record = getRecord(oaiIdentifier.getIdentifier(), metadataPrefix, setSpec);
-                    response = OaiResponse.getRecord(record, oaiIdentifier.toString(), metadataPrefix,
-                            adapter.getBaseUrl(), startTime);
-                    break;
-                case ListRecords:
-                    validateRequiredParameters(verb, resumptionToken, metadataPrefix);
-                    if (resumptionToken.length() > 0) {
-                        validateResumptionToken(resumptionToken);
-                    } else {
-                        validateMetadataPrefix(metadataPrefix);
-                        validateFromAndUntilParameters(from, until);
-                        validateSet(setSpec);
+                    Record record = getRecord(oaiIdentifier.getIdentifier(), metadataPrefix, setSpec,
+                            modified -> modified == null || !isNotModified(requestInfo,
+                                    ConditionalGet.etag(modified, metadataPrefix), modified.getTime()),
+                            metrics);
+                    if (!notModified) {
+                        new OaiResponseWriter(body).getRecord(record, oaiIdentifier.toString(), metadataPrefix,
+                                adapter.getBaseUrl());
                     }
-                    recordsList = getRecordsList(verb, from, until, setSpec, metadataPrefix, resumptionToken);
-                    response = OaiResponse.listRecords(from, until, resumptionToken, metadataPrefix,
-                            adapter.getBaseUrl(), getStartPosition(resumptionToken), setSpec, recordsList, startTime);
+                    metrics.mark(Phase.RENDER);
                     break;
+                case ListRecords:
                 case ListIdentifiers:
                     validateRequiredParameters(verb, resumptionToken, metadataPrefix);
+                    ResumptionToken token = null;
                     if (resumptionToken.length() > 0) {
-                        validateResumptionToken(resumptionToken);
+                        token = validateResumptionToken(resumptionToken, metrics);
                     } else {
                         validateMetadataPrefix(metadataPrefix);
                         validateFromAndUntilParameters(from, until);
-                        validateSet(setSpec);
                     }
-                    recordsList = getRecordsList(verb, from, until, setSpec, metadataPrefix, resumptionToken);
-                    response = OaiResponse.listIdentifiers(from, until, resumptionToken, metadataPrefix,
-                            adapter.getBaseUrl(), getStartPosition(resumptionToken), setSpec, recordsList, startTime);
+                    listRecords(verb, from, until, setSpec, metadataPrefix, resumptionToken, token, body,
+                            metrics);
                     break;
                 case ListMetadataFormats:
-                    response = OaiResponse.listMetadataFormats(adapter.getBaseUrl(), startTime);
+                    renderIfModified(requestInfo, listMetadataFormats, body);
                     break;
                 case ListSets:
-                    List<OaiSet> setsList = getSetsList();
-                    response = OaiResponse.listSets(adapter.getBaseUrl(), setsList, startTime);
+                    List<OaiSet> setsList = getSetsList(metrics);
+                    body.append(OaiResponse.listSets(adapter.getBaseUrl(), setsList));
                     break;
                 case Identify:
                 default:
-                    response = OaiResponse.identify(adapter, startTime);
+                    renderIfModified(requestInfo, identify, body);
                     break;
             }
         } catch (OaiException e) {
-            response = OaiResponse.oaiError(adapter.getBaseUrl(), e.getErrorCode(), e.getErrorText());
+            metrics.setErrorCode(e.getErrorCode());
+            body.reset();
+            new OaiResponseWriter(body).error(adapter.getBaseUrl(), e.getErrorCode(), e.getErrorText());
+        }
+    }
+
+    /**
+     * Answers with a prerendered document unless the harvester has it. The document only changes with the
+     * configuration of the deployment, which it has no date for, so it is validated by its ETag alone.
+     */
+    private void renderIfModified(RequestInfo requestInfo, Prerendered prerendered, Body body) {
+        if (!isNotModified(requestInfo, prerendered.etag, null, 0)) {
+            body.append(prerendered.render());
+        }
+    }
+
+    /**
+     * Adds the validators of the response to its headers and checks them against the conditional headers of the
+     * request. A response that the harvester already has is answered with 304 Not Modified and no body.
+     */
+    private boolean isNotModified(RequestInfo requestInfo, String etag, long lastModified) {
+        responseHeaders.put(HttpHeaders.LAST_MODIFIED, ConditionalGet.httpDate(lastModified));
+        return isNotModified(requestInfo, etag, header(requestInfo, HttpHeaders.IF_MODIFIED_SINCE), lastModified);
+    }
+
+    private boolean isNotModified(RequestInfo requestInfo, String etag, String ifModifiedSince, long lastModified) {
+        responseHeaders.put(HttpHeaders.ETAG, etag);
+        notModified = ConditionalGet.isNotModified(header(requestInfo, HttpHeaders.IF_NONE_MATCH), ifModifiedSince,
+                etag, lastModified);
+        return notModified;
+    }
+
+    /**
+     * Ends the body, which was compressed while it was rendered when the harvester accepts gzip or deflate and the
+     * response is large enough to gain from it. The bytes saved are added to the request metrics.
+     */
+    private String encode(Body body, RequestMetrics metrics) {
+        if (compression.isEnabled()) {
+            responseHeaders.put(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
         }
-        return response;
+        String encoded = body.finish();
+        if (body.isCompressed()) {
+            metrics.setBytesSaved(body.getOriginalBytes() - body.getCompressedBytes());
+            responseHeaders.put(HttpHeaders.CONTENT_ENCODING, body.getEncoding());
+            responseHeaders.computeIfPresent(HttpHeaders.ETAG, (name, etag) -> ConditionalGet.forEncoding(etag,
+                    body.getEncoding()));
+        }
+        return encoded;
     }
 
+    /**
+     * Returns the Accept header the harvester sent, which {@link #calculateContentTypeHeaderReturnValue} replaces.
+     */
+    private String clientAccept(RequestInfo requestInfo) {
+        return clientAccept == null ? header(requestInfo, HttpHeaders.ACCEPT) : clientAccept;
+    }
+
+    private static String header(RequestInfo requestInfo, String name) {
+        return requestInfo.getHeaders().entrySet().stream()
+                .filter(header -> name.equalsIgnoreCase(header.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Runs the request paths once while the container initialises, so the first harvester request does not pay for
+     * class loading and Jackson introspection. Lists are rendered from the adapter's sample response in every verb and
+     * format. Priming makes no upstream request, since the init phase of a Lambda function has a hard time limit that
+     * a slow upstream could exceed; the sets list is only started loading in the background. A failure is logged and
+     * left for the first request to run into.
+     */
+    private void prime() {
+        long startTime = System.currentTimeMillis();
+        try {
+            String sample = adapter.getSampleRecordsList();
+            for (Verb verb : List.of(Verb.ListRecords, Verb.ListIdentifiers)) {
+                for (MetadataFormat format : MetadataFormat.values()) {
+                    primeList(verb, format.name().toLowerCase(Locale.ROOT), sample, startTime);
+                }
+            }
+            identify.render();
+            // Rendered and discarded to load the classes of the error and ListSets responses and of the metrics.
+            OaiResponse.oaiError(adapter.getBaseUrl(), OaiConstants.BAD_VERB, OaiConstants.ILLEGAL_ARGUMENT);
+            OaiResponse.listSets(adapter.getBaseUrl(), List.of(new OaiSet(Adapter.ALL_SET_NAME,
+                                                                          Adapter.ALL_SET_NAME)));
+            new RequestMetrics(metricsNamespace).toEmf();
+            setsCache.preload();
+            LOG.info("Primed in {} ms", System.currentTimeMillis() - startTime);
+        } catch (OaiException | InternalOaiException | RuntimeException e) {
+            LOG.warn("Priming failed", e);
+        }
+    }
+
+    private void primeList(Verb verb, String metadataPrefix, String sample, long startTime)
+            throws OaiException, InternalOaiException {
+        StringBuilder buffer = new StringBuilder(sample.length());
+        OaiResponseWriter writer = new OaiResponseWriter(buffer);
+        writer.startList(verb.name(), EMPTY_STRING, EMPTY_STRING, EMPTY_STRING, metadataPrefix, adapter.getBaseUrl());
+        RecordsPageWriter page = new RecordsPageWriter(buffer, verb == Verb.ListRecords,
+                pageSizePolicy.getMaxResponseBytes());
+        long numFound = adapter.parseRecordsListResponse(verb.name(), sample, metadataPrefix, EMPTY_STRING, page);
+        String token = tokenCodec.encode(new ResumptionToken("lr", startTime, EMPTY_STRING, EMPTY_STRING,
+                EMPTY_STRING, metadataPrefix, Integer.toString(page.getRecordCount())));
+        tokenCodec.decode(token);
+        writer.endList(verb.name(), numFound, token, page.getRecordCount());
+    }
+
+    private static MetricsSink metricsSink(Environment environment) {
+        return environment.readEnvOpt(OaiConstants.METRICS_ENABLED_ENV).map(Boolean::parseBoolean).orElse(false)
+                ? MetricsSink.STANDARD_OUT
+                : null;
+    }
+
+    /**
+     * Creates the adapter named in the environment. The adapter gets the upstream transport, which lives as long as
+     * the handler, so connections are reused across invocations of a warm container.
+     *
+     * @param environment environment naming the client and its upstream
+     * @return the adapter
+     */
     @JacocoGenerated
-    private Adapter initAdapter() {
+    public static Adapter createAdapter(Environment environment) {
         String clientName = environment.readEnv(OaiConstants.CLIENT_NAME_ENV);
         switch (clientName) {
             case OaiConstants.CLIENT_TYPE_DLR:
-                return new DlrAdapter(environment);
+                return new DlrAdapter(environment, new UpstreamTransport(environment));
             case OaiConstants.CLIENT_TYPE_NVA:
-                return new NvaAdapter(environment);
+                return new NvaAdapter(environment, new UpstreamTransport(environment));
             default:
                 throw new RuntimeException(String.format(UNKNOWN_CLIENT_NAME, clientName));
         }
     }
 
+    /**
+     * Serves records from the record store at RECORD_STORE_PATH, or else the snapshot at SNAPSHOT_PATH, when one is
+     * configured. Local records that cannot be opened are logged and the upstream adapter is used instead, so a missing
+     * export never takes the provider down.
+     */
+    private static Adapter withLocalRecords(Adapter upstream, Environment environment) {
+        Optional<String> store = environment.readEnvOpt(OaiConstants.RECORD_STORE_PATH_ENV)
+                .filter(StringUtils::isNotEmpty);
+        if (store.isPresent()) {
+            return openRecordStore(upstream, store.get(), environment);
+        }
+        return environment.readEnvOpt(OaiConstants.SNAPSHOT_PATH_ENV)
+                .filter(StringUtils::isNotEmpty)
+                .map(path -> openSnapshot(upstream, path))
+                .orElse(upstream);
+    }
+
+    private static Adapter openRecordStore(Adapter upstream, String path, Environment environment) {
+        try {
+            RecordStore store = RecordStore.open(Path.of(path));
+            LOG.info("Serving {} records from record store {}", store.size(), store.getGeneration());
+            Duration refreshInterval = Duration.ofSeconds(
+                    environment.readEnvOpt(OaiConstants.RECORD_STORE_REFRESH_SECONDS_ENV)
+                            .map(Long::parseLong)
+                            .orElse(RecordStoreAdapter.DEFAULT_REFRESH_SECONDS));
+            return new RecordStoreAdapter(upstream, store, refreshInterval, Clock.systemUTC());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not open record store {}, serving from upstream", path, e);
+            return upstream;
+        }
+    }
+
+    private static Adapter openSnapshot(Adapter upstream, String path) {
+        try {
+            Snapshot snapshot = Snapshot.open(Path.of(path));
+            LOG.info("Serving {} records from snapshot {}", snapshot.size(), path);
+            return new SnapshotAdapter(upstream, snapshot);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not open snapshot {}, serving from upstream", path, e);
+            return upstream;
+        }
+    }
+
     @Override
     protected Integer getSuccessStatusCode(Void input, String output) {
-        return HttpURLConnection.HTTP_OK;
+        return notModified ? HttpURLConnection.HTTP_NOT_MODIFIED : HttpURLConnection.HTTP_OK;
     }
 
     @Override
@@ -188,42 +441,149 @@ public class OaiProviderHandler extends ApiGatewayHandler<Void, String> {
         }
     }
 
-    protected void validateSet(String setSpec) throws OaiException, InternalOaiException {
-        List<String> setSpecList = getSetsList().stream().map(sets -> sets.setSpec).collect(Collectors.toList());
+    protected void validateSet(String setSpec, RequestMetrics metrics) throws OaiException, InternalOaiException {
+        List<String> setSpecList = getSetsList(metrics).stream().map(sets -> sets.setSpec).collect(Collectors.toList());
         if (setSpec.length() > 0 && !setSpecList.contains(setSpec) && !"all".equalsIgnoreCase(setSpec)) {
             throw new OaiException(OaiConstants.BAD_ARGUMENT, OaiConstants.UNKNOWN_SET_NAME + setSpec);
         }
     }
 
-    private List<OaiSet> getSetsList() throws OaiException, InternalOaiException {
+    private List<OaiSet> getSetsList(RequestMetrics metrics) throws OaiException, InternalOaiException {
+        metrics.mark(Phase.VALIDATION);
+        List<OaiSet> sets = setsCache.get();
+        metrics.mark(Phase.SETS_LOOKUP);
+        return sets;
+    }
+
+    private List<OaiSet> fetchSetsList() throws OaiException, InternalOaiException {
         String json = adapter.getSetsList();
         return adapter.parseSetsResponse(json);
     }
 
-    private Record getRecord(String identifier, String metadataPrefix, String setSpec) throws InternalOaiException,
-            OaiException {
+    /**
+     * Fetches and parses a record. The validators are checked against the last update date of the record before its
+     * metadata is rendered, so a harvester that has the record saves the rendering as well as the transfer; the
+     * upstream fetch is still made, since the date is only known from it.
+     */
+    private Record getRecord(String identifier, String metadataPrefix, String setSpec, Predicate<Date> modified,
+                             RequestMetrics metrics)
+            throws InternalOaiException, OaiException {
+        metrics.mark(Phase.VALIDATION);
         String json = adapter.getRecord(identifier);
-        return adapter.parseRecordResponse(json, metadataPrefix, setSpec);
+        metrics.mark(Phase.UPSTREAM_FETCH);
+        Record record = adapter.parseRecordResponse(json, metadataPrefix, setSpec, modified);
+        metrics.mark(Phase.PARSE);
+        return record;
     }
 
-    private RecordsList getRecordsList(String verb, String from, String until, String setSpec, String metadataPrefix,
-                                       String resumptionToken)
+    /**
+     * Renders a ListRecords or ListIdentifiers response while the adapter parses the upstream page, so only one
+     * record at a time is held besides the response itself. The page size comes from the {@link PageSizePolicy},
+     * which is told the rendered size of each page. A harvest started with cursor pagination enabled carries the
+     * cursor of the last record in its tokens and keeps paging by cursor; any other harvest pages by offset.
+     * The set of a new harvest is validated while its first page is being fetched, so the request takes about as
+     * long as the slower of the two calls. Parsing and rendering interleave, so the rendering time counted by the
+     * {@link RecordsPageWriter} is moved out of the parse phase afterwards. The response is rendered into the body,
+     * which compresses it as it is written when the harvester accepts that.
+     */
+    private void listRecords(String verb, String from, String until, String setSpec, String metadataPrefix,
+                             String resumptionToken, ResumptionToken token, Body body, RequestMetrics metrics)
             throws OaiException, InternalOaiException {
         String json;
-        if (resumptionToken.length() > 0) {
-            ResumptionToken token = new ResumptionToken(resumptionToken);
-            json = adapter.getRecordsList(token.from, token.until, token.setSpec,
-                    Integer.parseInt(token.startPosition));
-            return adapter.parseRecordsListResponse(verb, json, token.metadataPrefix, token.setSpec);
+        String parsePrefix = metadataPrefix;
+        String parseSetSpec = setSpec;
+        int startPosition = 0;
+        boolean byCursor = cursorPagination;
+        if (token != null) {
+            parsePrefix = token.metadataPrefix;
+            parseSetSpec = token.setSpec;
+            startPosition = Integer.parseInt(token.startPosition);
+            byCursor = !token.cursor.isEmpty();
+        }
+        int pageSize = pageSizePolicy.pageSize(verb, parsePrefix);
+        metrics.setMetadataPrefix(parsePrefix.toLowerCase(Locale.ROOT));
+        metrics.setPageSize(pageSize);
+        metrics.mark(Phase.VALIDATION);
+        CompletableFuture<String> upstream;
+        if (token != null) {
+            Optional<String> prefetched = prefetchCache.take(resumptionToken).filter(adapter::canParse);
+            upstream = prefetched.isPresent()
+                    ? CompletableFuture.completedFuture(prefetched.get())
+                    : fetchRecords(token, pageSize);
         } else {
-            json = adapter.getRecordsList(from, until, setSpec, 0);
-            return adapter.parseRecordsListResponse(verb, json, metadataPrefix, setSpec);
+            upstream = byCursor
+                    ? adapter.getRecordsListAfterAsync(from, until, setSpec, EMPTY_STRING, pageSize)
+                    : adapter.getRecordsListAsync(from, until, setSpec, 0, pageSize);
+            validateSetWhileFetching(setSpec, upstream, metrics);
+        }
+        metrics.setSet(parseSetSpec);
+        json = Adapter.join(upstream);
+        metrics.mark(Phase.UPSTREAM_FETCH);
+
+        body.expect(json.length());
+        OaiResponseWriter writer = new OaiResponseWriter(body);
+        writer.startList(verb, resumptionToken, from, until, metadataPrefix, adapter.getBaseUrl());
+        RecordsPageWriter page = new RecordsPageWriter(body, Verb.ListRecords.name().equals(verb),
+                pageSizePolicy.getMaxResponseBytes());
+        long numFound = adapter.parseRecordsListResponse(verb, json, parsePrefix, parseSetSpec, page);
+        metrics.mark(Phase.PARSE);
+        metrics.move(Phase.PARSE, Phase.RENDER, page.getRenderNanos());
+        int recordCount = page.getRecordCount();
+        metrics.setRecordCount(recordCount);
+        int nextPosition = startPosition + recordCount;
+        ResumptionToken next = null;
+        if (numFound - nextPosition > 0 && (!byCursor || page.getLastCursor() != null)) {
+            next = token == null
+                    ? new ResumptionToken("lr", System.currentTimeMillis(), setSpec, from, until, metadataPrefix,
+                            Integer.toString(nextPosition))
+                    : new ResumptionToken(token.command, System.currentTimeMillis(), token.setSpec, token.from,
+                            token.until, token.metadataPrefix, Integer.toString(nextPosition));
+            if (byCursor) {
+                next.cursor = page.getLastCursor();
+            }
+        }
+        String newToken = next == null ? EMPTY_STRING : tokenCodec.encode(next);
+        writer.endList(verb, numFound, newToken, nextPosition);
+        pageSizePolicy.recordPage(verb, parsePrefix, page.getRecordBytes(), recordCount);
+        if (next != null) {
+            prefetchNextPage(newToken, next, pageSizePolicy.pageSize(verb, parsePrefix));
         }
     }
 
-    protected void validateResumptionToken(String resumptionToken)
+    private void validateSetWhileFetching(String setSpec, CompletableFuture<String> upstream, RequestMetrics metrics)
             throws OaiException, InternalOaiException {
-        validateSet(new ResumptionToken(resumptionToken).setSpec);
+        try {
+            validateSet(setSpec, metrics);
+        } catch (OaiException | InternalOaiException e) {
+            upstream.cancel(true);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<String> fetchRecords(ResumptionToken token, int pageSize) {
+        return token.cursor.isEmpty()
+                ? adapter.getRecordsListAsync(token.from, token.until, token.setSpec,
+                        Integer.parseInt(token.startPosition), pageSize)
+                : adapter.getRecordsListAfterAsync(token.from, token.until, token.setSpec, token.cursor, pageSize);
+    }
+
+    private void prefetchNextPage(String newToken, ResumptionToken next, int pageSize) {
+        if (prefetchCache.isEnabled()) {
+            prefetchCache.prefetch(newToken, () -> Adapter.join(fetchRecords(next, pageSize)));
+        }
+    }
+
+    /**
+     * Decodes the resumption token. Signed tokens were written by this server and are only checked for tampering
+     * and expiry, while the set of a token in the older format is validated against upstream.
+     */
+    protected ResumptionToken validateResumptionToken(String resumptionToken, RequestMetrics metrics)
+            throws OaiException, InternalOaiException {
+        ResumptionToken token = tokenCodec.decode(resumptionToken);
+        if (ResumptionTokenCodec.isLegacy(resumptionToken)) {
+            validateSet(token.setSpec, metrics);
+        }
+        return token;
     }
 
     protected void validateMetadataPrefix(String metadataPrefix)
@@ -241,19 +601,13 @@ public class OaiProviderHandler extends ApiGatewayHandler<Void, String> {
         }
     }
 
-    private int getStartPosition(String resumptionToken) {
-        if (resumptionToken.length() > 0) {
-            return Integer.parseInt(new ResumptionToken(resumptionToken).startPosition);
-        }
-        return 0;
-    }
-
     /**
      * Override as a temporary fix for unsupported accept header values in apigateway 1.24.12.
      */
     @Override
     protected MediaType calculateContentTypeHeaderReturnValue(RequestInfo requestInfo)
             throws UnsupportedAcceptHeaderException {
+        clientAccept = clientAccept(requestInfo);
         Map<String, String> headers = requestInfo.getHeaders();
         if (requestInfo.getHeaders().containsKey(HttpHeaders.ACCEPT)) {
             headers.replace(HttpHeaders.ACCEPT, "application/xml");
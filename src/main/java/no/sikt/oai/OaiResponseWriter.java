@@ -0,0 +1,364 @@
+package no.sikt.oai;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.data.Record;
+
+/**
+ * Renders an OAI-PMH response incrementally into an {@link Appendable}. Header, records and footer are written as
+ * they become available, so a caller that feeds records one by one never holds more than one rendered record in
+ * addition to what the target itself buffers. Values that come from the request or the repository are escaped with
+ * {@link XmlEscaper} as they are appended, while record metadata is written as the XML the adapter rendered. The
+ * metadata is decoded from its UTF-8 bytes into a buffer the writer reuses from record to record, so rendering a page
+ * does not create a string per record.
+ */
+@SuppressWarnings({"PMD.AvoidDuplicateLiterals", "PMD.TooManyMethods"})
+public class OaiResponseWriter implements Flushable {
+
+    private static final String METADATA_INDENT = "                ";
+
+    private final Appendable out;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer metadata = CharBuffer.allocate(0);
+
+    public OaiResponseWriter(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Creates a writer that encodes the response as UTF-8 onto the given stream. Call {@link #flush()} when done.
+     *
+     * @param outputStream target stream
+     * @return a writer over the stream
+     */
+    public static OaiResponseWriter forOutputStream(OutputStream outputStream) {
+        return new OaiResponseWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+
+    // Complete documents
+
+    public void identify(Adapter adapter) {
+        writeHeader();
+        writeRequest(Verb.Identify.name(), adapter.getBaseUrl());
+        writeVerbStart(Verb.Identify.name());
+        writeIdentify(adapter);
+        writeVerbEnd(Verb.Identify.name());
+        writeFooter();
+    }
+
+    public void listMetadataFormats(String baseUrl) {
+        writeHeader();
+        writeRequest(Verb.ListMetadataFormats.name(), baseUrl);
+        writeVerbStart(Verb.ListMetadataFormats.name());
+        writeListMetadataFormats();
+        writeVerbEnd(Verb.ListMetadataFormats.name());
+        writeFooter();
+    }
+
+    public void getRecord(Record record, String identifier, String metadataPrefix, String baseUrl) {
+        writeHeader();
+        writeRequestGetRecord(Verb.GetRecord.name(), metadataPrefix, identifier, baseUrl);
+        writeVerbStart(Verb.GetRecord.name());
+        writeRecord(record, true);
+        writeVerbEnd(Verb.GetRecord.name());
+        writeFooter();
+    }
+
+    public void error(String baseUrl, String errorCode, String errorMessage) {
+        writeHeader();
+        writeRequest(baseUrl);
+        writeError(errorCode, errorMessage);
+        writeFooter();
+    }
+
+    // ListRecords & ListIdentifiers, written in three steps around the records
+
+    public void startList(String verb, String resumptionToken, String from, String until, String metadataPrefix,
+                          String baseUrl) {
+        writeHeader();
+        writeRequestListRecordsIdentifiers(verb, resumptionToken, from, until, metadataPrefix, baseUrl);
+        writeVerbStart(verb);
+    }
+
+    public void endList(String verb, long listSize, String newToken, int cursor) {
+        writeResumptionToken(listSize, newToken, cursor);
+        writeVerbEnd(verb);
+        writeFooter();
+    }
+
+    // ListSets, written in three steps around the sets
+
+    public void startListSets(String baseUrl) {
+        writeHeader();
+        writeRequest(Verb.ListSets.name(), baseUrl);
+        writeVerbStart(Verb.ListSets.name());
+    }
+
+    @SuppressWarnings({"PMD.ConsecutiveLiteralAppends"})
+    public void writeSet(String setSpec, String setName) {
+        append("        <set>\n")
+            .append("            <setSpec>").appendEscaped(setSpec).append("</setSpec>\n")
+            .append("            <setName>").appendEscaped(setName).append("</setName>\n")
+            .append("        </set>\n");
+    }
+
+    public void endListSets() {
+        writeVerbEnd(Verb.ListSets.name());
+        writeFooter();
+    }
+
+    // OAI Helpers
+
+    @SuppressWarnings({"PMD.ConsecutiveLiteralAppends"})
+    public void writeHeader() {
+        append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" + "\n")
+            .append("<OAI-PMH  xmlns=\"http://www.openarchives.org/OAI/2.0/\" ")
+            .append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ")
+            .append("xsi:schemaLocation=")
+            .append("\"http://www.openarchives.org/OAI/2.0/ http://www.openarchives.org/OAI/2.0/OAI-PMH.xsd")
+            .append("\">\n")
+            .append("    <responseDate>").appendZuluLong(System.currentTimeMillis()).append("</responseDate>")
+            .append('\n');
+    }
+
+    public void writeFooter() {
+        append("</OAI-PMH>\n");
+    }
+
+    public void writeVerbStart(String verb) {
+        append("    <").append(verb).append(">\n");
+    }
+
+    public void writeVerbEnd(String verb) {
+        append("    </").append(verb).append(">\n");
+    }
+
+    public void writeRequest(String verb, String baseUrl) {
+        append("    <request verb=\"").append(verb).append("\">").appendEscaped(baseUrl).append("</request>\n");
+    }
+
+    public void writeRequest(String baseUrl) {
+        append("    <request>").appendEscaped(baseUrl).append("</request>\n");
+    }
+
+    public void writeError(String errorCode, String errorMessage) {
+        append("    <error code=\"").append(errorCode).append("\">").appendEscaped(errorMessage).append("</error>\n");
+    }
+
+    @SuppressWarnings({"PMD.ConsecutiveLiteralAppends"})
+    public void writeRecord(Record record, boolean showMetadata) {
+        append("        <record>\n");
+        if (record.isDeleted()) {
+            append("            <header status=\"deleted\">\n");
+        } else {
+            append("            <header>\n");
+        }
+        append("                <identifier>").appendEscaped(record.getIdentifier()).append("</identifier>\n")
+            .append("                <datestamp>");
+        if (record.getDatestamp() != Record.NO_DATESTAMP) {
+            appendZuluLong(TimeUnit.SECONDS.toMillis(record.getDatestamp()));
+        }
+        append("</datestamp>\n");
+        for (String setSpec : record.getSetSpecs()) {
+            append("                <setSpec>").appendEscaped(setSpec).append("</setSpec>\n");
+        }
+        append("            </header>\n");
+        if (!record.isDeleted() && showMetadata) {
+            append("            <metadata>\n");
+            appendIndented(decode(record.getContentBytes()));
+            append("            </metadata>\n");
+        }
+        append("        </record>\n");
+    }
+
+    // OAI helpers: GetRecord
+
+    public void writeRequestGetRecord(String verb, String metadataPrefix, String identifier, String baseUrl) {
+        append("    <request verb=\"").append(verb).append("\" identifier=\"").appendEscaped(identifier)
+            .append("\" metadataPrefix=\"").appendEscaped(metadataPrefix).append("\">").appendEscaped(baseUrl)
+            .append("</request>\n");
+    }
+
+    // OAI helpers: ListRecords & ListIdentifiers
+
+    public void writeResumptionToken(long listSize, String newToken, int cursor) {
+        if (newToken.length() > 0) {
+            append("        <resumptionToken completeListSize=\"").append(Long.toString(listSize))
+                .append("\"  cursor=\"").append(Integer.toString(cursor)).append("\">").appendEscaped(newToken)
+                .append("</resumptionToken>\n");
+        }
+    }
+
+    public void writeRequestListRecordsIdentifiers(String verb, String oldResumptionToken, String from, String until,
+                                                   String metadataPrefix, String baseUrl) {
+        boolean writeParams = true;
+
+        append("    <request verb=\"").append(verb).append("\" ");
+        if (oldResumptionToken != null) {
+            writeParams = false;
+            append(" resumptionToken=\"").appendEscaped(oldResumptionToken).append("\" ");
+        }
+        if (from.length() > 9 && writeParams) {
+            append(" from=\"").appendEscaped(from).append('"');
+        }
+        if (until.length() > 9 && writeParams) {
+            append(" until=\"").appendEscaped(until).append('"');
+        }
+        if (writeParams) {
+            append(" metadataPrefix=\"").appendEscaped(metadataPrefix).append('"');
+        }
+        append('>').appendEscaped(baseUrl).append("</request>\n");
+    }
+
+    // OAI helpers: Identify
+
+    @SuppressWarnings({"PMD.ConsecutiveLiteralAppends"})
+    public void writeIdentify(Adapter adapter) {
+        append("        <repositoryName>").appendEscaped(adapter.getRepositoryName()).append("</repositoryName>\n")
+            .append("        <baseURL>").appendEscaped(adapter.getBaseUrl()).append("</baseURL>\n")
+            .append("        <protocolVersion>").appendEscaped(adapter.getProtocolVersion())
+            .append("</protocolVersion>\n")
+            .append("        <adminEmail>").appendEscaped(adapter.getAdminEmail()).append("</adminEmail>\n")
+            .append("        <earliestDatestamp>").appendEscaped(adapter.getEarliestTimestamp())
+            .append("</earliestDatestamp>\n")
+            .append("        <deletedRecord>").appendEscaped(adapter.getDeletedRecord()).append("</deletedRecord>\n")
+            .append("        <granularity>").appendEscaped(adapter.getDateGranularity()).append("</granularity>\n")
+            .append("        <description>").appendEscaped(adapter.getDescription()).append("</description>\n");
+    }
+
+    // OAI helpers: ListMetadataFormats
+
+    @SuppressWarnings({"PMD.ConsecutiveLiteralAppends"})
+    public void writeListMetadataFormats() {
+        append("        <metadataFormat>\n")
+            .append("            <metadataPrefix>").append("qdc").append("</metadataPrefix>\n")
+            .append("            <schema>").append("http://dublincore.org/schemas/xmls/qdc/2006/01/06/dcterms.xsd").append("</schema>\n")
+            .append("            <metadataNamespace>").append("http://purl.org/dc/terms/").append("</metadataNamespace>\n")
+            .append("        </metadataFormat>\n")
+            .append("        <metadataFormat>\n")
+            .append("            <metadataPrefix>").append("oai_dc").append("</metadataPrefix>\n")
+            .append("            <schema>").append("http://www.openarchives.org/OAI/2.0/oai_dc.xsd").append("</schema>\n")
+            .append("            <metadataNamespace>").append("http://www.openarchives.org/OAI/2.0/oai_dc/").append("</metadataNamespace>\n")
+            .append("        </metadataFormat>\n")
+            .append("        <metadataFormat>\n")
+            .append("            <metadataPrefix>").append("oai_datacite").append("</metadataPrefix>\n")
+            .append("            <schema>").append("http://namespace.openaire.eu/schema/oaire/ https://www.openaire.eu/schema/repo-lit/4.0/openaire.xsd").append("</schema>\n")
+            .append("            <metadataNamespace>").append("http://namespace.openaire.eu/schema/oaire/ https://www.openaire.eu/schema/repo-lit/4.0/openaire.xsd").append("</metadataNamespace>\n")
+            .append("        </metadataFormat>\n");
+    }
+
+    private OaiResponseWriter append(CharSequence value) {
+        try {
+            out.append(value);
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes record metadata into the reused buffer, which is grown to the byte length, as UTF-8 never has more
+     * characters than bytes.
+     */
+    private CharBuffer decode(ByteBuffer bytes) {
+        if (metadata.capacity() < bytes.remaining()) {
+            metadata = CharBuffer.allocate(bytes.remaining());
+        }
+        metadata.clear();
+        decoder.reset();
+        decoder.decode(bytes, metadata, true);
+        decoder.flush(metadata);
+        return metadata.flip();
+    }
+
+    /**
+     * Writes record metadata one level below {@code <metadata>}, appending each line as a range of the content. Lines
+     * end in LF or CRLF and are written with LF, and line breaks at the end of the content are dropped.
+     */
+    @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+    private void appendIndented(CharSequence content) {
+        int end = content.length();
+        while (end > 0 && content.charAt(end - 1) == '\n') {
+            end--;
+            if (end > 0 && content.charAt(end - 1) == '\r') {
+                end--;
+            }
+        }
+        if (end == 0 && content.length() > 0) {
+            return;
+        }
+        int start = 0;
+        int lineBreak = indexOfLineBreak(content, start, end);
+        while (lineBreak >= 0) {
+            int lineEnd = lineBreak > start && content.charAt(lineBreak - 1) == '\r' ? lineBreak - 1 : lineBreak;
+            appendLine(content, start, lineEnd);
+            start = lineBreak + 1;
+            lineBreak = indexOfLineBreak(content, start, end);
+        }
+        appendLine(content, start, end);
+    }
+
+    private static int indexOfLineBreak(CharSequence content, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (content.charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void appendLine(CharSequence content, int start, int end) {
+        try {
+            out.append(METADATA_INDENT).append(content, start, end).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private OaiResponseWriter appendEscaped(CharSequence value) {
+        try {
+            XmlEscaper.appendEscaped(out, value);
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private OaiResponseWriter appendZuluLong(long epochMilli) {
+        try {
+            TimeUtils.appendZuluLong(out, epochMilli);
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private OaiResponseWriter append(char value) {
+        try {
+            out.append(value);
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package no.sikt.oai;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import nva.commons.core.Environment;
+
+/**
+ * Decides how many records to request from the upstream search for a ListRecords or ListIdentifiers page. Sizes can
+ * be configured per verb or per verb and metadataPrefix. In adaptive mode the policy keeps a moving average of the
+ * rendered bytes per record for each verb and metadataPrefix, and sizes the next page to fill the target response
+ * size.
+ */
+public class PageSizePolicy {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_MIN_PAGE_SIZE = 10;
+    public static final int DEFAULT_MAX_PAGE_SIZE = 500;
+    public static final long DEFAULT_TARGET_RESPONSE_BYTES = 2L * 1024 * 1024;
+    /**
+     * Hard limit for the body of a response as it is sent in the API Gateway response, JSON escaped or compressed and
+     * base64 encoded. It is below the 6 MB Lambda payload limit to leave room for the end of the list, the headers
+     * and the rest of the envelope.
+     */
+    public static final long MAX_RESPONSE_BYTES = 5L * 1024 * 1024;
+    public static final String INVALID_PAGE_SIZE_OVERRIDE = "Invalid page size override: ";
+    private static final double SMOOTHING = 0.2;
+    private static final String ENTRY_SEPARATOR = ",";
+    private static final String VALUE_SEPARATOR = "=";
+    private static final String KEY_SEPARATOR = ":";
+
+    private final int defaultPageSize;
+    private final Map<String, Integer> overrides;
+    private final int minPageSize;
+    private final int maxPageSize;
+    private final long targetResponseBytes;
+    private final boolean adaptive;
+    private final Map<String, Double> bytesPerRecord = new ConcurrentHashMap<>();
+
+    public PageSizePolicy(Environment environment) {
+        this(environment.readEnvOpt(OaiConstants.PAGE_SIZE_ENV).map(Integer::parseInt).orElse(DEFAULT_PAGE_SIZE),
+             parseOverrides(environment.readEnvOpt(OaiConstants.PAGE_SIZE_OVERRIDES_ENV).orElse("")),
+             environment.readEnvOpt(OaiConstants.PAGE_SIZE_MIN_ENV).map(Integer::parseInt)
+                 .orElse(DEFAULT_MIN_PAGE_SIZE),
+             environment.readEnvOpt(OaiConstants.PAGE_SIZE_MAX_ENV).map(Integer::parseInt)
+                 .orElse(DEFAULT_MAX_PAGE_SIZE),
+             environment.readEnvOpt(OaiConstants.TARGET_RESPONSE_BYTES_ENV).map(Long::parseLong)
+                 .orElse(DEFAULT_TARGET_RESPONSE_BYTES),
+             environment.readEnvOpt(OaiConstants.PAGE_SIZE_ADAPTIVE_ENV).map(Boolean::parseBoolean).orElse(false));
+    }
+
+    public PageSizePolicy(int defaultPageSize, Map<String, Integer> overrides, int minPageSize, int maxPageSize,
+                          long targetResponseBytes, boolean adaptive) {
+        this.defaultPageSize = defaultPageSize;
+        this.overrides = Map.copyOf(overrides);
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        this.targetResponseBytes = Math.min(targetResponseBytes, MAX_RESPONSE_BYTES);
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Parses overrides on the form {@code ListIdentifiers=200,ListRecords:oai_datacite=25}. An entry with a
+     * metadataPrefix takes precedence over one for the verb alone.
+     *
+     * @param value comma separated overrides, may be empty
+     * @return page size by {@link #key(String, String)}
+     */
+    public static Map<String, Integer> parseOverrides(String value) {
+        Map<String, Integer> overrides = new ConcurrentHashMap<>();
+        for (String entry : value.split(ENTRY_SEPARATOR)) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] keyAndSize = entry.split(VALUE_SEPARATOR);
+            if (keyAndSize.length != 2) {
+                throw new IllegalArgumentException(INVALID_PAGE_SIZE_OVERRIDE + entry);
+            }
+            String[] verbAndPrefix = keyAndSize[0].trim().split(KEY_SEPARATOR);
+            String prefix = verbAndPrefix.length > 1 ? verbAndPrefix[1] : "";
+            try {
+                overrides.put(key(verbAndPrefix[0], prefix), Integer.parseInt(keyAndSize[1].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(INVALID_PAGE_SIZE_OVERRIDE + entry, e);
+            }
+        }
+        return overrides;
+    }
+
+    /**
+     * Returns the number of records to request for the next page.
+     *
+     * @param verb           ListRecords or ListIdentifiers
+     * @param metadataPrefix requested metadata format
+     * @return page size
+     */
+    public int pageSize(String verb, String metadataPrefix) {
+        int configured = configuredPageSize(verb, metadataPrefix);
+        if (!adaptive) {
+            return configured;
+        }
+        Double average = bytesPerRecord.get(key(verb, metadataPrefix));
+        if (average == null) {
+            return configured;
+        }
+        long fitting = (long) (targetResponseBytes / Math.max(average, 1.0));
+        return (int) Math.max(minPageSize, Math.min(maxPageSize, fitting));
+    }
+
+    /**
+     * Feeds the size of a rendered page back into the moving average.
+     *
+     * @param verb           ListRecords or ListIdentifiers
+     * @param metadataPrefix metadata format of the page
+     * @param recordBytes    UTF-8 size of the rendered records
+     * @param recordCount    number of records on the page
+     */
+    public void recordPage(String verb, String metadataPrefix, long recordBytes, int recordCount) {
+        if (recordCount == 0) {
+            return;
+        }
+        double observed = (double) recordBytes / recordCount;
+        bytesPerRecord.merge(key(verb, metadataPrefix), observed,
+            (previous, current) -> previous + SMOOTHING * (current - previous));
+    }
+
+    public long getMaxResponseBytes() {
+        return MAX_RESPONSE_BYTES;
+    }
+
+    private int configuredPageSize(String verb, String metadataPrefix) {
+        Integer forPrefix = overrides.get(key(verb, metadataPrefix));
+        if (forPrefix != null) {
+            return forPrefix;
+        }
+        return overrides.getOrDefault(key(verb, ""), defaultPageSize);
+    }
+
+    private static String key(String verb, String metadataPrefix) {
+        return verb + KEY_SEPARATOR + metadataPrefix.toLowerCase(Locale.ROOT);
+    }
+}
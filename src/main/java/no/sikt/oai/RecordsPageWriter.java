@@ -0,0 +1,146 @@
+package no.sikt.oai;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import no.sikt.oai.ResponseCompression.Body;
+import no.sikt.oai.data.Record;
+
+/**
+ * Writes the records of a ListRecords or ListIdentifiers page into the response as they are parsed, and stops once the
+ * rendered records would exceed the byte budget. Records that do not fit are left for the next page; the resumption
+ * token is based on {@link #getRecordCount()}, so nothing is skipped. The first record is always written so that a
+ * harvest makes progress. Each record is rendered into a buffer of its own and measured before it is appended, so the
+ * response can be a target that cannot take anything back, like a compressing {@link ResponseCompression.Body}.
+ *
+ * <p>When writing into a {@link Body}, the budget is for the whole body as it is sent in the gateway response, JSON
+ * escaped or compressed and base64 encoded, rather than for the UTF-8 text of the records.
+ */
+@SuppressWarnings("PMD.AvoidStringBufferField")
+public class RecordsPageWriter implements Consumer<Record> {
+
+    private static final int RECORD_CAPACITY = 4096;
+
+    private final Appendable out;
+    private final Body body;
+    private final StringBuilder recordBuffer = new StringBuilder(RECORD_CAPACITY);
+    private final OaiResponseWriter writer = new OaiResponseWriter(recordBuffer);
+    private final boolean showMetadata;
+    private final long maxRecordBytes;
+    private int recordCount;
+    private long recordBytes;
+    private boolean truncated;
+    private String lastCursor;
+    private long renderNanos;
+
+    public RecordsPageWriter(Appendable out, boolean showMetadata, long maxRecordBytes) {
+        this(out, null, showMetadata, maxRecordBytes);
+    }
+
+    /**
+     * Creates a writer for a response body.
+     *
+     * @param body             body to write the records into, after the start of the list
+     * @param showMetadata     true to write the metadata of records as well as their headers
+     * @param maxResponseBytes budget for the encoded body, including what was written into it before the records
+     */
+    public RecordsPageWriter(Body body, boolean showMetadata, long maxResponseBytes) {
+        this(body, body, showMetadata, maxResponseBytes);
+    }
+
+    private RecordsPageWriter(Appendable out, Body body, boolean showMetadata, long maxBytes) {
+        this.out = out;
+        this.body = body;
+        this.showMetadata = showMetadata;
+        this.maxRecordBytes = maxBytes;
+    }
+
+    @Override
+    public void accept(Record record) {
+        if (truncated) {
+            return;
+        }
+        recordBuffer.setLength(0);
+        long renderStart = System.nanoTime();
+        writer.writeRecord(record, showMetadata);
+        long bytes = utf8Length(recordBuffer, 0, recordBuffer.length());
+        if (recordCount > 0 && !fits(bytes)) {
+            renderNanos += System.nanoTime() - renderStart;
+            truncated = true;
+            return;
+        }
+        try {
+            out.append(recordBuffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        renderNanos += System.nanoTime() - renderStart;
+        recordBytes += bytes;
+        recordCount++;
+        lastCursor = record.getCursor();
+    }
+
+    private boolean fits(long bytes) {
+        return body == null
+                ? recordBytes + bytes <= maxRecordBytes
+                : body.getEncodedBytesWith(recordBuffer, bytes) <= maxRecordBytes;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getRecordBytes() {
+        return recordBytes;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns the time spent rendering records, including records that did not fit in the page.
+     *
+     * @return elapsed nanoseconds
+     */
+    public long getRenderNanos() {
+        return renderNanos;
+    }
+
+    /**
+     * Returns the cursor of the last record written, where the next page starts when paging by cursor.
+     *
+     * @return the cursor, or null when no record was written or the adapter gave none
+     */
+    public String getLastCursor() {
+        return lastCursor;
+    }
+
+    /**
+     * Counts the UTF-8 encoded length of a range of characters without encoding them.
+     *
+     * @param chars characters
+     * @param start first index, inclusive
+     * @param end   last index, exclusive
+     * @return number of bytes
+     */
+    public static long utf8Length(CharSequence chars, int start, int end) {
+        long bytes = 0;
+        int i = start;
+        while (i < end) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+            i++;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,461 @@
+package no.sikt.oai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.CountingOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import nva.commons.core.Environment;
+
+/**
+ * Compresses responses for harvesters that send an Accept-Encoding header with gzip or deflate. Responses shorter
+ * than the configured minimum, counted in UTF-8 bytes, are sent as they are, since compressing them saves less than
+ * the base64 encoding costs.
+ *
+ * <p>The response is rendered into a {@link Body}, which holds the text as it is until it reaches the minimum and
+ * from then on encodes it to UTF-8, compresses it and base64 encodes it as it is appended, so a large response is
+ * never held uncompressed. API Gateway decodes the base64 body when the Lambda response is flagged with
+ * {@value #IS_BASE64_ENCODED}, which {@link GatewayResponseStream} sets, and the first media type the harvester
+ * accepts is one of the binary media types of the API. Responses for other harvesters are not compressed.
+ */
+public class ResponseCompression {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final String IS_BASE64_ENCODED = "isBase64Encoded";
+    public static final int DEFAULT_MIN_BYTES = 4096;
+    /**
+     * The media types listed as BinaryMediaTypes of the API in template.yaml.
+     */
+    public static final List<String> BINARY_MEDIA_TYPES = List.of("application/xml", "text/xml");
+    private static final String ANY = "*";
+    private static final String QUALITY = "q=";
+    private static final int CHUNK_SIZE = 8192;
+    /**
+     * Bytes a deflate stream can add to incompressible input beyond its growth per block, covering the zlib or gzip
+     * header and trailer.
+     */
+    private static final int DEFLATE_OVERHEAD_BYTES = 32;
+
+    private final boolean enabled;
+    private final int minBytes;
+
+    public ResponseCompression(Environment environment) {
+        this.enabled = environment.readEnvOpt(OaiConstants.RESPONSE_COMPRESSION_ENABLED_ENV)
+                .map(Boolean::parseBoolean).orElse(false);
+        this.minBytes = environment.readEnvOpt(OaiConstants.RESPONSE_COMPRESSION_MIN_BYTES_ENV)
+                .map(Integer::parseInt).orElse(DEFAULT_MIN_BYTES);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Creates the body to render a response into, which is compressed with the encoding the harvester prefers once
+     * it reaches the minimum size.
+     *
+     * @param acceptEncoding Accept-Encoding header of the request, or null
+     * @param accept Accept header the harvester sent, or null
+     * @return an empty body
+     */
+    public Body body(String acceptEncoding, String accept) {
+        String encoding = enabled && acceptEncoding != null && isBinaryMediaType(accept)
+                ? preferredEncoding(acceptEncoding)
+                : null;
+        return new Body(encoding, minBytes);
+    }
+
+    /**
+     * Tells whether API Gateway decodes a base64 body for a harvester, which it does when the first media type of its
+     * Accept header is one of the {@link #BINARY_MEDIA_TYPES}.
+     *
+     * @param accept Accept header value, or null
+     * @return true when a compressed body reaches the harvester decoded
+     */
+    public static boolean isBinaryMediaType(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        String first = accept.split(",")[0].split(";")[0].trim().toLowerCase(Locale.ROOT);
+        return BINARY_MEDIA_TYPES.contains(first);
+    }
+
+    /**
+     * Picks the accepted encoding with the highest quality, preferring gzip over deflate when they are equal.
+     *
+     * @param acceptEncoding Accept-Encoding header value
+     * @return {@value #GZIP}, {@value #DEFLATE} or null when neither is accepted
+     */
+    public static String preferredEncoding(String acceptEncoding) {
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = parts.length > 1 ? quality(parts[1].trim()) : 1;
+            if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = quality;
+            } else if (DEFLATE.equals(coding)) {
+                deflate = quality;
+            } else if (ANY.equals(coding)) {
+                any = quality;
+            }
+        }
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    private static double quality(String parameter) {
+        if (!parameter.startsWith(QUALITY)) {
+            return 1;
+        }
+        try {
+            return Double.parseDouble(parameter.substring(QUALITY.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The body of a response. Text appended while the body is shorter than the minimum size is held as it is; once the
+     * minimum is reached, the text so far and everything appended after it is written through UTF-8, the content
+     * encoding and base64 into the body instead.
+     *
+     * <p>The body also keeps an upper bound on the bytes it takes up in the gateway response, where plain text is a
+     * JSON string with quotes, backslashes and control characters escaped, and compressed text is base64, a third
+     * larger than the compressed bytes, which for text that does not compress can be slightly more than the text.
+     */
+    @SuppressWarnings({"PMD.AvoidStringBufferField", "PMD.AvoidLiteralsInIfCondition"})
+    public static class Body implements Appendable {
+
+        private final String encoding;
+        private final long minBytes;
+        private final StringBuilder text = new StringBuilder();
+        private long textBytes;
+        private long escapedBytes;
+        private StringBuilder base64;
+        private CountingOutputStream compressed;
+        private Writer compressor;
+
+        /**
+         * Creates an empty body.
+         *
+         * @param encoding {@value #GZIP} or {@value #DEFLATE}, or null to never compress
+         * @param minBytes size in UTF-8 bytes from which the body is compressed
+         */
+        public Body(String encoding, long minBytes) {
+            this.encoding = encoding;
+            this.minBytes = minBytes;
+        }
+
+        @Override
+        public Body append(CharSequence csq) {
+            CharSequence chars = csq == null ? "null" : csq;
+            return append(chars, 0, chars.length());
+        }
+
+        @Override
+        public Body append(CharSequence csq, int start, int end) {
+            long utf8Bytes = RecordsPageWriter.utf8Length(csq, start, end);
+            textBytes += utf8Bytes;
+            escapedBytes += utf8Bytes + jsonEscapeBytes(csq, start, end);
+            if (compressor != null) {
+                write(csq, start, end);
+                return this;
+            }
+            text.append(csq, start, end);
+            if (encoding != null && textBytes >= minBytes) {
+                startCompressing();
+            }
+            return this;
+        }
+
+        @Override
+        public Body append(char c) {
+            textBytes += utf8Length(c);
+            escapedBytes += utf8Length(c) + jsonEscapeBytes(c);
+            if (compressor != null) {
+                try {
+                    compressor.write(c);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return this;
+            }
+            text.append(c);
+            if (encoding != null && textBytes >= minBytes) {
+                startCompressing();
+            }
+            return this;
+        }
+
+        /**
+         * Reserves room for a response of about the given length, unless the body may be compressed.
+         *
+         * @param chars expected length of the response
+         */
+        public void expect(int chars) {
+            if (encoding == null) {
+                text.ensureCapacity(chars);
+            }
+        }
+
+        /**
+         * Discards everything appended so far, to render another response instead. A compressor that was started is
+         * closed first, which releases its native zlib stream instead of leaving it to the finalizer.
+         */
+        public void reset() {
+            if (compressor != null) {
+                try {
+                    compressor.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            text.setLength(0);
+            textBytes = 0;
+            escapedBytes = 0;
+            base64 = null;
+            compressed = null;
+            compressor = null;
+        }
+
+        /**
+         * Tells whether the body is compressed, which it is once text reaching the minimum size has been appended.
+         *
+         * @return true when {@link #finish()} returns base64
+         */
+        public boolean isCompressed() {
+            return compressor != null;
+        }
+
+        public String getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * Returns the size of the text appended so far.
+         *
+         * @return UTF-8 bytes
+         */
+        public long getOriginalBytes() {
+            return textBytes;
+        }
+
+        /**
+         * Returns an upper bound on the size of the body in the gateway response.
+         *
+         * @return bytes of the body as a JSON string
+         */
+        public long getEncodedBytes() {
+            return encodedBytes(textBytes, escapedBytes);
+        }
+
+        /**
+         * Returns an upper bound on the size the body would have in the gateway response with more text appended.
+         *
+         * @param chars     text that may be appended
+         * @param utf8Bytes UTF-8 length of the text
+         * @return bytes of the body as a JSON string
+         */
+        public long getEncodedBytesWith(CharSequence chars, long utf8Bytes) {
+            return encodedBytes(textBytes + utf8Bytes,
+                                escapedBytes + utf8Bytes + jsonEscapeBytes(chars, 0, chars.length()));
+        }
+
+        /**
+         * Returns the compressed size, before base64 encoding. It is only complete after {@link #finish()}.
+         *
+         * @return bytes, 0 when the body is not compressed
+         */
+        public long getCompressedBytes() {
+            return compressor == null ? 0 : compressed.getCount();
+        }
+
+        /**
+         * Ends the body.
+         *
+         * @return the text, or the compressed text in base64 when the body is compressed
+         */
+        public String finish() {
+            if (compressor == null) {
+                return text.toString();
+            }
+            try {
+                compressor.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return base64.toString();
+        }
+
+        private void startCompressing() {
+            base64 = new StringBuilder(text.length() / 2);
+            compressed = new CountingOutputStream(Base64.getEncoder().wrap(latin1(base64)));
+            try {
+                compressor = new OutputStreamWriter(GZIP.equals(encoding)
+                        ? new GZIPOutputStream(compressed, CHUNK_SIZE)
+                        : new DeflaterOutputStream(compressed), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            write(text, 0, text.length());
+            text.setLength(0);
+            text.trimToSize();
+        }
+
+        private void write(CharSequence csq, int start, int end) {
+            try {
+                compressor.append(csq, start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Bounds the body as it is sent: escaped text when it is not compressed, and otherwise also the base64 of the
+         * largest output deflate gives for the text, since a body that may be compressed is not known to be until it
+         * reaches the minimum size.
+         */
+        private long encodedBytes(long utf8Bytes, long jsonBytes) {
+            if (encoding == null) {
+                return jsonBytes;
+            }
+            long deflated = utf8Bytes + (utf8Bytes >> 12) + (utf8Bytes >> 14) + (utf8Bytes >> 25)
+                    + DEFLATE_OVERHEAD_BYTES;
+            return Math.max(jsonBytes, (deflated + 2) / 3 * 4);
+        }
+
+        /**
+         * Counts the bytes JSON escaping adds to a range of characters: one for a quote, backslash or control
+         * character with a short escape, and five for other control characters, which are written as a unicode escape.
+         */
+        private static long jsonEscapeBytes(CharSequence chars, int start, int end) {
+            long bytes = 0;
+            for (int i = start; i < end; i++) {
+                bytes += jsonEscapeBytes(chars.charAt(i));
+            }
+            return bytes;
+        }
+
+        private static int jsonEscapeBytes(char c) {
+            if (c == '"' || c == '\\' || c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f') {
+                return 1;
+            }
+            return c < 0x20 ? 5 : 0;
+        }
+
+        /**
+         * Counts the UTF-8 length of a character, with each half of a surrogate pair counted as half of the four bytes
+         * of the pair.
+         */
+        private static int utf8Length(char c) {
+            if (c < 0x80) {
+                return 1;
+            }
+            return c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+
+        /**
+         * Appends bytes to a builder as the ISO-8859-1 characters they are, which for base64 are the characters of the
+         * encoding.
+         */
+        private static OutputStream latin1(StringBuilder chars) {
+            return new OutputStream() {
+                @Override
+                public void write(int b) {
+                    chars.append((char) (b & 0xFF));
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    for (int i = off; i < off + len; i++) {
+                        chars.append((char) (b[i] & 0xFF));
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Passes the gateway response the handler writes through to the Lambda output, setting {@value #IS_BASE64_ENCODED}
+     * on it when the body is compressed. Whether it is, is asked on the first write, after the handler has processed
+     * the request. An uncompressed response passes through as it is written; a compressed one, which is a fraction of
+     * the size, is held until the stream is closed and then read as a JSON object, flagged and written out.
+     */
+    public static class GatewayResponseStream extends FilterOutputStream {
+
+        private final BooleanSupplier base64Body;
+        private boolean decided;
+        private ByteArrayOutputStream response;
+        private boolean closed;
+
+        public GatewayResponseStream(OutputStream out, BooleanSupplier base64Body) {
+            super(out);
+            this.base64Body = base64Body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            decide();
+            if (response == null) {
+                out.write(b);
+            } else {
+                response.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            decide();
+            if (response == null) {
+                out.write(b, off, len);
+            } else {
+                response.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (response != null) {
+                ObjectMapper mapper = RestApiConfig.restServiceObjectMapper;
+                ObjectNode flagged = (ObjectNode) mapper.readTree(response.toByteArray());
+                flagged.put(IS_BASE64_ENCODED, true);
+                out.write(mapper.writeValueAsBytes(flagged));
+                response = null;
+            }
+            super.close();
+        }
+
+        private void decide() {
+            if (!decided) {
+                decided = true;
+                if (base64Body.getAsBoolean()) {
+                    response = new ByteArrayOutputStream();
+                }
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class ResumptionToken {
     public String until = "";
     public String metadataPrefix = "";
     public String startPosition = "0";
+    public String cursor = "";
 
     public static final String TOK_SEP = "~";
 
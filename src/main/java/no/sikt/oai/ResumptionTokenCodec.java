@@ -0,0 +1,255 @@
+package no.sikt.oai;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import no.sikt.oai.exception.OaiException;
+import nva.commons.core.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes and verifies the resumption tokens handed out to harvesters. A token is a version byte, the issue time in
+ * epoch seconds and the start position as unsigned varints, the command, setSpec, from, until and metadataPrefix as
+ * length-prefixed UTF-8, the cursor of the last record when the harvest pages by cursor, and a truncated HMAC-SHA256
+ * of all of that, encoded as unpadded base64url. The key is the {@code RESUMPTION_TOKEN_SECRET}, which must be set and
+ * is known only to the server, so a token that verifies was written by the server and needs no further validation
+ * against upstream.
+ *
+ * <p>Tokens in the older {@code ~}-separated format are not signed, so anyone can write one. They are only accepted
+ * until {@code RESUMPTION_TOKEN_LEGACY_UNTIL}, an instant that gives harvests started before the signed format was
+ * deployed time to finish, and must be validated as before. Without it they are rejected. The metadataPrefix of every
+ * token is checked against the supported formats, since a legacy token can name any.
+ */
+public class ResumptionTokenCodec {
+
+    public static final byte VERSION = 1;
+    public static final int MAC_LENGTH = 12;
+    public static final long DEFAULT_TTL_SECONDS = 24 * 60 * 60;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int MAX_VARINT_BYTES = 10;
+    private static final Logger LOG = LoggerFactory.getLogger(ResumptionTokenCodec.class);
+    private static final String MISSING_SECRET = "%s must be set to sign resumption tokens";
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final Instant legacyUntil;
+    private final Clock clock;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    /**
+     * Creates a codec keyed by the secret in the environment.
+     *
+     * @param environment environment to read the secret, token lifetime and end of the legacy format from
+     * @throws IllegalStateException if {@code RESUMPTION_TOKEN_SECRET} is not set
+     */
+    public ResumptionTokenCodec(Environment environment) {
+        this(readSecret(environment),
+             Duration.ofSeconds(environment.readEnvOpt(OaiConstants.RESUMPTION_TOKEN_TTL_SECONDS_ENV)
+                                    .map(Long::parseLong)
+                                    .orElse(DEFAULT_TTL_SECONDS)),
+             environment.readEnvOpt(OaiConstants.RESUMPTION_TOKEN_LEGACY_UNTIL_ENV)
+                 .filter(until -> !until.isBlank())
+                 .map(Instant::parse)
+                 .orElse(Instant.MIN),
+             Clock.systemUTC());
+    }
+
+    public ResumptionTokenCodec(byte[] secret, Duration ttl, Clock clock) {
+        this(secret, ttl, Instant.MIN, clock);
+    }
+
+    /**
+     * Creates a codec.
+     *
+     * @param legacyUntil instant from which tokens in the older format are rejected
+     */
+    public ResumptionTokenCodec(byte[] secret, Duration ttl, Instant legacyUntil, Clock clock) {
+        this.key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        this.ttl = ttl;
+        this.legacyUntil = legacyUntil;
+        this.clock = clock;
+    }
+
+    /**
+     * Tells whether a token is in the older unsigned format.
+     *
+     * @param token token as sent by the harvester
+     * @return true when the token must be validated against upstream
+     */
+    public static boolean isLegacy(String token) {
+        return token.contains(ResumptionToken.TOK_SEP);
+    }
+
+    /**
+     * Encodes and signs a token.
+     *
+     * @param token token to hand out
+     * @return base64url token
+     */
+    public String encode(ResumptionToken token) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(VERSION);
+        writeVarLong(out, Math.floorDiv(token.timestamp, 1000L));
+        writeVarLong(out, Long.parseLong(token.startPosition));
+        writeString(out, token.command);
+        writeString(out, token.setSpec);
+        writeString(out, token.from);
+        writeString(out, token.until);
+        writeString(out, token.metadataPrefix);
+        if (!token.cursor.isEmpty()) {
+            writeString(out, token.cursor);
+        }
+        byte[] payload = out.toByteArray();
+        out.write(mac(payload, payload.length), 0, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Decodes a token, checking its signature, expiry and metadataPrefix. Tokens in the older format have no signature
+     * or issue time, and are only accepted until the end of the legacy format.
+     *
+     * @param token token as sent by the harvester
+     * @return the decoded token
+     * @throws OaiException badResumptionToken if the token is malformed, tampered with or expired
+     */
+    public ResumptionToken decode(String token) throws OaiException {
+        ResumptionToken decoded = isLegacy(token) ? decodeLegacy(token) : decodeSigned(token);
+        if (!MetadataFormat.isValid(decoded.metadataPrefix)) {
+            throw invalid();
+        }
+        return decoded;
+    }
+
+    private ResumptionToken decodeLegacy(String token) throws OaiException {
+        if (!clock.instant().isBefore(legacyUntil)) {
+            throw new OaiException(OaiConstants.BAD_RESUMPTION_TOKEN, OaiConstants.EXPIRED_RESUMPTION_TOKEN);
+        }
+        ResumptionToken legacy = new ResumptionToken(token);
+        try {
+            if (Integer.parseInt(legacy.startPosition) >= 0) {
+                return legacy;
+            }
+        } catch (NumberFormatException e) {
+            LOG.debug("Illegal start position in resumption token {}", token, e);
+        }
+        throw invalid();
+    }
+
+    private ResumptionToken decodeSigned(String token) throws OaiException {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw invalid();
+        }
+        int payloadLength = bytes.length - MAC_LENGTH;
+        if (payloadLength < 1 || bytes[0] != VERSION || !hasValidMac(bytes, payloadLength)) {
+            throw invalid();
+        }
+        ByteBuffer payload = ByteBuffer.wrap(bytes, 1, payloadLength - 1);
+        ResumptionToken decoded;
+        try {
+            long issuedAt = readVarLong(payload);
+            long startPosition = readVarLong(payload);
+            decoded = new ResumptionToken(readString(payload), issuedAt * 1000L, readString(payload),
+                                          readString(payload), readString(payload), readString(payload),
+                                          Long.toString(startPosition));
+            if (payload.hasRemaining()) {
+                decoded.cursor = readString(payload);
+            }
+            if (payload.hasRemaining() || startPosition < 0 || startPosition > Integer.MAX_VALUE) {
+                throw invalid();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw invalid();
+        }
+        if (!clock.instant().isBefore(Instant.ofEpochMilli(decoded.timestamp).plus(ttl))) {
+            throw new OaiException(OaiConstants.BAD_RESUMPTION_TOKEN, OaiConstants.EXPIRED_RESUMPTION_TOKEN);
+        }
+        return decoded;
+    }
+
+    private boolean hasValidMac(byte[] bytes, int payloadLength) {
+        byte[] expected = mac(bytes, payloadLength);
+        byte[] actual = new byte[MAC_LENGTH];
+        System.arraycopy(bytes, payloadLength, actual, 0, MAC_LENGTH);
+        byte[] truncated = new byte[MAC_LENGTH];
+        System.arraycopy(expected, 0, truncated, 0, MAC_LENGTH);
+        return MessageDigest.isEqual(truncated, actual);
+    }
+
+    private byte[] mac(byte[] bytes, int length) {
+        Mac mac = macs.get();
+        mac.update(bytes, 0, length);
+        return mac.doFinal();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static OaiException invalid() {
+        return new OaiException(OaiConstants.BAD_RESUMPTION_TOKEN, OaiConstants.INVALID_RESUMPTION_TOKEN);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        long length = readVarLong(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.position(), (int) length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + (int) length);
+        return value;
+    }
+
+    private static byte[] readSecret(Environment environment) {
+        return environment.readEnvOpt(OaiConstants.RESUMPTION_TOKEN_SECRET_ENV)
+                   .filter(secret -> !secret.isBlank())
+                   .orElseThrow(() -> new IllegalStateException(
+                       String.format(MISSING_SECRET, OaiConstants.RESUMPTION_TOKEN_SECRET_ENV)))
+                   .getBytes(StandardCharsets.UTF_8);
+    }
+}
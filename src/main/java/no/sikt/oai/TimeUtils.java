@@ -1,77 +1,274 @@
 package no.sikt.oai;
 
-import nva.commons.core.JacocoGenerated;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
 import java.util.Date;
 import java.util.Locale;
+import nva.commons.core.JacocoGenerated;
 
+/**
+ * Date conversions for the two layouts used by OAI-PMH, {@link #FORMAT_ZULU_SHORT} and {@link #FORMAT_ZULU_LONG}.
+ * All dates are UTC. Both layouts are parsed and written by hand, without creating formatter or calendar objects, and
+ * the {@code append} methods write straight into the response buffer. The immutable {@link DateTimeFormatter}s are
+ * only used for years outside 0000-9999.
+ */
+@SuppressWarnings({"PMD.AvoidLiteralsInIfCondition", "PMD.TooManyMethods"})
 public class TimeUtils {
 
-    private static final Logger LOG = LoggerFactory.getLogger(TimeUtils.class);
     public static final int STANDARD_DATE_LENGTH = 10;
+    public static final int ZULU_LONG_LENGTH = 20;
     public static final String FORMAT_ZULU_LONG = "yyyy-MM-dd'T'HH:mm:ss'Z'";
     public static final String FORMAT_ZULU_SHORT = "yyyy-MM-dd";
+    public static final DateTimeFormatter ZULU_LONG_FORMATTER =
+        DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT)
+            .withResolverStyle(ResolverStyle.STRICT)
+            .withZone(ZoneOffset.UTC);
+    public static final DateTimeFormatter ZULU_SHORT_FORMATTER =
+        DateTimeFormatter.ofPattern("uuuu-MM-dd", Locale.ROOT)
+            .withResolverStyle(ResolverStyle.STRICT)
+            .withZone(ZoneOffset.UTC);
+    public static final String UNSUPPORTED_FORMAT = "Unsupported date format: ";
+
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final int MAX_FAST_YEAR = 9999;
+    private static final int DAYS_PER_ERA = 146_097;
+    private static final int DAYS_FROM_YEAR_ZERO_TO_EPOCH = 719_468;
 
     @JacocoGenerated
     public TimeUtils() {
     }
 
+    /**
+     * Parses the start of a string in one of the two supported layouts. Trailing characters are ignored, so
+     * {@code "2021-05-05T09:15:40.798Z"} parsed with {@link #FORMAT_ZULU_SHORT} gives midnight of that day.
+     *
+     * @param stringDate date to parse
+     * @param format     {@link #FORMAT_ZULU_SHORT} or {@link #FORMAT_ZULU_LONG}
+     * @return the date, or null when the string does not start with a valid date in the layout
+     */
     public static Date string2Date(String stringDate, String format) {
-        SimpleDateFormat sf = new SimpleDateFormat(format, Locale.getDefault());
-        sf.setLenient(false);
-        Date myDate = null;
+        long epochMilli = string2EpochMilli(stringDate, format);
+        return epochMilli == INVALID ? null : new Date(epochMilli);
+    }
 
-        try {
-            myDate = sf.parse(stringDate);
-            return myDate;
-        } catch (ParseException var5) {
-            LOG.debug("", var5);
-            return myDate;
+    /**
+     * Parses like {@link #string2Date(String, String)} without creating a {@link Date}.
+     *
+     * @param stringDate date to parse
+     * @param format     {@link #FORMAT_ZULU_SHORT} or {@link #FORMAT_ZULU_LONG}
+     * @return epoch milliseconds, or {@link Long#MIN_VALUE} when the string does not start with a valid date
+     */
+    public static long string2EpochMilli(String stringDate, String format) {
+        boolean withTime = isLongFormat(format);
+        if (stringDate == null || stringDate.length() < (withTime ? ZULU_LONG_LENGTH : STANDARD_DATE_LENGTH)) {
+            return INVALID;
         }
+        return parseZulu(stringDate, withTime);
     }
 
     public static String date2String(Date date, String format) {
         if (date != null) {
-            SimpleDateFormat sf = new SimpleDateFormat(format, Locale.getDefault());
-            return sf.format(date);
+            StringBuilder buffer = new StringBuilder(ZULU_LONG_LENGTH);
+            return isLongFormat(format)
+                       ? appendZuluLong(buffer, date.getTime()).toString()
+                       : appendZuluShort(buffer, date.getTime()).toString();
         } else {
             return "";
         }
     }
 
     public static String utcDateTime() {
-        Date myDate = new Date();
-        SimpleDateFormat sf = new SimpleDateFormat(FORMAT_ZULU_LONG, Locale.getDefault());
-        return sf.format(myDate);
+        return appendZuluLong(new StringBuilder(ZULU_LONG_LENGTH), System.currentTimeMillis()).toString();
     }
 
     public static String getResponseTime() {
         return utcDateTime();
     }
 
+    /**
+     * Checks that a string is a complete date in one of the two supported layouts, as required for the from and until
+     * arguments.
+     *
+     * @param s string to check
+     * @return true when the string is a valid UTC date or datetime
+     */
     public static boolean isUTCdate(String s) {
+        if (s.length() == STANDARD_DATE_LENGTH) {
+            return parseZulu(s, false) != INVALID;
+        }
+        return s.length() == ZULU_LONG_LENGTH && parseZulu(s, true) != INVALID;
+    }
+
+    /**
+     * Appends an instant as {@code yyyy-MM-dd'T'HH:mm:ss'Z'} in UTC.
+     *
+     * @param buffer     target
+     * @param epochMilli instant in epoch milliseconds
+     * @return the buffer
+     */
+    public static StringBuilder appendZuluLong(StringBuilder buffer, long epochMilli) {
         try {
-            SimpleDateFormat sf;
-            if (STANDARD_DATE_LENGTH == s.length()) {
-                sf = new SimpleDateFormat(FORMAT_ZULU_SHORT, Locale.getDefault());
-                sf.setLenient(false);
-                sf.parse(s);
-            } else {
-                sf = new SimpleDateFormat(FORMAT_ZULU_LONG, Locale.getDefault());
-                sf.setLenient(false);
-                sf.parse(s);
-            }
+            appendZulu(buffer, epochMilli, true);
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    /**
+     * Appends the UTC day of an instant as {@code yyyy-MM-dd}.
+     *
+     * @param buffer     target
+     * @param epochMilli instant in epoch milliseconds
+     * @return the buffer
+     */
+    public static StringBuilder appendZuluShort(StringBuilder buffer, long epochMilli) {
+        try {
+            appendZulu(buffer, epochMilli, false);
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes an instant as {@code yyyy-MM-dd'T'HH:mm:ss'Z'} in UTC.
+     *
+     * @param out        target
+     * @param epochMilli instant in epoch milliseconds
+     * @throws IOException if the target fails
+     */
+    public static void appendZuluLong(Appendable out, long epochMilli) throws IOException {
+        appendZulu(out, epochMilli, true);
+    }
+
+    private static boolean isLongFormat(String format) {
+        if (FORMAT_ZULU_LONG.equals(format)) {
             return true;
-        } catch (ParseException var2) {
-            LOG.debug("", var2);
+        }
+        if (FORMAT_ZULU_SHORT.equals(format)) {
             return false;
         }
+        throw new IllegalArgumentException(UNSUPPORTED_FORMAT + format);
     }
 
-}
+    private static void appendZulu(Appendable out, long epochMilli, boolean withTime) throws IOException {
+        long epochSecond = Math.floorDiv(epochMilli, MILLIS_PER_SECOND);
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        // civil_from_days, see http://howardhinnant.github.io/date_algorithms.html
+        long daysFromYearZero = epochDay + DAYS_FROM_YEAR_ZERO_TO_EPOCH;
+        long era = Math.floorDiv(daysFromYearZero, DAYS_PER_ERA);
+        int dayOfEra = (int) (daysFromYearZero - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
 
+        if (year < 0 || year > MAX_FAST_YEAR) {
+            Instant instant = Instant.ofEpochSecond(epochSecond);
+            out.append(withTime ? ZULU_LONG_FORMATTER.format(instant) : ZULU_SHORT_FORMATTER.format(instant));
+            return;
+        }
+        appendDigits(out, (int) year, 4);
+        out.append('-');
+        appendDigits(out, month, 2);
+        out.append('-');
+        appendDigits(out, day, 2);
+        if (withTime) {
+            out.append('T');
+            appendDigits(out, secondOfDay / 3600, 2);
+            out.append(':');
+            appendDigits(out, secondOfDay / 60 % 60, 2);
+            out.append(':');
+            appendDigits(out, secondOfDay % 60, 2);
+            out.append('Z');
+        }
+    }
+
+    private static void appendDigits(Appendable out, int value, int width) throws IOException {
+        int divisor = 1;
+        for (int i = 1; i < width; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private static long parseZulu(String s, boolean withTime) {
+        if (s.charAt(4) != '-' || s.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = parseDigits(s, 0, 4);
+        int month = parseDigits(s, 5, 2);
+        int day = parseDigits(s, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        long epochDay = epochDay(year, month, day);
+        int secondOfDay = 0;
+        if (withTime) {
+            if (s.charAt(10) != 'T' || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(19) != 'Z') {
+                return INVALID;
+            }
+            int hour = parseDigits(s, 11, 2);
+            int minute = parseDigits(s, 14, 2);
+            int second = parseDigits(s, 17, 2);
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return INVALID;
+            }
+            secondOfDay = hour * 3600 + minute * 60 + second;
+        }
+        return (epochDay * SECONDS_PER_DAY + secondOfDay) * MILLIS_PER_SECOND;
+    }
+
+    private static int parseDigits(String s, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    // days_from_civil, the inverse of the conversion in appendZulu
+    private static long epochDay(int year, int month, int day) {
+        int shiftedYear = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(shiftedYear, 400);
+        int yearOfEra = shiftedYear - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * DAYS_PER_ERA + dayOfEra - DAYS_FROM_YEAR_ZERO_TO_EPOCH;
+    }
+}
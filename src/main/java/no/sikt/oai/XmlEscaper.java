@@ -0,0 +1,103 @@
+package no.sikt.oai;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import nva.commons.core.JacocoGenerated;
+
+/**
+ * Escapes text for XML 1.0 content and attribute values while appending it. ASCII characters are looked up in a
+ * table built once, and runs of characters that need no escaping are appended as ranges of the original text, so a
+ * clean value is appended in one call without any copy. The five markup characters are replaced by their entity
+ * references. Characters XML 1.0 does not allow, which are C0 controls other than tab, line feed and carriage return,
+ * unpaired surrogates, U+FFFE and U+FFFF, are left out.
+ */
+@SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+public class XmlEscaper {
+
+    private static final int ASCII = 128;
+    private static final String OMITTED = "";
+    private static final String[] ESCAPES = new String[ASCII];
+
+    static {
+        for (char c = 0; c < ' '; c++) {
+            if (c != '\t' && c != '\n' && c != '\r') {
+                ESCAPES[c] = OMITTED;
+            }
+        }
+        ESCAPES['&'] = "&amp;";
+        ESCAPES['<'] = "&lt;";
+        ESCAPES['>'] = "&gt;";
+        ESCAPES['"'] = "&quot;";
+        ESCAPES['\''] = "&apos;";
+    }
+
+    @JacocoGenerated
+    public XmlEscaper() {
+    }
+
+    /**
+     * Appends text escaped for XML. A null text is appended as {@code null}, as {@link Appendable#append} does.
+     *
+     * @param out  target
+     * @param text text to escape
+     * @throws IOException if the target fails
+     */
+    public static void appendEscaped(Appendable out, CharSequence text) throws IOException {
+        if (text == null) {
+            out.append(text);
+            return;
+        }
+        int length = text.length();
+        int run = 0;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            String escape = c < ASCII ? ESCAPES[c] : unicodeEscape(text, i, c);
+            if (escape == null) {
+                i += Character.isHighSurrogate(c) ? 2 : 1;
+                continue;
+            }
+            if (i > run) {
+                out.append(text, run, i);
+            }
+            out.append(escape);
+            i++;
+            run = i;
+        }
+        if (run == 0) {
+            out.append(text);
+        } else if (run < length) {
+            out.append(text, run, length);
+        }
+    }
+
+    /**
+     * Appends text escaped for XML to a {@link StringBuilder}, which never fails.
+     *
+     * @param out  target
+     * @param text text to escape
+     * @return the target, for chaining
+     */
+    public static StringBuilder appendEscaped(StringBuilder out, CharSequence text) {
+        try {
+            appendEscaped((Appendable) out, text);
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Looks at a character outside ASCII. A high surrogate is allowed only with a low surrogate after it, and a low
+     * surrogate only after a high one.
+     */
+    private static String unicodeEscape(CharSequence text, int index, char c) {
+        if (Character.isHighSurrogate(c)) {
+            return index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1)) ? null : OMITTED;
+        }
+        if (Character.isLowSurrogate(c)) {
+            return index > 0 && Character.isHighSurrogate(text.charAt(index - 1)) ? null : OMITTED;
+        }
+        return c == '\uFFFE' || c == '\uFFFF' ? OMITTED : null;
+    }
+}
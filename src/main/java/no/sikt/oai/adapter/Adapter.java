@@ -1,15 +1,26 @@
 package no.sikt.oai.adapter;
 
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+
 import no.sikt.oai.data.Record;
 import no.sikt.oai.data.RecordsList;
 import no.sikt.oai.exception.InternalOaiException;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import no.sikt.oai.cache.RecordContentCache;
 import no.sikt.oai.exception.OaiException;
 
 public interface Adapter {
 
     String ALL_SET_NAME = "all";
+    String PRIMING_FOLDER = "priming";
 
     boolean isValidIdentifier(String identifier);
 
@@ -31,19 +42,187 @@ public interface Adapter {
 
     String getIdentifierPrefix();
 
+    /**
+     * Returns a small records list response in the upstream format, shipped with the adapter. Parsing and rendering
+     * it when a container starts moves class loading and Jackson introspection out of the first harvester request.
+     *
+     * @return sample search response
+     */
+    String getSampleRecordsList();
+
+    /**
+     * Returns the adapter's cache of rendered metadata, so the handler can report its hit rate.
+     *
+     * @return the cache, or empty for adapters that do not render metadata through one
+     */
+    default Optional<RecordContentCache> getContentCache() {
+        return Optional.empty();
+    }
+
+    /**
+     * Tells whether a response fetched ahead of time can still be parsed. A response that refers to state the adapter
+     * has since let go of, like a record store generation, must be fetched again.
+     *
+     * @param json response fetched earlier
+     * @return true unless the response has gone stale
+     */
+    default boolean canParse(String json) {
+        return true;
+    }
+
     List<OaiSet> parseSetsResponse(String json) throws InternalOaiException;
 
     Record parseRecordResponse(String json, String metadataPrefix, String setSpec) throws InternalOaiException;
 
+    /**
+     * Parses a single record response, rendering its metadata only when the harvester does not already have the
+     * record, so a conditional GetRecord is answered without rendering. Adapters whose metadata is rendered from the
+     * upstream document override this; for the others the metadata costs nothing extra to read.
+     *
+     * @param modified tells from the last modification of the record, see {@link Record#getModifiedDate()}, null
+     *                 when it has none, whether the metadata is needed
+     * @return the record, without metadata when it is not needed
+     */
+    default Record parseRecordResponse(String json, String metadataPrefix, String setSpec, Predicate<Date> modified)
+        throws InternalOaiException {
+        Record record = parseRecordResponse(json, metadataPrefix, setSpec);
+        modified.test(record.getModifiedDate());
+        return record;
+    }
+
     RecordsList parseRecordsListResponse(String verb, String json, String metadataPrefix, String setSpec)
         throws InternalOaiException;
 
-    String getSetsList() throws OaiException, InternalOaiException;
+    /**
+     * Parses a records list response and hands each record to the consumer as soon as it is built, so a caller can
+     * render the page without holding all of it. Adapters that can parse incrementally override this.
+     *
+     * @param verb           ListRecords or ListIdentifiers
+     * @param json           upstream response
+     * @param metadataPrefix metadata format to render
+     * @param setSpec        requested set
+     * @param consumer       receives the records in response order
+     * @return the total number of records matching the query
+     * @throws InternalOaiException if the response cannot be parsed
+     */
+    default long parseRecordsListResponse(String verb, String json, String metadataPrefix, String setSpec,
+                                          Consumer<Record> consumer) throws InternalOaiException {
+        RecordsList records = parseRecordsListResponse(verb, json, metadataPrefix, setSpec);
+        records.forEach(consumer);
+        return records.getNumFound();
+    }
 
-    String getRecord(String identifier) throws OaiException, InternalOaiException;
+    /**
+     * Fetches the sets without blocking.
+     *
+     * @return the upstream response, completing exceptionally with an {@link OaiException} or
+     *     {@link InternalOaiException} as {@link #getSetsList()} would throw
+     */
+    CompletableFuture<String> getSetsListAsync();
+
+    /**
+     * Fetches a record without blocking.
+     *
+     * @param identifier record identifier
+     * @return the upstream response, completing exceptionally as {@link #getRecord(String)} would throw
+     */
+    CompletableFuture<String> getRecordAsync(String identifier);
+
+    /**
+     * Fetches a page of records without blocking, see {@link #getRecordsList(String, String, String, int, int)}.
+     *
+     * @param from          lower bound for the modified date, may be empty
+     * @param until         upper bound for the modified date, may be empty
+     * @param setSpec       set to search in, may be empty
+     * @param startPosition offset of the first record
+     * @param pageSize      number of records to fetch
+     * @return the upstream response
+     */
+    CompletableFuture<String> getRecordsListAsync(String from, String until, String setSpec, int startPosition,
+                                                  int pageSize);
+
+    /**
+     * Fetches a page of records after a cursor without blocking, see
+     * {@link #getRecordsListAfter(String, String, String, String, int)}.
+     *
+     * @param from     lower bound for the modified date, may be empty
+     * @param until    upper bound for the modified date, may be empty
+     * @param setSpec  set to search in, may be empty
+     * @param cursor   cursor of the last record on the previous page, empty for the first page
+     * @param pageSize number of records to fetch
+     * @return the upstream response
+     */
+    CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec, String cursor,
+                                                       int pageSize);
+
+    default String getSetsList() throws OaiException, InternalOaiException {
+        return join(getSetsListAsync());
+    }
 
-    String getRecordsList(String from, String until, String setSpec, int startPosition)
-            throws OaiException, InternalOaiException;
+    default String getRecord(String identifier) throws OaiException, InternalOaiException {
+        return join(getRecordAsync(identifier));
+    }
+
+    /**
+     * Fetches a page of records from the upstream search.
+     *
+     * @param from          lower bound for the modified date, may be empty
+     * @param until         upper bound for the modified date, may be empty
+     * @param setSpec       set to search in, may be empty
+     * @param startPosition offset of the first record
+     * @param pageSize      number of records to fetch
+     * @return the upstream response
+     * @throws OaiException         if the search does not succeed
+     * @throws InternalOaiException if the upstream cannot be reached
+     */
+    default String getRecordsList(String from, String until, String setSpec, int startPosition, int pageSize)
+            throws OaiException, InternalOaiException {
+        return join(getRecordsListAsync(from, until, setSpec, startPosition, pageSize));
+    }
+
+    /**
+     * Fetches a page of records sorted by modified date and identifier, starting strictly after a cursor. Unlike an
+     * offset, the cursor lets the upstream search seek straight to the page, so every page of a harvest costs the
+     * same. The total in the response is still the number of records matching the whole query.
+     *
+     * @param from     lower bound for the modified date, may be empty
+     * @param until    upper bound for the modified date, may be empty
+     * @param setSpec  set to search in, may be empty
+     * @param cursor   {@link Record#getCursor()} of the last record on the previous page, empty for the first page
+     * @param pageSize number of records to fetch
+     * @return the upstream response
+     * @throws OaiException         if the search does not succeed
+     * @throws InternalOaiException if the upstream cannot be reached
+     */
+    default String getRecordsListAfter(String from, String until, String setSpec, String cursor, int pageSize)
+            throws OaiException, InternalOaiException {
+        return join(getRecordsListAfterAsync(from, until, setSpec, cursor, pageSize));
+    }
+
+    /**
+     * Waits for an upstream call and rethrows the exception it completed with.
+     *
+     * @param future upstream call
+     * @return the upstream response
+     * @throws OaiException         if the call completed with one
+     * @throws InternalOaiException if the call completed with one, failed otherwise or was cancelled
+     */
+    static String join(CompletableFuture<String> future) throws OaiException, InternalOaiException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof OaiException) {
+                throw (OaiException) cause;
+            }
+            if (cause instanceof InternalOaiException) {
+                throw (InternalOaiException) cause;
+            }
+            throw new InternalOaiException(cause instanceof Exception ? (Exception) cause : e, HTTP_UNAVAILABLE);
+        } catch (CancellationException e) {
+            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
+        }
+    }
 
     class OaiSet {
 
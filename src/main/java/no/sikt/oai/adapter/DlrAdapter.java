@@ -13,34 +13,49 @@ import static no.sikt.oai.OaiConstants.RECORD_URI_ENV;
 import static no.sikt.oai.OaiConstants.SETS_URI_ENV;
 import static no.sikt.oai.OaiConstants.UNKNOWN_IDENTIFIER;
 import static no.sikt.oai.OaiProviderHandler.EMPTY_STRING;
-import static org.apache.http.HttpHeaders.CONTENT_TYPE;
-import static org.apache.http.entity.ContentType.APPLICATION_JSON;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpRequest.Builder;
 import java.net.http.HttpResponse;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import no.sikt.oai.MetadataFormat;
 import no.sikt.oai.OaiConstants;
 import no.sikt.oai.TimeUtils;
+import no.sikt.oai.Verb;
+import no.sikt.oai.XmlEscaper;
+import no.sikt.oai.cache.RecordContentCache;
 import no.sikt.oai.data.Record;
 import no.sikt.oai.data.RecordsList;
 import no.sikt.oai.exception.InternalOaiException;
 import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.transport.UpstreamTransport;
 import nva.commons.core.Environment;
 import nva.commons.core.JacocoGenerated;
 import nva.commons.core.StringUtils;
+import nva.commons.core.ioutils.IoUtils;
 import nva.commons.core.paths.UriWrapper;
-import org.apache.commons.text.StringEscapeUtils;
 import org.apache.http.HttpStatus;
 
 @SuppressWarnings({"PMD.AvoidDuplicateLiterals", "PMD.GodClass"})
@@ -48,27 +63,30 @@ public class DlrAdapter implements Adapter {
 
     public static final String STORAGE_ID_KEY = "dlr_storage_id";
     public static final String NULL_STRING = "null";
+    public static final String TIME_UPDATED_KEY = "dlr_time_updated";
+    public static final String RESOURCES_FIELD = "resourcesAsJson";
+    public static final String NUM_FOUND_FIELD = "numFound";
+    public static final String UNEXPECTED_SEARCH_RESPONSE = "Unexpected search response from data source";
+    public static final String CURSOR_SORT = "dlr_time_updated,dlr_identifier";
+    public static final String CURSOR_SEPARATOR = ",";
     private final transient ObjectMapper mapper = new ObjectMapper();
     private final transient String recordsUri;
     private final transient String recordUri;
     private final transient String setsUri;
-    private final transient HttpClient client;
+    private final transient UpstreamTransport transport;
+    private final transient RecordContentCache contentCache;
 
-    @JacocoGenerated
-    public DlrAdapter(Environment environment) {
+    public DlrAdapter(Environment environment, UpstreamTransport transport) {
         setsUri = environment.readEnv(SETS_URI_ENV);
         recordUri = environment.readEnv(RECORD_URI_ENV);
         recordsUri = environment.readEnv(RECORDS_URI_ENV);
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        this.client = HttpClient.newBuilder().build();
+        this.transport = transport;
+        this.contentCache = new RecordContentCache(environment);
     }
 
     public DlrAdapter(Environment environment, HttpClient client) {
-        setsUri = environment.readEnv(SETS_URI_ENV);
-        recordUri = environment.readEnv(RECORD_URI_ENV);
-        recordsUri = environment.readEnv(RECORDS_URI_ENV);
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        this.client = client;
+        this(environment, new UpstreamTransport(client, UpstreamTransport.DEFAULT_REQUEST_TIMEOUT));
     }
 
     @Override
@@ -121,6 +139,16 @@ public class DlrAdapter implements Adapter {
         return "oai:dlr.unit.no:";
     }
 
+    @Override
+    public String getSampleRecordsList() {
+        return IoUtils.stringFromResources(Path.of(PRIMING_FOLDER, "dlr-resources.json"));
+    }
+
+    @Override
+    public Optional<RecordContentCache> getContentCache() {
+        return Optional.of(contentCache);
+    }
+
     @Override
     public List<OaiSet> parseSetsResponse(String json) throws InternalOaiException {
         mapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
@@ -134,8 +162,22 @@ public class DlrAdapter implements Adapter {
 
     @Override
     public Record parseRecordResponse(String json, String metadataPrefix, String setSpec) throws InternalOaiException {
+        return createRecordFromResource(readResource(json), metadataPrefix, true);
+    }
+
+    @Override
+    public Record parseRecordResponse(String json, String metadataPrefix, String setSpec, Predicate<Date> modified)
+            throws InternalOaiException {
+        Resource resource = readResource(json);
+        Record header = createRecordFromResource(resource, metadataPrefix, false);
+        return modified.test(header.getModifiedDate())
+                ? createRecordFromResource(resource, metadataPrefix, true)
+                : header;
+    }
+
+    private Resource readResource(String json) throws InternalOaiException {
         try {
-            return createRecordFromResource(mapper.readValue(json, Resource.class), metadataPrefix);
+            return mapper.readValue(json, Resource.class);
         } catch (JsonProcessingException e) {
             throw new InternalOaiException(e, HTTP_UNAVAILABLE);
         }
@@ -146,9 +188,12 @@ public class DlrAdapter implements Adapter {
             throws InternalOaiException {
         try {
             ResourceSearchResponse resourceSearchResponse = mapper.readValue(json, ResourceSearchResponse.class);
-            RecordsList records = new RecordsList(resourceSearchResponse.numFound);
+            RecordsList records = new RecordsList(resourceSearchResponse.numFound,
+                                                  resourceSearchResponse.resourcesAsJson.size());
+            boolean withMetadata = !Verb.ListIdentifiers.name().equals(verb);
             for (String resourceString : resourceSearchResponse.resourcesAsJson) {
-                records.add(createRecordFromResource(mapper.readValue(resourceString, Resource.class), metadataPrefix));
+                records.add(createRecordFromResource(mapper.readValue(resourceString, Resource.class), metadataPrefix,
+                                                     withMetadata));
             }
             return records;
         } catch (JsonProcessingException e) {
@@ -156,59 +201,95 @@ public class DlrAdapter implements Adapter {
         }
     }
 
+    /**
+     * Streams the resources of a search response. Each entry in resourcesAsJson is a JSON document embedded as a
+     * string; it is bound straight from the outer parser's decoded character buffer instead of being copied to a
+     * String and parsed a second time.
+     */
     @Override
-    public String getSetsList() throws OaiException, InternalOaiException {
-        HttpResponse<String> response;
-        try {
-            Builder builder = HttpRequest.newBuilder()
-                .uri(getSetsUri())
-                .header(CONTENT_TYPE, APPLICATION_JSON.getMimeType())
-                .GET();
-            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
-        } catch (Exception e) {
+    public long parseRecordsListResponse(String verb, String json, String metadataPrefix, String setSpec,
+                                         Consumer<Record> consumer) throws InternalOaiException {
+        boolean withMetadata = !Verb.ListIdentifiers.name().equals(verb);
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, UNEXPECTED_SEARCH_RESPONSE);
+            }
+            long numFound = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (RESOURCES_FIELD.equals(fieldName) && value == JsonToken.START_ARRAY) {
+                    for (JsonToken element = parser.nextToken(); element != JsonToken.END_ARRAY;
+                         element = parser.nextToken()) {
+                        Resource resource = readEmbeddedResource(parser, element);
+                        consumer.accept(createRecordFromResource(resource, metadataPrefix, withMetadata));
+                    }
+                } else if (NUM_FOUND_FIELD.equals(fieldName) && value.isNumeric()) {
+                    numFound = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return numFound;
+        } catch (IOException e) {
             throw new InternalOaiException(e, HTTP_UNAVAILABLE);
         }
-        if (!responseIsSuccessful(response)) {
-            throw new OaiException(NO_SET_HIERARCHY, NO_SETS_FOUND);
-        }
-        return response.body();
     }
 
-    @Override
-    public String getRecord(String identifier) throws OaiException, InternalOaiException {
-        HttpResponse<String> response;
-        try {
-            Builder builder = HttpRequest.newBuilder()
-                    .uri(getRecordUri(identifier))
-                    .header(CONTENT_TYPE, APPLICATION_JSON.getMimeType())
-                    .GET();
-            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
-        } catch (Exception e) {
-            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
+    private Resource readEmbeddedResource(JsonParser parser, JsonToken element) throws IOException {
+        if (element == JsonToken.VALUE_STRING) {
+            try (JsonParser embedded = mapper.getFactory().createParser(parser.getTextCharacters(),
+                                                                        parser.getTextOffset(),
+                                                                        parser.getTextLength())) {
+                return mapper.readValue(embedded, Resource.class);
+            }
         }
-        if (!responseIsSuccessful(response)) {
-            throw new OaiException(ID_DOES_NOT_EXIST, UNKNOWN_IDENTIFIER);
+        if (element == JsonToken.START_OBJECT) {
+            return mapper.readValue(parser, Resource.class);
         }
-        return response.body();
+        throw new JsonParseException(parser, UNEXPECTED_SEARCH_RESPONSE);
+    }
+
+    @Override
+    public CompletableFuture<String> getSetsListAsync() {
+        return fetch(this::getSetsUri, NO_SET_HIERARCHY, NO_SETS_FOUND);
     }
 
     @Override
-    public String getRecordsList(String from, String until, String setSpec, int startPosition)
-            throws OaiException, InternalOaiException {
-        HttpResponse<String> response;
+    public CompletableFuture<String> getRecordAsync(String identifier) {
+        return fetch(() -> getRecordUri(identifier), ID_DOES_NOT_EXIST, UNKNOWN_IDENTIFIER);
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordsListAsync(String from, String until, String setSpec, int startPosition,
+                                                         int pageSize) {
+        return fetch(() -> getRecordsListUri(from, until, setSpec, startPosition, pageSize), NO_RECORDS_MATCH,
+                     OaiConstants.COMBINATION_OF_PARAMS_ERROR);
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                              String cursor, int pageSize) {
+        return fetch(() -> getRecordsListAfterUri(from, until, setSpec, cursor, pageSize), NO_RECORDS_MATCH,
+                     OaiConstants.COMBINATION_OF_PARAMS_ERROR);
+    }
+
+    private CompletableFuture<String> fetch(Supplier<URI> uri, String errorCode, String errorText) {
+        CompletableFuture<HttpResponse<String>> response;
         try {
-            Builder builder = HttpRequest.newBuilder()
-                    .uri(getRecordsListUri(from, until, setSpec, startPosition))
-                    .header(CONTENT_TYPE, APPLICATION_JSON.getMimeType())
-                    .GET();
-            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+            response = transport.sendAsync(transport.newRequest(uri.get()));
         } catch (Exception e) {
-            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
-        }
-        if (!responseIsSuccessful(response)) {
-            throw new OaiException(NO_RECORDS_MATCH, OaiConstants.COMBINATION_OF_PARAMS_ERROR);
+            return CompletableFuture.failedFuture(new InternalOaiException(e, HTTP_UNAVAILABLE));
         }
-        return response.body();
+        return response.handle((result, error) -> {
+            if (error != null) {
+                throw UpstreamTransport.unavailable(error);
+            }
+            if (!responseIsSuccessful(result)) {
+                throw new CompletionException(new OaiException(errorCode, errorText));
+            }
+            return result.body();
+        });
     }
 
     private URI getSetsUri() {
@@ -224,7 +305,27 @@ public class DlrAdapter implements Adapter {
                 .getUri();
     }
 
-    private URI getRecordsListUri(String from, String until, String institution, int startPosition) {
+    private URI getRecordsListUri(String from, String until, String institution, int startPosition,
+                                  int pageSize) {
+        UriWrapper uriWrapper = getRecordsSearchUri(from, until, institution);
+        if (startPosition != 0) {
+            uriWrapper = uriWrapper.addQueryParameter("offset", String.valueOf(startPosition));
+        }
+        uriWrapper = uriWrapper.addQueryParameter("limit", String.valueOf(pageSize));
+        return uriWrapper.getUri();
+    }
+
+    private URI getRecordsListAfterUri(String from, String until, String institution, String cursor,
+                                       int pageSize) {
+        UriWrapper uriWrapper = getRecordsSearchUri(from, until, institution).addQueryParameter("sort", CURSOR_SORT);
+        if (StringUtils.isNotEmpty(cursor)) {
+            uriWrapper = uriWrapper.addQueryParameter("after", cursor);
+        }
+        uriWrapper = uriWrapper.addQueryParameter("limit", String.valueOf(pageSize));
+        return uriWrapper.getUri();
+    }
+
+    private UriWrapper getRecordsSearchUri(String from, String until, String institution) {
         UriWrapper uriWrapper = UriWrapper.fromUri(recordsUri);
         if (StringUtils.isNotEmpty(institution)) {
             uriWrapper = uriWrapper.addQueryParameter("institution", institution);
@@ -235,10 +336,7 @@ public class DlrAdapter implements Adapter {
         if (StringUtils.isNotEmpty(until)) {
             uriWrapper = uriWrapper.addQueryParameter("until", until.substring(0, Math.min(until.length(), 10)));
         }
-        if (startPosition != 0) {
-            uriWrapper = uriWrapper.addQueryParameter("offset", String.valueOf(startPosition));
-        }
-        return uriWrapper.getUri();
+        return uriWrapper;
     }
 
     @JacocoGenerated
@@ -248,20 +346,51 @@ public class DlrAdapter implements Adapter {
         return status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES;
     }
 
-    private Record createRecordFromResource(Resource resource, String metadataPrefix) {
-        List<String> setSpecs = new ArrayList<>();
-        setSpecs.add(ALL_SET_NAME);
-        if (!resource.features.getOrDefault(STORAGE_ID_KEY, EMPTY_STRING).isEmpty()
-                && !NULL_STRING.equalsIgnoreCase(resource.features.get(STORAGE_ID_KEY))) {
-            setSpecs.add(resource.features.get(STORAGE_ID_KEY));
-        }
+    private Record createRecordFromResource(Resource resource, String metadataPrefix, boolean withMetadata) {
+        String storageId = resource.features.getOrDefault(STORAGE_ID_KEY, EMPTY_STRING);
+        List<String> setSpecs = storageId.isEmpty() || NULL_STRING.equalsIgnoreCase(storageId)
+                ? List.of(ALL_SET_NAME)
+                : List.of(ALL_SET_NAME, storageId);
         boolean deleted = Boolean.parseBoolean(resource.features.get("dlr_status_deleted"));
+        String identifier = getIdentifierPrefix() + resource.identifier;
+        String timeUpdated = resource.features.get(TIME_UPDATED_KEY);
+        long datestamp = Record.epochSecond(TimeUtils.string2EpochMilli(timeUpdated, TimeUtils.FORMAT_ZULU_SHORT));
+        long modified = timeUpdated(timeUpdated);
         return new Record(
-                createRecordContent(resource, metadataPrefix),
+                withMetadata ? getRecordContent(resource, identifier, modified, metadataPrefix) : null,
                 deleted,
-                getIdentifierPrefix() + resource.identifier,
-                TimeUtils.string2Date(resource.features.get("dlr_time_updated"), TimeUtils.FORMAT_ZULU_SHORT),
-                setSpecs);
+                identifier,
+                datestamp,
+                modified != Record.NO_DATESTAMP || datestamp == Record.NO_DATESTAMP
+                        ? modified
+                        : TimeUnit.SECONDS.toMillis(datestamp),
+                setSpecs,
+                timeUpdated == null ? null : timeUpdated + CURSOR_SEPARATOR + resource.identifier);
+    }
+
+    /**
+     * Reads the time a resource was updated in full, while its datestamp only has the day, so the validators of a
+     * conditional GET and the cached metadata change with every edit.
+     *
+     * @return epoch milliseconds, or {@link Record#NO_DATESTAMP} when the time is missing or not an instant
+     */
+    private static long timeUpdated(String timeUpdated) {
+        if (timeUpdated == null) {
+            return Record.NO_DATESTAMP;
+        }
+        try {
+            return Instant.parse(timeUpdated).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Record.NO_DATESTAMP;
+        }
+    }
+
+    private byte[] getRecordContent(Resource resource, String identifier, long timeUpdated, String metadataPrefix) {
+        if (timeUpdated == Record.NO_DATESTAMP) {
+            return createRecordContent(resource, metadataPrefix).getBytes(StandardCharsets.UTF_8);
+        }
+        return contentCache.computeIfAbsent(identifier, metadataPrefix, timeUpdated,
+            () -> createRecordContent(resource, metadataPrefix).getBytes(StandardCharsets.UTF_8));
     }
 
     private String createRecordContent(Resource resource, String metadataPrefix) {
@@ -279,21 +408,25 @@ public class DlrAdapter implements Adapter {
     private String createRecordContentOaiDc(Resource resource) {
         StringBuilder buffer = new StringBuilder();
         buffer.append(OAI_DC_HEADER)
-            .append("    <dc:title>").append(StringEscapeUtils.escapeXml11(resource.features.get("dlr_title")))
-            .append("</dc:title>\n")
-            .append("    <dc:description>")
-            .append(StringEscapeUtils.escapeXml11(resource.features.getOrDefault("dlr_description", EMPTY_STRING)))
+            .append("    <dc:title>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_title")).append("</dc:title>\n")
+            .append("    <dc:description>");
+        XmlEscaper.appendEscaped(buffer, resource.features.getOrDefault("dlr_description", EMPTY_STRING))
             .append("</dc:description>\n")
-            .append("    <dc:rights>").append(resource.features.get("dlr_rights_license_name"))
-            .append("</dc:rights>\n")
-            .append("    <dc:type>").append(resource.features.get("dlr_type")).append("</dc:type>\n")
-            .append("    <dc:publisher>").append(resource.features.get(STORAGE_ID_KEY))
-            .append("</dc:publisher>\n")
-            .append("    <dc:date>").append(resource.features.get("dlr_time_created")).append("</dc:date>\n")
-            .append("    <dc:date>").append(resource.features.get("dlr_time_published")).append("</dc:date>\n")
-            .append("    <dc:identifier>").append(resource.features.get("dlr_identifier_handle"))
-            .append("</dc:identifier>\n")
-            .append("    <dc:identifier>").append(resource.identifier).append("</dc:identifier>\n");
+            .append("    <dc:rights>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_rights_license_name")).append("</dc:rights>\n")
+            .append("    <dc:type>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_type")).append("</dc:type>\n")
+            .append("    <dc:publisher>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get(STORAGE_ID_KEY)).append("</dc:publisher>\n")
+            .append("    <dc:date>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_time_created")).append("</dc:date>\n")
+            .append("    <dc:date>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_time_published")).append("</dc:date>\n")
+            .append("    <dc:identifier>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_identifier_handle")).append("</dc:identifier>\n")
+            .append("    <dc:identifier>");
+        XmlEscaper.appendEscaped(buffer, resource.identifier).append("</dc:identifier>\n");
         appendCreatorsDc(resource, buffer);
         buffer.append("</oai_dc:dc>\n");
         return buffer.toString();
@@ -303,23 +436,26 @@ public class DlrAdapter implements Adapter {
     private String createRecordContentQdc(Resource resource) {
         StringBuilder buffer = new StringBuilder();
         buffer.append(QDC_HEADER)
-            .append("    <dc:title>").append(StringEscapeUtils.escapeXml11(resource.features.get("dlr_title")))
-            .append("</dc:title>\n")
-            .append("    <dc:description>")
-            .append(StringEscapeUtils.escapeXml11(resource.features.getOrDefault("dlr_description", EMPTY_STRING)))
+            .append("    <dc:title>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_title")).append("</dc:title>\n")
+            .append("    <dc:description>");
+        XmlEscaper.appendEscaped(buffer, resource.features.getOrDefault("dlr_description", EMPTY_STRING))
             .append("</dc:description>\n")
-            .append("    <dc:rights>").append(resource.features.get("dlr_rights_license_name"))
-            .append("</dc:rights>\n")
-            .append("    <dcterms:accessRights>").append(resource.features.get("dlr_access"))
-            .append("</dcterms:accessRights>\n")
-            .append("    <dc:publisher>").append(resource.features.get(STORAGE_ID_KEY))
-            .append("</dc:publisher>\n")
-            .append("    <dc:type>").append(resource.features.get("dlr_type")).append("</dc:type>\n")
-            .append("    <dcterms:created>").append(resource.features.get("dlr_time_created"))
-            .append("</dcterms:created>\n")
-            .append("    <dcterms:identifier xsi:type=\"dcterms:URI\">")
-            .append(resource.features.get("dlr_identifier_handle")).append("</dcterms:identifier>\n")
-            .append("    <dcterms:identifier>").append(resource.identifier).append("</dcterms:identifier>\n");
+            .append("    <dc:rights>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_rights_license_name")).append("</dc:rights>\n")
+            .append("    <dcterms:accessRights>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_access")).append("</dcterms:accessRights>\n")
+            .append("    <dc:publisher>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get(STORAGE_ID_KEY)).append("</dc:publisher>\n")
+            .append("    <dc:type>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_type")).append("</dc:type>\n")
+            .append("    <dcterms:created>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_time_created")).append("</dcterms:created>\n")
+            .append("    <dcterms:identifier xsi:type=\"dcterms:URI\">");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_identifier_handle"))
+            .append("</dcterms:identifier>\n")
+            .append("    <dcterms:identifier>");
+        XmlEscaper.appendEscaped(buffer, resource.identifier).append("</dcterms:identifier>\n");
         appendCreatorsDc(resource, buffer);
         appendContributorsDc(resource, buffer);
         buffer.append("</qdc:qualifieddc>\n");
@@ -331,19 +467,17 @@ public class DlrAdapter implements Adapter {
         StringBuilder buffer = new StringBuilder();
         buffer.append(OAI_DATACITE_HEADER)
             .append("    <datacite:titles>\n")
-            .append("        <datacite:title>")
-            .append(StringEscapeUtils.escapeXml11(resource.features.get("dlr_title")))
-            .append("</datacite:title>\n")
+            .append("        <datacite:title>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_title")).append("</datacite:title>\n")
             .append("    </datacite:titles>\n")
-            .append("    <dc:description>")
-            .append(StringEscapeUtils.escapeXml11(resource.features.getOrDefault("dlr_description", EMPTY_STRING)))
+            .append("    <dc:description>");
+        XmlEscaper.appendEscaped(buffer, resource.features.getOrDefault("dlr_description", EMPTY_STRING))
             .append("</dc:description>\n")
-            .append("    <dc:publisher>").append(resource.features.get(STORAGE_ID_KEY))
-            .append("</dc:publisher>\n")
+            .append("    <dc:publisher>");
+        XmlEscaper.appendEscaped(buffer, resource.features.get(STORAGE_ID_KEY)).append("</dc:publisher>\n")
             .append("    <datacite:dates>\n")
-            .append("        <datacite:date dateType=\"Issued\">")
-            .append(resource.features.get("dlr_time_published"))
-            .append("</datacite:date>\n")
+            .append("        <datacite:date dateType=\"Issued\">");
+        XmlEscaper.appendEscaped(buffer, resource.features.get("dlr_time_published")).append("</datacite:date>\n")
             .append("    </datacite:dates>\n");
         appendCreatorsDatacite(resource, buffer);
         buffer.append("</oaire:resource>\n");
@@ -355,7 +489,7 @@ public class DlrAdapter implements Adapter {
             .map(creator -> creator.features.getOrDefault("dlr_creator_name", EMPTY_STRING))
             .filter(creatorName -> !creatorName.isEmpty() && !NULL_STRING.equalsIgnoreCase(creatorName))
             .forEach(creatorName -> {
-                buffer.append("    <dc:creator>").append(creatorName).append("</dc:creator>\n");
+                XmlEscaper.appendEscaped(buffer.append("    <dc:creator>"), creatorName).append("</dc:creator>\n");
             });
     }
 
@@ -367,9 +501,8 @@ public class DlrAdapter implements Adapter {
             .forEach(creatorName -> {
                 buffer.append("    <datacite:creators>\n")
                     .append("        <datacite:creator>\n")
-                    .append("            <datacite:creatorName>")
-                    .append(creatorName)
-                    .append("</datacite:creatorName>\n")
+                    .append("            <datacite:creatorName>");
+                XmlEscaper.appendEscaped(buffer, creatorName).append("</datacite:creatorName>\n")
                     .append("        </datacite:creator>\n")
                     .append("    </datacite:creators>\n");
             });
@@ -380,7 +513,8 @@ public class DlrAdapter implements Adapter {
                 .map(contributor -> contributor.features.getOrDefault("dlr_contributor_name", EMPTY_STRING))
                 .filter(contributorName -> !contributorName.isEmpty() && !NULL_STRING.equalsIgnoreCase(contributorName))
                 .forEach(contributorName -> {
-                    buffer.append("    <dc:contributor>").append(contributorName).append("</dc:contributor>\n");
+                    XmlEscaper.appendEscaped(buffer.append("    <dc:contributor>"), contributorName)
+                        .append("</dc:contributor>\n");
                 });
     }
 
@@ -0,0 +1,106 @@
+package no.sikt.oai.adapter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import no.sikt.oai.exception.InternalOaiException;
+
+/**
+ * Serves records from local storage instead of the upstream search. Everything else, the repository description and
+ * the sets, comes from the adapter the records were exported through. Lists are handed to the parse methods as
+ * {@code {"numFound":N,"records":[...]}}, with records in whatever form the storage reads them.
+ */
+public abstract class LocalRecordsAdapter implements Adapter {
+
+    public static final int SAMPLE_RECORDS = 10;
+    private static final String NUM_FOUND_START = "{\"numFound\":";
+    private static final String RECORDS_START = ",\"records\":[";
+    private static final String RECORDS_END = "]}";
+    private final transient Adapter delegate;
+
+    protected LocalRecordsAdapter(Adapter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean isValidIdentifier(String identifier) {
+        return delegate.isValidIdentifier(identifier);
+    }
+
+    @Override
+    public String getDescription() {
+        return delegate.getDescription();
+    }
+
+    @Override
+    public String getDateGranularity() {
+        return delegate.getDateGranularity();
+    }
+
+    @Override
+    public String getEarliestTimestamp() {
+        return delegate.getEarliestTimestamp();
+    }
+
+    @Override
+    public String getDeletedRecord() {
+        return delegate.getDeletedRecord();
+    }
+
+    @Override
+    public String getProtocolVersion() {
+        return delegate.getProtocolVersion();
+    }
+
+    @Override
+    public String getAdminEmail() {
+        return delegate.getAdminEmail();
+    }
+
+    @Override
+    public String getRepositoryName() {
+        return delegate.getRepositoryName();
+    }
+
+    @Override
+    public String getBaseUrl() {
+        return delegate.getBaseUrl();
+    }
+
+    @Override
+    public String getIdentifierPrefix() {
+        return delegate.getIdentifierPrefix();
+    }
+
+    @Override
+    public List<OaiSet> parseSetsResponse(String json) throws InternalOaiException {
+        return delegate.parseSetsResponse(json);
+    }
+
+    @Override
+    public CompletableFuture<String> getSetsListAsync() {
+        return delegate.getSetsListAsync();
+    }
+
+    /**
+     * Wraps a page of records as the list response handed to the parse methods.
+     *
+     * @param numFound number of records matching the whole query
+     * @param records  records of the page, each a JSON value
+     * @return the list response
+     */
+    protected static String toJson(long numFound, List<String> records) {
+        int length = NUM_FOUND_START.length() + RECORDS_START.length() + RECORDS_END.length() + records.size();
+        for (String record : records) {
+            length += record.length();
+        }
+        StringBuilder json = new StringBuilder(length + Long.SIZE);
+        json.append(NUM_FOUND_START).append(numFound).append(RECORDS_START);
+        for (int i = 0; i < records.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(records.get(i));
+        }
+        return json.append(RECORDS_END).toString();
+    }
+}
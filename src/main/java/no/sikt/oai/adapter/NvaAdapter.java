@@ -10,32 +10,46 @@ import static no.sikt.oai.OaiConstants.OAI_DC_HEADER;
 import static no.sikt.oai.OaiConstants.QDC_HEADER;
 import static no.sikt.oai.OaiConstants.UNKNOWN_IDENTIFIER;
 import static no.sikt.oai.OaiProviderHandler.EMPTY_STRING;
-import static org.apache.http.HttpHeaders.CONTENT_TYPE;
-import static org.apache.http.entity.ContentType.APPLICATION_JSON;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpRequest;
+import java.net.http.HttpClient;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import no.sikt.oai.MetadataFormat;
 import no.sikt.oai.OaiConstants;
 import no.sikt.oai.TimeUtils;
+import no.sikt.oai.Verb;
+import no.sikt.oai.XmlEscaper;
+import no.sikt.oai.cache.RecordContentCache;
 import no.sikt.oai.data.Record;
 import no.sikt.oai.data.RecordsList;
 import no.sikt.oai.exception.InternalOaiException;
 import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.transport.UpstreamTransport;
 import no.unit.nva.auth.AuthorizedBackendClient;
 import no.unit.nva.auth.CognitoCredentials;
 import no.unit.nva.file.model.File;
@@ -47,6 +61,7 @@ import no.unit.nva.model.instancetypes.PublicationInstance;
 import nva.commons.core.Environment;
 import nva.commons.core.JacocoGenerated;
 import nva.commons.core.StringUtils;
+import nva.commons.core.ioutils.IoUtils;
 import nva.commons.core.paths.UriWrapper;
 import org.apache.http.HttpStatus;
 
@@ -58,33 +73,51 @@ public class NvaAdapter implements Adapter {
     private static final String DASH = "-";
     public static final String ACCESS_RIGHT_OPEN = "open";
     public static final String ERROR_UNEXPECTED_RESPONSE_FROM_DATA_SOURCE = "Unexpected response from data source";
+    public static final String HITS_FIELD = "hits";
+    public static final String TOTAL_FIELD = "total";
+    public static final String CURSOR_SORT = "modifiedDate:asc,identifier:asc";
+    public static final String CURSOR_SEPARATOR = ",";
     private final transient ObjectMapper mapper = new ObjectMapper();
     private final transient String resourceUri;
     private final transient String resourcesUri;
     private final transient String setsUri;
     private final transient AuthorizedBackendClient client;
+    private final transient UpstreamTransport transport;
+    private final transient RecordContentCache contentCache;
 
+    /**
+     * Creates an adapter that authenticates with the backend Cognito client and sends its requests through the
+     * shared transport.
+     */
     @JacocoGenerated
-    public NvaAdapter(Environment environment) {
-        setsUri = environment.readEnv(OaiConstants.SETS_URI_ENV);
-        resourceUri = environment.readEnv(OaiConstants.RECORD_URI_ENV);
-        resourcesUri = environment.readEnv(OaiConstants.RECORDS_URI_ENV);
-        mapper.registerModule(new JavaTimeModule());
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        CognitoCredentials cognitoCredentials = new CognitoCredentials(
-            () -> environment.readEnv(OaiConstants.BACKEND_CLIENT_ID_ENV),
-            () -> environment.readEnv(OaiConstants.BACKEND_SECRET_ID_ENV),
-            UriWrapper.fromUri(environment.readEnv(OaiConstants.COGNITO_URI_ENV)).getUri());
-        this.client = AuthorizedBackendClient.prepareWithCognitoCredentials(cognitoCredentials);
+    public NvaAdapter(Environment environment, UpstreamTransport transport) {
+        this(environment, AuthorizedBackendClient.prepareWithCognitoCredentials(transport.getClient(),
+                                                                                 cognitoCredentials(environment)),
+             transport);
     }
 
     public NvaAdapter(Environment environment, AuthorizedBackendClient client) {
+        this(environment, client, new UpstreamTransport(HttpClient.newHttpClient(),
+                                                        UpstreamTransport.DEFAULT_REQUEST_TIMEOUT));
+    }
+
+    public NvaAdapter(Environment environment, AuthorizedBackendClient client, UpstreamTransport transport) {
         setsUri = environment.readEnv(OaiConstants.SETS_URI_ENV);
         resourceUri = environment.readEnv(OaiConstants.RECORD_URI_ENV);
         resourcesUri = environment.readEnv(OaiConstants.RECORDS_URI_ENV);
         mapper.registerModule(new JavaTimeModule());
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         this.client = client;
+        this.transport = transport;
+        this.contentCache = new RecordContentCache(environment);
+    }
+
+    @JacocoGenerated
+    private static CognitoCredentials cognitoCredentials(Environment environment) {
+        return new CognitoCredentials(
+            () -> environment.readEnv(OaiConstants.BACKEND_CLIENT_ID_ENV),
+            () -> environment.readEnv(OaiConstants.BACKEND_SECRET_ID_ENV),
+            UriWrapper.fromUri(environment.readEnv(OaiConstants.COGNITO_URI_ENV)).getUri());
     }
 
     @Override
@@ -137,6 +170,16 @@ public class NvaAdapter implements Adapter {
         return "oai:nva.unit.no:";
     }
 
+    @Override
+    public String getSampleRecordsList() {
+        return IoUtils.stringFromResources(Path.of(PRIMING_FOLDER, "nva-publications.json"));
+    }
+
+    @Override
+    public Optional<RecordContentCache> getContentCache() {
+        return Optional.of(contentCache);
+    }
+
     private URI getSetsUri() {
         return UriWrapper
             .fromUri(setsUri)
@@ -150,8 +193,28 @@ public class NvaAdapter implements Adapter {
             .getUri();
     }
 
-    private URI getRecordsListUri(String from, String until, String setSpec, int startPosition) {
-        UriWrapper uriWrapper = UriWrapper.fromUri(resourcesUri);
+    private URI getRecordsListUri(String from, String until, String setSpec, int startPosition, int pageSize) {
+        UriWrapper uriWrapper = UriWrapper.fromUri(resourcesUri)
+            .addQueryParameter("query", getRecordsListQuery(from, until, setSpec));
+        if (startPosition != 0) {
+            uriWrapper = uriWrapper.addQueryParameter("from", String.valueOf(startPosition));
+        }
+        uriWrapper = uriWrapper.addQueryParameter("results", String.valueOf(pageSize));
+        return uriWrapper.getUri();
+    }
+
+    private URI getRecordsListAfterUri(String from, String until, String setSpec, String cursor, int pageSize) {
+        UriWrapper uriWrapper = UriWrapper.fromUri(resourcesUri)
+            .addQueryParameter("query", getRecordsListQuery(from, until, setSpec))
+            .addQueryParameter("sort", CURSOR_SORT);
+        if (StringUtils.isNotEmpty(cursor)) {
+            uriWrapper = uriWrapper.addQueryParameter("searchAfter", cursor);
+        }
+        uriWrapper = uriWrapper.addQueryParameter("results", String.valueOf(pageSize));
+        return uriWrapper.getUri();
+    }
+
+    private String getRecordsListQuery(String from, String until, String setSpec) {
         StringBuilder query = new StringBuilder();
         if (StringUtils.isNotEmpty(setSpec)) {
             if (!ALL_SET_NAME.equalsIgnoreCase(setSpec)) {
@@ -161,67 +224,48 @@ public class NvaAdapter implements Adapter {
             query.append("modifiedDate > ").append(from)
                 .append(" & modifiedDate < ").append(until);
         }
-        uriWrapper = uriWrapper.addQueryParameter("query", query.toString());
-        if (startPosition != 0) {
-            uriWrapper = uriWrapper.addQueryParameter("from", String.valueOf(startPosition));
-        }
-        uriWrapper = uriWrapper.addQueryParameter("results", "50");
-        return uriWrapper.getUri();
+        return query.toString();
     }
 
     @Override
-    public String getSetsList() throws OaiException, InternalOaiException {
-        HttpResponse<String> response;
-        try {
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                .uri(getSetsUri())
-                .header(CONTENT_TYPE, APPLICATION_JSON.getMimeType())
-                .GET();
-            response = client.send(builder, HttpResponse.BodyHandlers.ofString());
-        } catch (Exception e) {
-            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
-        }
-        if (!responseIsSuccessful(response)) {
-            throw new OaiException(NO_SET_HIERARCHY, NO_SETS_FOUND);
-        }
-        return response.body();
+    public CompletableFuture<String> getSetsListAsync() {
+        return fetch(this::getSetsUri, NO_SET_HIERARCHY, NO_SETS_FOUND);
     }
 
     @Override
-    public String getRecord(String identifier) throws OaiException, InternalOaiException {
-        HttpResponse<String> response;
-        try {
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                .uri(getRecordUri(identifier))
-                .header(CONTENT_TYPE, APPLICATION_JSON.getMimeType())
-                .GET();
-            response = client.send(builder, HttpResponse.BodyHandlers.ofString());
-        } catch (Exception e) {
-            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
-        }
-        if (!responseIsSuccessful(response)) {
-            throw new OaiException(ID_DOES_NOT_EXIST, UNKNOWN_IDENTIFIER);
-        }
-        return response.body();
+    public CompletableFuture<String> getRecordAsync(String identifier) {
+        return fetch(() -> getRecordUri(identifier), ID_DOES_NOT_EXIST, UNKNOWN_IDENTIFIER);
     }
 
     @Override
-    public String getRecordsList(String from, String until, String setSpec, int startPosition)
-        throws OaiException, InternalOaiException {
-        HttpResponse<String> response;
-        try {
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                .uri(getRecordsListUri(from, until, setSpec, startPosition))
-                .header(CONTENT_TYPE, APPLICATION_JSON.getMimeType())
-                .GET();
-            response = client.send(builder, HttpResponse.BodyHandlers.ofString());
-        } catch (Exception e) {
-            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
-        }
-        if (!responseIsSuccessful(response)) {
-            throw new OaiException(NO_RECORDS_MATCH, OaiConstants.COMBINATION_OF_PARAMS_ERROR);
-        }
-        return response.body();
+    public CompletableFuture<String> getRecordsListAsync(String from, String until, String setSpec, int startPosition,
+                                                         int pageSize) {
+        return fetch(() -> getRecordsListUri(from, until, setSpec, startPosition, pageSize), NO_RECORDS_MATCH,
+                     OaiConstants.COMBINATION_OF_PARAMS_ERROR);
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                              String cursor, int pageSize) {
+        return fetch(() -> getRecordsListAfterUri(from, until, setSpec, cursor, pageSize), NO_RECORDS_MATCH,
+                     OaiConstants.COMBINATION_OF_PARAMS_ERROR);
+    }
+
+    /**
+     * Sends a request through the backend client, which blocks while it gets an access token and the response, on
+     * the transport's call pool.
+     */
+    private CompletableFuture<String> fetch(Supplier<URI> uri, String errorCode, String errorText) {
+        return transport.call(() -> client.send(transport.newRequest(uri.get()), UpstreamTransport.BODY_HANDLER))
+                   .handle((result, error) -> {
+                       if (error != null) {
+                           throw UpstreamTransport.unavailable(error);
+                       }
+                       if (!responseIsSuccessful(result)) {
+                           throw new CompletionException(new OaiException(errorCode, errorText));
+                       }
+                       return result.body();
+                   });
     }
 
     @JacocoGenerated
@@ -256,8 +300,22 @@ public class NvaAdapter implements Adapter {
 
     @Override
     public Record parseRecordResponse(String json, String metadataPrefix, String setSpec) throws InternalOaiException {
+        return createRecordFromPublication(readPublication(json), metadataPrefix, true);
+    }
+
+    @Override
+    public Record parseRecordResponse(String json, String metadataPrefix, String setSpec, Predicate<Date> modified)
+        throws InternalOaiException {
+        Publication publication = readPublication(json);
+        Record header = createRecordFromPublication(publication, metadataPrefix, false);
+        return modified.test(header.getModifiedDate())
+            ? createRecordFromPublication(publication, metadataPrefix, true)
+            : header;
+    }
+
+    private Publication readPublication(String json) throws InternalOaiException {
         try {
-            return createRecordFromPublication(mapper.readValue(json, Publication.class), metadataPrefix);
+            return mapper.readValue(json, Publication.class);
         } catch (JsonProcessingException e) {
             throw new InternalOaiException(e, HTTP_UNAVAILABLE);
         }
@@ -269,9 +327,11 @@ public class NvaAdapter implements Adapter {
         try {
             PublicationSearchResponse publicationSearchResponse =
                 mapper.readValue(json, PublicationSearchResponse.class);
-            RecordsList records = new RecordsList(publicationSearchResponse.total);
+            RecordsList records = new RecordsList(publicationSearchResponse.total,
+                                                  publicationSearchResponse.hits.size());
+            boolean withMetadata = !Verb.ListIdentifiers.name().equals(verb);
             for (Publication publication : publicationSearchResponse.hits) {
-                records.add(createRecordFromPublication(publication, metadataPrefix));
+                records.add(createRecordFromPublication(publication, metadataPrefix, withMetadata));
             }
             return records;
         } catch (JsonProcessingException e) {
@@ -279,16 +339,56 @@ public class NvaAdapter implements Adapter {
         }
     }
 
-    private Record createRecordFromPublication(Publication publication, String metadataPrefix) {
-        List<String> setSpecs = new ArrayList<>();
-        setSpecs.add(ALL_SET_NAME);
-        setSpecs.add(UriWrapper.fromUri(publication.getPublisher().getId()).getLastPathElement());
+    /**
+     * Streams the hits of a search response, binding and rendering one publication at a time. The total is read
+     * wherever it appears in the response, which for the search API is after the hits.
+     */
+    @Override
+    public long parseRecordsListResponse(String verb, String json, String metadataPrefix, String setSpec,
+                                         Consumer<Record> consumer) throws InternalOaiException {
+        boolean withMetadata = !Verb.ListIdentifiers.name().equals(verb);
+        try (JsonParser parser = mapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, ERROR_UNEXPECTED_RESPONSE_FROM_DATA_SOURCE);
+            }
+            long total = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (HITS_FIELD.equals(fieldName) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Publication publication = mapper.readValue(parser, Publication.class);
+                        consumer.accept(createRecordFromPublication(publication, metadataPrefix, withMetadata));
+                    }
+                } else if (TOTAL_FIELD.equals(fieldName) && value.isNumeric()) {
+                    total = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return total;
+        } catch (IOException e) {
+            throw new InternalOaiException(e, ERROR_UNEXPECTED_RESPONSE_FROM_DATA_SOURCE, HTTP_UNAVAILABLE);
+        }
+    }
+
+    private Record createRecordFromPublication(Publication publication, String metadataPrefix,
+                                               boolean withMetadata) {
+        List<String> setSpecs = List.of(ALL_SET_NAME,
+                                        UriWrapper.fromUri(publication.getPublisher().getId()).getLastPathElement());
+        String identifier = getIdentifierPrefix() + publication.getIdentifier();
+        Instant modifiedDate = publication.getModifiedDate();
         return new Record(
-            createRecordContent(publication, metadataPrefix),
+            withMetadata
+                ? contentCache.computeIfAbsent(identifier, metadataPrefix, modifiedDate.toEpochMilli(),
+                    () -> createRecordContent(publication, metadataPrefix).getBytes(StandardCharsets.UTF_8))
+                : null,
             false,
-            getIdentifierPrefix() + publication.getIdentifier(),
-            Date.from(publication.getModifiedDate()),
-            setSpecs);
+            identifier,
+            modifiedDate.getEpochSecond(),
+            modifiedDate.toEpochMilli(),
+            setSpecs,
+            modifiedDate + CURSOR_SEPARATOR + publication.getIdentifier());
     }
 
     private String createRecordContent(Publication publication, String metadataPrefix) {
@@ -306,38 +406,34 @@ public class NvaAdapter implements Adapter {
     private String createRecordContentOaiDc(Publication publication) {
         StringBuilder buffer = new StringBuilder();
         buffer.append(OAI_DC_HEADER)
-            .append("    <dc:title>").append(publication.getEntityDescription().getMainTitle())
-            .append("</dc:title>\n");
+            .append("    <dc:title>");
+        XmlEscaper.appendEscaped(buffer, publication.getEntityDescription().getMainTitle()).append("</dc:title>\n");
         Optional.ofNullable(publication.getEntityDescription().getDescription()).ifPresent(description -> {
-            buffer.append("    <dc:description>")
-                .append(description)
-                .append("</dc:description>\n");
+            XmlEscaper.appendEscaped(buffer.append("    <dc:description>"), description).append("</dc:description>\n");
         });
         Optional.ofNullable(publication.getEntityDescription().getAbstract()).ifPresent(abstractTag -> {
-            buffer.append("    <dc:description>")
-                .append(abstractTag)
-                .append("</dc:description>\n");
+            XmlEscaper.appendEscaped(buffer.append("    <dc:description>"), abstractTag).append("</dc:description>\n");
         });
-        buffer.append("    <dc:rights>").append(getLicenseAsText(publication))
-            .append("</dc:rights>\n")
-            .append("    <dc:rights>").append(getLicenseAsUri(publication))
-            .append("</dc:rights>\n")
-            .append("    <dc:type>")
-            .append(publication.getEntityDescription().getReference().getPublicationInstance()
+        buffer.append("    <dc:rights>");
+        XmlEscaper.appendEscaped(buffer, getLicenseAsText(publication)).append("</dc:rights>\n")
+            .append("    <dc:rights>");
+        XmlEscaper.appendEscaped(buffer, getLicenseAsUri(publication)).append("</dc:rights>\n")
+            .append("    <dc:type>");
+        XmlEscaper.appendEscaped(buffer, publication.getEntityDescription().getReference().getPublicationInstance()
                         .getInstanceType()).append("</dc:type>\n");
         if (publication.getEntityDescription().getReference().getPublicationInstance().isPeerReviewed()) {
             buffer.append("    <dc:type>Peer reviewed</dc:type>\n");
         }
-        buffer.append("    <dc:publisher>").append(publication.getPublisher().getId())
-            .append("</dc:publisher>\n")
-            .append("    <dc:date>").append(TimeUtils.date2String(Date.from(publication.getCreatedDate()),
-                                                                  TimeUtils.FORMAT_ZULU_SHORT)).append("</dc:date>\n")
-            .append("    <dc:date>").append(TimeUtils.date2String(Date.from(publication.getPublishedDate()),
-                                                                  TimeUtils.FORMAT_ZULU_SHORT)).append("</dc:date>\n")
-            .append("    <dc:date>").append(TimeUtils.date2String(Date.from(publication.getModifiedDate()),
-                                                                  TimeUtils.FORMAT_ZULU_SHORT)).append("</dc:date>\n")
-            .append("    <dc:identifier>").append(publication.getIdentifier().toString())
-            .append("</dc:identifier>\n");
+        buffer.append("    <dc:publisher>");
+        XmlEscaper.appendEscaped(buffer, String.valueOf(publication.getPublisher().getId())).append("</dc:publisher>\n")
+            .append("    <dc:date>");
+        TimeUtils.appendZuluShort(buffer, publication.getCreatedDate().toEpochMilli()).append("</dc:date>\n")
+            .append("    <dc:date>");
+        TimeUtils.appendZuluShort(buffer, publication.getPublishedDate().toEpochMilli()).append("</dc:date>\n")
+            .append("    <dc:date>");
+        TimeUtils.appendZuluShort(buffer, publication.getModifiedDate().toEpochMilli()).append("</dc:date>\n")
+            .append("    <dc:identifier>");
+        XmlEscaper.appendEscaped(buffer, publication.getIdentifier().toString()).append("</dc:identifier>\n");
         appendCreatorsDc(publication, buffer);
         buffer.append("</oai_dc:dc>\n");
         return buffer.toString();
@@ -347,46 +443,40 @@ public class NvaAdapter implements Adapter {
     private String createRecordContentQdc(Publication publication) {
         StringBuilder buffer = new StringBuilder();
         buffer.append(QDC_HEADER)
-            .append("    <dc:title>").append(publication.getEntityDescription().getMainTitle())
-            .append("</dc:title>\n");
+            .append("    <dc:title>");
+        XmlEscaper.appendEscaped(buffer, publication.getEntityDescription().getMainTitle()).append("</dc:title>\n");
         Optional.ofNullable(publication.getEntityDescription().getDescription()).ifPresent(description -> {
-            buffer.append("    <dc:description>")
-                .append(description)
-                .append("</dc:description>\n");
+            XmlEscaper.appendEscaped(buffer.append("    <dc:description>"), description).append("</dc:description>\n");
         });
         Optional.ofNullable(publication.getEntityDescription().getAbstract()).ifPresent(abstractTag -> {
-            buffer.append("    <dcterms:abstract>")
-                .append(abstractTag)
+            XmlEscaper.appendEscaped(buffer.append("    <dcterms:abstract>"), abstractTag)
                 .append("</dcterms:abstract>\n");
         });
         buffer.append(extractLanguageDcTag(publication))
-            .append("    <dc:rights>").append(getLicenseAsText(publication))
-            .append("</dc:rights>\n")
-            .append("    <dc:rights xsi:type=\"dcterms:URI\">").append(getLicenseAsUri(publication))
-            .append("</dc:rights>\n")
+            .append("    <dc:rights>");
+        XmlEscaper.appendEscaped(buffer, getLicenseAsText(publication)).append("</dc:rights>\n")
+            .append("    <dc:rights xsi:type=\"dcterms:URI\">");
+        XmlEscaper.appendEscaped(buffer, getLicenseAsUri(publication)).append("</dc:rights>\n")
             .append("    <dcterms:accessRights>").append(ACCESS_RIGHT_OPEN)
             .append("</dcterms:accessRights>\n")
-            .append("    <dc:publisher>").append(publication.getPublisher().getId())
-            .append("</dc:publisher>\n")
-            .append("    <dc:type>")
-            .append(publication.getEntityDescription().getReference().getPublicationInstance()
+            .append("    <dc:publisher>");
+        XmlEscaper.appendEscaped(buffer, String.valueOf(publication.getPublisher().getId())).append("</dc:publisher>\n")
+            .append("    <dc:type>");
+        XmlEscaper.appendEscaped(buffer, publication.getEntityDescription().getReference().getPublicationInstance()
                         .getInstanceType()).append("</dc:type>\n");
         if (publication.getEntityDescription().getReference().getPublicationInstance().isPeerReviewed()) {
             buffer.append("    <dc:type>Peer reviewed</dc:type>\n");
         }
-        buffer.append("    <dcterms:created>").append(TimeUtils.date2String(Date.from(publication.getCreatedDate()),
-                                                                            TimeUtils.FORMAT_ZULU_SHORT))
-            .append("</dcterms:created>\n")
-            .append("    <dcterms:modified>").append(TimeUtils.date2String(Date.from(publication.getModifiedDate()),
-                                                                           TimeUtils.FORMAT_ZULU_SHORT))
-            .append("</dcterms:modified>\n")
-            .append("    <dcterms:issued>").append(TimeUtils.date2String(Date.from(publication.getPublishedDate()),
-                                                                         TimeUtils.FORMAT_ZULU_SHORT))
-            .append("</dcterms:issued>\n")
-            .append("    <dcterms:identifier xsi:type=\"dcterms:URI\">")
-            .append(publication.getIdentifier().toString()).append("</dcterms:identifier>\n")
-            .append("    <dcterms:identifier>").append(publication.getIdentifier().toString())
-            .append("</dcterms:identifier>\n");
+        buffer.append("    <dcterms:created>");
+        TimeUtils.appendZuluShort(buffer, publication.getCreatedDate().toEpochMilli()).append("</dcterms:created>\n")
+            .append("    <dcterms:modified>");
+        TimeUtils.appendZuluShort(buffer, publication.getModifiedDate().toEpochMilli()).append("</dcterms:modified>\n")
+            .append("    <dcterms:issued>");
+        TimeUtils.appendZuluShort(buffer, publication.getPublishedDate().toEpochMilli()).append("</dcterms:issued>\n")
+            .append("    <dcterms:identifier xsi:type=\"dcterms:URI\">");
+        XmlEscaper.appendEscaped(buffer, publication.getIdentifier().toString()).append("</dcterms:identifier>\n")
+            .append("    <dcterms:identifier>");
+        XmlEscaper.appendEscaped(buffer, publication.getIdentifier().toString()).append("</dcterms:identifier>\n");
         appendCreatorsDc(publication, buffer);
         appendContributorsDc(publication, buffer);
         buffer.append("</qdc:qualifieddc>\n");
@@ -398,17 +488,17 @@ public class NvaAdapter implements Adapter {
         StringBuilder buffer = new StringBuilder();
         buffer.append(OAI_DATACITE_HEADER)
             .append("    <datacite:titles>\n")
-            .append("        <datacite:title>")
-            .append(publication.getEntityDescription().getMainTitle())
+            .append("        <datacite:title>");
+        XmlEscaper.appendEscaped(buffer, publication.getEntityDescription().getMainTitle())
             .append("</datacite:title>\n")
             .append("    </datacite:titles>\n");
         extractDescriptionOaiDatacite(publication, buffer);
         buffer.append(extractLanguageDcTag(publication))
-            .append("    <dc:publisher>").append(publication.getPublisher().getId())
-            .append("</dc:publisher>\n")
+            .append("    <dc:publisher>");
+        XmlEscaper.appendEscaped(buffer, String.valueOf(publication.getPublisher().getId())).append("</dc:publisher>\n")
             .append("    <datacite:dates>\n")
-            .append("        <datacite:date dateType=\"Issued\">")
-            .append(TimeUtils.date2String(Date.from(publication.getPublishedDate()), TimeUtils.FORMAT_ZULU_SHORT))
+            .append("        <datacite:date dateType=\"Issued\">");
+        TimeUtils.appendZuluShort(buffer, publication.getPublishedDate().toEpochMilli())
             .append("</datacite:date>\n")
             .append("    </datacite:dates>\n");
         appendCreatorsDatacite(publication, buffer);
@@ -422,13 +512,13 @@ public class NvaAdapter implements Adapter {
             || Optional.ofNullable(publication.getEntityDescription().getAbstract()).isPresent()) {
             buffer.append("    <datacite:descriptions>\n ");
             Optional.ofNullable(publication.getEntityDescription().getDescription()).ifPresent(description -> {
-                buffer.append("    <datacite:description descriptionType=\"Other\">")
-                    .append(description)
+                XmlEscaper.appendEscaped(buffer.append("    <datacite:description descriptionType=\"Other\">"),
+                                         description)
                     .append("</datacite:description>\n");
             });
             Optional.ofNullable(publication.getEntityDescription().getAbstract()).ifPresent(abstractTag -> {
-                buffer.append("    <datacite:description descriptionType=\"Abstract\">")
-                    .append(abstractTag)
+                XmlEscaper.appendEscaped(buffer.append("    <datacite:description descriptionType=\"Abstract\">"),
+                                         abstractTag)
                     .append("</datacite:description>\n");
             });
             buffer.append("</datacite:descriptions>\n");
@@ -441,9 +531,8 @@ public class NvaAdapter implements Adapter {
         if (publication.getEntityDescription().getLanguage() != null) {
             UriWrapper languageUri = UriWrapper.fromUri(publication.getEntityDescription().getLanguage());
             String isoCodePathlet = languageUri.getParent().get().getLastPathElement();
-            str.append("    <dc:language xsi:type=\"dcterms:").append(isoCodePathlet).append("\">")
-                .append(languageUri.getLastPathElement())
-                .append("</dc:language>\n");
+            XmlEscaper.appendEscaped(str.append("    <dc:language xsi:type=\"dcterms:"), isoCodePathlet).append("\">");
+            XmlEscaper.appendEscaped(str, languageUri.getLastPathElement()).append("</dc:language>\n");
         }
         return str.toString();
     }
@@ -471,9 +560,8 @@ public class NvaAdapter implements Adapter {
             .map(PublicationInstance::getInstanceType).orElse(EMPTY_STRING);
         buffer.append("    <datacite:resourceType resourceTypeGeneral=\"")
             .append(instanceType.isEmpty() ? "Other" : "Text")
-            .append("\">")
-            .append(instanceType)
-            .append("</datacite:resourceType>\n");
+            .append("\">");
+        XmlEscaper.appendEscaped(buffer, instanceType).append("</datacite:resourceType>\n");
     }
 
     private void appendCreatorsDc(Publication publication, StringBuilder buffer) {
@@ -481,7 +569,7 @@ public class NvaAdapter implements Adapter {
             .filter(contributor -> "creator".equalsIgnoreCase(contributor.getRole().name()))
             .map(contributor -> contributor.getIdentity().getName())
             .forEach(contributorName -> {
-                buffer.append("    <dc:creator>").append(contributorName).append("</dc:creator>\n");
+                XmlEscaper.appendEscaped(buffer.append("    <dc:creator>"), contributorName).append("</dc:creator>\n");
             });
     }
 
@@ -497,12 +585,12 @@ public class NvaAdapter implements Adapter {
     }
 
     private void extractCreator(StringBuilder buffer, Contributor contributor) {
-        buffer.append("        <datacite:creator>\n            <datacite:creatorName>")
-            .append(contributor.getIdentity().getName())
-            .append("</datacite:creatorName>\n");
+        buffer.append("        <datacite:creator>\n            <datacite:creatorName>");
+        XmlEscaper.appendEscaped(buffer, contributor.getIdentity().getName()).append("</datacite:creatorName>\n");
         if (contributor.getIdentity().getOrcId() != null) {
-            buffer.append("<datacite:nameIdentifier nameIdentifierScheme=\"ORCID\" schemeURI=\"https://orcid.org\">")
-                .append(UriWrapper.fromUri(contributor.getIdentity().getOrcId()).getLastPathElement())
+            buffer.append("<datacite:nameIdentifier nameIdentifierScheme=\"ORCID\" schemeURI=\"https://orcid.org\">");
+            XmlEscaper.appendEscaped(buffer,
+                                     UriWrapper.fromUri(contributor.getIdentity().getOrcId()).getLastPathElement())
                 .append("</datacite:nameIdentifier>");
         }
         buffer.append("        </datacite:creator>\n");
@@ -513,7 +601,8 @@ public class NvaAdapter implements Adapter {
             .filter(contributor -> !"creator".equalsIgnoreCase(contributor.getRole().name()))
             .map(contributor -> contributor.getIdentity().getName())
             .forEach(contributorName -> {
-                buffer.append("    <dc:contributor>").append(contributorName).append("</dc:contributor>\n");
+                XmlEscaper.appendEscaped(buffer.append("    <dc:contributor>"), contributorName)
+                    .append("</dc:contributor>\n");
             });
     }
 
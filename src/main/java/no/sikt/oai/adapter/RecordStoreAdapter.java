@@ -0,0 +1,272 @@
+package no.sikt.oai.adapter;
+
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static no.sikt.oai.OaiConstants.BAD_RESUMPTION_TOKEN;
+import static no.sikt.oai.OaiConstants.ID_DOES_NOT_EXIST;
+import static no.sikt.oai.OaiConstants.INVALID_RESUMPTION_TOKEN;
+import static no.sikt.oai.OaiConstants.UNKNOWN_IDENTIFIER;
+import static no.sikt.oai.OaiProviderHandler.EMPTY_STRING;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import no.sikt.oai.Verb;
+import no.sikt.oai.data.Record;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.snapshot.OrderedRecords;
+import no.sikt.oai.snapshot.OrderedRecords.Selection;
+import no.sikt.oai.snapshot.RecordStore;
+import no.sikt.oai.snapshot.RecordStoreWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves records from a mapped {@link RecordStore}. The responses handed to the parse methods are only the generation
+ * and the positions of the records in it, so the metadata of a record is decoded straight from the segment it is
+ * mapped from, and not at all for ListIdentifiers. Cursors are the same as a snapshot's, so they stay valid across
+ * generations.
+ *
+ * <p>The adapter looks for a new current generation at most once per refresh interval, when a request comes in, and
+ * keeps the generation it replaces open for the responses already fetched from it. The generation before that is
+ * closed, under a write lock that waits for the reads of the store in progress. A prefetched response from a
+ * generation that has been closed is not parsed, see {@link #canParse(String)}, so the handler fetches it again.
+ */
+public class RecordStoreAdapter extends LocalRecordsAdapter {
+
+    public static final long DEFAULT_REFRESH_SECONDS = 60;
+    public static final String GENERATION_NOT_OPEN = "Record store generation is no longer open: ";
+    private static final Logger LOG = LoggerFactory.getLogger(RecordStoreAdapter.class);
+    private static final String GENERATION_START = "{\"generation\":\"";
+    private static final String NUM_FOUND_START = "\",\"numFound\":";
+    private static final String RECORDS_START = ",\"records\":[";
+    private static final String RECORDS_END = "]}";
+    private static final int POSITION_LENGTH = 11;
+
+    private final transient ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final transient Path directory;
+    private final transient Duration refreshInterval;
+    private final transient Clock clock;
+    private final transient AtomicReference<RecordStore> current;
+    private final transient AtomicReference<RecordStore> previous;
+    private final transient AtomicLong refreshAt;
+    private final transient ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public RecordStoreAdapter(Adapter delegate, RecordStore store) {
+        this(delegate, store, Duration.ofSeconds(DEFAULT_REFRESH_SECONDS), Clock.systemUTC());
+    }
+
+    public RecordStoreAdapter(Adapter delegate, RecordStore store, Duration refreshInterval, Clock clock) {
+        super(delegate);
+        this.directory = store.getGeneration().getParent();
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+        this.current = new AtomicReference<>(store);
+        this.previous = new AtomicReference<>(store);
+        this.refreshAt = new AtomicLong(clock.millis() + refreshInterval.toMillis());
+    }
+
+    /**
+     * Returns the first records of the store, since the delegate's sample is in the upstream format.
+     */
+    @Override
+    public String getSampleRecordsList() {
+        return withStore(store -> toJson(store, store.select(EMPTY_STRING, EMPTY_STRING, EMPTY_STRING, 0,
+                                                             SAMPLE_RECORDS)));
+    }
+
+    /**
+     * Tells whether a response was fetched from a generation that is still open.
+     */
+    @Override
+    public boolean canParse(String json) {
+        lock.readLock().lock();
+        try {
+            return json.startsWith(GENERATION_START + name(current.get()) + NUM_FOUND_START)
+                   || json.startsWith(GENERATION_START + name(previous.get()) + NUM_FOUND_START);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Record parseRecordResponse(String json, String metadataPrefix, String setSpec) throws InternalOaiException {
+        lock.readLock().lock();
+        try {
+            StorePage page = mapper.readValue(json, StorePage.class);
+            return createRecord(generation(page.generation), page.records[0], metadataPrefix, true);
+        } catch (JsonProcessingException | IndexOutOfBoundsException e) {
+            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public RecordsList parseRecordsListResponse(String verb, String json, String metadataPrefix, String setSpec)
+            throws InternalOaiException {
+        lock.readLock().lock();
+        try {
+            StorePage page = mapper.readValue(json, StorePage.class);
+            RecordStore store = generation(page.generation);
+            RecordsList records = new RecordsList(page.numFound, page.records.length);
+            boolean withMetadata = !Verb.ListIdentifiers.name().equals(verb);
+            for (int position : page.records) {
+                records.add(createRecord(store, position, metadataPrefix, withMetadata));
+            }
+            return records;
+        } catch (JsonProcessingException | IndexOutOfBoundsException e) {
+            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordAsync(String identifier) {
+        return withStore(store -> {
+            OptionalInt position = store.position(getIdentifierPrefix() + identifier);
+            if (position.isEmpty()) {
+                return CompletableFuture.failedFuture(new OaiException(ID_DOES_NOT_EXIST, UNKNOWN_IDENTIFIER));
+            }
+            return CompletableFuture.completedFuture(toJson(store, new Selection(1, new int[] {position.getAsInt()})));
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordsListAsync(String from, String until, String setSpec, int startPosition,
+                                                         int pageSize) {
+        return withStore(store -> CompletableFuture.completedFuture(
+            toJson(store, store.select(from, until, setSpec, startPosition, pageSize))));
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                              String cursor, int pageSize) {
+        return withStore(store -> {
+            try {
+                return CompletableFuture.completedFuture(toJson(store, store.selectAfter(from, until, setSpec, cursor,
+                                                                                         pageSize)));
+            } catch (IllegalArgumentException e) {
+                return CompletableFuture.failedFuture(new OaiException(BAD_RESUMPTION_TOKEN,
+                                                                       INVALID_RESUMPTION_TOKEN));
+            }
+        });
+    }
+
+    /**
+     * Reads the current generation under the read lock, first opening a new one when the refresh interval has passed
+     * and the directory names another. A generation that cannot be opened is logged and the one already open is
+     * served.
+     */
+    private <T> T withStore(Function<RecordStore, T> read) {
+        long now = clock.millis();
+        long due = refreshAt.get();
+        if (now >= due && refreshAt.compareAndSet(due, now + refreshInterval.toMillis())) {
+            refresh();
+        }
+        lock.readLock().lock();
+        try {
+            return read.apply(current.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private synchronized void refresh() {
+        try {
+            Optional<String> name = RecordStoreWriter.current(directory);
+            if (name.isPresent() && !name.get().equals(name(current.get()))) {
+                RecordStore opened = RecordStore.open(directory);
+                lock.writeLock().lock();
+                try {
+                    RecordStore retired = previous.get();
+                    previous.set(current.get());
+                    current.set(opened);
+                    if (retired != previous.get()) {
+                        retired.close();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                LOG.info("Serving {} records from record store {}", opened.size(), opened.getGeneration());
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not open new generation of record store {}", directory, e);
+        }
+    }
+
+    /**
+     * Returns the generation a response was fetched from, which is the current one or the one it replaced.
+     */
+    private RecordStore generation(String name) throws InternalOaiException {
+        RecordStore store = current.get();
+        if (name.equals(name(store))) {
+            return store;
+        }
+        RecordStore replaced = previous.get();
+        if (name.equals(name(replaced))) {
+            return replaced;
+        }
+        throw new InternalOaiException(new IllegalStateException(GENERATION_NOT_OPEN + name), HTTP_UNAVAILABLE);
+    }
+
+    private static String name(RecordStore store) {
+        return store.getGeneration().getFileName().toString();
+    }
+
+    private static String toJson(RecordStore store, Selection selection) {
+        String generation = name(store);
+        StringBuilder json = new StringBuilder(GENERATION_START.length() + generation.length()
+                                               + NUM_FOUND_START.length() + Long.SIZE
+                                               + (POSITION_LENGTH + 1) * selection.positions.length);
+        json.append(GENERATION_START).append(generation).append(NUM_FOUND_START).append(selection.numFound)
+            .append(RECORDS_START);
+        for (int i = 0; i < selection.positions.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(selection.positions[i]);
+        }
+        return json.append(RECORDS_END).toString();
+    }
+
+    private static Record createRecord(RecordStore store, int position, String metadataPrefix,
+                                       boolean withMetadata) {
+        long datestamp = store.datestampAt(position);
+        String identifier = store.identifier(position);
+        return new Record(
+                withMetadata ? store.metadataBytes(position, metadataPrefix) : null,
+                store.isDeleted(position),
+                identifier,
+                datestamp == OrderedRecords.NO_DATESTAMP ? Record.NO_DATESTAMP : Record.epochSecond(datestamp),
+                store.modifiedAt(position),
+                store.setSpecs(position),
+                OrderedRecords.cursor(datestamp, identifier));
+    }
+
+    private static class StorePage {
+
+        @JsonProperty("generation")
+        /* default */ transient String generation = EMPTY_STRING;
+        @JsonProperty("numFound")
+        /* default */ transient long numFound;
+        @JsonProperty("records")
+        /* default */ transient int[] records = new int[0];
+    }
+}
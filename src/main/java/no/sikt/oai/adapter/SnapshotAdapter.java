@@ -0,0 +1,140 @@
+package no.sikt.oai.adapter;
+
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static no.sikt.oai.OaiConstants.BAD_RESUMPTION_TOKEN;
+import static no.sikt.oai.OaiConstants.ID_DOES_NOT_EXIST;
+import static no.sikt.oai.OaiConstants.INVALID_RESUMPTION_TOKEN;
+import static no.sikt.oai.OaiConstants.UNKNOWN_IDENTIFIER;
+import static no.sikt.oai.OaiProviderHandler.EMPTY_STRING;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import no.sikt.oai.Verb;
+import no.sikt.oai.data.Record;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.snapshot.Snapshot;
+import no.sikt.oai.snapshot.Snapshot.Page;
+import no.sikt.oai.snapshot.SnapshotRecord;
+
+/**
+ * Serves records from a local {@link Snapshot}. The responses handed to the parse methods are the snapshot's own NDJSON
+ * lines. Cursors are the datestamp in epoch milliseconds and the identifier of a record, so a resumption token issued
+ * by the upstream adapter is rejected as bad.
+ */
+public class SnapshotAdapter extends LocalRecordsAdapter {
+
+    private final transient ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final transient Snapshot snapshot;
+
+    public SnapshotAdapter(Adapter delegate, Snapshot snapshot) {
+        super(delegate);
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Returns the first records of the snapshot, since the delegate's sample is in the upstream format.
+     */
+    @Override
+    public String getSampleRecordsList() {
+        try {
+            return toJson(snapshot.find(EMPTY_STRING, EMPTY_STRING, EMPTY_STRING, 0, SAMPLE_RECORDS));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Record parseRecordResponse(String json, String metadataPrefix, String setSpec) throws InternalOaiException {
+        try {
+            return createRecord(mapper.readValue(json, SnapshotRecord.class), metadataPrefix, true);
+        } catch (JsonProcessingException e) {
+            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
+        }
+    }
+
+    @Override
+    public RecordsList parseRecordsListResponse(String verb, String json, String metadataPrefix, String setSpec)
+            throws InternalOaiException {
+        try {
+            SnapshotPage page = mapper.readValue(json, SnapshotPage.class);
+            RecordsList records = new RecordsList(page.numFound, page.records.size());
+            boolean withMetadata = !Verb.ListIdentifiers.name().equals(verb);
+            for (SnapshotRecord record : page.records) {
+                records.add(createRecord(record, metadataPrefix, withMetadata));
+            }
+            return records;
+        } catch (JsonProcessingException e) {
+            throw new InternalOaiException(e, HTTP_UNAVAILABLE);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordAsync(String identifier) {
+        try {
+            return snapshot.read(getIdentifierPrefix() + identifier)
+                    .map(CompletableFuture::completedFuture)
+                    .orElseGet(() -> CompletableFuture.failedFuture(
+                            new OaiException(ID_DOES_NOT_EXIST, UNKNOWN_IDENTIFIER)));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new InternalOaiException(e, HTTP_UNAVAILABLE));
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordsListAsync(String from, String until, String setSpec, int startPosition,
+                                                         int pageSize) {
+        try {
+            return CompletableFuture.completedFuture(toJson(snapshot.find(from, until, setSpec, startPosition,
+                                                                          pageSize)));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new InternalOaiException(e, HTTP_UNAVAILABLE));
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                              String cursor, int pageSize) {
+        try {
+            return CompletableFuture.completedFuture(toJson(snapshot.findAfter(from, until, setSpec, cursor,
+                                                                               pageSize)));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new OaiException(BAD_RESUMPTION_TOKEN, INVALID_RESUMPTION_TOKEN));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new InternalOaiException(e, HTTP_UNAVAILABLE));
+        }
+    }
+
+    private static String toJson(Page page) {
+        return toJson(page.numFound, page.records);
+    }
+
+    private static Record createRecord(SnapshotRecord record, String metadataPrefix, boolean withMetadata) {
+        String content = withMetadata && record.metadata != null
+                ? record.metadata.getOrDefault(metadataPrefix.toLowerCase(Locale.ROOT), EMPTY_STRING)
+                : EMPTY_STRING;
+        return new Record(
+                content,
+                record.deleted,
+                record.identifier,
+                record.datestamp == null ? Record.NO_DATESTAMP : Record.epochSecond(record.datestamp),
+                record.setSpecs == null ? List.of() : record.setSpecs,
+                Snapshot.cursor(record.datestamp, record.identifier));
+    }
+
+    private static class SnapshotPage {
+
+        @JsonProperty("numFound")
+        /* default */ transient long numFound;
+        @JsonProperty("records")
+        /* default */ transient List<SnapshotRecord> records = List.of();
+    }
+}
@@ -0,0 +1,149 @@
+package no.sikt.oai.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import nva.commons.core.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Short-lived store of upstream pages fetched ahead of time, keyed by the resumption token a harvester will send
+ * next. A Lambda container is frozen between invocations, so a prefetch started after one response may finish
+ * while the next request is being handled; {@link #take(String)} then waits for the call already in flight rather
+ * than issuing a second one.
+ */
+public class PrefetchCache {
+
+    public static final long DEFAULT_TTL_SECONDS = 60;
+    public static final int MAX_ENTRIES = 32;
+    public static final int PREFETCH_THREADS = 2;
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchCache.class);
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Executor executor;
+    private final Map<String, Prefetch> entries = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Prefetch> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PrefetchCache(Environment environment) {
+        this(environment.readEnvOpt(OaiConstants.PREFETCH_ENABLED_ENV).map(Boolean::parseBoolean).orElse(false),
+             Duration.ofSeconds(environment.readEnvOpt(OaiConstants.PREFETCH_TTL_SECONDS_ENV)
+                                    .map(Long::parseLong)
+                                    .orElse(DEFAULT_TTL_SECONDS)),
+             Clock.systemUTC(),
+             Executors.newFixedThreadPool(PREFETCH_THREADS, PrefetchCache::daemonThread));
+    }
+
+    public PrefetchCache(boolean enabled, Duration ttl, Clock clock, Executor executor) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.clock = clock;
+        this.executor = executor;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts loading the page that the given resumption token points to.
+     *
+     * @param resumptionToken token the harvester is expected to send next
+     * @param loader          fetches the upstream page
+     */
+    public void prefetch(String resumptionToken, PageLoader loader) {
+        if (!enabled) {
+            return;
+        }
+        CompletableFuture<String> page = CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader.load();
+            } catch (OaiException | InternalOaiException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        synchronized (entries) {
+            entries.put(resumptionToken, new Prefetch(page, clock.instant().plus(ttl)));
+        }
+    }
+
+    /**
+     * Removes and returns the prefetched page for the token, waiting for it if the fetch is still running.
+     *
+     * @param resumptionToken token sent by the harvester
+     * @return the upstream page, or empty when nothing usable was prefetched
+     */
+    public Optional<String> take(String resumptionToken) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Prefetch entry;
+        synchronized (entries) {
+            entry = entries.remove(resumptionToken);
+        }
+        if (entry == null || !clock.instant().isBefore(entry.expiresAt)) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        try {
+            String page = entry.page.join();
+            hits.incrementAndGet();
+            return Optional.of(page);
+        } catch (CompletionException | CancellationException e) {
+            LOG.debug("Prefetch failed, fetching page again", e);
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static Thread daemonThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "records-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @FunctionalInterface
+    public interface PageLoader {
+
+        String load() throws OaiException, InternalOaiException;
+    }
+
+    private static class Prefetch {
+
+        /* default */ final CompletableFuture<String> page;
+        /* default */ final Instant expiresAt;
+
+        /* default */ Prefetch(CompletableFuture<String> page, Instant expiresAt) {
+            this.page = page;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
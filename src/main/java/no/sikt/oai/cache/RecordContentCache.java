@@ -0,0 +1,168 @@
+package no.sikt.oai.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import no.sikt.oai.OaiConstants;
+import nva.commons.core.Environment;
+
+/**
+ * Bounded LRU cache of rendered metadata fragments. Entries are keyed by record identifier and metadataPrefix and
+ * remember the modified date they were rendered from, so a lookup with a newer date invalidates the entry instead of
+ * serving outdated metadata. Fragments are held as UTF-8, the form records keep them in, so a record rendered from
+ * the cache shares the array. The bound is on the estimated heap size of the fragments, not on entry count.
+ */
+public class RecordContentCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long invalidations;
+    private long evictions;
+
+    public RecordContentCache(Environment environment) {
+        this(environment.readEnvOpt(OaiConstants.RECORD_CACHE_MAX_BYTES_ENV)
+                 .map(Long::parseLong)
+                 .orElse(DEFAULT_MAX_BYTES));
+    }
+
+    public RecordContentCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached fragment for the record, rendering and caching it when absent or rendered from another
+     * modified date.
+     *
+     * @param identifier     record identifier
+     * @param metadataPrefix metadata format of the fragment
+     * @param lastUpdated    modified date of the record in epoch milliseconds
+     * @param renderer       renders the fragment on a miss
+     * @return the rendered fragment as UTF-8, which must not be changed
+     */
+    public byte[] computeIfAbsent(String identifier, String metadataPrefix, long lastUpdated,
+                                  Supplier<byte[]> renderer) {
+        Key key = new Key(identifier, metadataPrefix.toLowerCase(Locale.ROOT));
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastUpdated == lastUpdated) {
+                hits++;
+                return entry.content;
+            }
+            if (entry != null) {
+                invalidations++;
+                remove(key);
+            }
+            misses++;
+        }
+        byte[] content = renderer.get();
+        put(key, new Entry(content, lastUpdated));
+        return content;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getInvalidationCount() {
+        return invalidations;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "RecordContentCache[entries=%d, bytes=%d, hits=%d, misses=%d, "
+                                          + "invalidations=%d, evictions=%d, hitRate=%.3f]",
+                             entries.size(), currentBytes, hits, misses, invalidations, evictions, getHitRate());
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.weight > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            currentBytes -= previous.weight;
+        }
+        currentBytes += entry.weight;
+        Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+        while (currentBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            currentBytes -= leastRecentlyUsed.next().weight;
+            leastRecentlyUsed.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            currentBytes -= removed.weight;
+        }
+    }
+
+    private static final class Key {
+
+        private final String identifier;
+        private final String metadataPrefix;
+
+        /* default */ Key(String identifier, String metadataPrefix) {
+            this.identifier = identifier;
+            this.metadataPrefix = metadataPrefix;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return identifier.equals(other.identifier) && metadataPrefix.equals(other.metadataPrefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identifier, metadataPrefix);
+        }
+    }
+
+    private static final class Entry {
+
+        /* default */ final byte[] content;
+        /* default */ final long lastUpdated;
+        /* default */ final long weight;
+
+        @SuppressWarnings("PMD.ArrayIsStoredDirectly")
+        /* default */ Entry(byte[] content, long lastUpdated) {
+            this.content = content;
+            this.lastUpdated = lastUpdated;
+            this.weight = (long) content.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
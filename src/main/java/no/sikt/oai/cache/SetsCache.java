@@ -0,0 +1,171 @@
+package no.sikt.oai.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.adapter.Adapter.OaiSet;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import nva.commons.core.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-container cache of the upstream sets list. Entries live for a configurable TTL and are refreshed in the
+ * background once {@link #REFRESH_AHEAD_FRACTION} of the TTL has passed, so a warm container never waits for the
+ * sets endpoint. When a reload fails the previous list may be served instead of the error.
+ */
+public class SetsCache {
+
+    public static final long DEFAULT_TTL_SECONDS = 300;
+    public static final double REFRESH_AHEAD_FRACTION = 0.8;
+    private static final Logger LOG = LoggerFactory.getLogger(SetsCache.class);
+
+    private final SetsLoader loader;
+    private final Duration ttl;
+    private final Duration refreshAfter;
+    private final boolean serveStaleOnError;
+    private final Clock clock;
+    private final Executor refreshExecutor;
+    private final AtomicReference<Entry> entry = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    public SetsCache(SetsLoader loader, Environment environment) {
+        this(loader,
+             Duration.ofSeconds(environment.readEnvOpt(OaiConstants.SETS_CACHE_TTL_SECONDS_ENV)
+                                    .map(Long::parseLong)
+                                    .orElse(DEFAULT_TTL_SECONDS)),
+             environment.readEnvOpt(OaiConstants.SETS_CACHE_SERVE_STALE_ENV)
+                 .map(Boolean::parseBoolean)
+                 .orElse(true),
+             Clock.systemUTC(),
+             Executors.newSingleThreadExecutor(SetsCache::daemonThread));
+    }
+
+    public SetsCache(SetsLoader loader, Duration ttl, boolean serveStaleOnError, Clock clock,
+                     Executor refreshExecutor) {
+        this.loader = loader;
+        this.ttl = ttl;
+        this.refreshAfter = Duration.ofMillis((long) (ttl.toMillis() * REFRESH_AHEAD_FRACTION));
+        this.serveStaleOnError = serveStaleOnError;
+        this.clock = clock;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns the cached sets list, loading it from upstream when absent or expired.
+     *
+     * @return the sets list
+     * @throws OaiException         when upstream answers with an error and no stale list may be served
+     * @throws InternalOaiException when upstream cannot be reached and no stale list may be served
+     */
+    public List<OaiSet> get() throws OaiException, InternalOaiException {
+        Entry current = entry.get();
+        Instant now = clock.instant();
+        if (current != null && now.isBefore(current.expiresAt)) {
+            hits.incrementAndGet();
+            if (!now.isBefore(current.refreshAt)) {
+                scheduleRefresh();
+            }
+            return current.sets;
+        }
+        misses.incrementAndGet();
+        return loadOrServeStale(current);
+    }
+
+    /**
+     * Starts loading the sets list in the background, unless a load is already running, for callers that must not
+     * wait for upstream. A request that comes before the load has finished loads the list itself.
+     */
+    public void preload() {
+        scheduleRefresh();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getStaleServedCount() {
+        return staleServed.get();
+    }
+
+    private synchronized List<OaiSet> loadOrServeStale(Entry previous) throws OaiException, InternalOaiException {
+        Entry current = entry.get();
+        if (current != previous && current != null && clock.instant().isBefore(current.expiresAt)) {
+            return current.sets;
+        }
+        try {
+            return load().sets;
+        } catch (OaiException | InternalOaiException e) {
+            if (serveStaleOnError && current != null) {
+                LOG.warn("Serving stale sets list after failed reload", e);
+                staleServed.incrementAndGet();
+                return current.sets;
+            }
+            throw e;
+        }
+    }
+
+    private Entry load() throws OaiException, InternalOaiException {
+        List<OaiSet> sets = List.copyOf(loader.load());
+        Instant loadedAt = clock.instant();
+        Entry loaded = new Entry(sets, loadedAt.plus(refreshAfter), loadedAt.plus(ttl));
+        entry.set(loaded);
+        return loaded;
+    }
+
+    private void scheduleRefresh() {
+        if (refreshing.compareAndSet(false, true)) {
+            refreshExecutor.execute(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        try {
+            load();
+        } catch (OaiException | InternalOaiException e) {
+            LOG.warn("Background refresh of sets list failed", e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private static Thread daemonThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "sets-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @FunctionalInterface
+    public interface SetsLoader {
+
+        List<OaiSet> load() throws OaiException, InternalOaiException;
+    }
+
+    private static class Entry {
+
+        /* default */ final List<OaiSet> sets;
+        /* default */ final Instant refreshAt;
+        /* default */ final Instant expiresAt;
+
+        /* default */ Entry(List<OaiSet> sets, Instant refreshAt, Instant expiresAt) {
+            this.sets = sets;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
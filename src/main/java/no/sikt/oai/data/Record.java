@@ -1,27 +1,111 @@
 package no.sikt.oai.data;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-public class Record {
+/**
+ * An immutable record of a page, kept small because a page holds hundreds of them. The datestamp is held as epoch
+ * seconds, the precision of OAI-PMH datestamps, the metadata as UTF-8 bytes, and the setSpecs list is shared by every
+ * record in the same sets, which for most repositories is {@code "all"} and one institution. The upstream's last
+ * modification is held apart from the datestamp in epoch milliseconds, since the validators of a conditional GET
+ * must change with every edit, including edits within the same second or, for day-granular repositories, day.
+ */
+public final class Record {
 
-    public final transient String content;
-    public final transient boolean deleted;
-    public final transient String identifier;
-    public final transient Date lastUpdateDate;
+    public static final long NO_DATESTAMP = Long.MIN_VALUE;
+    /**
+     * Bounds the shared setSpecs lists, so a repository with unusually many combinations of sets still gets correct
+     * records, only without sharing beyond the first ones.
+     */
+    public static final int MAX_SHARED_SET_SPECS = 4096;
 
-    public final transient List<String> setSpecs;
+    private static final byte[] NO_CONTENT = new byte[0];
+    private static final Map<List<String>, List<String>> SHARED_SET_SPECS = new ConcurrentHashMap<>();
 
-    public Record(String content, boolean deleted, String identifier, Date lastUpdateDate, List<String> setSpecs) {
-        this.content = content;
+    private final byte[] content;
+    private final boolean deleted;
+    private final String identifier;
+    private final long datestamp;
+    private final long modified;
+    private final List<String> setSpecs;
+    private final String cursor;
+
+    public Record(String content, boolean deleted, String identifier, long datestamp, List<String> setSpecs) {
+        this(content, deleted, identifier, datestamp, setSpecs, null);
+    }
+
+    public Record(String content, boolean deleted, String identifier, long datestamp, List<String> setSpecs,
+                  String cursor) {
+        this(encode(content), deleted, identifier, datestamp, setSpecs, cursor);
+    }
+
+    /**
+     * Creates a record with the upstream sort key it was returned under.
+     *
+     * @param content   metadata as UTF-8, which is not copied and must not be changed afterwards, or null for none
+     * @param datestamp epoch seconds, or {@link #NO_DATESTAMP}
+     * @param cursor    the upstream's modified date and identifier of the record, as accepted by
+     *                  {@link no.sikt.oai.adapter.Adapter#getRecordsListAfter}
+     */
+    public Record(byte[] content, boolean deleted, String identifier, long datestamp, List<String> setSpecs,
+                  String cursor) {
+        this(content, deleted, identifier, datestamp,
+             datestamp == NO_DATESTAMP ? NO_DATESTAMP : TimeUnit.SECONDS.toMillis(datestamp), setSpecs, cursor);
+    }
+
+    /**
+     * Creates a record whose upstream keeps its last modification more precisely than the datestamp.
+     *
+     * @param content   metadata as UTF-8, which is not copied and must not be changed afterwards, or null for none
+     * @param datestamp epoch seconds, or {@link #NO_DATESTAMP}
+     * @param modified  last modification in epoch milliseconds, or {@link #NO_DATESTAMP}
+     * @param cursor    the upstream's modified date and identifier of the record, as accepted by
+     *                  {@link no.sikt.oai.adapter.Adapter#getRecordsListAfter}
+     */
+    @SuppressWarnings("PMD.ArrayIsStoredDirectly")
+    public Record(byte[] content, boolean deleted, String identifier, long datestamp, long modified,
+                  List<String> setSpecs, String cursor) {
+        this.content = content == null || content.length == 0 ? NO_CONTENT : content;
         this.deleted = deleted;
         this.identifier = identifier;
-        this.lastUpdateDate = lastUpdateDate;
-        this.setSpecs = setSpecs;
+        this.datestamp = datestamp;
+        this.modified = modified;
+        this.setSpecs = share(setSpecs);
+        this.cursor = cursor;
+    }
+
+    /**
+     * Converts epoch milliseconds to the epoch seconds of a record datestamp.
+     *
+     * @param epochMilli epoch milliseconds, or {@link #NO_DATESTAMP}
+     * @return epoch seconds, or {@link #NO_DATESTAMP}
+     */
+    public static long epochSecond(long epochMilli) {
+        return epochMilli == NO_DATESTAMP ? NO_DATESTAMP : Math.floorDiv(epochMilli, TimeUnit.SECONDS.toMillis(1));
     }
 
+    /**
+     * Decodes the metadata, which creates a new string on every call.
+     *
+     * @return the metadata, empty for records listed without it
+     */
     public String getContent() {
-        return content;
+        return new String(content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns a read-only view of the metadata, for writers that decode it into a buffer of their own rather than into
+     * a new string.
+     *
+     * @return the metadata as UTF-8, empty for records listed without it
+     */
+    public ByteBuffer getContentBytes() {
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
     }
 
     public boolean isDeleted() {
@@ -32,11 +116,67 @@ public class Record {
         return identifier;
     }
 
+    /**
+     * Returns the datestamp.
+     *
+     * @return epoch seconds, or {@link #NO_DATESTAMP} when the upstream gave none
+     */
+    public long getDatestamp() {
+        return datestamp;
+    }
+
+    /**
+     * Returns the datestamp as a new {@link Date}.
+     *
+     * @return the datestamp, or null when the upstream gave none
+     */
     public Date getLastUpdateDate() {
-        return lastUpdateDate;
+        return datestamp == NO_DATESTAMP ? null : new Date(TimeUnit.SECONDS.toMillis(datestamp));
+    }
+
+    /**
+     * Returns the last modification, which the ETag and Last-Modified of the record are made from.
+     *
+     * @return epoch milliseconds, or {@link #NO_DATESTAMP} when the upstream gave none
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    /**
+     * Returns the last modification as a new {@link Date}.
+     *
+     * @return the last modification, or null when the upstream gave none
+     */
+    public Date getModifiedDate() {
+        return modified == NO_DATESTAMP ? null : new Date(modified);
     }
 
     public List<String> getSetSpecs() {
         return setSpecs;
     }
-}
\ No newline at end of file
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    private static byte[] encode(String content) {
+        return content == null || content.isEmpty() ? NO_CONTENT : content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> share(List<String> setSpecs) {
+        if (setSpecs == null || setSpecs.isEmpty()) {
+            return List.of();
+        }
+        List<String> shared = SHARED_SET_SPECS.get(setSpecs);
+        if (shared != null) {
+            return shared;
+        }
+        List<String> copy = List.copyOf(setSpecs);
+        if (SHARED_SET_SPECS.size() >= MAX_SHARED_SET_SPECS) {
+            return copy;
+        }
+        shared = SHARED_SET_SPECS.putIfAbsent(copy, copy);
+        return shared == null ? copy : shared;
+    }
+}
@@ -1,17 +1,79 @@
 package no.sikt.oai.data;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-public class RecordsList extends ArrayList<Record> {
+/**
+ * The records of one page and the size of the complete list. Records are held in an array sized for the page, so a
+ * list filled to its expected size holds no spare capacity.
+ */
+public class RecordsList implements Iterable<Record> {
+
+    private static final int DEFAULT_CAPACITY = 10;
 
     private final long numFound;
+    private Record[] records;
+    private int size;
 
     public RecordsList(long numFound) {
-        super();
+        this(numFound, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty list for a page of the given size.
+     *
+     * @param numFound size of the complete list
+     * @param capacity number of records expected in the page
+     */
+    public RecordsList(long numFound, int capacity) {
         this.numFound = numFound;
+        this.records = new Record[Math.max(capacity, 1)];
     }
 
     public long getNumFound() {
         return numFound;
     }
+
+    public void add(Record record) {
+        if (size == records.length) {
+            records = Arrays.copyOf(records, size * 2);
+        }
+        records[size++] = record;
+    }
+
+    public Record get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return records[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Record next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return records[next++];
+            }
+        };
+    }
 }
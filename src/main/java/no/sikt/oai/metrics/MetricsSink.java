@@ -0,0 +1,16 @@
+package no.sikt.oai.metrics;
+
+/**
+ * Receives one metrics log line per request.
+ */
+@FunctionalInterface
+public interface MetricsSink {
+
+    /**
+     * Writes to standard output, where the Lambda runtime passes each line to CloudWatch Logs unchanged. CloudWatch
+     * extracts the metrics from lines in Embedded Metric Format.
+     */
+    MetricsSink STANDARD_OUT = System.out::println;
+
+    void emit(String line);
+}
@@ -0,0 +1,228 @@
+package no.sikt.oai.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time spent in each phase of one request, written as a CloudWatch Embedded Metric Format (EMF) log line. The
+ * handler calls {@link #mark(Phase)} when a phase ends, which charges the time since the previous mark to that phase.
+ * Phases that interleave, like parsing the upstream page and rendering its records, are timed together and split with
+ * {@link #move(Phase, Phase, long)}.
+ *
+ * <p>Dimensions are only set from validated request values, so a harvester cannot create new metric series by sending
+ * arbitrary arguments. Dimensions that do not apply to a request are {@value #NONE}. The page size is written as a
+ * property only, since an adaptive page size can take any value between its minimum and maximum.
+ */
+public class RequestMetrics {
+
+    public static final String NONE = "none";
+    public static final String DEFAULT_NAMESPACE = "OaiProvider";
+    public static final String VERB = "Verb";
+    public static final String METADATA_PREFIX = "MetadataPrefix";
+    public static final String SET = "Set";
+    public static final String PAGE_SIZE = "PageSize";
+    public static final String TOTAL = "Total";
+    public static final String RECORD_COUNT = "RecordCount";
+    public static final String ERROR_CODE = "ErrorCode";
+    public static final String BYTES_SAVED = "BytesSaved";
+    public static final String CONTENT_CACHE_HITS = "ContentCacheHits";
+    public static final String CONTENT_CACHE_MISSES = "ContentCacheMisses";
+    public static final String CONTENT_CACHE_HIT_RATE = "ContentCacheHitRate";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    public enum Phase {
+        VALIDATION("Validation"),
+        SETS_LOOKUP("SetsLookup"),
+        UPSTREAM_FETCH("UpstreamFetch"),
+        PARSE("Parse"),
+        RENDER("Render"),
+        SERIALIZATION("Serialization");
+
+        public final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private final String namespace;
+    private final long timestamp;
+    private final long startNanos;
+    private final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+    private long lastMark;
+    private String verb = NONE;
+    private String metadataPrefix = NONE;
+    private String set = NONE;
+    private String pageSize = NONE;
+    private int recordCount;
+    private long bytesSaved;
+    private String errorCode;
+    private boolean contentCacheReported;
+    private long contentCacheHits;
+    private long contentCacheMisses;
+    private double contentCacheHitRate;
+
+    public RequestMetrics(String namespace) {
+        this.namespace = namespace;
+        this.timestamp = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.lastMark = startNanos;
+    }
+
+    /**
+     * Ends a phase, charging it with the time since the previous mark.
+     *
+     * @param phase the phase that just ended
+     */
+    public void mark(Phase phase) {
+        long now = System.nanoTime();
+        add(phase, now - lastMark);
+        lastMark = now;
+    }
+
+    public void add(Phase phase, long elapsedNanos) {
+        nanos.merge(phase, elapsedNanos, Long::sum);
+    }
+
+    /**
+     * Moves time already charged to one phase over to another.
+     *
+     * @param from         phase the time was charged to
+     * @param to           phase the time was spent in
+     * @param elapsedNanos time to move
+     */
+    public void move(Phase from, Phase to, long elapsedNanos) {
+        add(from, -elapsedNanos);
+        add(to, elapsedNanos);
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.getOrDefault(phase, 0L);
+    }
+
+    public void setVerb(String verb) {
+        this.verb = verb;
+    }
+
+    public void setMetadataPrefix(String metadataPrefix) {
+        this.metadataPrefix = metadataPrefix;
+    }
+
+    public void setSet(String set) {
+        this.set = set.isEmpty() ? NONE : set;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = Integer.toString(pageSize);
+    }
+
+    public void setRecordCount(int recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Records how many bytes compressing the response saved, before the body is base64 encoded for API Gateway.
+     *
+     * @param bytesSaved size of the response minus its compressed size
+     */
+    public void setBytesSaved(long bytesSaved) {
+        this.bytesSaved = bytesSaved;
+    }
+
+    /**
+     * Records the lookups this request made in the adapter's cache of rendered metadata. The metrics are only written
+     * for adapters that have the cache.
+     *
+     * @param hits    lookups served from the cache
+     * @param misses  lookups that rendered the metadata
+     * @param hitRate share of all lookups since the container started that were served from the cache
+     */
+    public void setContentCache(long hits, long misses, double hitRate) {
+        this.contentCacheReported = true;
+        this.contentCacheHits = hits;
+        this.contentCacheMisses = misses;
+        this.contentCacheHitRate = hitRate;
+    }
+
+    /**
+     * Records the OAI-PMH error returned to the harvester. It is written as a property of the log line, not as a
+     * dimension.
+     *
+     * @param errorCode OAI-PMH error code
+     */
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * Writes the metrics as one line of Embedded Metric Format JSON, with the time since construction as
+     * {@value #TOTAL}.
+     *
+     * @return JSON without line breaks
+     */
+    public String toEmf() {
+        long total = System.nanoTime() - startNanos;
+        StringBuilder json = new StringBuilder(768);
+        json.append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+            .append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        appendString(json, namespace);
+        json.append(",\"Dimensions\":[[\"" + VERB + "\",\"" + METADATA_PREFIX + "\",\"" + SET + "\"]],\"Metrics\":[");
+        for (Phase phase : Phase.values()) {
+            appendMetricDefinition(json, phase.metricName, "Milliseconds").append(',');
+        }
+        appendMetricDefinition(json, TOTAL, "Milliseconds").append(',');
+        appendMetricDefinition(json, RECORD_COUNT, "Count").append(',');
+        appendMetricDefinition(json, BYTES_SAVED, "Bytes");
+        if (contentCacheReported) {
+            appendMetricDefinition(json.append(','), CONTENT_CACHE_HITS, "Count").append(',');
+            appendMetricDefinition(json, CONTENT_CACHE_MISSES, "Count").append(',');
+            appendMetricDefinition(json, CONTENT_CACHE_HIT_RATE, "None");
+        }
+        json.append("]}]}");
+        appendProperty(json, VERB, verb);
+        appendProperty(json, METADATA_PREFIX, metadataPrefix);
+        appendProperty(json, SET, set);
+        appendProperty(json, PAGE_SIZE, pageSize);
+        if (errorCode != null) {
+            appendProperty(json, ERROR_CODE, errorCode);
+        }
+        for (Phase phase : Phase.values()) {
+            json.append(",\"").append(phase.metricName).append("\":").append(getNanos(phase) / NANOS_PER_MILLI);
+        }
+        json.append(",\"" + TOTAL + "\":").append(total / NANOS_PER_MILLI)
+            .append(",\"" + RECORD_COUNT + "\":").append(recordCount)
+            .append(",\"" + BYTES_SAVED + "\":").append(bytesSaved);
+        if (contentCacheReported) {
+            json.append(",\"" + CONTENT_CACHE_HITS + "\":").append(contentCacheHits)
+                .append(",\"" + CONTENT_CACHE_MISSES + "\":").append(contentCacheMisses)
+                .append(",\"" + CONTENT_CACHE_HIT_RATE + "\":").append(contentCacheHitRate);
+        }
+        json.append('}');
+        return json.toString();
+    }
+
+    /* default */ static StringBuilder appendMetricDefinition(StringBuilder json, String name, String unit) {
+        return json.append("{\"Name\":\"").append(name).append("\",\"Unit\":\"").append(unit).append("\"}");
+    }
+
+    /* default */ static void appendProperty(StringBuilder json, String name, String value) {
+        json.append(",\"").append(name).append("\":");
+        appendString(json, value);
+    }
+
+    /* default */ static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,141 @@
+package no.sikt.oai.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Throughput of one change sync, written as a CloudWatch Embedded Metric Format (EMF) log line like
+ * {@link RequestMetrics}. The sync counts every record it handles under a {@link Count} and calls {@link #mark(Phase)}
+ * when a phase ends. {@value #HIGH_WATER_MARK_AGE} is the time from the newest datestamp in the mirror to when the
+ * metrics are written, so an alarm on it fires both when syncs fail and when upstream stops changing.
+ */
+public class SyncMetrics {
+
+    public static final String OPERATION = "Operation";
+    public static final String CHANGE_SYNC = "ChangeSync";
+    public static final String RECORDS_PER_SECOND = "RecordsPerSecond";
+    public static final String HIGH_WATER_MARK_AGE = "HighWaterMarkAge";
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    public enum Count {
+        FETCHED("Fetched"),
+        UPSERTED("Upserted"),
+        DELETED("Deleted"),
+        UNCHANGED("Unchanged"),
+        COPIED("Copied");
+
+        public final String metricName;
+
+        Count(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    public enum Phase {
+        FETCH("Fetch"),
+        MERGE("Merge");
+
+        public final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private final String namespace;
+    private final long timestamp;
+    private final long startNanos;
+    private final Map<Count, Long> counts = new EnumMap<>(Count.class);
+    private final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+    private long lastMark;
+    private long highWaterMark;
+    private boolean hasHighWaterMark;
+
+    public SyncMetrics(String namespace) {
+        this.namespace = namespace;
+        this.timestamp = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.lastMark = startNanos;
+    }
+
+    public void increment(Count count) {
+        add(count, 1);
+    }
+
+    public void add(Count count, long records) {
+        counts.merge(count, records, Long::sum);
+    }
+
+    public long getCount(Count count) {
+        return counts.getOrDefault(count, 0L);
+    }
+
+    /**
+     * Ends a phase, charging it with the time since the previous mark.
+     *
+     * @param phase the phase that just ended
+     */
+    public void mark(Phase phase) {
+        long now = System.nanoTime();
+        nanos.merge(phase, now - lastMark, Long::sum);
+        lastMark = now;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.getOrDefault(phase, 0L);
+    }
+
+    /**
+     * Records the newest datestamp in the mirror after the sync.
+     *
+     * @param highWaterMark datestamp in epoch milliseconds
+     */
+    public void setHighWaterMark(long highWaterMark) {
+        this.highWaterMark = highWaterMark;
+        this.hasHighWaterMark = true;
+    }
+
+    /**
+     * Writes the metrics as one line of Embedded Metric Format JSON, with the time since construction as
+     * {@value RequestMetrics#TOTAL} and the records fetched per second of it as {@value #RECORDS_PER_SECOND}.
+     *
+     * @return JSON without line breaks
+     */
+    public String toEmf() {
+        long total = System.nanoTime() - startNanos;
+        StringBuilder json = new StringBuilder(768);
+        json.append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+            .append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        RequestMetrics.appendString(json, namespace);
+        json.append(",\"Dimensions\":[[\"" + OPERATION + "\"]],\"Metrics\":[");
+        for (Count count : Count.values()) {
+            RequestMetrics.appendMetricDefinition(json, count.metricName, "Count").append(',');
+        }
+        for (Phase phase : Phase.values()) {
+            RequestMetrics.appendMetricDefinition(json, phase.metricName, "Milliseconds").append(',');
+        }
+        RequestMetrics.appendMetricDefinition(json, RequestMetrics.TOTAL, "Milliseconds").append(',');
+        RequestMetrics.appendMetricDefinition(json, RECORDS_PER_SECOND, "Count/Second");
+        if (hasHighWaterMark) {
+            RequestMetrics.appendMetricDefinition(json.append(','), HIGH_WATER_MARK_AGE, "Seconds");
+        }
+        json.append("]}]}");
+        RequestMetrics.appendProperty(json, OPERATION, CHANGE_SYNC);
+        for (Count count : Count.values()) {
+            json.append(",\"").append(count.metricName).append("\":").append(getCount(count));
+        }
+        for (Phase phase : Phase.values()) {
+            json.append(",\"").append(phase.metricName).append("\":").append(getNanos(phase) / NANOS_PER_MILLI);
+        }
+        json.append(",\"" + RequestMetrics.TOTAL + "\":").append(total / NANOS_PER_MILLI)
+            .append(",\"" + RECORDS_PER_SECOND + "\":")
+            .append(total == 0 ? 0.0 : getCount(Count.FETCHED) * NANOS_PER_SECOND / total);
+        if (hasHighWaterMark) {
+            json.append(",\"" + HIGH_WATER_MARK_AGE + "\":")
+                .append((System.currentTimeMillis() - highWaterMark) / MILLIS_PER_SECOND);
+        }
+        return json.append('}').toString();
+    }
+}
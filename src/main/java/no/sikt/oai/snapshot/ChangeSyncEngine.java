@@ -0,0 +1,154 @@
+package no.sikt.oai.snapshot;
+
+import static no.sikt.oai.OaiProviderHandler.EMPTY_STRING;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import no.sikt.oai.TimeUtils;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.metrics.SyncMetrics;
+import no.sikt.oai.metrics.SyncMetrics.Count;
+import no.sikt.oai.metrics.SyncMetrics.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a {@link RecordStore} current with its repository by fetching only the records modified since the last sync.
+ *
+ * <p>The high-water mark is the newest datestamp in the current generation, so it is checkpointed with the records
+ * themselves when a generation is committed, and a sync that fails leaves both as they were. Each sync searches from
+ * the high-water mark less an overlap, which catches records whose datestamps were set behind the upstream's clock,
+ * and writes the changed records to a generation started by {@link RecordStoreWriter#update(Path)}, which keeps the
+ * metadata of the other records in the segments it is already in. Records the upstream reports as deleted are kept as
+ * tombstones, unless the repository does not keep deleted records, in which case they are removed. A record fetched
+ * again counts as unchanged only when its last modification, kept to the millisecond, is the one already stored. A
+ * directory whose current generation is in an older format gets all of the repository again. When nothing changed no
+ * generation is committed. The current generation is read through streams, not mapped, so the sync holds nothing of
+ * it once it returns.
+ */
+public class ChangeSyncEngine {
+
+    public static final long DEFAULT_OVERLAP_MINUTES = 10;
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeSyncEngine.class);
+    private static final String NO_DELETED_RECORDS = "no";
+    private static final String DAY_GRANULARITY = "YYYY-MM-DD";
+
+    private final Adapter source;
+    private final Path directory;
+    private final int pageSize;
+    private final Duration overlap;
+
+    public ChangeSyncEngine(Adapter source, Path directory, int pageSize, Duration overlap) {
+        this.source = source;
+        this.directory = directory;
+        this.pageSize = pageSize;
+        this.overlap = overlap;
+    }
+
+    /**
+     * Syncs the record store with the repository. A directory without a current generation gets all of the
+     * repository.
+     *
+     * @param metrics where the records handled and the time spent are counted
+     * @return number of records in the current generation after the sync
+     * @throws OaiException         if the upstream search does not succeed
+     * @throws InternalOaiException if the upstream cannot be reached or answers with something unexpected
+     * @throws IOException          if the record store cannot be read or written
+     */
+    public int sync(SyncMetrics metrics) throws OaiException, InternalOaiException, IOException {
+        boolean mirrored = RecordStoreWriter.canUpdate(directory);
+        RecordStoreWriter writer = mirrored ? RecordStoreWriter.update(directory) : new RecordStoreWriter(directory);
+        try (Changes changes = new Changes(writer, keepsDeletedRecords(), metrics)) {
+            long highWaterMark = writer.getNewestDatestamp();
+            String from = highWaterMark == OrderedRecords.NO_DATESTAMP
+                    ? EMPTY_STRING
+                    : TimeUtils.date2String(new Date(highWaterMark - overlap.toMillis()), dateFormat());
+            int pages = new SnapshotExporter(source, pageSize).copy(from, changes);
+            metrics.mark(Phase.FETCH);
+            if (mirrored && changes.isEmpty()) {
+                LOG.info("No changes since {} in {} pages", from, pages);
+                metrics.setHighWaterMark(highWaterMark);
+                return writer.getRecordCount();
+            }
+            metrics.add(Count.COPIED, writer.getKeptCount());
+            changes.commit();
+            metrics.mark(Phase.MERGE);
+            long newHighWaterMark = writer.getNewestDatestamp();
+            if (newHighWaterMark != OrderedRecords.NO_DATESTAMP) {
+                metrics.setHighWaterMark(newHighWaterMark);
+            }
+            LOG.info("Synced {} upserts and {} deletions since {} in {} pages into {} records of {}",
+                     metrics.getCount(Count.UPSERTED), metrics.getCount(Count.DELETED), from, pages,
+                     writer.getRecordCount(), writer.getGeneration());
+            return writer.getRecordCount();
+        }
+    }
+
+    private boolean keepsDeletedRecords() {
+        return !NO_DELETED_RECORDS.equals(source.getDeletedRecord());
+    }
+
+    private String dateFormat() {
+        return DAY_GRANULARITY.equals(source.getDateGranularity())
+                ? TimeUtils.FORMAT_ZULU_SHORT
+                : TimeUtils.FORMAT_ZULU_LONG;
+    }
+
+    /**
+     * Writes the records fetched from upstream to the new generation, where they replace their previous versions. A
+     * record fetched again only because of the overlap is left as it is.
+     */
+    private static class Changes implements SnapshotSink {
+
+        private final RecordStoreWriter writer;
+        private final boolean keepDeleted;
+        private final SyncMetrics metrics;
+        private boolean changed;
+
+        /* default */ Changes(RecordStoreWriter writer, boolean keepDeleted, SyncMetrics metrics) {
+            this.writer = writer;
+            this.keepDeleted = keepDeleted;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void write(SnapshotRecord record) throws IOException {
+            metrics.increment(Count.FETCHED);
+            if (writer.isKept(record)) {
+                metrics.increment(Count.UNCHANGED);
+            } else if (record.deleted && !keepDeleted) {
+                if (writer.remove(record.identifier)) {
+                    changed = true;
+                    metrics.increment(Count.DELETED);
+                }
+            } else {
+                changed = true;
+                writer.write(record);
+                metrics.increment(record.deleted ? Count.DELETED : Count.UPSERTED);
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            writer.commit();
+        }
+
+        @Override
+        public int getRecordCount() {
+            return writer.getRecordCount();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        /* default */ boolean isEmpty() {
+            return !changed;
+        }
+    }
+}
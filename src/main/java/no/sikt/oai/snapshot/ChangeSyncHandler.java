@@ -0,0 +1,67 @@
+package no.sikt.oai.snapshot;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.OaiProviderHandler;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.metrics.MetricsSink;
+import no.sikt.oai.metrics.RequestMetrics;
+import no.sikt.oai.metrics.SyncMetrics;
+import nva.commons.core.Environment;
+import nva.commons.core.JacocoGenerated;
+
+/**
+ * Scheduled function that syncs the record store at RECORD_STORE_PATH with the repository named in the environment,
+ * fetching only what changed since the previous sync, and writes the throughput of every sync as one metrics line.
+ */
+public class ChangeSyncHandler implements RequestHandler<Object, String> {
+
+    public static final String SYNCED = "Synced %s, which now holds %d records";
+
+    private final ChangeSyncEngine engine;
+    private final Path target;
+    private final String metricsNamespace;
+    private final MetricsSink metricsSink;
+
+    @JacocoGenerated
+    public ChangeSyncHandler() {
+        this(new Environment());
+    }
+
+    @JacocoGenerated
+    public ChangeSyncHandler(Environment environment) {
+        this(OaiProviderHandler.createAdapter(environment), environment, MetricsSink.STANDARD_OUT);
+    }
+
+    public ChangeSyncHandler(Adapter source, Environment environment, MetricsSink metricsSink) {
+        this.target = Path.of(environment.readEnv(OaiConstants.RECORD_STORE_PATH_ENV));
+        int pageSize = environment.readEnvOpt(OaiConstants.SNAPSHOT_EXPORT_PAGE_SIZE_ENV)
+                .map(Integer::parseInt)
+                .orElse(SnapshotExporter.DEFAULT_PAGE_SIZE);
+        Duration overlap = Duration.ofMinutes(environment.readEnvOpt(OaiConstants.SYNC_OVERLAP_MINUTES_ENV)
+                                                  .map(Long::parseLong)
+                                                  .orElse(ChangeSyncEngine.DEFAULT_OVERLAP_MINUTES));
+        this.engine = new ChangeSyncEngine(source, target, pageSize, overlap);
+        this.metricsNamespace = environment.readEnvOpt(OaiConstants.METRICS_NAMESPACE_ENV)
+                .orElse(RequestMetrics.DEFAULT_NAMESPACE);
+        this.metricsSink = metricsSink;
+    }
+
+    @Override
+    public String handleRequest(Object input, Context context) {
+        try {
+            SyncMetrics metrics = new SyncMetrics(metricsNamespace);
+            int count = engine.sync(metrics);
+            metricsSink.emit(metrics.toEmf());
+            return String.format(SYNCED, target, count);
+        } catch (OaiException | InternalOaiException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
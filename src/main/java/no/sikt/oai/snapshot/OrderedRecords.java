@@ -0,0 +1,242 @@
+package no.sikt.oai.snapshot;
+
+import static no.sikt.oai.adapter.Adapter.ALL_SET_NAME;
+
+import java.util.Arrays;
+import no.sikt.oai.TimeUtils;
+import nva.commons.core.StringUtils;
+
+/**
+ * Queries over local records ordered by datestamp and identifier, the order harvests page through. A from/until range
+ * is found by binary search, and the cursor of a record is its datestamp in epoch milliseconds and its identifier,
+ * joined by {@value #CURSOR_SEPARATOR}, so resuming after a cursor is a binary search too. Records limited to a set
+ * are found by {@link #selectInSet(String, int, int, int, int, int)}.
+ */
+public abstract class OrderedRecords {
+
+    public static final String CURSOR_SEPARATOR = ",";
+    public static final long NO_DATESTAMP = Long.MIN_VALUE;
+    public static final String INVALID_CURSOR = "Not a snapshot cursor: ";
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long MILLIS_PER_SECOND = 1000L;
+
+    /**
+     * Returns the number of records.
+     *
+     * @return the number of records
+     */
+    public abstract int size();
+
+    /**
+     * Returns the datestamp of a record.
+     *
+     * @param position position of the record in datestamp order
+     * @return datestamp in epoch milliseconds, {@link #NO_DATESTAMP} when the record has none
+     */
+    protected abstract long datestampAt(int position);
+
+    /**
+     * Compares the identifier of a record with an identifier.
+     *
+     * @param position   position of the record in datestamp order
+     * @param identifier identifier to compare with
+     * @return as {@link String#compareTo(String)} of the record's identifier
+     */
+    protected abstract int compareIdentifierAt(int position, String identifier);
+
+    /**
+     * Tells whether a record is in a set.
+     *
+     * @param position position of the record in datestamp order
+     * @param setSpec  set
+     * @return true when the record is in the set
+     */
+    protected abstract boolean isInSet(int position, String setSpec);
+
+    /**
+     * Selects a page of records by offset.
+     *
+     * @param from          lower bound for the datestamp, may be empty
+     * @param until         upper bound for the datestamp, may be empty
+     * @param setSpec       set the records must be in, may be empty
+     * @param startPosition offset of the first record among those matching
+     * @param pageSize      maximum number of records
+     * @return positions of the records and the number of records matching
+     */
+    public Selection select(String from, String until, String setSpec, int startPosition, int pageSize) {
+        int lo = lowerBound(fromMillis(from), "");
+        int hi = upperBound(untilMillis(until));
+        if (isAllSets(setSpec)) {
+            int start = Math.min(hi, lo + startPosition);
+            return new Selection(Math.max(0, hi - lo), range(start, Math.min(hi, start + pageSize)));
+        }
+        return selectInSet(setSpec, lo, hi, lo, startPosition, pageSize);
+    }
+
+    /**
+     * Selects a page of records after a cursor.
+     *
+     * @param from     lower bound for the datestamp, may be empty
+     * @param until    upper bound for the datestamp, may be empty
+     * @param setSpec  set the records must be in, may be empty
+     * @param cursor   cursor of the last record on the previous page, empty for the first page
+     * @param pageSize maximum number of records
+     * @return positions of the records and the number of records matching the whole query
+     * @throws IllegalArgumentException if the cursor is not a datestamp and an identifier
+     */
+    public Selection selectAfter(String from, String until, String setSpec, String cursor, int pageSize) {
+        int lo = lowerBound(fromMillis(from), "");
+        int hi = upperBound(untilMillis(until));
+        int start = lo;
+        if (StringUtils.isNotEmpty(cursor)) {
+            int separator = cursor.indexOf(CURSOR_SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException(INVALID_CURSOR + cursor);
+            }
+            start = Math.max(lo, upperBound(Long.parseLong(cursor.substring(0, separator)),
+                                            cursor.substring(separator + 1)));
+        }
+        if (isAllSets(setSpec)) {
+            return new Selection(Math.max(0, hi - lo), range(start, Math.min(hi, start + pageSize)));
+        }
+        return selectInSet(setSpec, lo, hi, start, 0, pageSize);
+    }
+
+    /**
+     * Selects a page of the records in a set within a range of positions. This scans the range, checking every record
+     * with {@link #isInSet(int, String)}; records that index their sets override it.
+     *
+     * @param setSpec  set the records must be in
+     * @param lo       first position of the range
+     * @param hi       position after the last of the range
+     * @param start    first position the page may start at, within the range
+     * @param skip     number of records in the set from the start position to skip
+     * @param pageSize maximum number of records
+     * @return positions of the records and the number of records in the set within the range
+     */
+    protected Selection selectInSet(String setSpec, int lo, int hi, int start, int skip, int pageSize) {
+        int[] matches = new int[pageSize];
+        int found = 0;
+        int count = 0;
+        int skipped = 0;
+        for (int i = lo; i < hi; i++) {
+            if (isInSet(i, setSpec)) {
+                count++;
+                if (i >= start && found < pageSize) {
+                    if (skipped < skip) {
+                        skipped++;
+                    } else {
+                        matches[found++] = i;
+                    }
+                }
+            }
+        }
+        return new Selection(count, Arrays.copyOf(matches, found));
+    }
+
+    /**
+     * Creates the cursor of a record.
+     *
+     * @param datestamp  datestamp of the record in epoch milliseconds, or null
+     * @param identifier OAI identifier of the record
+     * @return the cursor
+     */
+    public static String cursor(Long datestamp, String identifier) {
+        return datestamp(datestamp) + CURSOR_SEPARATOR + identifier;
+    }
+
+    /* default */ static long datestamp(Long datestamp) {
+        return datestamp == null ? NO_DATESTAMP : datestamp;
+    }
+
+    /* default */ static boolean isAllSets(String setSpec) {
+        return StringUtils.isEmpty(setSpec) || ALL_SET_NAME.equalsIgnoreCase(setSpec);
+    }
+
+    private static int[] range(int start, int end) {
+        int[] range = new int[Math.max(0, end - start)];
+        for (int i = 0; i < range.length; i++) {
+            range[i] = start + i;
+        }
+        return range;
+    }
+
+    /**
+     * Returns the position of the first record at or after a datestamp and identifier.
+     */
+    private int lowerBound(long datestamp, String identifier) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, datestamp, identifier) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the position of the first record after a datestamp and identifier.
+     */
+    private int upperBound(long datestamp, String identifier) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, datestamp, identifier) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int upperBound(long datestamp) {
+        return datestamp == Long.MAX_VALUE ? size() : lowerBound(datestamp + 1, "");
+    }
+
+    private int compare(int position, long datestamp, String identifier) {
+        int byDatestamp = Long.compare(datestampAt(position), datestamp);
+        return byDatestamp == 0 ? compareIdentifierAt(position, identifier) : byDatestamp;
+    }
+
+    private static long fromMillis(String from) {
+        return StringUtils.isEmpty(from) ? NO_DATESTAMP : parse(from);
+    }
+
+    /**
+     * Returns the last millisecond covered by an until argument, which includes the whole day or second it names.
+     */
+    private static long untilMillis(String until) {
+        if (StringUtils.isEmpty(until)) {
+            return Long.MAX_VALUE;
+        }
+        long millis = parse(until);
+        return millis + (until.length() == TimeUtils.STANDARD_DATE_LENGTH ? MILLIS_PER_DAY : MILLIS_PER_SECOND) - 1;
+    }
+
+    private static long parse(String date) {
+        String format = date.length() == TimeUtils.STANDARD_DATE_LENGTH
+                ? TimeUtils.FORMAT_ZULU_SHORT
+                : TimeUtils.FORMAT_ZULU_LONG;
+        return TimeUtils.string2Date(date, format).getTime();
+    }
+
+    /**
+     * Positions of the records on a page, in datestamp order, and the number of records matching the query.
+     */
+    public static class Selection {
+
+        public final long numFound;
+        public final int[] positions;
+
+        public Selection(long numFound, int[] positions) {
+            this.numFound = numFound;
+            this.positions = positions;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package no.sikt.oai.snapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An immutable set of record positions, compressed the way roaring bitmaps are: positions are split into chunks of
+ * {@value #CHUNK_SIZE} by their high 16 bits, and each chunk is stored as a sorted array of its low 16 bits while it
+ * has at most {@value #MAX_ARRAY_SIZE} positions, and as a plain bitmap when it has more. The cardinality before each
+ * chunk is kept alongside, so {@link #rank(int)} and {@link #select(int)} cost a binary search over the chunks and a
+ * look into one of them.
+ */
+public final class OrdinalBitmap {
+
+    public static final int CHUNK_SIZE = 1 << Character.SIZE;
+    public static final int MAX_ARRAY_SIZE = 4096;
+    private static final int WORDS = CHUNK_SIZE / Long.SIZE;
+    private static final byte ARRAY = 0;
+    private static final byte BITMAP = 1;
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int[] ranks;
+
+    private OrdinalBitmap(char[] keys, Container... containers) {
+        this.keys = keys;
+        this.containers = containers;
+        this.ranks = new int[containers.length + 1];
+        for (int i = 0; i < containers.length; i++) {
+            ranks[i + 1] = ranks[i] + containers[i].cardinality();
+        }
+    }
+
+    /**
+     * Creates a bitmap of positions.
+     *
+     * @param positions positions in ascending order, none negative
+     * @return the bitmap
+     */
+    public static OrdinalBitmap of(int... positions) {
+        char[] keys = new char[positions.length];
+        Container[] containers = new Container[positions.length];
+        int chunks = 0;
+        int start = 0;
+        while (start < positions.length) {
+            int key = positions[start] >>> Character.SIZE;
+            int end = start;
+            while (end < positions.length && positions[end] >>> Character.SIZE == key) {
+                end++;
+            }
+            keys[chunks] = (char) key;
+            containers[chunks] = container(positions, start, end);
+            chunks++;
+            start = end;
+        }
+        return new OrdinalBitmap(Arrays.copyOf(keys, chunks), Arrays.copyOf(containers, chunks));
+    }
+
+    /**
+     * Reads a bitmap written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in where the bitmap is read from
+     * @return the bitmap
+     * @throws IOException if the bitmap cannot be read
+     */
+    public static OrdinalBitmap readFrom(DataInput in) throws IOException {
+        int chunks = in.readInt();
+        char[] keys = new char[chunks];
+        Container[] containers = new Container[chunks];
+        for (int i = 0; i < chunks; i++) {
+            keys[i] = in.readChar();
+            containers[i] = in.readByte() == BITMAP ? BitmapContainer.readFrom(in) : ArrayContainer.readFrom(in);
+        }
+        return new OrdinalBitmap(keys, containers);
+    }
+
+    /**
+     * Writes the bitmap.
+     *
+     * @param out where the bitmap is written
+     * @throws IOException if the bitmap cannot be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.writeChar(keys[i]);
+            containers[i].writeTo(out);
+        }
+    }
+
+    public int cardinality() {
+        return ranks[containers.length];
+    }
+
+    /**
+     * Counts the positions before a position.
+     *
+     * @param position position, which need not be in the bitmap
+     * @return number of positions in the bitmap less than it
+     */
+    public int rank(int position) {
+        int chunk = Arrays.binarySearch(keys, (char) (position >>> Character.SIZE));
+        if (chunk < 0) {
+            return ranks[-chunk - 1];
+        }
+        return ranks[chunk] + containers[chunk].rank(position & (CHUNK_SIZE - 1));
+    }
+
+    /**
+     * Finds a position by its rank.
+     *
+     * @param rank number of positions in the bitmap before the one to find
+     * @return the position, or -1 when the bitmap has no more than {@code rank} positions
+     */
+    public int select(int rank) {
+        if (rank < 0 || rank >= cardinality()) {
+            return -1;
+        }
+        int chunk = chunkOf(rank);
+        return keys[chunk] << Character.SIZE | containers[chunk].select(rank - ranks[chunk]);
+    }
+
+    /**
+     * Lists positions in ascending order.
+     *
+     * @param fromRank rank of the first position to list
+     * @param below    bound all positions listed are less than
+     * @param count    maximum number of positions to list
+     * @return the positions
+     */
+    public int[] select(int fromRank, int below, int count) {
+        int[] positions = new int[Math.max(0, Math.min(count, cardinality() - Math.max(0, fromRank)))];
+        if (positions.length == 0) {
+            return positions;
+        }
+        int chunk = chunkOf(Math.max(0, fromRank));
+        int rank = Math.max(0, fromRank) - ranks[chunk];
+        int found = 0;
+        while (found < positions.length && chunk < keys.length && keys[chunk] << Character.SIZE < below) {
+            found = containers[chunk].copy(rank, keys[chunk] << Character.SIZE, below, positions, found);
+            chunk++;
+            rank = 0;
+        }
+        return found == positions.length ? positions : Arrays.copyOf(positions, found);
+    }
+
+    public boolean contains(int position) {
+        return rank(position + 1) > rank(position);
+    }
+
+    /**
+     * Returns the chunk a rank falls in. Chunks are never empty, so the ranks before them are strictly ascending.
+     */
+    private int chunkOf(int rank) {
+        int chunk = Arrays.binarySearch(ranks, 0, containers.length, rank);
+        return chunk < 0 ? -chunk - 2 : chunk;
+    }
+
+    private static Container container(int[] positions, int start, int end) {
+        if (end - start > MAX_ARRAY_SIZE) {
+            long[] words = new long[WORDS];
+            for (int i = start; i < end; i++) {
+                int low = positions[i] & (CHUNK_SIZE - 1);
+                words[low >>> 6] |= 1L << low;
+            }
+            return new BitmapContainer(words);
+        }
+        char[] lows = new char[end - start];
+        for (int i = start; i < end; i++) {
+            lows[i - start] = (char) positions[i];
+        }
+        return new ArrayContainer(lows);
+    }
+
+    /**
+     * The low 16 bits of the positions in one chunk.
+     */
+    private interface Container {
+
+        int cardinality();
+
+        /**
+         * Counts the low bits in the container less than a value.
+         */
+        int rank(int low);
+
+        /**
+         * Returns the low bits with a rank in the container.
+         */
+        int select(int rank);
+
+        /**
+         * Copies positions, from the one with a rank in the container, until the output is full, the container is
+         * exhausted or a position is not below a bound.
+         *
+         * @return index in the output after the last position copied
+         */
+        int copy(int rank, int high, int below, int[] out, int found);
+
+        void writeTo(DataOutput out) throws IOException;
+    }
+
+    private static final class ArrayContainer implements Container {
+
+        private final char[] lows;
+
+        /* default */ ArrayContainer(char... lows) {
+            this.lows = lows;
+        }
+
+        /* default */ static ArrayContainer readFrom(DataInput in) throws IOException {
+            char[] lows = new char[in.readChar() + 1];
+            for (int i = 0; i < lows.length; i++) {
+                lows[i] = in.readChar();
+            }
+            return new ArrayContainer(lows);
+        }
+
+        @Override
+        public int cardinality() {
+            return lows.length;
+        }
+
+        @Override
+        public int rank(int low) {
+            int index = Arrays.binarySearch(lows, (char) low);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        @Override
+        public int select(int rank) {
+            return lows[rank];
+        }
+
+        @Override
+        public int copy(int rank, int high, int below, int[] out, int found) {
+            int at = found;
+            for (int i = rank; i < lows.length && at < out.length; i++) {
+                int position = high | lows[i];
+                if (position >= below) {
+                    break;
+                }
+                out[at++] = position;
+            }
+            return at;
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(ARRAY);
+            out.writeChar(lows.length - 1);
+            for (char low : lows) {
+                out.writeChar(low);
+            }
+        }
+    }
+
+    private static final class BitmapContainer implements Container {
+
+        private final long[] words;
+        private final int cardinality;
+
+        /* default */ BitmapContainer(long... words) {
+            this.words = words;
+            int bits = 0;
+            for (long word : words) {
+                bits += Long.bitCount(word);
+            }
+            this.cardinality = bits;
+        }
+
+        /* default */ static BitmapContainer readFrom(DataInput in) throws IOException {
+            long[] words = new long[WORDS];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return new BitmapContainer(words);
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int rank(int low) {
+            int word = low >>> 6;
+            int bits = 0;
+            for (int i = 0; i < word; i++) {
+                bits += Long.bitCount(words[i]);
+            }
+            return bits + Long.bitCount(words[word] & ((1L << low) - 1));
+        }
+
+        @Override
+        public int select(int rank) {
+            int remaining = rank;
+            int word = 0;
+            while (Long.bitCount(words[word]) <= remaining) {
+                remaining -= Long.bitCount(words[word]);
+                word++;
+            }
+            long bits = words[word];
+            for (int i = 0; i < remaining; i++) {
+                bits &= bits - 1;
+            }
+            return word << 6 | Long.numberOfTrailingZeros(bits);
+        }
+
+        @Override
+        public int copy(int rank, int high, int below, int[] out, int found) {
+            int at = found;
+            int low = select(rank);
+            int word = low >>> 6;
+            long bits = words[word] & -1L << low;
+            while (at < out.length) {
+                while (bits == 0) {
+                    word++;
+                    if (word == WORDS) {
+                        return at;
+                    }
+                    bits = words[word];
+                }
+                int position = high | word << 6 | Long.numberOfTrailingZeros(bits);
+                if (position >= below) {
+                    return at;
+                }
+                out[at++] = position;
+                bits &= bits - 1;
+            }
+            return at;
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(BITMAP);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+}
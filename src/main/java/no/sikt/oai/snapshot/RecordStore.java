@@ -0,0 +1,350 @@
+package no.sikt.oai.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A generation of a record store written by {@link RecordStoreWriter}, mapped into memory for serving. Every file of
+ * the generation is mapped read-only, so a query is a binary search over the fixed-width records file, and the
+ * metadata of a record is a slice of the segment file it was appended to, decoded only when a page needs it. Nothing
+ * is read onto the heap when the store is opened except the header and the set bitmaps, which answer queries limited
+ * to a set without looking at the records outside it.
+ *
+ * <p>A generation directory holds
+ * <pre>
+ *   header          magic, record count, per metadata format its prefix and number of segments, and the distinct
+ *                   lists of setSpecs
+ *   records         per record, sorted by datestamp and identifier: datestamp, last modification, offset and length
+ *                   of the identifier, flags, setSpecs list, and per metadata format segment, offset and length of the
+ *                   metadata
+ *   identifiers     UTF-8 identifiers, back to back
+ *   by-identifier   positions of the records, sorted by identifier
+ *   sets            per setSpec an {@link OrdinalBitmap} of the positions of the records in it
+ *   prefix.n        segment n of the metadata in a format, UTF-8 fragments back to back
+ * </pre>
+ * The directory the generations are in names the current one in {@value #CURRENT}.
+ *
+ * <p>Closing the store unmaps its files right away instead of when the buffers are garbage collected, which also
+ * frees the disk space of a generation that has been deleted since it was opened.
+ */
+public final class RecordStore extends OrderedRecords implements Closeable {
+
+    public static final long MAGIC = 0x4F41_4953_5354_4F32L;
+    public static final String CURRENT = "CURRENT";
+    public static final String GENERATION_PREFIX = "generation-";
+    public static final String NOT_A_RECORD_STORE = "Not a record store: ";
+    /* default */ static final String HEADER = "header";
+    /* default */ static final String RECORDS = "records";
+    /* default */ static final String IDENTIFIERS = "identifiers";
+    /* default */ static final String BY_IDENTIFIER = "by-identifier";
+    /* default */ static final String SETS = "sets";
+    /* default */ static final String SEGMENT_SEPARATOR = ".";
+    /* default */ static final int DATESTAMP = 0;
+    /* default */ static final int MODIFIED = 8;
+    /* default */ static final int IDENTIFIER_OFFSET = 16;
+    /* default */ static final int IDENTIFIER_LENGTH = 20;
+    /* default */ static final int FLAGS = 24;
+    /* default */ static final int SET_SPECS = 25;
+    /* default */ static final int LOCATIONS = 29;
+    /* default */ static final int LOCATION_BYTES = 3 * Integer.BYTES;
+    /* default */ static final byte DELETED = 1;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    /**
+     * Unmaps a buffer through sun.misc.Unsafe.invokeCleaner, the only way to unmap one before it is garbage collected,
+     * or null on a JVM without it.
+     */
+    private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+    private final Path generation;
+    private final int size;
+    private final int recordBytes;
+    private final List<String> prefixes;
+    private final List<List<String>> setSpecs;
+    private final List<MappedByteBuffer[]> segments;
+    private final MappedByteBuffer records;
+    private final MappedByteBuffer identifiers;
+    private final MappedByteBuffer byIdentifierFile;
+    private final IntBuffer byIdentifier;
+    private final Map<String, OrdinalBitmap> sets;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private RecordStore(Path generation, DataInputStream header) throws IOException {
+        this.generation = generation;
+        this.size = header.readInt();
+        int formats = header.readUnsignedByte();
+        this.recordBytes = LOCATIONS + formats * LOCATION_BYTES;
+        this.prefixes = new ArrayList<>(formats);
+        this.segments = new ArrayList<>(formats);
+        for (int i = 0; i < formats; i++) {
+            String prefix = header.readUTF();
+            prefixes.add(prefix);
+            segments.add(mapSegments(generation, prefix, header.readInt()));
+        }
+        int lists = header.readInt();
+        this.setSpecs = new ArrayList<>(lists);
+        for (int i = 0; i < lists; i++) {
+            setSpecs.add(readSetSpecs(header));
+        }
+        this.records = map(generation.resolve(RECORDS));
+        this.identifiers = map(generation.resolve(IDENTIFIERS));
+        this.byIdentifierFile = map(generation.resolve(BY_IDENTIFIER));
+        this.byIdentifier = byIdentifierFile.asIntBuffer();
+        this.sets = readSets(generation.resolve(SETS));
+        if (records.capacity() != (long) size * recordBytes || byIdentifier.capacity() != size) {
+            throw new IOException(NOT_A_RECORD_STORE + generation);
+        }
+    }
+
+    /**
+     * Opens the current generation of a record store.
+     *
+     * @param directory directory the generations are in
+     * @return the generation, which stays mapped as long as it is referenced
+     * @throws IOException if there is no current generation or it cannot be mapped
+     */
+    public static RecordStore open(Path directory) throws IOException {
+        Path generation = directory.resolve(Files.readString(directory.resolve(CURRENT), StandardCharsets.UTF_8)
+                                                     .trim());
+        try (DataInputStream header = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(generation.resolve(HEADER))))) {
+            if (header.readLong() != MAGIC) {
+                throw new IOException(NOT_A_RECORD_STORE + generation);
+            }
+            return new RecordStore(generation, header);
+        }
+    }
+
+    public Path getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Unmaps the files of the generation. The store must not be read afterwards, or by another thread while it is
+     * closed, since reading an unmapped buffer crashes the JVM; the caller has to make sure of that.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true) || UNMAPPER == null) {
+            return;
+        }
+        for (MappedByteBuffer[] mapped : segments) {
+            for (MappedByteBuffer segment : mapped) {
+                UNMAPPER.accept(segment);
+            }
+        }
+        UNMAPPER.accept(records);
+        UNMAPPER.accept(identifiers);
+        UNMAPPER.accept(byIdentifierFile);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the datestamp of a record.
+     *
+     * @param position position of the record in datestamp order
+     * @return datestamp in epoch milliseconds, {@link #NO_DATESTAMP} when the record has none
+     */
+    @Override
+    public long datestampAt(int position) {
+        return records.getLong(position * recordBytes + DATESTAMP);
+    }
+
+    /**
+     * Returns the last modification of a record, which is kept more precisely than the datestamp.
+     *
+     * @param position position of the record in datestamp order
+     * @return epoch milliseconds, {@link #NO_DATESTAMP} when the record has none
+     */
+    public long modifiedAt(int position) {
+        return records.getLong(position * recordBytes + MODIFIED);
+    }
+
+    public String identifier(int position) {
+        return StandardCharsets.UTF_8.decode(identifierBytes(position)).toString();
+    }
+
+    public boolean isDeleted(int position) {
+        return (records.get(position * recordBytes + FLAGS) & DELETED) != 0;
+    }
+
+    public List<String> setSpecs(int position) {
+        return setSpecs.get(records.getInt(position * recordBytes + SET_SPECS));
+    }
+
+    /**
+     * Returns the metadata of a record as it was rendered when the store was written, without copying it.
+     *
+     * @param position       position of the record in datestamp order
+     * @param metadataPrefix metadata format, in any case
+     * @return read-only UTF-8 slice of the segment the metadata is in, empty when the format is not in the store
+     */
+    public ByteBuffer metadata(int position, String metadataPrefix) {
+        int format = prefixes.indexOf(metadataPrefix.toLowerCase(Locale.ROOT));
+        if (format < 0) {
+            return EMPTY;
+        }
+        int location = position * recordBytes + LOCATIONS + format * LOCATION_BYTES;
+        return slice(segments.get(format)[records.getInt(location)], records.getInt(location + Integer.BYTES),
+                     records.getInt(location + 2 * Integer.BYTES));
+    }
+
+    public String metadataString(int position, String metadataPrefix) {
+        return StandardCharsets.UTF_8.decode(metadata(position, metadataPrefix)).toString();
+    }
+
+    /**
+     * Copies the metadata of a record out of the segment, as the UTF-8 a {@link no.sikt.oai.data.Record} holds.
+     *
+     * @param position       position of the record in datestamp order
+     * @param metadataPrefix metadata format, in any case
+     * @return the metadata as UTF-8, empty when the format is not in the store
+     */
+    public byte[] metadataBytes(int position, String metadataPrefix) {
+        ByteBuffer metadata = metadata(position, metadataPrefix);
+        byte[] bytes = new byte[metadata.remaining()];
+        metadata.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Looks up a record by identifier.
+     *
+     * @param identifier OAI identifier of the record
+     * @return position of the record in datestamp order, or empty when it is not in the store
+     */
+    public OptionalInt position(String identifier) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int position = byIdentifier.get(mid);
+            int comparison = compareIdentifierAt(position, identifier);
+            if (comparison == 0) {
+                return OptionalInt.of(position);
+            } else if (comparison < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    @Override
+    protected int compareIdentifierAt(int position, String identifier) {
+        return identifier(position).compareTo(identifier);
+    }
+
+    @Override
+    protected boolean isInSet(int position, String setSpec) {
+        return setSpecs(position).contains(setSpec);
+    }
+
+    /**
+     * Selects a page of the records in a set from its bitmap. The records within a datestamp range are a range of
+     * positions, so counting the records in the set within it is two ranks, and the page starts at a select.
+     */
+    @Override
+    protected Selection selectInSet(String setSpec, int lo, int hi, int start, int skip, int pageSize) {
+        OrdinalBitmap set = sets.get(setSpec);
+        if (set == null || lo >= hi) {
+            return new Selection(0, new int[0]);
+        }
+        int numFound = set.rank(hi) - set.rank(lo);
+        return new Selection(numFound, set.select(set.rank(start) + skip, hi, pageSize));
+    }
+
+    private ByteBuffer identifierBytes(int position) {
+        int base = position * recordBytes;
+        return slice(identifiers, records.getInt(base + IDENTIFIER_OFFSET), records.getInt(base + IDENTIFIER_LENGTH));
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    private static Map<String, OrdinalBitmap> readSets(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int count = in.readInt();
+            Map<String, OrdinalBitmap> sets = new ConcurrentHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String setSpec = in.readUTF();
+                sets.put(setSpec, OrdinalBitmap.readFrom(in));
+            }
+            return sets;
+        }
+    }
+
+    private static MappedByteBuffer[] mapSegments(Path generation, String prefix, int count) throws IOException {
+        MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            mapped[i] = map(segment(generation, prefix, i));
+        }
+        return mapped;
+    }
+
+    private static List<String> readSetSpecs(DataInputStream header) throws IOException {
+        String[] sets = new String[header.readUnsignedByte()];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = header.readUTF();
+        }
+        return List.of(sets);
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @SuppressWarnings("PMD.AvoidAccessibilityAlteration")
+    private static Consumer<ByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return buffer -> {
+                try {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /* default */ static Path segment(Path generation, String prefix, int segment) {
+        return generation.resolve(prefix + SEGMENT_SEPARATOR + segment);
+    }
+}
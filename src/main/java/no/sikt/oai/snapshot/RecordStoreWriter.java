@@ -0,0 +1,678 @@
+package no.sikt.oai.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import no.sikt.oai.MetadataFormat;
+
+/**
+ * Writes a new generation of a {@link RecordStore}. The metadata of every record is appended to the segment files of
+ * its formats as it is written, and the records are kept on the heap until {@link #commit()} sorts them and writes the
+ * index files. A segment is closed when the next fragment would take it past {@value #MAX_SEGMENT_BYTES} bytes, the
+ * most a single mapping can hold. Committing syncs the generation to disk and then names it in
+ * {@value RecordStore#CURRENT}, so a reader opens either the previous generation or the complete new one.
+ *
+ * <p>A writer made by {@link #update(Path)} starts from the current generation instead. Its segments are linked into
+ * the new generation, where they stay as they are, and its index is read onto the heap; a record written replaces the
+ * one with the same identifier, and new metadata goes to segments after the linked ones. So a change sync writes the
+ * changed metadata and the index, not all of the metadata. The metadata of replaced records stays in the linked
+ * segments until a commit finds that less than {@value #MIN_LIVE_PERCENT}% of the segment bytes are referenced, or
+ * that a format has more than {@value #MAX_SEGMENTS} segments, and compacts the referenced metadata into new segments.
+ */
+public class RecordStoreWriter implements SnapshotSink {
+
+    public static final int MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+    public static final String GENERATION_FORMAT = RecordStore.GENERATION_PREFIX + "%013d";
+    public static final int MIN_LIVE_PERCENT = 50;
+    public static final int MAX_SEGMENTS = 32;
+    private static final String COMPACTED = "compacted";
+    private static final int PERCENT = 100;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 65_536;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final Path directory;
+    private final Path generation;
+    private final List<String> prefixes = new ArrayList<>();
+    private final List<Segments> segments = new ArrayList<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<List<String>, Integer> setSpecs = new ConcurrentHashMap<>();
+    private final List<List<String>> setSpecsById = new ArrayList<>();
+    private final Map<String, Entry> kept = new ConcurrentHashMap<>();
+    private final int maxSegmentBytes;
+    private int replaced;
+    private boolean committed;
+
+    public RecordStoreWriter(Path directory) throws IOException {
+        this(directory, MAX_SEGMENT_BYTES);
+    }
+
+    /* default */ RecordStoreWriter(Path directory, int maxSegmentBytes) throws IOException {
+        this(directory, maxSegmentBytes, Map.of());
+    }
+
+    private RecordStoreWriter(Path directory, int maxSegmentBytes, Map<String, Integer> linkedSegments)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.generation = createGeneration(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+        for (MetadataFormat format : MetadataFormat.values()) {
+            String prefix = format.name().toLowerCase(Locale.ROOT);
+            prefixes.add(prefix);
+            segments.add(new Segments(generation, prefix, maxSegmentBytes, linkedSegments.getOrDefault(prefix, 0)));
+        }
+    }
+
+    /**
+     * Starts a new generation from the current one in a directory, see the class description.
+     *
+     * @param directory directory the generations are in, which must have a current generation
+     * @return a writer that keeps every record of the current generation that is not written again or removed
+     * @throws IOException if the current generation cannot be read or its segments cannot be linked
+     */
+    public static RecordStoreWriter update(Path directory) throws IOException {
+        return update(directory, MAX_SEGMENT_BYTES);
+    }
+
+    /* default */ static RecordStoreWriter update(Path directory, int maxSegmentBytes) throws IOException {
+        Path current = directory.resolve(current(directory)
+                .orElseThrow(() -> new IOException(RecordStore.NOT_A_RECORD_STORE + directory)));
+        try (DataInputStream header = input(current.resolve(RecordStore.HEADER))) {
+            if (header.readLong() != RecordStore.MAGIC) {
+                throw new IOException(RecordStore.NOT_A_RECORD_STORE + current);
+            }
+            int size = header.readInt();
+            List<String> currentPrefixes = new ArrayList<>();
+            Map<String, Integer> linkedSegments = new ConcurrentHashMap<>();
+            int formats = header.readUnsignedByte();
+            for (int i = 0; i < formats; i++) {
+                String prefix = header.readUTF();
+                currentPrefixes.add(prefix);
+                linkedSegments.put(prefix, header.readInt());
+            }
+            RecordStoreWriter writer = new RecordStoreWriter(directory, maxSegmentBytes, linkedSegments);
+            try {
+                writer.link(current, linkedSegments);
+                writer.keep(current, size, currentPrefixes, readSetSpecs(header));
+                return writer;
+            } catch (IOException e) {
+                writer.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Appends the metadata of a record to the segments and keeps its header for the index.
+     *
+     * @param record record with its metadata in every format
+     * @throws IOException if a segment cannot be written
+     */
+    @Override
+    public void write(SnapshotRecord record) throws IOException {
+        remove(record.identifier);
+        List<String> sets = record.setSpecs == null
+                ? List.of()
+                : record.setSpecs.stream().distinct().collect(Collectors.toUnmodifiableList());
+        Entry entry = new Entry(OrderedRecords.datestamp(record.datestamp), modified(record), record.identifier,
+                                record.deleted, setSpecsId(sets), prefixes.size());
+        for (int i = 0; i < prefixes.size(); i++) {
+            String metadata = record.metadata == null ? null : record.metadata.get(prefixes.get(i));
+            byte[] bytes = metadata == null ? NO_BYTES : metadata.getBytes(StandardCharsets.UTF_8);
+            segments.get(i).append(bytes, entry.locations, i * Entry.LOCATION_INTS);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Removes a record kept from the generation the writer was started from.
+     *
+     * @param identifier OAI identifier of the record
+     * @return true when the record was kept until now
+     */
+    public boolean remove(String identifier) {
+        Entry previous = kept.remove(identifier);
+        if (previous == null) {
+            return false;
+        }
+        previous.replaced = true;
+        replaced++;
+        return true;
+    }
+
+    /**
+     * Tells whether a record is kept from the generation the writer was started from as it is, with the same last
+     * modification and deletion status. The last modification is compared rather than the datestamp, which for some
+     * repositories is the same for every edit of a day.
+     *
+     * @param record record fetched from upstream
+     * @return true when writing the record would change nothing
+     */
+    public boolean isKept(SnapshotRecord record) {
+        Entry previous = kept.get(record.identifier);
+        return previous != null && previous.modified == modified(record) && previous.deleted == record.deleted;
+    }
+
+    /**
+     * Returns the number of records kept from the generation the writer was started from.
+     *
+     * @return records neither written again nor removed
+     */
+    public int getKeptCount() {
+        return kept.size();
+    }
+
+    /**
+     * Returns the newest datestamp of the records in the generation.
+     *
+     * @return datestamp in epoch milliseconds, {@link OrderedRecords#NO_DATESTAMP} when no record has one
+     */
+    public long getNewestDatestamp() {
+        long newest = OrderedRecords.NO_DATESTAMP;
+        for (Entry entry : entries) {
+            if (!entry.replaced && entry.datestamp > newest) {
+                newest = entry.datestamp;
+            }
+        }
+        return newest;
+    }
+
+    @Override
+    public int getRecordCount() {
+        return entries.size() - replaced;
+    }
+
+    public Path getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Writes the index files, syncs the generation to disk, makes it the current one and deletes the generations
+     * before the one it replaces.
+     *
+     * @throws IOException if the generation cannot be written
+     */
+    @Override
+    public void commit() throws IOException {
+        for (Segments segment : segments) {
+            segment.close();
+        }
+        if (replaced > 0) {
+            entries.removeIf(entry -> entry.replaced);
+            replaced = 0;
+        }
+        if (isWorthCompacting()) {
+            compact();
+        }
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.datestamp)
+                         .thenComparing(entry -> entry.identifier));
+        writeRecords();
+        writeByIdentifier();
+        writeSets();
+        writeHeader();
+        Optional<String> previous = current(directory);
+        Path temporary = directory.resolve(RecordStore.CURRENT + TEMPORARY_SUFFIX);
+        try (SyncedOutput current = new SyncedOutput(temporary)) {
+            current.write(generation.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Files.move(temporary, directory.resolve(RecordStore.CURRENT), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+        deleteGenerationsBefore(previous.orElse(generation.getFileName().toString()));
+    }
+
+    /**
+     * Closes the segments. A generation that was not committed is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            for (Segments segment : segments) {
+                segment.close();
+            }
+            delete(generation);
+        }
+    }
+
+    /**
+     * Links the segments of the current generation into this one, or copies them where the file system has no links.
+     */
+    private void link(Path current, Map<String, Integer> linkedSegments) throws IOException {
+        for (String prefix : prefixes) {
+            for (int i = 0; i < linkedSegments.getOrDefault(prefix, 0); i++) {
+                Path target = RecordStore.segment(generation, prefix, i);
+                Path source = RecordStore.segment(current, prefix, i);
+                try {
+                    Files.createLink(target, source);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    Files.copy(source, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the index of the current generation into entries that point into the linked segments.
+     */
+    private void keep(Path current, int size, List<String> currentPrefixes, List<List<String>> currentSetSpecs)
+            throws IOException {
+        int[] formats = prefixes.stream().mapToInt(currentPrefixes::indexOf).toArray();
+        int[] locations = new int[currentPrefixes.size() * Entry.LOCATION_INTS];
+        try (DataInputStream records = input(current.resolve(RecordStore.RECORDS));
+             DataInputStream identifiers = input(current.resolve(RecordStore.IDENTIFIERS))) {
+            for (int position = 0; position < size; position++) {
+                long datestamp = records.readLong();
+                long modified = records.readLong();
+                records.readInt();
+                byte[] identifier = new byte[records.readInt()];
+                boolean deleted = (records.readByte() & RecordStore.DELETED) != 0;
+                int sets = setSpecsId(currentSetSpecs.get(records.readInt()));
+                for (int i = 0; i < locations.length; i++) {
+                    locations[i] = records.readInt();
+                }
+                identifiers.readFully(identifier);
+                Entry entry = new Entry(datestamp, modified, new String(identifier, StandardCharsets.UTF_8), deleted,
+                                        sets, prefixes.size());
+                for (int i = 0; i < formats.length; i++) {
+                    if (formats[i] >= 0) {
+                        System.arraycopy(locations, formats[i] * Entry.LOCATION_INTS, entry.locations,
+                                         i * Entry.LOCATION_INTS, Entry.LOCATION_INTS);
+                    }
+                }
+                entries.add(entry);
+                kept.put(entry.identifier, entry);
+            }
+        }
+    }
+
+    /**
+     * Tells whether the segments hold so much metadata of replaced records, or are so many, that the metadata still
+     * referenced should be written to new segments.
+     */
+    private boolean isWorthCompacting() throws IOException {
+        long live = 0;
+        for (Entry entry : entries) {
+            for (int i = 2; i < entry.locations.length; i += Entry.LOCATION_INTS) {
+                live += entry.locations[i];
+            }
+        }
+        long total = 0;
+        for (int format = 0; format < prefixes.size(); format++) {
+            if (segments.get(format).count() > MAX_SEGMENTS) {
+                return true;
+            }
+            for (int i = 0; i < segments.get(format).count(); i++) {
+                total += Files.size(RecordStore.segment(generation, prefixes.get(format), i));
+            }
+        }
+        return live * PERCENT < total * MIN_LIVE_PERCENT;
+    }
+
+    /**
+     * Rewrites the metadata of the records into new segments, in datestamp order, and replaces the segments with them.
+     */
+    private void compact() throws IOException {
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.datestamp)
+                         .thenComparing(entry -> entry.identifier));
+        Path compacted = Files.createDirectory(generation.resolve(COMPACTED));
+        for (int format = 0; format < prefixes.size(); format++) {
+            String prefix = prefixes.get(format);
+            int at = format * Entry.LOCATION_INTS;
+            Segments target = new Segments(compacted, prefix, maxSegmentBytes, 0);
+            FileChannel[] sources = new FileChannel[segments.get(format).count()];
+            try (target) {
+                for (Entry entry : entries) {
+                    int segment = entry.locations[at];
+                    if (sources[segment] == null) {
+                        sources[segment] = FileChannel.open(RecordStore.segment(generation, prefix, segment));
+                    }
+                    target.append(sources[segment], entry.locations[at + 1], entry.locations[at + 2],
+                                  entry.locations, at);
+                }
+            } finally {
+                for (FileChannel source : sources) {
+                    if (source != null) {
+                        source.close();
+                    }
+                }
+            }
+            for (int i = 0; i < sources.length; i++) {
+                Files.delete(RecordStore.segment(generation, prefix, i));
+            }
+            for (int i = 0; i < target.count(); i++) {
+                Files.move(RecordStore.segment(compacted, prefix, i), RecordStore.segment(generation, prefix, i));
+            }
+            segments.set(format, target);
+        }
+        Files.delete(compacted);
+    }
+
+    private int setSpecsId(List<String> sets) {
+        Integer id = setSpecs.get(sets);
+        if (id == null) {
+            id = setSpecsById.size();
+            setSpecs.put(sets, id);
+            setSpecsById.add(sets);
+        }
+        return id;
+    }
+
+    private void writeRecords() throws IOException {
+        try (SyncedOutput records = new SyncedOutput(generation.resolve(RecordStore.RECORDS));
+             SyncedOutput identifiers = new SyncedOutput(generation.resolve(RecordStore.IDENTIFIERS))) {
+            for (Entry entry : entries) {
+                byte[] identifier = entry.identifier.getBytes(StandardCharsets.UTF_8);
+                records.writeLong(entry.datestamp);
+                records.writeLong(entry.modified);
+                records.writeInt(identifiers.size());
+                records.writeInt(identifier.length);
+                records.writeByte(entry.deleted ? RecordStore.DELETED : 0);
+                records.writeInt(entry.setSpecs);
+                for (int location : entry.locations) {
+                    records.writeInt(location);
+                }
+                identifiers.write(identifier);
+            }
+        }
+    }
+
+    private void writeByIdentifier() throws IOException {
+        List<Integer> positions = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            positions.add(i);
+        }
+        positions.sort(Comparator.comparing(position -> entries.get(position).identifier));
+        try (SyncedOutput byIdentifier = new SyncedOutput(generation.resolve(RecordStore.BY_IDENTIFIER))) {
+            for (int position : positions) {
+                byIdentifier.writeInt(position);
+            }
+        }
+    }
+
+    /**
+     * Writes a bitmap of the positions in each set, filling the positions of every set in one pass over the sorted
+     * records after counting them in another.
+     */
+    private void writeSets() throws IOException {
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> ids = new ConcurrentHashMap<>();
+        int[][] setIds = new int[setSpecsById.size()][];
+        for (int i = 0; i < setIds.length; i++) {
+            setIds[i] = setSpecsById.get(i).stream()
+                    .mapToInt(set -> ids.computeIfAbsent(set, key -> {
+                        names.add(key);
+                        return names.size() - 1;
+                    }))
+                    .toArray();
+        }
+        int[] counts = new int[names.size()];
+        for (Entry entry : entries) {
+            for (int set : setIds[entry.setSpecs]) {
+                counts[set]++;
+            }
+        }
+        int[][] members = Arrays.stream(counts).mapToObj(int[]::new).toArray(int[][]::new);
+        int[] filled = new int[names.size()];
+        for (int position = 0; position < entries.size(); position++) {
+            for (int set : setIds[entries.get(position).setSpecs]) {
+                members[set][filled[set]++] = position;
+            }
+        }
+        try (SyncedOutput sets = new SyncedOutput(generation.resolve(RecordStore.SETS))) {
+            sets.writeInt(names.size());
+            for (int set = 0; set < members.length; set++) {
+                sets.writeUTF(names.get(set));
+                OrdinalBitmap.of(members[set]).writeTo(sets);
+            }
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        try (SyncedOutput header = new SyncedOutput(generation.resolve(RecordStore.HEADER))) {
+            header.writeLong(RecordStore.MAGIC);
+            header.writeInt(entries.size());
+            header.writeByte(prefixes.size());
+            for (int i = 0; i < prefixes.size(); i++) {
+                header.writeUTF(prefixes.get(i));
+                header.writeInt(segments.get(i).count());
+            }
+            header.writeInt(setSpecsById.size());
+            for (List<String> sets : setSpecsById) {
+                header.writeByte(sets.size());
+                for (String set : sets) {
+                    header.writeUTF(set);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the generations named before one. Generations named after it are being written by someone else.
+     */
+    private void deleteGenerationsBefore(String keep) throws IOException {
+        List<Path> older;
+        try (Stream<Path> children = Files.list(directory)) {
+            older = children.filter(child -> child.getFileName().toString().startsWith(RecordStore.GENERATION_PREFIX))
+                    .filter(child -> child.getFileName().toString().compareTo(keep) < 0)
+                    .collect(Collectors.toList());
+        }
+        for (Path child : older) {
+            delete(child);
+        }
+    }
+
+    /**
+     * Returns the name of the current generation in a directory.
+     *
+     * @param directory directory the generations are in
+     * @return name of the current generation, empty when nothing has been committed to the directory
+     * @throws IOException if the directory cannot be read
+     */
+    public static Optional<String> current(Path directory) throws IOException {
+        Path current = directory.resolve(RecordStore.CURRENT);
+        return Files.exists(current)
+                ? Optional.of(Files.readString(current, StandardCharsets.UTF_8).trim())
+                : Optional.empty();
+    }
+
+    /**
+     * Tells whether a directory has a current generation that {@link #update(Path)} can start from, which a generation
+     * written in an older format is not.
+     *
+     * @param directory directory the generations are in
+     * @return true when there is a current generation in this format
+     * @throws IOException if the directory cannot be read
+     */
+    public static boolean canUpdate(Path directory) throws IOException {
+        Optional<String> current = current(directory);
+        if (current.isEmpty()) {
+            return false;
+        }
+        try (DataInputStream header = input(directory.resolve(current.get()).resolve(RecordStore.HEADER))) {
+            return header.readLong() == RecordStore.MAGIC;
+        }
+    }
+
+    private static long modified(SnapshotRecord record) {
+        return record.modified == null ? OrderedRecords.datestamp(record.datestamp) : record.modified;
+    }
+
+    private static DataInputStream input(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    private static List<List<String>> readSetSpecs(DataInputStream header) throws IOException {
+        int lists = header.readInt();
+        List<List<String>> setSpecs = new ArrayList<>(lists);
+        for (int i = 0; i < lists; i++) {
+            String[] sets = new String[header.readUnsignedByte()];
+            for (int j = 0; j < sets.length; j++) {
+                sets[j] = header.readUTF();
+            }
+            setSpecs.add(List.of(sets));
+        }
+        return setSpecs;
+    }
+
+    private static Path createGeneration(Path directory) throws IOException {
+        long stamp = System.currentTimeMillis();
+        Path generation = directory.resolve(String.format(GENERATION_FORMAT, stamp));
+        while (Files.exists(generation)) {
+            stamp++;
+            generation = directory.resolve(String.format(GENERATION_FORMAT, stamp));
+        }
+        return Files.createDirectory(generation);
+    }
+
+    private static void delete(Path tree) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(tree)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static class Entry {
+
+        /* default */ static final int LOCATION_INTS = RecordStore.LOCATION_BYTES / Integer.BYTES;
+        /* default */ final long datestamp;
+        /* default */ final long modified;
+        /* default */ final String identifier;
+        /* default */ final boolean deleted;
+        /* default */ final int setSpecs;
+        /* default */ final int[] locations;
+        /* default */ boolean replaced;
+
+        /* default */ Entry(long datestamp, long modified, String identifier, boolean deleted, int setSpecs,
+                            int formats) {
+            this.datestamp = datestamp;
+            this.modified = modified;
+            this.identifier = identifier;
+            this.deleted = deleted;
+            this.setSpecs = setSpecs;
+            this.locations = new int[formats * LOCATION_INTS];
+        }
+    }
+
+    /**
+     * The segment files of one metadata format, appended to in turn.
+     */
+    private static class Segments implements Closeable {
+
+        private final Path generation;
+        private final String prefix;
+        private final int maxBytes;
+        private final byte[] transfer = new byte[BUFFER_SIZE];
+        private SyncedOutput out;
+        private int segment;
+        private boolean closed;
+
+        /* default */ Segments(Path generation, String prefix, int maxBytes, int first) throws IOException {
+            this.generation = generation;
+            this.prefix = prefix;
+            this.maxBytes = maxBytes;
+            this.segment = first;
+            this.out = new SyncedOutput(RecordStore.segment(generation, prefix, segment));
+        }
+
+        /**
+         * Appends a fragment and stores its segment, offset and length at a position of the locations.
+         */
+        /* default */ void append(byte[] bytes, int[] locations, int at) throws IOException {
+            locate(bytes.length, locations, at);
+            out.write(bytes);
+        }
+
+        /**
+         * Appends a fragment of another segment file, read through the transfer array.
+         */
+        /* default */ void append(FileChannel source, long offset, int length, int[] locations, int at)
+                throws IOException {
+            locate(length, locations, at);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                ByteBuffer buffer = ByteBuffer.wrap(transfer, 0, (int) Math.min(end - position, transfer.length));
+                while (buffer.hasRemaining()) {
+                    if (source.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException(RecordStore.NOT_A_RECORD_STORE + generation);
+                    }
+                }
+                out.write(transfer, 0, buffer.position());
+                position += buffer.position();
+            }
+        }
+
+        private void locate(int length, int[] locations, int at) throws IOException {
+            if (out.size() > 0 && out.size() > maxBytes - length) {
+                out.close();
+                segment++;
+                out = new SyncedOutput(RecordStore.segment(generation, prefix, segment));
+            }
+            locations[at] = segment;
+            locations[at + 1] = out.size();
+            locations[at + 2] = length;
+        }
+
+        /* default */ int count() {
+            return segment + 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                out.close();
+                closed = true;
+            }
+        }
+    }
+
+    /**
+     * A buffered file that is synced to disk when it is closed.
+     */
+    private static class SyncedOutput extends DataOutputStream {
+
+        private final FileChannel channel;
+
+        /* default */ SyncedOutput(Path file) throws IOException {
+            this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE));
+        }
+
+        private SyncedOutput(FileChannel channel) {
+            super(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            this.channel = channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.force(true);
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package no.sikt.oai.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A snapshot file written by {@link SnapshotWriter}, opened for serving. The index is read into memory when the
+ * snapshot is opened, so a query is a binary search for the datestamp range followed by reading the gzip blocks the
+ * records of the page are in.
+ */
+public class Snapshot extends OrderedRecords implements Closeable {
+
+    public static final long MAGIC = 0x4F41_4953_4E41_5031L;
+    public static final String NOT_A_SNAPSHOT = "Not a snapshot: ";
+    private static final int TRAILER_BYTES = 2 * Long.BYTES;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final FileChannel channel;
+    private final long indexOffset;
+    private final long[] datestamps;
+    private final String[] identifiers;
+    private final long[] blockOffsets;
+    private final int[] lines;
+    private final String[][] setSpecs;
+    private final long[] blockEnds;
+    private final Map<String, Integer> positions;
+
+    private Snapshot(FileChannel channel, long indexOffset, DataInputStream index) throws IOException {
+        this.channel = channel;
+        this.indexOffset = indexOffset;
+        int size = index.readInt();
+        datestamps = new long[size];
+        identifiers = new String[size];
+        blockOffsets = new long[size];
+        lines = new int[size];
+        setSpecs = new String[size][];
+        positions = new HashMap<>(size * 2);
+        Map<List<String>, String[]> distinctSetSpecs = new ConcurrentHashMap<>();
+        for (int i = 0; i < size; i++) {
+            datestamps[i] = index.readLong();
+            identifiers[i] = index.readUTF();
+            blockOffsets[i] = index.readLong();
+            lines[i] = index.readUnsignedShort();
+            String[] sets = readSetSpecs(index);
+            setSpecs[i] = distinctSetSpecs.computeIfAbsent(Arrays.asList(sets), key -> sets);
+            positions.put(identifiers[i], i);
+        }
+        blockEnds = Arrays.stream(blockOffsets).distinct().sorted().toArray();
+    }
+
+    private static String[] readSetSpecs(DataInputStream index) throws IOException {
+        String[] sets = new String[index.readUnsignedByte()];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = index.readUTF();
+        }
+        return sets;
+    }
+
+    /**
+     * Opens a snapshot and reads its index.
+     *
+     * @param file snapshot file
+     * @return the snapshot, to be closed when no longer served
+     * @throws IOException if the file cannot be read or is not a complete snapshot
+     */
+    @SuppressWarnings("PMD.CloseResource")
+    public static Snapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file);
+        try {
+            long size = channel.size();
+            if (size < TRAILER_BYTES) {
+                throw new IOException(NOT_A_SNAPSHOT + file);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            readFully(channel, trailer, size - TRAILER_BYTES);
+            long indexOffset = trailer.getLong(0);
+            if (trailer.getLong(Long.BYTES) != MAGIC || indexOffset < 0 || indexOffset > size - TRAILER_BYTES) {
+                throw new IOException(NOT_A_SNAPSHOT + file);
+            }
+            ByteBuffer index = ByteBuffer.allocate(Math.toIntExact(size - TRAILER_BYTES - indexOffset));
+            readFully(channel, index, indexOffset);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new ByteArrayInputStream(index.array()), BUFFER_SIZE)))) {
+                return new Snapshot(channel, indexOffset, in);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int size() {
+        return datestamps.length;
+    }
+
+    /**
+     * Finds a page of records by offset.
+     *
+     * @param from          lower bound for the datestamp, may be empty
+     * @param until         upper bound for the datestamp, may be empty
+     * @param setSpec       set the records must be in, may be empty
+     * @param startPosition offset of the first record among those matching
+     * @param pageSize      maximum number of records
+     * @return the records, as NDJSON lines, and the number of records matching
+     * @throws IOException if the snapshot cannot be read
+     */
+    public Page find(String from, String until, String setSpec, int startPosition, int pageSize) throws IOException {
+        return page(select(from, until, setSpec, startPosition, pageSize));
+    }
+
+    /**
+     * Finds a page of records after a cursor.
+     *
+     * @param from     lower bound for the datestamp, may be empty
+     * @param until    upper bound for the datestamp, may be empty
+     * @param setSpec  set the records must be in, may be empty
+     * @param cursor   cursor of the last record on the previous page, empty for the first page
+     * @param pageSize maximum number of records
+     * @return the records, as NDJSON lines, and the number of records matching the whole query
+     * @throws IOException              if the snapshot cannot be read
+     * @throws IllegalArgumentException if the cursor is not one of this snapshot's
+     */
+    public Page findAfter(String from, String until, String setSpec, String cursor, int pageSize)
+            throws IOException {
+        return page(selectAfter(from, until, setSpec, cursor, pageSize));
+    }
+
+    /**
+     * Reads a record.
+     *
+     * @param identifier OAI identifier of the record
+     * @return the record as an NDJSON line, or empty when it is not in the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public Optional<String> read(String identifier) throws IOException {
+        Integer position = positions.get(identifier);
+        return position == null ? Optional.empty() : Optional.of(read(new int[] {position}).get(0));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* default */ static OutputStream gzip(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    private Page page(Selection selection) throws IOException {
+        return new Page(selection.numFound, read(selection.positions));
+    }
+
+    private List<String> read(int... matches) throws IOException {
+        List<String> records = new ArrayList<>(matches.length);
+        Map<Long, byte[]> blocks = new ConcurrentHashMap<>();
+        for (int position : matches) {
+            byte[] block = blocks.get(blockOffsets[position]);
+            if (block == null) {
+                block = readBlock(blockOffsets[position]);
+                blocks.put(blockOffsets[position], block);
+            }
+            records.add(line(block, lines[position]));
+        }
+        return records;
+    }
+
+    private byte[] readBlock(long offset) throws IOException {
+        int next = Arrays.binarySearch(blockEnds, offset) + 1;
+        long end = next < blockEnds.length ? blockEnds[next] : indexOffset;
+        ByteBuffer compressed = ByteBuffer.allocate(Math.toIntExact(end - offset));
+        readFully(channel, compressed, offset);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()), BUFFER_SIZE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String line(byte[] block, int line) {
+        int start = 0;
+        for (int i = 0; i < line; i++) {
+            start = indexOf(block, start) + 1;
+        }
+        return new String(block, start, indexOf(block, start) - start, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] block, int start) {
+        for (int i = start; i < block.length; i++) {
+            if (block[i] == '\n') {
+                return i;
+            }
+        }
+        return block.length;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, at);
+            if (read < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+            at += read;
+        }
+    }
+
+    @Override
+    protected long datestampAt(int position) {
+        return datestamps[position];
+    }
+
+    @Override
+    protected int compareIdentifierAt(int position, String identifier) {
+        return identifiers[position].compareTo(identifier);
+    }
+
+    @Override
+    protected boolean isInSet(int position, String setSpec) {
+        for (String set : setSpecs[position]) {
+            if (set.equals(setSpec)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class Page {
+
+        public final long numFound;
+        public final List<String> records;
+
+        public Page(long numFound, List<String> records) {
+            this.numFound = numFound;
+            this.records = records;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package no.sikt.oai.snapshot;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.OaiProviderHandler;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import nva.commons.core.Environment;
+import nva.commons.core.JacocoGenerated;
+import nva.commons.core.StringUtils;
+
+/**
+ * Scheduled function that exports the repository named in the environment to a new generation of the record store at
+ * RECORD_STORE_PATH, or else to the snapshot at SNAPSHOT_PATH, which the provider serves ListRecords, ListIdentifiers
+ * and GetRecord from.
+ */
+public class SnapshotExportHandler implements RequestHandler<Object, String> {
+
+    public static final String EXPORTED = "Exported %d records to %s";
+
+    private final Adapter source;
+    private final Path target;
+    private final boolean recordStore;
+    private final int pageSize;
+
+    @JacocoGenerated
+    public SnapshotExportHandler() {
+        this(new Environment());
+    }
+
+    @JacocoGenerated
+    public SnapshotExportHandler(Environment environment) {
+        this(OaiProviderHandler.createAdapter(environment), environment);
+    }
+
+    public SnapshotExportHandler(Adapter source, Environment environment) {
+        this.source = source;
+        Optional<String> store = environment.readEnvOpt(OaiConstants.RECORD_STORE_PATH_ENV)
+                .filter(StringUtils::isNotEmpty);
+        this.recordStore = store.isPresent();
+        this.target = Path.of(store.orElseGet(() -> environment.readEnv(OaiConstants.SNAPSHOT_PATH_ENV)));
+        this.pageSize = environment.readEnvOpt(OaiConstants.SNAPSHOT_EXPORT_PAGE_SIZE_ENV)
+                .map(Integer::parseInt)
+                .orElse(SnapshotExporter.DEFAULT_PAGE_SIZE);
+    }
+
+    @Override
+    public String handleRequest(Object input, Context context) {
+        try {
+            SnapshotExporter exporter = new SnapshotExporter(source, pageSize);
+            int count = recordStore ? exportRecordStore(exporter) : exporter.export(target);
+            return String.format(EXPORTED, count, target);
+        } catch (OaiException | InternalOaiException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int exportRecordStore(SnapshotExporter exporter) throws OaiException, InternalOaiException, IOException {
+        try (RecordStoreWriter writer = new RecordStoreWriter(target)) {
+            return exporter.export(writer, writer.getGeneration());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package no.sikt.oai.snapshot;
+
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static no.sikt.oai.OaiProviderHandler.EMPTY_STRING;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.MetadataFormat;
+import no.sikt.oai.Verb;
+import no.sikt.oai.adapter.Adapter;
+import no.sikt.oai.data.Record;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports every record of a repository through its adapter into a {@link Snapshot} or a {@link RecordStore}. The
+ * repository is paged by cursor, so every page costs the upstream search the same, and each page is rendered once in
+ * every metadata format. Paging by cursor relies on the upstream search accepting the cursor parameters, the same
+ * ones CURSOR_PAGINATION switches on for the provider, whatever that flag is set to. An upstream that ignores them
+ * answers every page with the first one, so a page that repeats the one before it, or does not move the cursor on,
+ * fails the export rather than looping until the function times out.
+ */
+public class SnapshotExporter {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    public static final String CURSOR_IGNORED =
+            "Upstream answered the page after %s with the page before it; it must accept cursor searches";
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotExporter.class);
+
+    private final Adapter source;
+    private final int pageSize;
+
+    public SnapshotExporter(Adapter source, int pageSize) {
+        this.source = source;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Exports the repository, replacing the snapshot at the target when all of it has been written.
+     *
+     * @param target snapshot file
+     * @return number of records exported
+     * @throws OaiException         if the upstream search does not succeed
+     * @throws InternalOaiException if the upstream cannot be reached or answers with something unexpected
+     * @throws IOException          if the snapshot cannot be written
+     */
+    public int export(Path target) throws OaiException, InternalOaiException, IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(target)) {
+            return export(writer, target);
+        }
+    }
+
+    /**
+     * Exports the repository to a sink and commits it when all of it has been written.
+     *
+     * @param sink   where the records are written
+     * @param target file or directory the sink writes to, for the log
+     * @return number of records exported
+     * @throws OaiException         if the upstream search does not succeed
+     * @throws InternalOaiException if the upstream cannot be reached or answers with something unexpected
+     * @throws IOException          if the records cannot be written
+     */
+    public int export(SnapshotSink sink, Path target) throws OaiException, InternalOaiException, IOException {
+        long startTime = System.currentTimeMillis();
+        int pages = copy(EMPTY_STRING, sink);
+        sink.commit();
+        LOG.info("Exported {} records in {} pages to {} in {} ms", sink.getRecordCount(), pages, target,
+                 System.currentTimeMillis() - startTime);
+        return sink.getRecordCount();
+    }
+
+    /**
+     * Writes the records modified since a date to a sink, without committing it.
+     *
+     * @param from earliest datestamp to copy, in the adapter's granularity, or empty for every record
+     * @param sink where the records are written
+     * @return number of pages fetched
+     * @throws OaiException         if the upstream search does not succeed
+     * @throws InternalOaiException if the upstream cannot be reached or answers with something unexpected
+     * @throws IOException          if the records cannot be written
+     */
+    public int copy(String from, SnapshotSink sink) throws OaiException, InternalOaiException, IOException {
+        String cursor = EMPTY_STRING;
+        String previousFirst = null;
+        int pages = 0;
+        boolean more = true;
+        while (more) {
+            String json = source.getRecordsListAfter(from, EMPTY_STRING, EMPTY_STRING, cursor, pageSize);
+            List<RecordsList> formats = parse(json);
+            RecordsList page = formats.get(0);
+            if (page.size() > 0) {
+                String first = page.get(0).getIdentifier();
+                if (first.equals(previousFirst) || cursor.equals(page.get(page.size() - 1).getCursor())) {
+                    throw new InternalOaiException(new IllegalStateException(String.format(CURSOR_IGNORED, cursor)),
+                                                   HTTP_UNAVAILABLE);
+                }
+                previousFirst = first;
+            }
+            for (int i = 0; i < page.size(); i++) {
+                sink.write(snapshotRecord(formats, i));
+            }
+            pages++;
+            more = page.size() == pageSize && page.get(page.size() - 1).getCursor() != null;
+            if (more) {
+                cursor = page.get(page.size() - 1).getCursor();
+            }
+        }
+        return pages;
+    }
+
+    private List<RecordsList> parse(String json) throws InternalOaiException {
+        List<RecordsList> formats = new ArrayList<>(MetadataFormat.values().length);
+        for (MetadataFormat format : MetadataFormat.values()) {
+            formats.add(source.parseRecordsListResponse(Verb.ListRecords.name(), json, prefix(format),
+                                                        EMPTY_STRING));
+        }
+        return formats;
+    }
+
+    private static SnapshotRecord snapshotRecord(List<RecordsList> formats, int index) {
+        Map<String, String> metadata = new ConcurrentHashMap<>();
+        for (int i = 0; i < formats.size(); i++) {
+            metadata.put(prefix(MetadataFormat.values()[i]),
+                         Objects.requireNonNullElse(formats.get(i).get(index).getContent(), EMPTY_STRING));
+        }
+        Record record = formats.get(0).get(index);
+        return new SnapshotRecord(record.getIdentifier(),
+                                  record.getDatestamp() == Record.NO_DATESTAMP
+                                          ? null
+                                          : TimeUnit.SECONDS.toMillis(record.getDatestamp()),
+                                  record.getModified() == Record.NO_DATESTAMP ? null : record.getModified(),
+                                  record.isDeleted(),
+                                  record.getSetSpecs(),
+                                  metadata);
+    }
+
+    private static String prefix(MetadataFormat format) {
+        return format.name().toLowerCase(Locale.ROOT);
+    }
+}
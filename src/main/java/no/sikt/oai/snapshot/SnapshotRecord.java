@@ -0,0 +1,44 @@
+package no.sikt.oai.snapshot;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One line of a snapshot: a record's header with its metadata rendered in every {@link no.sikt.oai.MetadataFormat},
+ * keyed by the lower case metadataPrefix. The last modification is kept in epoch milliseconds beside the datestamp,
+ * which for some repositories only has the day, so a change sync can tell whether a record fetched again was edited.
+ */
+public class SnapshotRecord {
+
+    @JsonProperty("identifier")
+    public String identifier;
+    @JsonProperty("datestamp")
+    public Long datestamp;
+    @JsonProperty("modified")
+    public Long modified;
+    @JsonProperty("deleted")
+    public boolean deleted;
+    @JsonProperty("setSpecs")
+    public List<String> setSpecs;
+    @JsonProperty("metadata")
+    public Map<String, String> metadata;
+
+    public SnapshotRecord() {
+    }
+
+    public SnapshotRecord(String identifier, Long datestamp, boolean deleted, List<String> setSpecs,
+                          Map<String, String> metadata) {
+        this(identifier, datestamp, datestamp, deleted, setSpecs, metadata);
+    }
+
+    public SnapshotRecord(String identifier, Long datestamp, Long modified, boolean deleted, List<String> setSpecs,
+                          Map<String, String> metadata) {
+        this.identifier = identifier;
+        this.datestamp = datestamp;
+        this.modified = modified;
+        this.deleted = deleted;
+        this.setSpecs = setSpecs;
+        this.metadata = metadata;
+    }
+}
@@ -0,0 +1,28 @@
+package no.sikt.oai.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where {@link SnapshotExporter} writes the records of a repository. Nothing written is visible to readers until it
+ * has been committed, and closing a sink that was not committed discards what was written.
+ */
+public interface SnapshotSink extends Closeable {
+
+    /**
+     * Appends a record.
+     *
+     * @param record record with its metadata in every format
+     * @throws IOException if the record cannot be written
+     */
+    void write(SnapshotRecord record) throws IOException;
+
+    /**
+     * Makes everything written visible to readers.
+     *
+     * @throws IOException if the records cannot be written or moved into place
+     */
+    void commit() throws IOException;
+
+    int getRecordCount();
+}
@@ -0,0 +1,176 @@
+package no.sikt.oai.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Writes a snapshot file. Records are written as NDJSON lines, {@value #BLOCK_RECORDS} to a gzip member, so a reader
+ * can decompress the block a record is in without the rest of the file. {@link #commit()} appends an index of all
+ * records sorted by datestamp and identifier, with the block and line of each, and moves the file into place. Until
+ * then the snapshot is written to a temporary file next to the target, so readers never see a partial snapshot.
+ *
+ * <p>The file is laid out as
+ * <pre>
+ *   data blocks   gzip members of NDJSON {@link SnapshotRecord} lines
+ *   index         gzip member: record count, then per record datestamp, identifier, block offset, line in block
+ *                 and setSpecs
+ *   trailer       offset of the index and {@link Snapshot#MAGIC}, as two longs
+ * </pre>
+ */
+public class SnapshotWriter implements SnapshotSink {
+
+    public static final int BLOCK_RECORDS = 64;
+    public static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path target;
+    private final Path temporary;
+    private final FileChannel file;
+    private final CountingOutputStream out;
+    private final List<IndexEntry> index = new ArrayList<>();
+    private OutputStream block = OutputStream.nullOutputStream();
+    private long blockOffset;
+    private int blockLines;
+    private boolean committed;
+
+    public SnapshotWriter(Path target) throws IOException {
+        this.target = target;
+        this.temporary = target.resolveSibling(target.getFileName() + TEMPORARY_SUFFIX);
+        this.file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                     StandardOpenOption.WRITE);
+        this.out = new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(file)));
+    }
+
+    /**
+     * Appends a record to the snapshot.
+     *
+     * @param record record with its metadata in every format
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void write(SnapshotRecord record) throws IOException {
+        if (blockLines == 0) {
+            blockOffset = out.getCount();
+            block = Snapshot.gzip(new Unclosable(out));
+        }
+        block.write(mapper.writeValueAsBytes(record));
+        block.write('\n');
+        index.add(new IndexEntry(record, blockOffset, blockLines));
+        blockLines++;
+        if (blockLines == BLOCK_RECORDS) {
+            endBlock();
+        }
+    }
+
+    @Override
+    public int getRecordCount() {
+        return index.size();
+    }
+
+    /**
+     * Writes the index, syncs the file to disk and replaces the target with it.
+     *
+     * @throws IOException if the file cannot be written or moved
+     */
+    @Override
+    public void commit() throws IOException {
+        endBlock();
+        long indexOffset = out.getCount();
+        index.sort(Comparator.comparingLong((IndexEntry entry) -> entry.datestamp)
+                       .thenComparing(entry -> entry.identifier));
+        try (DataOutputStream data = new DataOutputStream(Snapshot.gzip(new Unclosable(out)))) {
+            data.writeInt(index.size());
+            for (IndexEntry entry : index) {
+                entry.writeTo(data);
+            }
+        }
+        try (DataOutputStream trailer = new DataOutputStream(new Unclosable(out))) {
+            trailer.writeLong(indexOffset);
+            trailer.writeLong(Snapshot.MAGIC);
+        }
+        file.force(true);
+        out.close();
+        committed = true;
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Closes the file. A snapshot that was not committed is deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            out.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void endBlock() throws IOException {
+        if (blockLines > 0) {
+            block.close();
+            blockLines = 0;
+        }
+    }
+
+    private static class IndexEntry {
+
+        /* default */ final long datestamp;
+        /* default */ final String identifier;
+        /* default */ final long blockOffset;
+        /* default */ final int line;
+        /* default */ final List<String> setSpecs;
+
+        /* default */ IndexEntry(SnapshotRecord record, long blockOffset, int line) {
+            this.datestamp = Snapshot.datestamp(record.datestamp);
+            this.identifier = record.identifier;
+            this.blockOffset = blockOffset;
+            this.line = line;
+            this.setSpecs = record.setSpecs == null ? List.of() : record.setSpecs;
+        }
+
+        /* default */ void writeTo(DataOutputStream data) throws IOException {
+            data.writeLong(datestamp);
+            data.writeUTF(identifier);
+            data.writeLong(blockOffset);
+            data.writeShort(line);
+            data.writeByte(setSpecs.size());
+            for (String setSpec : setSpecs) {
+                data.writeUTF(setSpec);
+            }
+        }
+    }
+
+    /**
+     * Lets a gzip member be finished without closing the file it is written to.
+     */
+    private static class Unclosable extends FilterOutputStream {
+
+        /* default */ Unclosable(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
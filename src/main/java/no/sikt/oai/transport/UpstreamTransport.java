@@ -0,0 +1,190 @@
+package no.sikt.oai.transport;
+
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+import static org.apache.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.apache.http.HttpHeaders.CONTENT_ENCODING;
+import static org.apache.http.HttpHeaders.CONTENT_TYPE;
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.exception.InternalOaiException;
+import nva.commons.core.Environment;
+
+/**
+ * The HTTP client both adapters call upstream with. The handler creates one per container and keeps it across
+ * invocations, so a warm container reuses its pooled connections instead of opening new ones. The client prefers
+ * HTTP/2, has a connect timeout and a small bounded executor, and every request gets a deadline, so a slow backend
+ * fails the call well within the function timeout. Responses are requested gzip-encoded and decoded here.
+ *
+ * <p>Calls that can only be made blocking, like those through the NVA backend client, run on a separate bounded pool
+ * via {@link #call(UpstreamCall)}, so they never hold the threads the HTTP client needs to complete responses.
+ */
+public class UpstreamTransport {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(2);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(8);
+    public static final int DEFAULT_THREADS = 4;
+    public static final String GZIP = "gzip";
+    public static final BodyHandler<String> BODY_HANDLER = UpstreamTransport::decodingSubscriber;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final Executor callExecutor;
+
+    public UpstreamTransport(Environment environment) {
+        this(environment.readEnvOpt(OaiConstants.UPSTREAM_THREADS_ENV).map(Integer::parseInt).orElse(DEFAULT_THREADS),
+             readMillis(environment, OaiConstants.UPSTREAM_CONNECT_TIMEOUT_MILLIS_ENV, DEFAULT_CONNECT_TIMEOUT),
+             readMillis(environment, OaiConstants.UPSTREAM_REQUEST_TIMEOUT_MILLIS_ENV, DEFAULT_REQUEST_TIMEOUT));
+    }
+
+    public UpstreamTransport(HttpClient client, Duration requestTimeout) {
+        this(client, requestTimeout, newPool(DEFAULT_THREADS, "upstream-call"));
+    }
+
+    private UpstreamTransport(int threads, Duration connectTimeout, Duration requestTimeout) {
+        this(HttpClient.newBuilder()
+                 .version(HttpClient.Version.HTTP_2)
+                 .followRedirects(HttpClient.Redirect.NORMAL)
+                 .connectTimeout(connectTimeout)
+                 .executor(newPool(threads, "upstream-http"))
+                 .build(),
+             requestTimeout,
+             newPool(threads, "upstream-call"));
+    }
+
+    private UpstreamTransport(HttpClient client, Duration requestTimeout, Executor callExecutor) {
+        this.client = client;
+        this.requestTimeout = requestTimeout;
+        this.callExecutor = callExecutor;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Starts a GET request for a JSON resource, with the request deadline and gzip accepted.
+     *
+     * @param uri resource to get
+     * @return request builder, to add headers to or send
+     */
+    public HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder()
+                   .uri(uri)
+                   .timeout(requestTimeout)
+                   .header(CONTENT_TYPE, APPLICATION_JSON.getMimeType())
+                   .header(ACCEPT_ENCODING, GZIP)
+                   .GET();
+    }
+
+    /**
+     * Sends a request and returns the decoded body.
+     *
+     * @param request request from {@link #newRequest(URI)}
+     * @return the response
+     * @throws IOException          if the request fails or times out
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    public HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.build(), BODY_HANDLER);
+    }
+
+    /**
+     * Sends a request without blocking.
+     *
+     * @param request request from {@link #newRequest(URI)}
+     * @return the response, completing exceptionally if the request fails or times out
+     */
+    public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest.Builder request) {
+        return client.sendAsync(request.build(), BODY_HANDLER);
+    }
+
+    /**
+     * Runs a blocking upstream call on the transport's call pool.
+     *
+     * @param call the call
+     * @param <T>  result type
+     * @return the result, completing exceptionally with the exception the call threw
+     */
+    public <T> CompletableFuture<T> call(UpstreamCall<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, callExecutor);
+    }
+
+    /**
+     * Wraps the exception an upstream call failed with for an adapter future, which completes with an
+     * {@link InternalOaiException} when upstream cannot be reached.
+     *
+     * @param error exception the call completed with
+     * @return exception to complete the adapter future with
+     */
+    public static CompletionException unavailable(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        Exception exception = cause instanceof Exception ? (Exception) cause : new CompletionException(cause);
+        return new CompletionException(new InternalOaiException(exception, HTTP_UNAVAILABLE));
+    }
+
+    private static HttpResponse.BodySubscriber<String> decodingSubscriber(HttpResponse.ResponseInfo responseInfo) {
+        boolean gzipped = responseInfo.headers().firstValue(CONTENT_ENCODING).map(GZIP::equalsIgnoreCase)
+                              .orElse(false);
+        return gzipped
+                   ? BodySubscribers.mapping(BodySubscribers.ofByteArray(), UpstreamTransport::gunzip)
+                   : BodyHandlers.ofString().apply(responseInfo);
+    }
+
+    private static String gunzip(byte[] body) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Duration readMillis(Environment environment, String name, Duration defaultValue) {
+        return environment.readEnvOpt(name).map(Long::parseLong).map(Duration::ofMillis).orElse(defaultValue);
+    }
+
+    private static Executor newPool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @FunctionalInterface
+    public interface UpstreamCall<T> {
+
+        T call() throws IOException, InterruptedException;
+    }
+}
@@ -0,0 +1,59 @@
+package no.sikt.oai;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Date;
+import no.sikt.oai.ConditionalGet.Prerendered;
+import org.junit.jupiter.api.Test;
+
+public class ConditionalGetTest {
+
+    public static final long LAST_MODIFIED = 1_647_074_742_154L;
+    public static final String LAST_MODIFIED_HTTP_DATE = "Sat, 12 Mar 2022 08:45:42 GMT";
+    public static final String DOCUMENT = "<OAI-PMH>\n    <responseDate>2022-03-12T08:45:42Z</responseDate>\n"
+                                          + "    <Identify/>\n</OAI-PMH>\n";
+
+    @Test
+    public void shouldCreateEtagFromLastUpdateDateAndMetadataPrefix() {
+        String etag = ConditionalGet.etag(new Date(LAST_MODIFIED), "QDC");
+        assertEquals(etag, ConditionalGet.etag(new Date(LAST_MODIFIED), "qdc"));
+        assertThat(etag.equals(ConditionalGet.etag(new Date(LAST_MODIFIED), "oai_dc")), is(false));
+        assertThat(etag.equals(ConditionalGet.etag(new Date(LAST_MODIFIED + 1), "qdc")), is(false));
+        assertThat(etag.startsWith("\"") && etag.endsWith("\""), is(true));
+        assertThat(ConditionalGet.forEncoding(etag, ResponseCompression.GZIP), is(containsString("-gzip\"")));
+    }
+
+    @Test
+    public void shouldMatchIfNoneMatchAgainstEtagOfAnyEncoding() {
+        String etag = ConditionalGet.etag(new Date(LAST_MODIFIED), "qdc");
+        String gzipped = ConditionalGet.forEncoding(etag, ResponseCompression.GZIP);
+        assertThat(ConditionalGet.isNotModified(etag, null, etag, LAST_MODIFIED), is(true));
+        assertThat(ConditionalGet.isNotModified("\"other\", W/" + gzipped, null, etag, LAST_MODIFIED), is(true));
+        assertThat(ConditionalGet.isNotModified(ConditionalGet.ANY, null, etag, LAST_MODIFIED), is(true));
+        assertThat(ConditionalGet.isNotModified("\"other\"", LAST_MODIFIED_HTTP_DATE, etag, LAST_MODIFIED), is(false));
+    }
+
+    @Test
+    public void shouldCompareIfModifiedSinceInWholeSeconds() {
+        String etag = ConditionalGet.etag(new Date(LAST_MODIFIED), "qdc");
+        assertEquals(LAST_MODIFIED_HTTP_DATE, ConditionalGet.httpDate(LAST_MODIFIED));
+        assertThat(ConditionalGet.isNotModified(null, LAST_MODIFIED_HTTP_DATE, etag, LAST_MODIFIED), is(true));
+        assertThat(ConditionalGet.isNotModified(null, "Sat, 12 Mar 2022 08:45:41 GMT", etag, LAST_MODIFIED),
+                   is(false));
+        assertThat(ConditionalGet.isNotModified(null, "yesterday", etag, LAST_MODIFIED), is(false));
+        assertThat(ConditionalGet.isNotModified(null, null, etag, LAST_MODIFIED), is(false));
+    }
+
+    @Test
+    public void shouldRenderPrerenderedDocumentWithCurrentResponseDate() {
+        Prerendered prerendered = new Prerendered(DOCUMENT);
+        String rendered = prerendered.render().toString();
+        assertThat(rendered.startsWith("<OAI-PMH>\n    <responseDate>"), is(true));
+        assertThat(rendered.endsWith("</responseDate>\n    <Identify/>\n</OAI-PMH>\n"), is(true));
+        assertThat(rendered.contains("2022-03-12T08:45:42Z"), is(false));
+        assertEquals(prerendered.etag, new Prerendered(rendered).etag);
+        assertThat(prerendered.etag.equals(new Prerendered(DOCUMENT.replace("Identify", "x")).etag), is(false));
+    }
+}
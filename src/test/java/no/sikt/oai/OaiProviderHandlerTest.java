@@ -10,22 +10,33 @@ import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options
 import static no.sikt.oai.MetadataFormat.OAI_DC;
 import static no.sikt.oai.MetadataFormat.QDC;
 import static no.sikt.oai.OaiConstants.BAD_ARGUMENT;
+import static no.sikt.oai.OaiConstants.BAD_RESUMPTION_TOKEN;
 import static no.sikt.oai.OaiConstants.BAD_VERB;
 import static no.sikt.oai.OaiConstants.CLIENT_NAME_ENV;
 import static no.sikt.oai.OaiConstants.CLIENT_TYPE_DLR;
 import static no.sikt.oai.OaiConstants.CLIENT_TYPE_NVA;
+import static no.sikt.oai.OaiConstants.CURSOR_PAGINATION_ENV;
 import static no.sikt.oai.OaiConstants.DIFFERENT_DATE_GRANULARITIES;
 import static no.sikt.oai.OaiConstants.ID_DOES_NOT_EXIST;
 import static no.sikt.oai.OaiConstants.ILLEGAL_DATE_FROM;
 import static no.sikt.oai.OaiConstants.ILLEGAL_DATE_UNTIL;
 import static no.sikt.oai.OaiConstants.METADATA_FORMAT_NOT_SUPPORTED;
 import static no.sikt.oai.OaiConstants.METADATA_PREFIX_IS_A_REQUIRED;
+import static no.sikt.oai.OaiConstants.METRICS_ENABLED_ENV;
 import static no.sikt.oai.OaiConstants.NOT_A_LEGAL_PARAMETER;
 import static no.sikt.oai.OaiConstants.NO_RECORDS_MATCH;
 import static no.sikt.oai.OaiConstants.NO_SET_HIERARCHY;
+import static no.sikt.oai.OaiConstants.PREFETCH_ENABLED_ENV;
+import static no.sikt.oai.OaiConstants.PRIMING_ENABLED_ENV;
 import static no.sikt.oai.OaiConstants.RECORDS_URI_ENV;
+import static no.sikt.oai.OaiConstants.RECORD_STORE_PATH_ENV;
 import static no.sikt.oai.OaiConstants.RECORD_URI_ENV;
+import static no.sikt.oai.OaiConstants.RESPONSE_COMPRESSION_ENABLED_ENV;
+import static no.sikt.oai.OaiConstants.RESPONSE_COMPRESSION_MIN_BYTES_ENV;
+import static no.sikt.oai.OaiConstants.RESUMPTION_TOKEN_LEGACY_UNTIL_ENV;
+import static no.sikt.oai.OaiConstants.RESUMPTION_TOKEN_SECRET_ENV;
 import static no.sikt.oai.OaiConstants.SETS_URI_ENV;
+import static no.sikt.oai.OaiConstants.SNAPSHOT_PATH_ENV;
 import static no.sikt.oai.OaiConstants.UNKNOWN_SET_NAME;
 import static no.sikt.oai.OaiConstants.VERB_IS_MISSING;
 import static no.sikt.oai.RestApiConfig.restServiceObjectMapper;
@@ -39,28 +50,46 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.tomakehurst.wiremock.WireMockServer;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandler;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 import no.sikt.oai.adapter.Adapter;
 import no.sikt.oai.adapter.DlrAdapter;
 import no.sikt.oai.adapter.NvaAdapter;
+import no.sikt.oai.metrics.RequestMetrics;
+import no.sikt.oai.metrics.RequestMetrics.Phase;
+import no.sikt.oai.snapshot.RecordStoreWriter;
+import no.sikt.oai.snapshot.SnapshotExporter;
 import no.unit.nva.auth.AuthorizedBackendClient;
 import no.unit.nva.stubs.WiremockHttpClient;
 import no.unit.nva.testutils.HandlerRequestBuilder;
@@ -69,6 +98,7 @@ import nva.commons.core.Environment;
 import nva.commons.core.ioutils.IoUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -87,11 +117,18 @@ public class OaiProviderHandlerTest {
     public static final String UUID_REGEX = "^/[^/]+/(?:[0-9a-f]{12}-)?[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0"
                                             + "-9a-f]{3}-[0-9a-f]{12}$";
     public static final String RESUMPTION_TOKEN = "lr~sikt~~~qdc~50";
+    public static final Pattern RESUMPTION_TOKEN_ELEMENT = Pattern.compile("<resumptionToken[^>]*>([^<]+)<");
     public static final String SET_NAME_SIKT = "sikt";
     public static final String EXCEPTION = "Exception";
     public static final String METADATA_TAG = "<metadata>";
     public static final String UIO_CUSTUMER_ID = "1bd2e3f7-a570-442a-b444-cb02e6cc70e4";
     public static final String ESCAPED_AMPERSAND = "&amp;";
+    public static final String SETS = "sets";
+    public static final String RECORDS = "records";
+    public static final String ETAG = "ETag";
+    public static final String LAST_MODIFIED = "Last-Modified";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
     private AuthorizedBackendClient authorizedBackendClient;
     private OaiProviderHandler handler;
     private Adapter adapter;
@@ -107,6 +144,8 @@ public class OaiProviderHandlerTest {
         environment = mock(Environment.class);
         when(environment.readEnv(ALLOWED_ORIGIN_ENV)).thenReturn("*");
         when(environment.readEnv(CLIENT_NAME_ENV)).thenReturn(adapterName);
+        when(environment.readEnvOpt(RESUMPTION_TOKEN_SECRET_ENV)).thenReturn(Optional.of(randomString()));
+        when(environment.readEnvOpt(RESUMPTION_TOKEN_LEGACY_UNTIL_ENV)).thenReturn(Optional.of("2999-01-01T00:00:00Z"));
         httpClient = WiremockHttpClient.create();
         authorizedBackendClient = new AuthorizedBackendClient(null, null, null) {
             @Override
@@ -453,6 +492,22 @@ public class OaiProviderHandlerTest {
         assertThat(responseBody, is(containsString(NO_SET_HIERARCHY)));
     }
 
+    @Test
+    public void shouldReturnCachedListSetsResponseWhenApiGoesDownAfterFirstRequest() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListSets.name());
+        handler.handleRequest(handlerInputStream(queryParameters), new ByteArrayOutputStream(), context);
+        mockErrorSetsResponse(CLIENT_TYPE_DLR);
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        var responseBody = gatewayResponse.getBody();
+        assertThat(responseBody, is(containsString(SET_NAME_SIKT)));
+        assertThat(responseBody, is(not(containsString(NO_SET_HIERARCHY))));
+    }
+
     @Test
     public void shouldReturnErrorResponseWhenAskedForListSetsButSomeMisbehaviorInServerCommunication()
         throws IOException {
@@ -489,6 +544,24 @@ public class OaiProviderHandlerTest {
         assertThat(responseBody, is(not(containsString(METADATA_TAG))));
     }
 
+    @Test
+    public void shouldReturnListIdentifiersResponseWithoutMetadataWhenAskedForListIdentifiersNVA() throws IOException {
+        init(CLIENT_TYPE_NVA);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListIdentifiers.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        queryParameters.put(ValidParameterKey.SET.key, UIO_CUSTUMER_ID);
+        var output = new ByteArrayOutputStream();
+        var inputStream = handlerInputStream(queryParameters);
+        handler.handleRequest(inputStream, output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        var responseBody = gatewayResponse.getBody();
+        assertThat(responseBody, is(containsString(Verb.ListIdentifiers.name())));
+        assertThat(responseBody, is(containsString("<identifier>oai:nva.unit.no:")));
+        assertThat(responseBody, is(not(containsString(METADATA_TAG))));
+    }
+
     @Test
     public void shouldReturnListIdentifiersResponseWhenAskedForListIdentifiersWithValidResumptionToken()
         throws IOException {
@@ -507,6 +580,464 @@ public class OaiProviderHandlerTest {
         assertThat(responseBody, is(containsString(Verb.ListIdentifiers.name())));
     }
 
+    @Test
+    public void shouldServeNextPageFromPrefetchWhenPrefetchIsEnabled() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(PREFETCH_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.RESUMPTIONTOKEN.key, RESUMPTION_TOKEN);
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        Matcher nextToken = RESUMPTION_TOKEN_ELEMENT.matcher(parseSuccessResponse(output.toString()).getBody());
+        assertThat(nextToken.find(), is(true));
+        queryParameters.put(ValidParameterKey.RESUMPTIONTOKEN.key, nextToken.group(1));
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString(Verb.ListRecords.name())));
+        assertThat(gatewayResponse.getBody(), is(containsString(nextToken.group(1))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {CLIENT_TYPE_DLR, CLIENT_TYPE_NVA})
+    public void shouldServeRequestsAfterPrimingOnConstruction(String clientName) throws IOException {
+        init(clientName);
+        when(environment.readEnvOpt(PRIMING_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString(Verb.ListRecords.name())));
+    }
+
+    @Test
+    public void shouldConstructHandlerWhenPrimingFails() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        mockErrorSetsResponse(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(PRIMING_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.Identify.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        assertEquals(HttpURLConnection.HTTP_OK, parseSuccessResponse(output.toString()).getStatusCode());
+    }
+
+    @Test
+    public void shouldPageByCursorWhenCursorPaginationIsEnabled() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(CURSOR_PAGINATION_ENV)).thenReturn(Optional.of("true"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        Matcher nextToken = RESUMPTION_TOKEN_ELEMENT.matcher(parseSuccessResponse(output.toString()).getBody());
+        assertThat(nextToken.find(), is(true));
+        queryParameters.put(ValidParameterKey.RESUMPTIONTOKEN.key, nextToken.group(1));
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        Matcher secondToken = RESUMPTION_TOKEN_ELEMENT.matcher(gatewayResponse.getBody());
+        assertThat(secondToken.find(), is(true));
+        assertThat(secondToken.group(1).equals(nextToken.group(1)), is(false));
+    }
+
+    @Test
+    public void shouldReturnFirstPageSortedForCursorWhenCursorPaginationIsEnabledForNva() throws IOException {
+        init(CLIENT_TYPE_NVA);
+        when(environment.readEnvOpt(CURSOR_PAGINATION_ENV)).thenReturn(Optional.of("true"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListIdentifiers.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString(Verb.ListIdentifiers.name())));
+    }
+
+    @Test
+    public void shouldReturnBadResumptionTokenWhenSignedTokenIsTamperedWith() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.RESUMPTIONTOKEN.key, RESUMPTION_TOKEN);
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        Matcher nextToken = RESUMPTION_TOKEN_ELEMENT.matcher(parseSuccessResponse(output.toString()).getBody());
+        assertThat(nextToken.find(), is(true));
+        String token = nextToken.group(1);
+        String tampered = token.substring(0, 3) + (token.charAt(3) == 'A' ? 'B' : 'A') + token.substring(4);
+        queryParameters.put(ValidParameterKey.RESUMPTIONTOKEN.key, tampered);
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString(BAD_RESUMPTION_TOKEN)));
+    }
+
+    @Test
+    public void shouldEmitPhaseMetricsWithValidatedDimensionsForListRecords() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        List<String> lines = new ArrayList<>();
+        handler = new OaiProviderHandler(environment, adapter, lines::add);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        queryParameters.put(ValidParameterKey.SET.key, SET_NAME_SIKT);
+        handler.handleRequest(handlerInputStream(queryParameters), new ByteArrayOutputStream(), context);
+        assertEquals(1, lines.size());
+        JsonNode metrics = dtoObjectMapper.readTree(lines.get(0));
+        assertEquals(Verb.ListRecords.name(), metrics.get(RequestMetrics.VERB).asText());
+        assertEquals("qdc", metrics.get(RequestMetrics.METADATA_PREFIX).asText());
+        assertEquals(SET_NAME_SIKT, metrics.get(RequestMetrics.SET).asText());
+        assertEquals(PageSizePolicy.DEFAULT_PAGE_SIZE, metrics.get(RequestMetrics.PAGE_SIZE).asInt());
+        assertThat(metrics.get(RequestMetrics.RECORD_COUNT).asInt() > 0, is(true));
+        for (Phase phase : Phase.values()) {
+            assertThat(metrics.get(phase.metricName).asDouble() >= 0, is(true));
+        }
+        assertThat(metrics.has(RequestMetrics.ERROR_CODE), is(false));
+        assertEquals(0, metrics.get(RequestMetrics.CONTENT_CACHE_HITS).asLong());
+        assertThat(metrics.get(RequestMetrics.CONTENT_CACHE_MISSES).asLong() > 0, is(true));
+
+        handler.handleRequest(handlerInputStream(queryParameters), new ByteArrayOutputStream(), context);
+        JsonNode repeated = dtoObjectMapper.readTree(lines.get(1));
+        assertEquals(metrics.get(RequestMetrics.CONTENT_CACHE_MISSES).asLong(),
+                     repeated.get(RequestMetrics.CONTENT_CACHE_HITS).asLong());
+        assertEquals(0, repeated.get(RequestMetrics.CONTENT_CACHE_MISSES).asLong());
+        assertEquals(0.5, repeated.get(RequestMetrics.CONTENT_CACHE_HIT_RATE).asDouble(), 0.0);
+    }
+
+    @Test
+    public void shouldWriteMetricsToStandardOutWhenMetricsAreEnabled() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(METRICS_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.Identify.name());
+        PrintStream standardOut = System.out;
+        var stdout = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8));
+        try {
+            handler.handleRequest(handlerInputStream(queryParameters), new ByteArrayOutputStream(), context);
+        } finally {
+            System.setOut(standardOut);
+        }
+        assertThat(stdout.toString(StandardCharsets.UTF_8), is(containsString("\"Verb\":\"Identify\"")));
+    }
+
+    @Test
+    public void shouldEmitErrorCodeAndNoUnvalidatedSetWhenSetIsUnknown() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        List<String> lines = new ArrayList<>();
+        handler = new OaiProviderHandler(environment, adapter, lines::add);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        queryParameters.put(ValidParameterKey.SET.key, randomString());
+        handler.handleRequest(handlerInputStream(queryParameters), new ByteArrayOutputStream(), context);
+        JsonNode metrics = dtoObjectMapper.readTree(lines.get(0));
+        assertEquals(BAD_ARGUMENT, metrics.get(RequestMetrics.ERROR_CODE).asText());
+        assertEquals(RequestMetrics.NONE, metrics.get(RequestMetrics.SET).asText());
+        assertEquals(RequestMetrics.NONE, metrics.get(RequestMetrics.PAGE_SIZE).asText());
+    }
+
+    @Test
+    public void shouldReturnNotModifiedForGetRecordWhenEtagMatches() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.GetRecord.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        queryParameters.put(ValidParameterKey.IDENTIFIER.key, REAL_OAI_IDENTIFIER_DLR);
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        String etag = gatewayResponse.getHeaders().get(ETAG);
+        assertThat(gatewayResponse.getHeaders().get(LAST_MODIFIED), is(containsString("12 Mar 2022")));
+
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(conditionalInputStream(queryParameters, IF_NONE_MATCH, etag), output, context);
+        gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, gatewayResponse.getStatusCode());
+        assertEquals(etag, gatewayResponse.getHeaders().get(ETAG));
+        assertThat(gatewayResponse.getBody() == null || gatewayResponse.getBody().isEmpty(), is(true));
+
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, OAI_DC.name());
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(conditionalInputStream(queryParameters, IF_NONE_MATCH, etag), output, context);
+        gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString(Verb.GetRecord.name())));
+    }
+
+    @Test
+    public void shouldReturnGetRecordEditedLaterTheSameDayAlthoughDatestampIsUnchanged() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.GetRecord.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        queryParameters.put(ValidParameterKey.IDENTIFIER.key, REAL_OAI_IDENTIFIER_DLR);
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var first = parseSuccessResponse(output.toString());
+        String etag = first.getHeaders().get(ETAG);
+        String lastModified = first.getHeaders().get(LAST_MODIFIED);
+
+        ObjectNode edited = createRecordResponse();
+        ((ObjectNode) edited.get("features")).put("dlr_time_updated", "2022-03-12T14:02:10.001Z");
+        ((ObjectNode) edited.get("features")).put("dlr_title", "edited title");
+        stubFor(get(urlPathMatching(UUID_REGEX)).willReturn(ok().withBody(edited.toPrettyString())));
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(conditionalInputStream(queryParameters, IF_NONE_MATCH, etag), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString("edited title")));
+        assertThat(gatewayResponse.getHeaders().get(ETAG).equals(etag), is(false));
+
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(conditionalInputStream(queryParameters, IF_MODIFIED_SINCE, lastModified), output,
+                context);
+        gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getHeaders().get(LAST_MODIFIED), is(containsString("14:02:10")));
+    }
+
+    @Test
+    public void shouldReturnNotModifiedForPrerenderedIdentifyWhenEtagMatches() throws IOException {
+        init(CLIENT_TYPE_NVA);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.Identify.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var identify = parseSuccessResponse(output.toString());
+        assertThat(identify.getBody(), is(containsString("<responseDate>")));
+        assertNull(identify.getHeaders().get(LAST_MODIFIED));
+
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(conditionalInputStream(queryParameters, IF_NONE_MATCH,
+                identify.getHeaders().get(ETAG)), output, context);
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, parseSuccessResponse(output.toString()).getStatusCode());
+
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(conditionalInputStream(queryParameters, IF_MODIFIED_SINCE,
+                ConditionalGet.httpDate(System.currentTimeMillis())), output, context);
+        assertEquals(HttpURLConnection.HTTP_OK, parseSuccessResponse(output.toString()).getStatusCode());
+
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListMetadataFormats.name());
+        output = new ByteArrayOutputStream();
+        handler.handleRequest(conditionalInputStream(queryParameters, IF_NONE_MATCH,
+                identify.getHeaders().get(ETAG)), output, context);
+        var listMetadataFormats = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, listMetadataFormats.getStatusCode());
+        assertThat(listMetadataFormats.getBody(), is(containsString(Verb.ListMetadataFormats.name())));
+        assertThat(identify.getHeaders().get(ETAG).equals(listMetadataFormats.getHeaders().get(ETAG)), is(false));
+    }
+
+    @Test
+    public void shouldServeListRecordsFromSnapshotWhenSnapshotPathIsSet(@TempDir Path folder) throws Exception {
+        init(CLIENT_TYPE_DLR);
+        Path snapshot = folder.resolve("snapshot");
+        new SnapshotExporter(adapter, SnapshotExporter.DEFAULT_PAGE_SIZE).export(snapshot);
+        mockErrorRecordsResponse();
+        when(environment.readEnvOpt(SNAPSHOT_PATH_ENV)).thenReturn(Optional.of(snapshot.toString()));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString("fc2eff7c-5061-47d1-9828-7b3f64c57c67")));
+        assertThat(gatewayResponse.getBody(), is(containsString("masse text redigert 3")));
+    }
+
+    @Test
+    public void shouldServeListRecordsFromRecordStoreWhenRecordStorePathIsSet(@TempDir Path folder) throws Exception {
+        init(CLIENT_TYPE_DLR);
+        try (RecordStoreWriter writer = new RecordStoreWriter(folder)) {
+            new SnapshotExporter(adapter, SnapshotExporter.DEFAULT_PAGE_SIZE).export(writer, folder);
+        }
+        mockErrorRecordsResponse();
+        when(environment.readEnvOpt(RECORD_STORE_PATH_ENV)).thenReturn(Optional.of(folder.toString()));
+        when(environment.readEnvOpt(SNAPSHOT_PATH_ENV)).thenReturn(Optional.of(folder.resolve("none").toString()));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString("fc2eff7c-5061-47d1-9828-7b3f64c57c67")));
+        assertThat(gatewayResponse.getBody(), is(containsString("masse text redigert 3")));
+    }
+
+    @Test
+    public void shouldServeFromUpstreamWhenRecordStoreCannotBeOpened(@TempDir Path folder) throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(RECORD_STORE_PATH_ENV)).thenReturn(Optional.of(folder.toString()));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString("fc2eff7c-5061-47d1-9828-7b3f64c57c67")));
+    }
+
+    @Test
+    public void shouldServeFromUpstreamWhenSnapshotCannotBeOpened(@TempDir Path folder) throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(SNAPSHOT_PATH_ENV)).thenReturn(Optional.of(folder.resolve("none").toString()));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString("fc2eff7c-5061-47d1-9828-7b3f64c57c67")));
+    }
+
+    @Test
+    public void shouldNotCompressWhenApiGatewayWouldNotDecodeBodyForHarvester() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_MIN_BYTES_ENV)).thenReturn(Optional.of("1"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.Identify.name());
+        var output = new ByteArrayOutputStream();
+        InputStream inputStream = new HandlerRequestBuilder<Void>(restServiceObjectMapper)
+            .withHttpMethod("GET")
+            .withQueryParameters(queryParameters)
+            .withHeaders(Map.of("accept-encoding", "gzip", "accept", "*/*"))
+            .build();
+        handler.handleRequest(inputStream, output, context);
+        JsonNode gatewayResponse = dtoObjectMapper.readTree(output.toString());
+        assertNull(gatewayResponse.get(ResponseCompression.IS_BASE64_ENCODED));
+        assertNull(gatewayResponse.get("headers").get("Content-Encoding"));
+        assertThat(gatewayResponse.get("body").asText(), is(containsString("<Identify>")));
+    }
+
+    @Test
+    public void shouldReturnGzippedBase64BodyWhenHarvesterAcceptsGzip() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_MIN_BYTES_ENV)).thenReturn(Optional.of("1"));
+        List<String> lines = new ArrayList<>();
+        handler = new OaiProviderHandler(environment, adapter, lines::add);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        InputStream inputStream = new HandlerRequestBuilder<Void>(restServiceObjectMapper)
+            .withHttpMethod("GET")
+            .withQueryParameters(queryParameters)
+            .withHeaders(Map.of("accept-encoding", "deflate;q=0.5, gzip", "accept", "application/xml"))
+            .build();
+        handler.handleRequest(inputStream, output, context);
+        JsonNode gatewayResponse = dtoObjectMapper.readTree(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.get("statusCode").asInt());
+        assertThat(gatewayResponse.get(ResponseCompression.IS_BASE64_ENCODED).asBoolean(), is(true));
+        assertEquals(ResponseCompression.GZIP, gatewayResponse.get("headers").get("Content-Encoding").asText());
+        assertEquals("Accept, Accept-Encoding", gatewayResponse.get("headers").get("Vary").asText());
+        byte[] compressed = Base64.getDecoder().decode(gatewayResponse.get("body").asText());
+        try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            String xml = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(xml, is(containsString(METADATA_TAG)));
+            JsonNode metrics = dtoObjectMapper.readTree(lines.get(0));
+            assertEquals(xml.getBytes(StandardCharsets.UTF_8).length - compressed.length,
+                         metrics.get(RequestMetrics.BYTES_SAVED).asLong());
+        }
+    }
+
+    @Test
+    public void shouldReturnUncompressedBodyWhenHarvesterDoesNotAcceptCompression() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_MIN_BYTES_ENV)).thenReturn(Optional.of("1"));
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        JsonNode gatewayResponse = dtoObjectMapper.readTree(output.toString());
+        assertThat(gatewayResponse.path(ResponseCompression.IS_BASE64_ENCODED).asBoolean(), is(false));
+        assertThat(gatewayResponse.get("headers").has("Content-Encoding"), is(false));
+        assertThat(gatewayResponse.get("body").asText(), is(containsString(METADATA_TAG)));
+    }
+
+    @Test
+    public void shouldStartFetchingRecordsBeforeValidatingSet() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        adapter = new DlrAdapter(environment, httpClient) {
+            @Override
+            public CompletableFuture<String> getSetsListAsync() {
+                calls.add(SETS);
+                return super.getSetsListAsync();
+            }
+
+            @Override
+            public CompletableFuture<String> getRecordsListAsync(String from, String until, String setSpec,
+                                                                 int startPosition, int pageSize) {
+                calls.add(RECORDS);
+                return super.getRecordsListAsync(from, until, setSpec, startPosition, pageSize);
+            }
+        };
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        queryParameters.put(ValidParameterKey.SET.key, SET_NAME_SIKT);
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        var gatewayResponse = parseSuccessResponse(output.toString());
+        assertEquals(HttpURLConnection.HTTP_OK, gatewayResponse.getStatusCode());
+        assertThat(gatewayResponse.getBody(), is(containsString(METADATA_TAG)));
+        assertEquals(List.of(RECORDS, SETS), calls);
+    }
+
+    @Test
+    public void shouldCancelRecordsFetchWhenSetIsUnknown() throws IOException {
+        init(CLIENT_TYPE_DLR);
+        CompletableFuture<String> records = new CompletableFuture<>();
+        adapter = new DlrAdapter(environment, httpClient) {
+            @Override
+            public CompletableFuture<String> getRecordsListAsync(String from, String until, String setSpec,
+                                                                 int startPosition, int pageSize) {
+                return records;
+            }
+        };
+        handler = new OaiProviderHandler(environment, adapter);
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put(ValidParameterKey.VERB.key, Verb.ListRecords.name());
+        queryParameters.put(ValidParameterKey.METADATAPREFIX.key, QDC.name());
+        queryParameters.put(ValidParameterKey.SET.key, randomString());
+        var output = new ByteArrayOutputStream();
+        handler.handleRequest(handlerInputStream(queryParameters), output, context);
+        assertThat(parseSuccessResponse(output.toString()).getBody(), is(containsString(UNKNOWN_SET_NAME)));
+        assertThat(records.isCancelled(), is(true));
+    }
+
     @Test
     public void shouldReturnErrorResponseWhenAskedForListIdentifiersButListSetResponseIsFaulty() throws IOException {
         init(CLIENT_TYPE_DLR);
@@ -725,6 +1256,15 @@ public class OaiProviderHandlerTest {
         assertThat(responseBody, is(containsString(ERROR_UNEXPECTED_RESPONSE_FROM_DATA_SOURCE)));
     }
 
+    @Test
+    public void shouldFailConstructionWhenResumptionTokenSecretIsMissing() {
+        init(CLIENT_TYPE_DLR);
+        when(environment.readEnvOpt(RESUMPTION_TOKEN_SECRET_ENV)).thenReturn(Optional.empty());
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+            () -> new OaiProviderHandler(environment, adapter));
+        assertThat(exception.getMessage(), is(containsString(RESUMPTION_TOKEN_SECRET_ENV)));
+    }
+
     @Test
     public void shouldReturnErrorWhenClientNameFromEnvironmentIsUnknown() {
         environment = mock(Environment.class);
@@ -855,6 +1395,15 @@ public class OaiProviderHandlerTest {
             .build();
     }
 
+    private InputStream conditionalInputStream(Map<String, String> queryParameters, String header, String value)
+        throws JsonProcessingException {
+        return new HandlerRequestBuilder<Void>(restServiceObjectMapper)
+            .withHttpMethod("GET")
+            .withQueryParameters(queryParameters)
+            .withHeaders(Map.of(header, value))
+            .build();
+    }
+
     private GatewayResponse<String> parseSuccessResponse(String output) throws JsonProcessingException {
         var typeRef = restServiceObjectMapper.getTypeFactory()
             .constructParametricType(GatewayResponse.class, String.class);
@@ -0,0 +1,55 @@
+package no.sikt.oai;
+
+import static no.sikt.oai.OaiConstants.BAD_VERB;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import no.sikt.oai.data.Record;
+import org.junit.jupiter.api.Test;
+
+public class OaiResponseWriterTest {
+
+    public static final String BASE_URL = "https://dlr.unit.no";
+    public static final String MESSAGE_WITH_NON_ASCII = "Ugyldig verb på forespørsel";
+    public static final String IDENTIFIER = "oai:dlr.unit.no:fc2eff7c-5061-47d1-9828-7b3f64c57c6e";
+    public static final String METADATA = "<metadata>\n";
+
+    @Test
+    public void shouldWriteSameDocumentToOutputStreamAsToStringBuilder() throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        OaiResponseWriter writer = OaiResponseWriter.forOutputStream(outputStream);
+        writer.error(BASE_URL, BAD_VERB, MESSAGE_WITH_NON_ASCII);
+        writer.flush();
+        String written = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(written, is(containsString(MESSAGE_WITH_NON_ASCII)));
+        String expected = OaiResponse.oaiError(BASE_URL, BAD_VERB, MESSAGE_WITH_NON_ASCII);
+        assertEquals(stripResponseDate(expected), stripResponseDate(written));
+    }
+
+    @Test
+    public void shouldIndentMetadataLinesLikeSplittingOnLineBreaks() {
+        String[] contents = {"<a>\n    <b/>\n</a>\n", "<a>\r\n</a>\r\n\r\n", "<a/>", "", "\n\n", "<a>\n\n</a>",
+            "<a>\r</a>", "\r\n<a/>", "<a>\n    Blåbær ✓ \uD834\uDD1E\n</a>"};
+        for (String content : contents) {
+            StringBuilder expected = new StringBuilder();
+            for (String line : content.split("\\r?\\n")) {
+                expected.append("                ").append(line).append('\n');
+            }
+            StringBuilder buffer = new StringBuilder();
+            Record record = new Record(content, false, IDENTIFIER, Record.NO_DATESTAMP, List.of());
+            new OaiResponseWriter(buffer).writeRecord(record, true);
+            String written = buffer.toString();
+            assertEquals(expected.toString(), written.substring(written.indexOf(METADATA) + METADATA.length(),
+                                                                written.indexOf("            </metadata>")));
+        }
+    }
+
+    private static String stripResponseDate(String response) {
+        return response.replaceAll("<responseDate>.*</responseDate>", "");
+    }
+}
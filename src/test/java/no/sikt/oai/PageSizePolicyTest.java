@@ -0,0 +1,60 @@
+package no.sikt.oai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import java.util.Map;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+public class PageSizePolicyTest {
+
+    public static final String LIST_RECORDS = "ListRecords";
+    public static final String LIST_IDENTIFIERS = "ListIdentifiers";
+    public static final String OAI_DATACITE = "oai_datacite";
+    public static final String QDC = "qdc";
+
+    @Test
+    public void shouldUseOverrideForVerbAndPrefixBeforeVerbAndDefault() {
+        PageSizePolicy policy = new PageSizePolicy(50,
+            PageSizePolicy.parseOverrides("ListIdentifiers=200, ListRecords:oai_datacite=25,"), 10, 500,
+            PageSizePolicy.DEFAULT_TARGET_RESPONSE_BYTES, false);
+        assertEquals(25, policy.pageSize(LIST_RECORDS, "OAI_DATACITE"));
+        assertEquals(50, policy.pageSize(LIST_RECORDS, QDC));
+        assertEquals(200, policy.pageSize(LIST_IDENTIFIERS, QDC));
+    }
+
+    @Test
+    public void shouldUseDefaultsWhenNothingIsConfigured() {
+        PageSizePolicy policy = new PageSizePolicy(mock(Environment.class));
+        policy.recordPage(LIST_RECORDS, QDC, 100_000, 50);
+        assertEquals(PageSizePolicy.DEFAULT_PAGE_SIZE, policy.pageSize(LIST_RECORDS, QDC));
+    }
+
+    @Test
+    public void shouldSizePagesToFillTargetWhenAdaptive() {
+        PageSizePolicy policy = new PageSizePolicy(50, Map.of(), 10, 500, 1_000_000, true);
+        assertEquals(50, policy.pageSize(LIST_RECORDS, OAI_DATACITE));
+        policy.recordPage(LIST_RECORDS, OAI_DATACITE, 200_000, 50);
+        assertEquals(250, policy.pageSize(LIST_RECORDS, OAI_DATACITE));
+        policy.recordPage(LIST_IDENTIFIERS, OAI_DATACITE, 25_000, 50);
+        assertEquals(500, policy.pageSize(LIST_IDENTIFIERS, OAI_DATACITE));
+        policy.recordPage(LIST_RECORDS, QDC, 5_000_000, 10);
+        assertEquals(10, policy.pageSize(LIST_RECORDS, QDC));
+        policy.recordPage(LIST_RECORDS, QDC, 0, 0);
+        assertEquals(10, policy.pageSize(LIST_RECORDS, QDC));
+    }
+
+    @Test
+    public void shouldNeverTargetMoreThanHardResponseLimit() {
+        PageSizePolicy policy = new PageSizePolicy(50, Map.of(), 1, 100_000, 100L * 1024 * 1024, true);
+        policy.recordPage(LIST_RECORDS, QDC, 1024 * 50, 50);
+        assertEquals(PageSizePolicy.MAX_RESPONSE_BYTES / 1024, policy.pageSize(LIST_RECORDS, QDC));
+    }
+
+    @Test
+    public void shouldRejectMalformedOverrides() {
+        assertThrows(IllegalArgumentException.class, () -> PageSizePolicy.parseOverrides("ListRecords"));
+        assertThrows(IllegalArgumentException.class, () -> PageSizePolicy.parseOverrides("ListRecords=many"));
+    }
+}
@@ -0,0 +1,85 @@
+package no.sikt.oai;
+
+import static no.sikt.oai.RestApiConfig.restServiceObjectMapper;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import no.sikt.oai.ResponseCompression.Body;
+import no.sikt.oai.data.Record;
+import org.junit.jupiter.api.Test;
+
+public class RecordsPageWriterTest {
+
+    public static final long BUDGET = 64 * 1024;
+    public static final String CONTENT = "<oai_dc:dc>Blåbærsyltetøy 🫐</oai_dc:dc>";
+
+    @Test
+    public void shouldCountRenderedBytesAsUtf8() {
+        StringBuilder buffer = new StringBuilder();
+        RecordsPageWriter page = new RecordsPageWriter(buffer, true, PageSizePolicy.MAX_RESPONSE_BYTES);
+        page.accept(record(1));
+        page.accept(record(2));
+        assertEquals(2, page.getRecordCount());
+        assertEquals(buffer.toString().getBytes(StandardCharsets.UTF_8).length, page.getRecordBytes());
+        assertFalse(page.isTruncated());
+    }
+
+    @Test
+    public void shouldStopWritingRecordsWhenBudgetIsExceeded() {
+        StringBuilder buffer = new StringBuilder();
+        RecordsPageWriter page = new RecordsPageWriter(buffer, true, 1);
+        page.accept(record(1));
+        int afterFirst = buffer.length();
+        page.accept(record(2));
+        page.accept(record(3));
+        assertEquals(1, page.getRecordCount());
+        assertEquals(afterFirst, buffer.length());
+        assertTrue(page.isTruncated());
+        assertEquals("cursor-1", page.getLastCursor());
+    }
+
+    @Test
+    public void shouldBudgetForJsonEscapingOfBodyInGatewayResponse() throws JsonProcessingException {
+        Body body = new Body(null, ResponseCompression.DEFAULT_MIN_BYTES);
+        body.append("<OAI-PMH>\n");
+        RecordsPageWriter page = new RecordsPageWriter(body, true, BUDGET);
+        String quoted = "<dc:title>\"\\\"</dc:title>\n".repeat(200);
+        for (int i = 0; i < 100; i++) {
+            page.accept(record(i, quoted));
+        }
+        assertTrue(page.isTruncated());
+        String response = restServiceObjectMapper.writeValueAsString(body.finish());
+        long sent = response.getBytes(StandardCharsets.UTF_8).length - 2;
+        assertEquals(sent, body.getEncodedBytes());
+        assertTrue(sent <= BUDGET);
+        assertTrue(body.getOriginalBytes() + quoted.length() < BUDGET);
+    }
+
+    @Test
+    public void shouldBudgetForBase64OfCompressedBodyThatDoesNotShrink() {
+        Random random = new Random(42);
+        Body body = new Body(ResponseCompression.GZIP, 0);
+        RecordsPageWriter page = new RecordsPageWriter(body, true, BUDGET);
+        for (int i = 0; i < 100; i++) {
+            page.accept(record(i, random.ints(1000, 0x4E00, 0xA000)
+                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString()));
+        }
+        assertTrue(page.isTruncated());
+        long bound = body.getEncodedBytes();
+        assertTrue(body.finish().length() <= bound);
+        assertTrue(bound <= BUDGET);
+    }
+
+    private static Record record(int number) {
+        return record(number, CONTENT);
+    }
+
+    private static Record record(int number, String content) {
+        return new Record(content, false, "oai:nva.unit.no:" + number, 0, List.of("all"),
+                          "cursor-" + number);
+    }
+}
@@ -0,0 +1,151 @@
+package no.sikt.oai;
+
+import static no.sikt.oai.OaiConstants.RESPONSE_COMPRESSION_ENABLED_ENV;
+import static no.sikt.oai.OaiConstants.RESPONSE_COMPRESSION_MIN_BYTES_ENV;
+import static no.sikt.oai.RestApiConfig.restServiceObjectMapper;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import no.sikt.oai.ResponseCompression.Body;
+import no.sikt.oai.ResponseCompression.GatewayResponseStream;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class ResponseCompressionTest {
+
+    public static final String XML = "application/xml";
+    public static final String GATEWAY_RESPONSE = "{\"statusCode\":200,\"body\":\"H4sI\"}";
+
+    @ParameterizedTest
+    @CsvSource({
+        "gzip, gzip",
+        "'deflate, gzip', gzip",
+        "'gzip;q=0.5, deflate', deflate",
+        "'br, *', gzip",
+        "'*, gzip;q=0', deflate",
+        "'x-gzip', gzip",
+        "'GZIP ; q=1.0', gzip"
+    })
+    public void shouldPreferAcceptedEncodingWithHighestQuality(String acceptEncoding, String expected) {
+        assertEquals(expected, ResponseCompression.preferredEncoding(acceptEncoding));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"identity", "br", "'gzip;q=0, deflate;q=0'", "'*;q=0'", "'gzip;q=x'"})
+    public void shouldNotCompressWhenNeitherGzipNorDeflateIsAccepted(String acceptEncoding) {
+        assertNull(ResponseCompression.preferredEncoding(acceptEncoding));
+    }
+
+    @Test
+    public void shouldOnlyCompressResponsesAboveMinimumSizeWhenEnabled() {
+        Environment environment = mock(Environment.class);
+        ResponseCompression disabled = new ResponseCompression(environment);
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_ENABLED_ENV)).thenReturn(Optional.of("true"));
+        when(environment.readEnvOpt(RESPONSE_COMPRESSION_MIN_BYTES_ENV)).thenReturn(Optional.of("10"));
+        ResponseCompression enabled = new ResponseCompression(environment);
+        assertThat(disabled.isEnabled(), is(false));
+        assertThat(render(disabled.body("gzip", XML), "<OAI-PMH></OAI-PMH>").isCompressed(), is(false));
+        assertThat(render(enabled.body("gzip", XML), "<OAI-PMH></OAI-PMH>").isCompressed(), is(true));
+        assertThat(render(enabled.body("gzip", XML), "<OAI-PMH>").isCompressed(), is(false));
+        assertThat(render(enabled.body(null, XML), "<OAI-PMH></OAI-PMH>").isCompressed(), is(false));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"application/xml, true", "'text/xml;q=0.9, */*', true", "'*/*, application/xml', false",
+        "text/html, false"})
+    public void shouldOnlyCompressForMediaTypesApiGatewayDecodes(String accept, boolean binary) {
+        assertEquals(binary, ResponseCompression.isBinaryMediaType(accept));
+    }
+
+    @Test
+    public void shouldNotCompressWithoutAcceptHeader() {
+        assertThat(ResponseCompression.isBinaryMediaType(null), is(false));
+    }
+
+    @Test
+    public void shouldCountMinimumSizeInUtf8Bytes() {
+        Body fiveChars = new Body(ResponseCompression.GZIP, 10).append("ææææ").append('æ');
+        assertThat(fiveChars.isCompressed(), is(true));
+        assertEquals(10, fiveChars.getOriginalBytes());
+        assertEquals("æææ", new Body(ResponseCompression.GZIP, 10).append("æææ").finish());
+    }
+
+    @Test
+    public void shouldCompressResponseIntoBase64BodyWhileItIsAppended() throws IOException {
+        StringBuilder response = new StringBuilder();
+        Body gzip = new Body(ResponseCompression.GZIP, ResponseCompression.DEFAULT_MIN_BYTES);
+        Body deflate = new Body(ResponseCompression.DEFLATE, ResponseCompression.DEFAULT_MIN_BYTES);
+        for (int i = 0; i < 1000; i++) {
+            String record = "<record><title>Bjørn og æøå " + i + "</title></record>\n";
+            response.append(record);
+            gzip.append(record);
+            deflate.append(record, 0, record.length());
+        }
+        String gzipBody = gzip.finish();
+        byte[] utf8 = response.toString().getBytes(StandardCharsets.UTF_8);
+        assertEquals(utf8.length, gzip.getOriginalBytes());
+        assertThat(gzip.getCompressedBytes() < gzip.getOriginalBytes() / 4, is(true));
+        assertEquals(Base64.getDecoder().decode(gzipBody).length, gzip.getCompressedBytes());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(gzipBody)))) {
+            assertEquals(response.toString(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        try (InputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(Base64.getDecoder().decode(deflate.finish())))) {
+            assertEquals(response.toString(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void shouldDiscardCompressedBodyOnReset() {
+        Body body = new Body(ResponseCompression.GZIP, 10).append("<OAI-PMH></OAI-PMH>");
+        body.reset();
+        assertEquals("<error/>", body.append("<error/>").finish());
+        assertThat(body.isCompressed(), is(false));
+    }
+
+    @Test
+    public void shouldFlagGatewayResponseWithCompressedBodyAsBase64Encoded() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GatewayResponseStream stream = new GatewayResponseStream(output, () -> true)) {
+            byte[] bytes = GATEWAY_RESPONSE.getBytes(StandardCharsets.UTF_8);
+            stream.write(bytes, 0, 5);
+            stream.write(bytes, 5, bytes.length - 5);
+            assertEquals(0, output.size());
+        }
+        JsonNode response = restServiceObjectMapper.readTree(output.toByteArray());
+        assertThat(response.get(ResponseCompression.IS_BASE64_ENCODED).asBoolean(), is(true));
+        assertEquals("H4sI", response.get("body").asText());
+        assertEquals(200, response.get("statusCode").asInt());
+    }
+
+    @Test
+    public void shouldPassThroughGatewayResponseWithUncompressedBody() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GatewayResponseStream stream = new GatewayResponseStream(output, () -> false);
+        stream.write(GATEWAY_RESPONSE.getBytes(StandardCharsets.UTF_8));
+        assertEquals(GATEWAY_RESPONSE, output.toString(StandardCharsets.UTF_8));
+        stream.close();
+        stream.close();
+        assertEquals(GATEWAY_RESPONSE, output.toString(StandardCharsets.UTF_8));
+    }
+
+    private static Body render(Body body, String response) {
+        body.append(response).finish();
+        return body;
+    }
+}
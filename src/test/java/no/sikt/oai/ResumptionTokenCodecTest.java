@@ -0,0 +1,134 @@
+package no.sikt.oai;
+
+import static no.sikt.oai.OaiConstants.BAD_RESUMPTION_TOKEN;
+import static no.sikt.oai.OaiConstants.EXPIRED_RESUMPTION_TOKEN;
+import static no.sikt.oai.OaiConstants.INVALID_RESUMPTION_TOKEN;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import no.sikt.oai.exception.OaiException;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+public class ResumptionTokenCodecTest {
+
+    public static final byte[] SECRET = "secret".getBytes(StandardCharsets.UTF_8);
+    public static final Instant NOW = Instant.parse("2022-05-05T09:15:40Z");
+    public static final Duration TTL = Duration.ofHours(1);
+    public static final Instant LEGACY_UNTIL = NOW.plus(Duration.ofDays(7));
+
+    private final ResumptionTokenCodec codec = codecAt(NOW);
+
+    @Test
+    public void shouldDecodeWhatItEncoded() throws OaiException {
+        String encoded = codec.encode(token("1250"));
+        assertThat(encoded, not(containsString(ResumptionToken.TOK_SEP)));
+        ResumptionToken decoded = codec.decode(encoded);
+        assertEquals("lr", decoded.command);
+        assertEquals("sikt", decoded.setSpec);
+        assertEquals("2022-01-01T00:00:00Z", decoded.from);
+        assertEquals("", decoded.until);
+        assertEquals("oai_datacite", decoded.metadataPrefix);
+        assertEquals("1250", decoded.startPosition);
+        assertEquals(NOW.toEpochMilli(), decoded.timestamp);
+        assertEquals("", decoded.cursor);
+    }
+
+    @Test
+    public void shouldCarryCursor() throws OaiException {
+        ResumptionToken token = token("100");
+        token.cursor = "2022-04-06T11:50:41.106382Z,017ffeb4bfff-1b49769e-a8a0-4304-8377-12877212579f";
+        assertEquals(token.cursor, codec.decode(codec.encode(token)).cursor);
+    }
+
+    @Test
+    public void shouldRejectTokenWithChangedStartPosition() {
+        byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(token("50")));
+        bytes[6] = 100;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        OaiException exception = assertThrows(OaiException.class, () -> codec.decode(tampered));
+        assertEquals(BAD_RESUMPTION_TOKEN, exception.getErrorCode());
+        assertEquals(INVALID_RESUMPTION_TOKEN, exception.getErrorText());
+    }
+
+    @Test
+    public void shouldRejectTokenSignedWithAnotherSecret() {
+        String encoded = new ResumptionTokenCodec("other".getBytes(StandardCharsets.UTF_8), TTL,
+                                                  Clock.fixed(NOW, ZoneOffset.UTC)).encode(token("50"));
+        assertThrows(OaiException.class, () -> codec.decode(encoded));
+    }
+
+    @Test
+    public void shouldRejectExpiredToken() {
+        String encoded = codec.encode(token("50"));
+        OaiException exception = assertThrows(OaiException.class,
+            () -> codecAt(NOW.plus(TTL)).decode(encoded));
+        assertEquals(EXPIRED_RESUMPTION_TOKEN, exception.getErrorText());
+    }
+
+    @Test
+    public void shouldRejectGarbage() {
+        assertThrows(OaiException.class, () -> codec.decode("not base64!"));
+        assertThrows(OaiException.class, () -> codec.decode("AQ"));
+        assertThrows(OaiException.class, () -> codec.decode("lr~sikt~~~qdc~fifty"));
+    }
+
+    @Test
+    public void shouldAcceptLegacyTokens() throws OaiException {
+        String legacy = token("50").asString();
+        assertThat(ResumptionTokenCodec.isLegacy(legacy), is(true));
+        assertEquals("sikt", codec.decode(legacy).setSpec);
+        assertEquals("50", codec.decode(legacy).startPosition);
+    }
+
+    @Test
+    public void shouldRejectLegacyTokensFromTheEndOfTheirMigrationWindow() {
+        String legacy = token("50").asString();
+        OaiException exception = assertThrows(OaiException.class, () -> codecAt(LEGACY_UNTIL).decode(legacy));
+        assertEquals(BAD_RESUMPTION_TOKEN, exception.getErrorCode());
+        assertEquals(EXPIRED_RESUMPTION_TOKEN, exception.getErrorText());
+    }
+
+    @Test
+    public void shouldRejectLegacyTokensUnlessMigrationWindowIsConfigured() throws OaiException {
+        ResumptionTokenCodec strict = new ResumptionTokenCodec(SECRET, TTL, Clock.fixed(NOW, ZoneOffset.UTC));
+        String legacy = token("50").asString();
+        assertThrows(OaiException.class, () -> strict.decode(legacy));
+        assertEquals("50", strict.decode(strict.encode(token("50"))).startPosition);
+    }
+
+    @Test
+    public void shouldRejectTokensWithUnsupportedMetadataPrefix() {
+        ResumptionToken token = token("50");
+        token.metadataPrefix = "bogus";
+        OaiException legacy = assertThrows(OaiException.class, () -> codec.decode(token.asString()));
+        assertEquals(INVALID_RESUMPTION_TOKEN, legacy.getErrorText());
+        OaiException signed = assertThrows(OaiException.class, () -> codec.decode(codec.encode(token)));
+        assertEquals(INVALID_RESUMPTION_TOKEN, signed.getErrorText());
+    }
+
+    @Test
+    public void shouldRequireSecret() {
+        Environment environment = mock(Environment.class);
+        assertThrows(IllegalStateException.class, () -> new ResumptionTokenCodec(environment));
+    }
+
+    private static ResumptionTokenCodec codecAt(Instant instant) {
+        return new ResumptionTokenCodec(SECRET, TTL, LEGACY_UNTIL, Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    private static ResumptionToken token(String startPosition) {
+        return new ResumptionToken("lr", NOW.toEpochMilli(), "sikt", "2022-01-01T00:00:00Z", "", "oai_datacite",
+                                   startPosition);
+    }
+}
@@ -0,0 +1,84 @@
+package no.sikt.oai;
+
+import static no.sikt.oai.TimeUtils.FORMAT_ZULU_LONG;
+import static no.sikt.oai.TimeUtils.FORMAT_ZULU_SHORT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class TimeUtilsTest {
+
+    public static final String DLR_TIME_UPDATED = "2021-05-05T09:15:40.798Z";
+
+    @Test
+    public void shouldFormatLikeJavaTimeForRandomInstants() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long epochMilli = Math.floorMod(random.nextLong(), 253_402_300_799_000L);
+            Date date = new Date(epochMilli);
+            assertEquals(TimeUtils.ZULU_LONG_FORMATTER.format(date.toInstant()),
+                         TimeUtils.date2String(date, FORMAT_ZULU_LONG));
+            assertEquals(TimeUtils.ZULU_SHORT_FORMATTER.format(date.toInstant()),
+                         TimeUtils.date2String(date, FORMAT_ZULU_SHORT));
+        }
+    }
+
+    @Test
+    public void shouldFallBackToFormatterForYearsOutsideFourDigits() {
+        Date date = Date.from(Instant.parse("+12022-01-01T00:00:00Z"));
+        assertEquals("+12022-01-01", TimeUtils.date2String(date, FORMAT_ZULU_SHORT));
+    }
+
+    @Test
+    public void shouldParseWhatItFormats() {
+        Instant instant = Instant.parse("2024-02-29T23:59:59Z");
+        String formatted = TimeUtils.date2String(Date.from(instant), FORMAT_ZULU_LONG);
+        assertEquals(instant, TimeUtils.string2Date(formatted, FORMAT_ZULU_LONG).toInstant());
+    }
+
+    @Test
+    public void shouldParseDayOfLongerTimestampWithShortFormat() {
+        Date date = TimeUtils.string2Date(DLR_TIME_UPDATED, FORMAT_ZULU_SHORT);
+        assertEquals(Instant.parse("2021-05-05T00:00:00Z"), date.toInstant());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2021-02-29", "2021-13-01", "2021-05-0x", "20210505", "2021-05-05T24:00:00Z"})
+    public void shouldReturnNullForInvalidDates(String value) {
+        String format = value.length() > 10 ? FORMAT_ZULU_LONG : FORMAT_ZULU_SHORT;
+        assertNull(TimeUtils.string2Date(value, format));
+    }
+
+    @Test
+    public void shouldAcceptOnlyCompleteUtcDatesAsRequestArguments() {
+        assertTrue(TimeUtils.isUTCdate("2006-06-06"));
+        assertTrue(TimeUtils.isUTCdate("2007-06-06T00:00:00Z"));
+        assertFalse(TimeUtils.isUTCdate("2007-06-06T00:00:00"));
+        assertFalse(TimeUtils.isUTCdate("2007-06-06T00:00:00+01"));
+        assertFalse(TimeUtils.isUTCdate("2007-06-31"));
+    }
+
+    @Test
+    public void shouldWriteResponseDateDirectlyToAppendable() throws IOException {
+        StringBuilder buffer = new StringBuilder();
+        TimeUtils.appendZuluLong((Appendable) buffer, 0L);
+        assertEquals("1970-01-01T00:00:00Z", buffer.toString());
+        assertEquals(DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochSecond(1)).length(),
+                     TimeUtils.utcDateTime().length());
+    }
+
+    @Test
+    public void shouldRejectUnsupportedFormats() {
+        assertThrows(IllegalArgumentException.class, () -> TimeUtils.date2String(new Date(), "dd.MM.yyyy"));
+    }
+}
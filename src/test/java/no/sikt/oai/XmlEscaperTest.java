@@ -0,0 +1,54 @@
+package no.sikt.oai;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class XmlEscaperTest {
+
+    @Test
+    public void shouldEscapeMarkupCharacters() {
+        assertEquals("Plain title", escape("Plain title"));
+        assertEquals("Fish &amp; Chips", escape("Fish & Chips"));
+        assertEquals("&lt;b&gt;&quot;Quoted&quot;&lt;/b&gt;", escape("<b>\"Quoted\"</b>"));
+        assertEquals("It&apos;s", escape("It's"));
+        assertEquals("&amp;", escape("&"));
+        assertEquals("Blåbærsyltetøy &amp; brød", escape("Blåbærsyltetøy & brød"));
+    }
+
+    @Test
+    public void shouldLeaveOutCharactersNotAllowedInXml() {
+        String text = "a\u0000b\u0007c\td\ne\rf\uFFFEg\uFFFFh\uD800i\uDC00j";
+        assertEquals("abc\td\ne\rfghij", escape(text));
+        assertEquals("x\uD83D\uDE00y", escape("x\uD83D\uDE00y"));
+        assertEquals("", escape("\uD83D"));
+    }
+
+    @Test
+    public void shouldAppendCleanTextInOneCall() throws IOException {
+        List<CharSequence> appended = new ArrayList<>();
+        String text = "No markup here";
+        XmlEscaper.appendEscaped(new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence value) {
+                appended.add(value);
+                return this;
+            }
+        }, text);
+        assertEquals(1, appended.size());
+        assertSame(text, appended.get(0));
+    }
+
+    @Test
+    public void shouldAppendNullLikeStringBuilder() {
+        assertEquals("<null>", XmlEscaper.appendEscaped(new StringBuilder("<"), null).append('>').toString());
+    }
+
+    private static String escape(String text) {
+        return XmlEscaper.appendEscaped(new StringBuilder(), text).toString();
+    }
+}
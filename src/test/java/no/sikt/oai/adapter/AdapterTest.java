@@ -0,0 +1,44 @@
+package no.sikt.oai.adapter;
+
+import static no.sikt.oai.OaiConstants.ID_DOES_NOT_EXIST;
+import static no.sikt.oai.OaiConstants.UNKNOWN_IDENTIFIER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.transport.UpstreamTransport;
+import org.junit.jupiter.api.Test;
+
+public class AdapterTest {
+
+    @Test
+    public void shouldReturnBodyOfCompletedCall() throws OaiException, InternalOaiException {
+        assertEquals("{}", Adapter.join(CompletableFuture.completedFuture("{}")));
+    }
+
+    @Test
+    public void shouldRethrowOaiExceptionOfFailedCall() {
+        CompletableFuture<String> call = CompletableFuture.supplyAsync(() -> "{}")
+                                             .thenApply(body -> {
+                                                 throw UpstreamTransport.unavailable(new IOException("down"));
+                                             });
+        CompletableFuture<String> missing = CompletableFuture.failedFuture(
+            new OaiException(ID_DOES_NOT_EXIST, UNKNOWN_IDENTIFIER));
+        OaiException exception = assertThrows(OaiException.class,
+            () -> Adapter.join(missing.thenApply(body -> body)));
+        assertEquals(ID_DOES_NOT_EXIST, exception.getErrorCode());
+        InternalOaiException unavailable = assertThrows(InternalOaiException.class, () -> Adapter.join(call));
+        assertThat(unavailable.getCause() instanceof IOException, is(true));
+    }
+
+    @Test
+    public void shouldThrowInternalOaiExceptionWhenCallIsCancelled() {
+        CompletableFuture<String> call = new CompletableFuture<>();
+        call.cancel(true);
+        assertThrows(InternalOaiException.class, () -> Adapter.join(call));
+    }
+}
@@ -0,0 +1,105 @@
+package no.sikt.oai.adapter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import no.sikt.oai.Verb;
+import no.sikt.oai.data.Record;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+
+public class DlrAdapterTest {
+
+    public static final String QDC = "qdc";
+    public static final String RECORDS_RESPONSE = "{\"offset\":\"0\",\"limit\":\"50\",\"resourcesAsJson\":["
+        + "\"{\\\"identifier\\\":\\\"fc2eff7c-5061-47d1-9828-7b3f64c57c67\\\",\\\"features\\\":{"
+        + "\\\"dlr_title\\\":\\\"Tittel med \\\\\\\"sitat\\\\\\\" og linjeskift\\\\nog ø\\\","
+        + "\\\"dlr_storage_id\\\":\\\"unit\\\",\\\"dlr_time_updated\\\":\\\"2021-05-05T09:15:40.798Z\\\"},"
+        + "\\\"creators\\\":[],\\\"contributors\\\":[]}\","
+        + "{\"identifier\":\"3ccd8a0f-f831-485b-ab0c-7fd023fe76ab\",\"features\":{\"dlr_title\":\"Adressa.no\","
+        + "\"dlr_time_updated\":\"2022-02-02T08:45:43.422Z\"},\"creators\":[],\"contributors\":[]}"
+        + "],\"numFound\":400,\"facet_counts\":[{\"a\":\"b\"}]}";
+    public static final String RESOURCE = "{\"identifier\":\"3ccd8a0f-f831-485b-ab0c-7fd023fe76ab\",\"features\":{"
+        + "\"dlr_title\":\"Adressa.no\",\"dlr_time_updated\":\"2022-02-02T08:45:43.422Z\"},\"creators\":[],"
+        + "\"contributors\":[]}";
+    public static final long DAY = 1_643_760_000_000L;
+    public static final long TIME_UPDATED = 1_643_791_543_422L;
+
+    private final DlrAdapter adapter = new DlrAdapter(mock(Environment.class), (HttpClient) null);
+
+    @Test
+    public void shouldDecodeEmbeddedResourcesInSinglePass() throws InternalOaiException {
+        List<Record> records = new ArrayList<>();
+        long numFound = adapter.parseRecordsListResponse(Verb.ListRecords.name(), RECORDS_RESPONSE, QDC, "",
+                                                         records::add);
+        assertEquals(400, numFound);
+        assertEquals(2, records.size());
+        assertEquals("oai:dlr.unit.no:fc2eff7c-5061-47d1-9828-7b3f64c57c67", records.get(0).getIdentifier());
+        assertThat(records.get(0).getContent(), is(containsString("og ø")));
+        assertEquals(List.of("all", "unit"), records.get(0).getSetSpecs());
+        assertEquals("2022-02-02T08:45:43.422Z,3ccd8a0f-f831-485b-ab0c-7fd023fe76ab", records.get(1).getCursor());
+    }
+
+    @Test
+    public void shouldParseSampleRecordsList() throws InternalOaiException {
+        List<Record> records = new ArrayList<>();
+        long numFound = adapter.parseRecordsListResponse(Verb.ListRecords.name(), adapter.getSampleRecordsList(), QDC,
+                                                         "", records::add);
+        assertEquals(2, numFound);
+        assertEquals(2, records.size());
+    }
+
+    @Test
+    public void shouldStreamSameRecordsAsDatabinding() throws InternalOaiException {
+        String onlyEmbedded = RECORDS_RESPONSE.replaceAll(",\\{\"identifier\".*?\\}\\]", "]");
+        RecordsList bound = adapter.parseRecordsListResponse(Verb.ListRecords.name(), onlyEmbedded, QDC, "");
+        List<Record> streamed = new ArrayList<>();
+        adapter.parseRecordsListResponse(Verb.ListRecords.name(), onlyEmbedded, QDC, "", streamed::add);
+        assertEquals(bound.size(), streamed.size());
+        assertEquals(bound.get(0).getContent(), streamed.get(0).getContent());
+        assertEquals(bound.get(0).getLastUpdateDate(), streamed.get(0).getLastUpdateDate());
+    }
+
+    @Test
+    public void shouldOnlyRenderMetadataOfModifiedRecord() throws InternalOaiException {
+        Record unmodified = adapter.parseRecordResponse(RESOURCE, QDC, "", lastModified -> false);
+        assertEquals("", unmodified.getContent());
+        assertEquals(DAY, unmodified.getLastUpdateDate().getTime());
+        Record modified = adapter.parseRecordResponse(RESOURCE, QDC, "",
+                                                      lastModified -> lastModified.getTime() == TIME_UPDATED);
+        assertThat(modified.getContent(), is(containsString("Adressa.no")));
+        assertEquals(adapter.parseRecordResponse(RESOURCE, QDC, "").getContent(), modified.getContent());
+    }
+
+    @Test
+    public void shouldTellEditsOnTheSameDayApartByTheirTimeUpdated() throws InternalOaiException {
+        Record first = adapter.parseRecordResponse(RESOURCE, QDC, "");
+        Record edited = adapter.parseRecordResponse(RESOURCE.replace("08:45:43.422Z", "14:02:10.001Z")
+                                                        .replace("Adressa.no", "Adresseavisen"), QDC, "");
+        assertEquals(first.getDatestamp(), edited.getDatestamp());
+        assertEquals(TIME_UPDATED, first.getModified());
+        assertThat(first.getModified() < edited.getModified(), is(true));
+        assertThat(edited.getContent(), is(containsString("Adresseavisen")));
+        Record undated = adapter.parseRecordResponse(RESOURCE.replace("2022-02-02T08:45:43.422Z", "2022-02-02"),
+                                                     QDC, "");
+        assertEquals(DAY, undated.getModified());
+    }
+
+    @Test
+    public void shouldFailOnUnexpectedResourceElement() {
+        assertThrows(InternalOaiException.class,
+            () -> adapter.parseRecordsListResponse(Verb.ListIdentifiers.name(), "{\"resourcesAsJson\":[1]}", QDC,
+                                                   "", record -> { }));
+        assertThrows(InternalOaiException.class,
+            () -> adapter.parseRecordsListResponse(Verb.ListIdentifiers.name(), "\"text\"", QDC, "",
+                                                   record -> { }));
+    }
+}
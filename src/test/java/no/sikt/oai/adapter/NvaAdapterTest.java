@@ -0,0 +1,104 @@
+package no.sikt.oai.adapter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import no.sikt.oai.OaiResponseWriter;
+import no.sikt.oai.Verb;
+import no.sikt.oai.data.Record;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import no.unit.nva.auth.AuthorizedBackendClient;
+import nva.commons.core.Environment;
+import nva.commons.core.ioutils.IoUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class NvaAdapterTest {
+
+    public static final String QDC = "qdc";
+    public static final String PUBLICATIONS = "publications.json";
+
+    private final NvaAdapter adapter = new NvaAdapter(mock(Environment.class), (AuthorizedBackendClient) null);
+    private final String json = IoUtils.stringFromResources(Path.of("", PUBLICATIONS));
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ListRecords", "ListIdentifiers"})
+    public void shouldStreamSameRecordsAsDatabinding(String verb) throws InternalOaiException {
+        RecordsList bound = adapter.parseRecordsListResponse(verb, json, QDC, "");
+        List<Record> streamed = new ArrayList<>();
+        long numFound = adapter.parseRecordsListResponse(verb, json, QDC, "", streamed::add);
+        assertEquals(bound.getNumFound(), numFound);
+        assertEquals(identifiers(bound), identifiers(streamed));
+        assertEquals(bound.get(0).getContent(), streamed.get(0).getContent());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ListRecords", "ListIdentifiers"})
+    public void shouldRenderStreamedPageLikeBoundPage(String verb) throws InternalOaiException {
+        RecordsList bound = adapter.parseRecordsListResponse(verb, json, QDC, "");
+        boolean showMetadata = Verb.ListRecords.name().equals(verb);
+        StringBuilder expected = new StringBuilder();
+        OaiResponseWriter boundWriter = new OaiResponseWriter(expected);
+        boundWriter.startList(verb, "", "", "", QDC, adapter.getBaseUrl());
+        bound.forEach(record -> boundWriter.writeRecord(record, showMetadata));
+        boundWriter.endList(verb, bound.getNumFound(), "", bound.size());
+
+        StringBuilder buffer = new StringBuilder();
+        OaiResponseWriter writer = new OaiResponseWriter(buffer);
+        writer.startList(verb, "", "", "", QDC, adapter.getBaseUrl());
+        long numFound = adapter.parseRecordsListResponse(verb, json, QDC, "",
+                                                         record -> writer.writeRecord(record, showMetadata));
+        writer.endList(verb, numFound, "", bound.size());
+        assertEquals(stripVolatile(expected.toString()), stripVolatile(buffer.toString()));
+    }
+
+    @Test
+    public void shouldParseSampleRecordsList() throws InternalOaiException {
+        List<Record> records = new ArrayList<>();
+        long numFound = adapter.parseRecordsListResponse(Verb.ListRecords.name(), adapter.getSampleRecordsList(), QDC,
+                                                         "", records::add);
+        assertEquals(2, numFound);
+        assertEquals(2, records.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"qdc", "oai_dc", "oai_datacite"})
+    public void shouldEscapeMarkupInTitle(String metadataPrefix) throws InternalOaiException {
+        String markup = json.replace("\"mainTitle\": \"Pers Artikkel\"", "\"mainTitle\": \"Pers & <Artikkel>\"");
+        RecordsList records = adapter.parseRecordsListResponse(Verb.ListRecords.name(), markup, metadataPrefix, "");
+        assertThat(records.get(0).getContent(), containsString(">Pers &amp; &lt;Artikkel&gt;</"));
+    }
+
+    @Test
+    public void shouldKeepModifiedDateInMillisecondsForValidators() throws InternalOaiException {
+        String publication = IoUtils.stringFromResources(Path.of("", "publication.json"));
+        Record record = adapter.parseRecordResponse(publication, QDC, "");
+        assertEquals(Instant.parse("2022-04-22T10:09:06.546138Z").toEpochMilli(), record.getModified());
+        assertEquals(Instant.parse("2022-04-22T10:09:06Z").getEpochSecond(), record.getDatestamp());
+    }
+
+    @Test
+    public void shouldFailOnSearchResponseThatIsNotAnObject() {
+        assertThrows(InternalOaiException.class,
+            () -> adapter.parseRecordsListResponse(Verb.ListIdentifiers.name(), "[]", QDC, "", record -> { }));
+    }
+
+    private static List<String> identifiers(Iterable<Record> records) {
+        return StreamSupport.stream(records.spliterator(), false).map(Record::getIdentifier)
+                   .collect(Collectors.toList());
+    }
+
+    private static String stripVolatile(String response) {
+        return response.replaceAll("<responseDate>.*</responseDate>", "");
+    }
+}
@@ -0,0 +1,137 @@
+package no.sikt.oai.adapter;
+
+import static no.sikt.oai.OaiConstants.BAD_RESUMPTION_TOKEN;
+import static no.sikt.oai.OaiConstants.ID_DOES_NOT_EXIST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import no.sikt.oai.Verb;
+import no.sikt.oai.data.Record;
+import no.sikt.oai.data.RecordsList;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import no.sikt.oai.snapshot.RecordStore;
+import no.sikt.oai.snapshot.RecordStoreWriter;
+import no.sikt.oai.snapshot.SnapshotRecord;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RecordStoreAdapterTest {
+
+    public static final String IDENTIFIER = "fc2eff7c-5061-47d1-9828-7b3f64c57c6";
+    public static final String PREFIX = "oai:dlr.unit.no:";
+    public static final String QDC = "qdc";
+    public static final long DATESTAMP = 1_646_092_800_000L;
+
+    @TempDir
+    public Path folder;
+
+    private RecordStoreAdapter adapter;
+
+    @BeforeEach
+    public void init() throws IOException {
+        write(3);
+        adapter = new RecordStoreAdapter(new DlrAdapter(mock(Environment.class), (HttpClient) null),
+                                         RecordStore.open(folder));
+    }
+
+    @Test
+    public void shouldDescribeRepositoryAsDelegate() throws InternalOaiException {
+        DlrAdapter delegate = new DlrAdapter(mock(Environment.class), (HttpClient) null);
+        assertEquals(delegate.getDescription(), adapter.getDescription());
+        assertEquals(delegate.getDeletedRecord(), adapter.getDeletedRecord());
+        assertEquals(delegate.getProtocolVersion(), adapter.getProtocolVersion());
+        assertEquals(delegate.getAdminEmail(), adapter.getAdminEmail());
+        assertEquals(delegate.getIdentifierPrefix(), adapter.getIdentifierPrefix());
+        assertEquals(delegate.getBaseUrl(), adapter.getBaseUrl());
+        assertEquals(delegate.getRepositoryName(), adapter.getRepositoryName());
+        assertEquals(delegate.getEarliestTimestamp(), adapter.getEarliestTimestamp());
+        assertEquals(delegate.getDateGranularity(), adapter.getDateGranularity());
+        assertEquals(delegate.isValidIdentifier(IDENTIFIER + 0), adapter.isValidIdentifier(IDENTIFIER + 0));
+        assertEquals("unit", adapter.parseSetsResponse("{\"institutions\":[\"unit\"]}").get(0).setSpec);
+    }
+
+    @Test
+    public void shouldServeRecordInRequestedMetadataFormat() throws OaiException, InternalOaiException {
+        Record record = adapter.parseRecordResponse(adapter.getRecord(IDENTIFIER + 1), "QDC", "");
+        assertEquals(PREFIX + IDENTIFIER + 1, record.getIdentifier());
+        assertEquals("<qdc>1</qdc>", record.getContent());
+        assertEquals(TimeUnit.MILLISECONDS.toSeconds(DATESTAMP + 1), record.getDatestamp());
+        assertEquals(List.of("all", "unit"), record.getSetSpecs());
+        OaiException exception = assertThrows(OaiException.class, () -> adapter.getRecord(IDENTIFIER + 3));
+        assertEquals(ID_DOES_NOT_EXIST, exception.getErrorCode());
+    }
+
+    @Test
+    public void shouldPageRecordsByOffsetAndCursor() throws OaiException, InternalOaiException {
+        RecordsList first = adapter.parseRecordsListResponse(Verb.ListRecords.name(),
+                adapter.getRecordsList("", "", "", 0, 2), "oai_dc", "");
+        assertEquals(3, first.getNumFound());
+        assertEquals("<dc>0</dc>", first.get(0).getContent());
+        List<Record> rest = new ArrayList<>();
+        long numFound = adapter.parseRecordsListResponse(Verb.ListIdentifiers.name(),
+                adapter.getRecordsListAfter("", "", "", first.get(1).getCursor(), 2), QDC, "", rest::add);
+        assertEquals(3, numFound);
+        assertEquals(1, rest.size());
+        assertEquals(PREFIX + IDENTIFIER + 2, rest.get(0).getIdentifier());
+        assertEquals("", rest.get(0).getContent());
+        assertEquals(true, rest.get(0).isDeleted());
+        assertEquals(3, adapter.parseRecordsListResponse(Verb.ListRecords.name(), adapter.getSampleRecordsList(),
+                                                         QDC, "").size());
+    }
+
+    @Test
+    public void shouldRejectCursorNotIssuedByRecordStore() {
+        OaiException exception = assertThrows(OaiException.class,
+            () -> adapter.getRecordsListAfter("", "", "", "2021-05-05T09:15:40.798Z," + IDENTIFIER + 0, 2));
+        assertEquals(BAD_RESUMPTION_TOKEN, exception.getErrorCode());
+        assertThrows(InternalOaiException.class, () -> adapter.parseRecordResponse("{}", QDC, ""));
+        assertThrows(InternalOaiException.class,
+            () -> adapter.parseRecordsListResponse(Verb.ListRecords.name(), "{\"records\":[3]}", QDC, ""));
+    }
+
+    @Test
+    public void shouldServeNewGenerationOnceRefreshIntervalHasPassed() throws Exception {
+        RecordStoreAdapter refreshing = new RecordStoreAdapter(
+                new DlrAdapter(mock(Environment.class), (HttpClient) null), RecordStore.open(folder), Duration.ZERO,
+                Clock.systemUTC());
+        String first = refreshing.getRecordsList("", "", "", 0, 2);
+        write(4);
+        String second = refreshing.getRecordsList("", "", "", 0, 2);
+        assertEquals(4, refreshing.parseRecordsListResponse(Verb.ListRecords.name(), second, QDC, "").getNumFound());
+        assertEquals(3, refreshing.parseRecordsListResponse(Verb.ListRecords.name(), first, QDC, "").getNumFound());
+        assertTrue(refreshing.canParse(first));
+        write(5);
+        assertEquals(PREFIX + IDENTIFIER + 4,
+                     refreshing.parseRecordResponse(refreshing.getRecord(IDENTIFIER + 4), QDC, "").getIdentifier());
+        assertFalse(refreshing.canParse(first));
+        assertTrue(refreshing.canParse(second));
+        assertThrows(InternalOaiException.class,
+            () -> refreshing.parseRecordsListResponse(Verb.ListRecords.name(), first, QDC, ""));
+        assertEquals(3, adapter.parseRecordsListResponse(Verb.ListRecords.name(),
+                adapter.getRecordsList("", "", "", 0, 2), QDC, "").getNumFound());
+    }
+
+    private void write(int records) throws IOException {
+        try (RecordStoreWriter writer = new RecordStoreWriter(folder)) {
+            for (int i = 0; i < records; i++) {
+                writer.write(new SnapshotRecord(PREFIX + IDENTIFIER + i, DATESTAMP + i, i == 2, List.of("all", "unit"),
+                                                Map.of(QDC, "<qdc>" + i + "</qdc>", "oai_dc", "<dc>" + i + "</dc>")));
+            }
+            writer.commit();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package no.sikt.oai.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.exception.OaiException;
+import org.junit.jupiter.api.Test;
+
+public class PrefetchCacheTest {
+
+    public static final Duration TTL = Duration.ofSeconds(60);
+    public static final String TOKEN = "lr~sikt~~~qdc~100";
+    public static final String PAGE = "{\"numFound\":400}";
+
+    private final Clock clock = Clock.fixed(Instant.parse("2022-06-01T00:00:00Z"), ZoneOffset.UTC);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void shouldServePrefetchedPageOnceForMatchingToken() {
+        PrefetchCache cache = new PrefetchCache(true, TTL, clock, Runnable::run);
+        cache.prefetch(TOKEN, this::loadPage);
+        assertEquals(Optional.of(PAGE), cache.take(TOKEN));
+        assertEquals(Optional.empty(), cache.take(TOKEN));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldNotServeExpiredPage() {
+        PrefetchCache cache = new PrefetchCache(true, Duration.ZERO, clock, Runnable::run);
+        cache.prefetch(TOKEN, this::loadPage);
+        assertEquals(Optional.empty(), cache.take(TOKEN));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldReturnEmptyWhenPrefetchFails() {
+        PrefetchCache cache = new PrefetchCache(true, TTL, clock, Runnable::run);
+        cache.prefetch(TOKEN, () -> {
+            throw new OaiException(OaiConstants.NO_RECORDS_MATCH, OaiConstants.COMBINATION_OF_PARAMS_ERROR);
+        });
+        assertEquals(Optional.empty(), cache.take(TOKEN));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void shouldNotLoadAnythingWhenDisabled() {
+        PrefetchCache cache = new PrefetchCache(false, TTL, clock, Runnable::run);
+        cache.prefetch(TOKEN, this::loadPage);
+        assertEquals(Optional.empty(), cache.take(TOKEN));
+        assertEquals(0, loads.get());
+    }
+
+    private String loadPage() {
+        loads.incrementAndGet();
+        return PAGE;
+    }
+}
@@ -0,0 +1,56 @@
+package no.sikt.oai.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class RecordContentCacheTest {
+
+    public static final String IDENTIFIER = "oai:dlr.unit.no:fc2eff7c-5061-47d1-9828-7b3f64c57c67";
+    public static final String QDC = "qdc";
+    public static final long MODIFIED = 1_651_742_140_798L;
+
+    private final AtomicInteger renders = new AtomicInteger();
+
+    @Test
+    public void shouldServeRenderedContentFromCacheForUnchangedRecord() {
+        RecordContentCache cache = new RecordContentCache(RecordContentCache.DEFAULT_MAX_BYTES);
+        cache.computeIfAbsent(IDENTIFIER, QDC, MODIFIED, this::render);
+        byte[] content = cache.computeIfAbsent(IDENTIFIER, "QDC", MODIFIED, this::render);
+        assertEquals("<qdc:qualifieddc>1</qdc:qualifieddc>", new String(content, StandardCharsets.UTF_8));
+        assertEquals(1, renders.get());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+        assertThat(cache.toString(), is(containsString("hits=1")));
+    }
+
+    @Test
+    public void shouldRenderAgainWhenModifiedDateChanges() {
+        RecordContentCache cache = new RecordContentCache(RecordContentCache.DEFAULT_MAX_BYTES);
+        cache.computeIfAbsent(IDENTIFIER, QDC, MODIFIED, this::render);
+        byte[] content = cache.computeIfAbsent(IDENTIFIER, QDC, MODIFIED + 1, this::render);
+        assertEquals("<qdc:qualifieddc>2</qdc:qualifieddc>", new String(content, StandardCharsets.UTF_8));
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntriesWhenSizeBudgetIsExceeded() {
+        RecordContentCache cache = new RecordContentCache(500);
+        for (int i = 0; i < 10; i++) {
+            cache.computeIfAbsent(IDENTIFIER + i, QDC, MODIFIED, this::render);
+        }
+        assertThat(cache.getSizeInBytes(), is(lessThanOrEqualTo(500L)));
+        assertThat(cache.getEvictionCount() > 0, is(true));
+    }
+
+    private byte[] render() {
+        String content = "<qdc:qualifieddc>" + renders.incrementAndGet() + "</qdc:qualifieddc>";
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,115 @@
+package no.sikt.oai.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import no.sikt.oai.OaiConstants;
+import no.sikt.oai.adapter.Adapter.OaiSet;
+import no.sikt.oai.exception.OaiException;
+import org.junit.jupiter.api.Test;
+
+public class SetsCacheTest {
+
+    public static final Duration TTL = Duration.ofSeconds(100);
+    public static final String SET_SPEC = "sikt";
+
+    private final MutableClock clock = new MutableClock();
+    private final AtomicInteger loads = new AtomicInteger();
+    private boolean failing;
+
+    @Test
+    public void shouldLoadOnceAndServeHitsWithinTtl() throws Exception {
+        SetsCache cache = new SetsCache(this::loadSets, TTL, true, clock, Runnable::run);
+        cache.get();
+        clock.advance(Duration.ofSeconds(10));
+        List<OaiSet> sets = cache.get();
+        assertEquals(SET_SPEC, sets.get(0).setSpec);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldServePreloadedSetsAsHit() throws Exception {
+        SetsCache cache = new SetsCache(this::loadSets, TTL, true, clock, Runnable::run);
+        cache.preload();
+        assertEquals(1, loads.get());
+        assertEquals(SET_SPEC, cache.get().get(0).setSpec);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void shouldRefreshInBackgroundWhenEntryIsCloseToExpiry() throws Exception {
+        SetsCache cache = new SetsCache(this::loadSets, TTL, true, clock, Runnable::run);
+        cache.get();
+        clock.advance(Duration.ofSeconds(90));
+        cache.get();
+        clock.advance(Duration.ofSeconds(50));
+        cache.get();
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void shouldServeStaleSetsWhenReloadFails() throws Exception {
+        SetsCache cache = new SetsCache(this::loadSets, TTL, true, clock, Runnable::run);
+        cache.get();
+        failing = true;
+        clock.advance(Duration.ofSeconds(85));
+        cache.get();
+        clock.advance(Duration.ofSeconds(200));
+        List<OaiSet> sets = cache.get();
+        assertThat(sets.size(), is(1));
+        assertEquals(1, cache.getStaleServedCount());
+    }
+
+    @Test
+    public void shouldPropagateErrorWhenStaleServingIsDisabled() throws Exception {
+        SetsCache cache = new SetsCache(this::loadSets, TTL, false, clock, Runnable::run);
+        cache.get();
+        failing = true;
+        clock.advance(Duration.ofSeconds(200));
+        assertThrows(OaiException.class, cache::get);
+    }
+
+    private List<OaiSet> loadSets() throws OaiException {
+        loads.incrementAndGet();
+        if (failing) {
+            throw new OaiException(OaiConstants.NO_SET_HIERARCHY, OaiConstants.NO_SETS_FOUND);
+        }
+        return List.of(new OaiSet(SET_SPEC, SET_SPEC));
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2022-06-01T00:00:00Z");
+
+        public void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
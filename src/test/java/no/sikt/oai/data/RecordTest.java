@@ -0,0 +1,78 @@
+package no.sikt.oai.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class RecordTest {
+
+    public static final String IDENTIFIER = "oai:dlr.unit.no:1";
+    public static final long DATESTAMP = 1_646_092_800L;
+
+    @Test
+    public void shouldShareSetSpecsOfRecordsInSameSets() {
+        Record first = new Record("<a/>", false, IDENTIFIER, DATESTAMP, new ArrayList<>(List.of("all", "unit")));
+        Record second = new Record("<b/>", false, IDENTIFIER, DATESTAMP, new ArrayList<>(List.of("all", "unit")));
+        assertSame(first.getSetSpecs(), second.getSetSpecs());
+        assertEquals(List.of("all", "unit"), second.getSetSpecs());
+        assertEquals(List.of(), new Record("", false, IDENTIFIER, DATESTAMP, null).getSetSpecs());
+    }
+
+    @Test
+    public void shouldDecodeContentAsWrittenAndEmptyWhenAbsent() {
+        assertEquals("<title>Blåbær ✓</title>",
+                     new Record("<title>Blåbær ✓</title>", false, IDENTIFIER, DATESTAMP, List.of()).getContent());
+        assertEquals("", new Record((byte[]) null, true, IDENTIFIER, DATESTAMP, List.of(), null).getContent());
+    }
+
+    @Test
+    public void shouldExposeContentBytesWithoutLettingThemBeChanged() {
+        byte[] content = "<title>Blåbær</title>".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bytes = new Record(content, false, IDENTIFIER, DATESTAMP, List.of(), null).getContentBytes();
+        assertEquals(ByteBuffer.wrap(content), bytes);
+        assertThrows(ReadOnlyBufferException.class, () -> bytes.put(0, (byte) 0));
+    }
+
+    @Test
+    public void shouldHoldDatestampAsEpochSeconds() {
+        assertEquals(DATESTAMP, Record.epochSecond(DATESTAMP * 1000 + 999));
+        assertEquals(-1, Record.epochSecond(-1));
+        assertEquals(Record.NO_DATESTAMP, Record.epochSecond(Record.NO_DATESTAMP));
+        Record record = new Record("", false, IDENTIFIER, DATESTAMP, List.of());
+        assertEquals(DATESTAMP * 1000, record.getLastUpdateDate().getTime());
+        assertNull(new Record("", false, IDENTIFIER, Record.NO_DATESTAMP, List.of()).getLastUpdateDate());
+    }
+
+    @Test
+    public void shouldKeepLastModificationInMillisecondsApartFromDatestamp() {
+        long modified = DATESTAMP * 1000 + 999;
+        Record record = new Record(null, false, IDENTIFIER, DATESTAMP, modified, List.of(), null);
+        assertEquals(DATESTAMP, record.getDatestamp());
+        assertEquals(modified, record.getModified());
+        assertEquals(modified, record.getModifiedDate().getTime());
+        assertEquals(DATESTAMP * 1000, new Record("", false, IDENTIFIER, DATESTAMP, List.of()).getModified());
+        assertNull(new Record("", false, IDENTIFIER, Record.NO_DATESTAMP, List.of()).getModifiedDate());
+    }
+
+    @Test
+    public void shouldGrowRecordsListBeyondItsCapacity() {
+        RecordsList records = new RecordsList(3, 1);
+        assertEquals(true, records.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            records.add(new Record("", false, IDENTIFIER + i, DATESTAMP, List.of()));
+        }
+        assertEquals(3, records.size());
+        assertEquals(IDENTIFIER + 2, records.get(2).getIdentifier());
+        List<String> identifiers = new ArrayList<>();
+        records.forEach(record -> identifiers.add(record.getIdentifier()));
+        assertEquals(List.of(IDENTIFIER + 0, IDENTIFIER + 1, IDENTIFIER + 2), identifiers);
+        assertThrows(IndexOutOfBoundsException.class, () -> records.get(3));
+    }
+}
@@ -0,0 +1,102 @@
+package no.sikt.oai.metrics;
+
+import static no.unit.nva.commons.json.JsonUtils.dtoObjectMapper;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.List;
+import no.sikt.oai.metrics.RequestMetrics.Phase;
+import org.junit.jupiter.api.Test;
+
+public class RequestMetricsTest {
+
+    public static final String NAMESPACE = "OaiProviderTest";
+
+    @Test
+    public void shouldWriteEmbeddedMetricFormatWithPhasesAndDimensions() throws JsonProcessingException {
+        RequestMetrics metrics = new RequestMetrics(NAMESPACE);
+        metrics.setVerb("ListRecords");
+        metrics.setMetadataPrefix("qdc");
+        metrics.setSet("sikt");
+        metrics.setPageSize(50);
+        metrics.setRecordCount(3);
+        metrics.setBytesSaved(40_960);
+        metrics.add(Phase.UPSTREAM_FETCH, 12_500_000);
+        metrics.add(Phase.PARSE, 4_000_000);
+        metrics.move(Phase.PARSE, Phase.RENDER, 1_500_000);
+
+        JsonNode json = dtoObjectMapper.readTree(metrics.toEmf());
+        JsonNode directive = json.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals(NAMESPACE, directive.get("Namespace").asText());
+        assertEquals(3, directive.get("Dimensions").get(0).size());
+        directive.get("Dimensions").get(0)
+            .forEach(dimension -> assertThat(RequestMetrics.PAGE_SIZE.equals(dimension.asText()), is(false)));
+        List<String> names = new ArrayList<>();
+        directive.get("Metrics").forEach(metric -> names.add(metric.get("Name").asText()));
+        for (Phase phase : Phase.values()) {
+            assertThat(names.contains(phase.metricName), is(true));
+            assertThat(json.has(phase.metricName), is(true));
+        }
+        assertEquals("ListRecords", json.get(RequestMetrics.VERB).asText());
+        assertEquals("qdc", json.get(RequestMetrics.METADATA_PREFIX).asText());
+        assertEquals("sikt", json.get(RequestMetrics.SET).asText());
+        assertEquals("50", json.get(RequestMetrics.PAGE_SIZE).asText());
+        assertEquals(12.5, json.get(Phase.UPSTREAM_FETCH.metricName).asDouble(), 0.0);
+        assertEquals(2.5, json.get(Phase.PARSE.metricName).asDouble(), 0.0);
+        assertEquals(1.5, json.get(Phase.RENDER.metricName).asDouble(), 0.0);
+        assertEquals(3, json.get(RequestMetrics.RECORD_COUNT).asInt());
+        assertThat(names.contains(RequestMetrics.BYTES_SAVED), is(true));
+        assertEquals(40_960, json.get(RequestMetrics.BYTES_SAVED).asLong());
+        assertThat(json.get("_aws").get("Timestamp").asLong() > 0, is(true));
+        assertThat(json.has(RequestMetrics.ERROR_CODE), is(false));
+        assertThat(json.has(RequestMetrics.CONTENT_CACHE_HITS), is(false));
+    }
+
+    @Test
+    public void shouldWriteContentCacheLookupsWhenReported() throws JsonProcessingException {
+        RequestMetrics metrics = new RequestMetrics(NAMESPACE);
+        metrics.setContentCache(45, 5, 0.75);
+        JsonNode json = dtoObjectMapper.readTree(metrics.toEmf());
+        List<String> names = new ArrayList<>();
+        json.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics")
+            .forEach(metric -> names.add(metric.get("Name").asText()));
+        assertThat(names.containsAll(List.of(RequestMetrics.CONTENT_CACHE_HITS, RequestMetrics.CONTENT_CACHE_MISSES,
+                                             RequestMetrics.CONTENT_CACHE_HIT_RATE)), is(true));
+        assertEquals(45, json.get(RequestMetrics.CONTENT_CACHE_HITS).asLong());
+        assertEquals(5, json.get(RequestMetrics.CONTENT_CACHE_MISSES).asLong());
+        assertEquals(0.75, json.get(RequestMetrics.CONTENT_CACHE_HIT_RATE).asDouble(), 0.0);
+    }
+
+    @Test
+    public void shouldUsePlaceholderForDimensionsThatDoNotApply() throws JsonProcessingException {
+        RequestMetrics metrics = new RequestMetrics(NAMESPACE);
+        metrics.setSet("");
+        JsonNode json = dtoObjectMapper.readTree(metrics.toEmf());
+        assertEquals(RequestMetrics.NONE, json.get(RequestMetrics.VERB).asText());
+        assertEquals(RequestMetrics.NONE, json.get(RequestMetrics.SET).asText());
+        assertEquals(RequestMetrics.NONE, json.get(RequestMetrics.PAGE_SIZE).asText());
+    }
+
+    @Test
+    public void shouldChargeTimeBetweenMarksToPhaseThatEnded() {
+        RequestMetrics metrics = new RequestMetrics(NAMESPACE);
+        metrics.mark(Phase.VALIDATION);
+        metrics.mark(Phase.UPSTREAM_FETCH);
+        assertThat(metrics.getNanos(Phase.VALIDATION) >= 0, is(true));
+        assertThat(metrics.getNanos(Phase.UPSTREAM_FETCH) >= 0, is(true));
+        assertEquals(0, metrics.getNanos(Phase.RENDER));
+    }
+
+    @Test
+    public void shouldEscapeStringValues() throws JsonProcessingException {
+        RequestMetrics metrics = new RequestMetrics("Oai\"Provider\\\n");
+        metrics.setErrorCode("badArgument");
+        JsonNode json = dtoObjectMapper.readTree(metrics.toEmf());
+        assertEquals("Oai\"Provider\\\n",
+                     json.get("_aws").get("CloudWatchMetrics").get(0).get("Namespace").asText());
+        assertEquals("badArgument", json.get(RequestMetrics.ERROR_CODE).asText());
+    }
+}
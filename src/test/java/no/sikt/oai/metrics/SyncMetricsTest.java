@@ -0,0 +1,56 @@
+package no.sikt.oai.metrics;
+
+import static no.unit.nva.commons.json.JsonUtils.dtoObjectMapper;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.List;
+import no.sikt.oai.metrics.SyncMetrics.Count;
+import no.sikt.oai.metrics.SyncMetrics.Phase;
+import org.junit.jupiter.api.Test;
+
+public class SyncMetricsTest {
+
+    public static final String NAMESPACE = "OaiProviderTest";
+    public static final long HOUR = 3_600_000L;
+
+    @Test
+    public void shouldWriteEmbeddedMetricFormatWithCountsAndHighWaterMarkAge() throws JsonProcessingException {
+        SyncMetrics metrics = new SyncMetrics(NAMESPACE);
+        metrics.increment(Count.FETCHED);
+        metrics.increment(Count.FETCHED);
+        metrics.increment(Count.UPSERTED);
+        metrics.add(Count.COPIED, 3);
+        metrics.mark(Phase.FETCH);
+        metrics.setHighWaterMark(System.currentTimeMillis() - HOUR);
+
+        JsonNode json = dtoObjectMapper.readTree(metrics.toEmf());
+        JsonNode directive = json.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals(NAMESPACE, directive.get("Namespace").asText());
+        assertEquals(SyncMetrics.OPERATION, directive.get("Dimensions").get(0).get(0).asText());
+        assertEquals(SyncMetrics.CHANGE_SYNC, json.get(SyncMetrics.OPERATION).asText());
+        List<String> names = new ArrayList<>();
+        directive.get("Metrics").forEach(metric -> names.add(metric.get("Name").asText()));
+        for (Count count : Count.values()) {
+            assertThat(names.contains(count.metricName), is(true));
+        }
+        assertThat(names.contains(SyncMetrics.HIGH_WATER_MARK_AGE), is(true));
+        assertEquals(2, json.get(Count.FETCHED.metricName).asLong());
+        assertEquals(1, json.get(Count.UPSERTED.metricName).asLong());
+        assertEquals(3, json.get(Count.COPIED.metricName).asLong());
+        assertEquals(0.0, json.get(Phase.MERGE.metricName).asDouble(), 0.0);
+        assertThat(json.get(SyncMetrics.RECORDS_PER_SECOND).asDouble() > 0, is(true));
+        assertThat(json.get(SyncMetrics.HIGH_WATER_MARK_AGE).asDouble() >= HOUR / 1000.0, is(true));
+    }
+
+    @Test
+    public void shouldLeaveOutHighWaterMarkAgeOfEmptyMirror() throws JsonProcessingException {
+        JsonNode json = dtoObjectMapper.readTree(new SyncMetrics(NAMESPACE).toEmf());
+        assertThat(json.has(SyncMetrics.HIGH_WATER_MARK_AGE), is(false));
+        assertEquals(Count.values().length + Phase.values().length + 2,
+                     json.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics").size());
+    }
+}
@@ -0,0 +1,211 @@
+package no.sikt.oai.snapshot;
+
+import static no.sikt.oai.OaiConstants.RECORD_STORE_PATH_ENV;
+import static no.sikt.oai.OaiConstants.SYNC_OVERLAP_MINUTES_ENV;
+import static no.unit.nva.commons.json.JsonUtils.dtoObjectMapper;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import no.sikt.oai.adapter.DlrAdapter;
+import no.sikt.oai.metrics.SyncMetrics;
+import no.sikt.oai.metrics.SyncMetrics.Count;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChangeSyncEngineTest {
+
+    public static final int RESOURCES = 5;
+    public static final int PAGE_SIZE = 2;
+    public static final Duration OVERLAP = Duration.ofMinutes(10);
+    public static final String IDENTIFIER = "00000000-0000-0000-0000-00000000000";
+    public static final String PREFIX = "oai:dlr.unit.no:";
+    public static final String NAMESPACE = "OaiProviderTest";
+    /**
+     * DLR datestamps are days, so the overlap before the newest one, midnight on the fifth, reaches into the fourth.
+     */
+    public static final String OVERLAPPED_DAY = "2022-03-04";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<Integer, Resource> resources = new ConcurrentHashMap<>();
+    private final List<String> froms = new ArrayList<>();
+
+    @TempDir
+    public Path folder;
+
+    @BeforeEach
+    public void init() {
+        for (int i = 0; i < RESOURCES; i++) {
+            resources.put(i, new Resource("Title " + i, "2022-03-0" + (i + 1) + "T10:00:00Z", false));
+        }
+    }
+
+    @Test
+    public void shouldCopyWholeRepositoryFirstAndOnlyChangesSinceHighWaterMarkAfter() throws Exception {
+        ChangeSyncEngine engine = new ChangeSyncEngine(new MirroredDlrAdapter(), folder, PAGE_SIZE, OVERLAP);
+        SyncMetrics first = new SyncMetrics(NAMESPACE);
+        assertEquals(RESOURCES, engine.sync(first));
+        assertEquals(RESOURCES, first.getCount(Count.UPSERTED));
+        Path initial = RecordStore.open(folder).getGeneration();
+
+        SyncMetrics unchanged = new SyncMetrics(NAMESPACE);
+        assertEquals(RESOURCES, engine.sync(unchanged));
+        assertEquals(2, unchanged.getCount(Count.FETCHED));
+        assertEquals(2, unchanged.getCount(Count.UNCHANGED));
+        assertEquals(initial, RecordStore.open(folder).getGeneration());
+
+        resources.put(1, new Resource("Changed", "2022-03-06T09:00:00Z", false));
+        resources.put(5, new Resource("Title 5", "2022-03-06T10:00:00Z", false));
+        resources.put(3, new Resource("Title 3", "2022-03-07T10:00:00Z", true));
+        SyncMetrics changed = new SyncMetrics(NAMESPACE);
+        assertEquals(RESOURCES + 1, engine.sync(changed));
+        assertEquals(List.of("", OVERLAPPED_DAY, OVERLAPPED_DAY), froms);
+        assertEquals(4, changed.getCount(Count.FETCHED));
+        assertEquals(2, changed.getCount(Count.UPSERTED));
+        assertEquals(1, changed.getCount(Count.DELETED));
+        assertEquals(3, changed.getCount(Count.COPIED));
+
+        RecordStore store = RecordStore.open(folder);
+        assertThat(store.getGeneration().equals(initial), is(false));
+        assertThat(store.metadataString(position(store, 1), "qdc"), is(containsString("Changed")));
+        assertThat(store.metadataString(position(store, 2), "oai_dc"), is(containsString("Title 2")));
+        assertThat(store.isDeleted(position(store, 3)), is(true));
+        assertEquals(PREFIX + IDENTIFIER + 3, store.identifier(store.size() - 1));
+    }
+
+    @Test
+    public void shouldRewriteRecordEditedLaterOnTheDayOfItsDatestamp() throws Exception {
+        ChangeSyncEngine engine = new ChangeSyncEngine(new MirroredDlrAdapter(), folder, PAGE_SIZE, OVERLAP);
+        engine.sync(new SyncMetrics(NAMESPACE));
+        resources.put(4, new Resource("Edited", "2022-03-05T15:30:00.123Z", false));
+        SyncMetrics metrics = new SyncMetrics(NAMESPACE);
+        assertEquals(RESOURCES, engine.sync(metrics));
+        assertEquals(2, metrics.getCount(Count.FETCHED));
+        assertEquals(1, metrics.getCount(Count.UNCHANGED));
+        assertEquals(1, metrics.getCount(Count.UPSERTED));
+        RecordStore store = RecordStore.open(folder);
+        assertThat(store.metadataString(position(store, 4), "qdc"), is(containsString("Edited")));
+        assertEquals(Instant.parse("2022-03-05T15:30:00.123Z").toEpochMilli(), store.modifiedAt(position(store, 4)));
+    }
+
+    @Test
+    public void shouldRemoveDeletedRecordsWhenRepositoryDoesNotKeepThem() throws Exception {
+        ChangeSyncEngine engine = new ChangeSyncEngine(new MirroredDlrAdapter() {
+            @Override
+            public String getDeletedRecord() {
+                return "no";
+            }
+        }, folder, PAGE_SIZE, OVERLAP);
+        resources.put(2, new Resource("Title 2", "2022-03-03T10:00:00Z", true));
+        assertEquals(RESOURCES - 1, engine.sync(new SyncMetrics(NAMESPACE)));
+        resources.put(4, new Resource("Title 4", "2022-03-06T10:00:00Z", true));
+        SyncMetrics metrics = new SyncMetrics(NAMESPACE);
+        assertEquals(RESOURCES - 2, engine.sync(metrics));
+        assertEquals(1, metrics.getCount(Count.DELETED));
+        RecordStore store = RecordStore.open(folder);
+        assertEquals(OptionalInt.empty(), store.position(PREFIX + IDENTIFIER + 2));
+        assertEquals(OptionalInt.empty(), store.position(PREFIX + IDENTIFIER + 4));
+    }
+
+    @Test
+    public void shouldSyncRecordStorePathAndEmitMetricsWhenInvoked() throws IOException {
+        Environment environment = mock(Environment.class);
+        when(environment.readEnv(RECORD_STORE_PATH_ENV)).thenReturn(folder.toString());
+        when(environment.readEnvOpt(SYNC_OVERLAP_MINUTES_ENV)).thenReturn(Optional.of("60"));
+        List<String> lines = new ArrayList<>();
+        String result = new ChangeSyncHandler(new MirroredDlrAdapter(), environment, lines::add)
+                .handleRequest(null, mock(Context.class));
+        assertEquals(String.format(ChangeSyncHandler.SYNCED, folder, RESOURCES), result);
+        assertEquals(RESOURCES, RecordStore.open(folder).size());
+        JsonNode json = dtoObjectMapper.readTree(lines.get(0));
+        assertEquals(RESOURCES, json.get(Count.UPSERTED.metricName).asLong());
+        assertThat(json.has(SyncMetrics.HIGH_WATER_MARK_AGE), is(true));
+    }
+
+    private static int position(RecordStore store, int index) {
+        return store.position(PREFIX + IDENTIFIER + index).orElseThrow();
+    }
+
+    private String resource(int index, Resource resource) throws JsonProcessingException {
+        return mapper.writeValueAsString(Map.of(
+                "identifier", IDENTIFIER + index,
+                "features", Map.of("dlr_title", resource.title,
+                                   "dlr_storage_id", "unit",
+                                   "dlr_time_updated", resource.updated,
+                                   "dlr_status_deleted", Boolean.toString(resource.deleted)),
+                "creators", List.of(),
+                "contributors", List.of()));
+    }
+
+    private static class Resource {
+
+        /* default */ final String title;
+        /* default */ final String updated;
+        /* default */ final boolean deleted;
+
+        /* default */ Resource(String title, String updated, boolean deleted) {
+            this.title = title;
+            this.updated = updated;
+            this.deleted = deleted;
+        }
+
+        /* default */ String cursor(int index) {
+            return updated + "," + IDENTIFIER + index;
+        }
+    }
+
+    /**
+     * Answers cursor searches from the resources, limited to those updated on or after the day of {@code from}, as
+     * the DLR search is.
+     */
+    private class MirroredDlrAdapter extends DlrAdapter {
+
+        /* default */ MirroredDlrAdapter() {
+            super(mock(Environment.class), (HttpClient) null);
+        }
+
+        @Override
+        public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                                  String cursor, int pageSize) {
+            if (cursor.isEmpty()) {
+                froms.add(from);
+            }
+            try {
+                List<Integer> matches = resources.keySet().stream()
+                        .filter(i -> resources.get(i).updated.compareTo(from) >= 0)
+                        .filter(i -> resources.get(i).cursor(i).compareTo(cursor) > 0)
+                        .sorted((a, b) -> resources.get(a).cursor(a).compareTo(resources.get(b).cursor(b)))
+                        .collect(Collectors.toList());
+                List<String> page = new ArrayList<>();
+                for (int i : matches.subList(0, Math.min(pageSize, matches.size()))) {
+                    page.add(resource(i, resources.get(i)));
+                }
+                return CompletableFuture.completedFuture(mapper.writeValueAsString(
+                        Map.of("resourcesAsJson", page, "numFound", matches.size())));
+            } catch (JsonProcessingException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+}
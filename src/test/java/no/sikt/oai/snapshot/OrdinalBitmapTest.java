@@ -0,0 +1,68 @@
+package no.sikt.oai.snapshot;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class OrdinalBitmapTest {
+
+    public static final int CHUNK = OrdinalBitmap.CHUNK_SIZE;
+
+    /**
+     * Every third position in the first chunk, dense enough to be a bitmap, then every hundredth in the third chunk,
+     * sparse enough to be an array.
+     */
+    private static final int[] POSITIONS = IntStream.concat(IntStream.range(0, CHUNK).filter(i -> i % 3 == 0),
+                                                            IntStream.range(2 * CHUNK, 3 * CHUNK)
+                                                                    .filter(i -> (i - 2 * CHUNK) % 100 == 0))
+            .toArray();
+
+    @Test
+    public void shouldRankAndSelectAcrossContainers() {
+        OrdinalBitmap bitmap = OrdinalBitmap.of(POSITIONS);
+        assertEquals(POSITIONS.length, bitmap.cardinality());
+        for (int rank = 0; rank < POSITIONS.length; rank += 97) {
+            assertEquals(POSITIONS[rank], bitmap.select(rank));
+            assertEquals(rank, bitmap.rank(POSITIONS[rank]));
+            assertEquals(rank + 1, bitmap.rank(POSITIONS[rank] + 1));
+        }
+        assertEquals(-1, bitmap.select(POSITIONS.length));
+        assertEquals(-1, bitmap.select(-1));
+        assertEquals(CHUNK / 3 + 1, bitmap.rank(CHUNK + 5));
+        assertEquals(POSITIONS.length, bitmap.rank(4 * CHUNK));
+        assertThat(bitmap.contains(2 * CHUNK + 200), is(true));
+        assertThat(bitmap.contains(2 * CHUNK + 201), is(false));
+        assertThat(bitmap.contains(63), is(true));
+        assertThat(bitmap.contains(64), is(false));
+    }
+
+    @Test
+    public void shouldSelectPageBelowBound() {
+        OrdinalBitmap bitmap = OrdinalBitmap.of(POSITIONS);
+        assertArrayEquals(new int[] {CHUNK - 4, CHUNK - 1, 2 * CHUNK, 2 * CHUNK + 100},
+                          bitmap.select(bitmap.rank(CHUNK - 5), 3 * CHUNK, 4));
+        assertArrayEquals(new int[] {CHUNK - 4, CHUNK - 1}, bitmap.select(bitmap.rank(CHUNK - 5), CHUNK, 4));
+        assertArrayEquals(new int[] {3 * CHUNK - 36}, bitmap.select(POSITIONS.length - 1, 3 * CHUNK, 4));
+        assertArrayEquals(new int[0], bitmap.select(POSITIONS.length, 3 * CHUNK, 4));
+        assertArrayEquals(new int[0], OrdinalBitmap.of().select(0, 3 * CHUNK, 4));
+    }
+
+    @Test
+    public void shouldReadWhatWasWritten() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            OrdinalBitmap.of(POSITIONS).writeTo(out);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        OrdinalBitmap bitmap = OrdinalBitmap.readFrom(in);
+        assertArrayEquals(POSITIONS, bitmap.select(0, Integer.MAX_VALUE, Integer.MAX_VALUE));
+    }
+}
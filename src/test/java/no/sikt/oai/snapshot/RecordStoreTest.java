@@ -0,0 +1,229 @@
+package no.sikt.oai.snapshot;
+
+import static no.sikt.oai.snapshot.TestRecords.EVEN;
+import static no.sikt.oai.snapshot.TestRecords.FIRST_DAY;
+import static no.sikt.oai.snapshot.TestRecords.PREFIX;
+import static no.sikt.oai.snapshot.TestRecords.RECORDS;
+import static no.sikt.oai.snapshot.TestRecords.datestamp;
+import static no.sikt.oai.snapshot.TestRecords.record;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import no.sikt.oai.snapshot.OrderedRecords.Selection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RecordStoreTest {
+
+    public static final int SEGMENT_BYTES = 1000;
+
+    @TempDir
+    public Path folder;
+
+    @Test
+    public void shouldSelectRecordsInDatestampOrderAcrossSegments() throws IOException {
+        RecordStore store = RecordStore.open(write());
+        assertEquals(RECORDS, store.size());
+        Selection selection = store.select("", "", "", 60, 10);
+        assertEquals(RECORDS, selection.numFound);
+        assertEquals(10, selection.positions.length);
+        assertEquals(PREFIX + 60, store.identifier(selection.positions[0]));
+        assertEquals(PREFIX + 69, store.identifier(selection.positions[9]));
+        assertEquals("<title>199</title>", store.metadataString(RECORDS - 1, "QDC"));
+        assertEquals("<dc>199</dc>", store.metadataString(RECORDS - 1, "oai_dc"));
+        assertEquals("", store.metadataString(RECORDS - 1, "oai_datacite"));
+        assertEquals("", store.metadataString(RECORDS - 1, "marc21"));
+        assertThat(Files.exists(RecordStore.segment(store.getGeneration(), "qdc", 1)), is(true));
+    }
+
+    @Test
+    public void shouldLimitRecordsToDatestampRangeAndSet() throws IOException {
+        RecordStore store = RecordStore.open(write());
+        Selection days = store.select(FIRST_DAY, "2022-03-02", "all", 0, RECORDS);
+        assertEquals(20, days.numFound);
+        assertEquals(PREFIX + 19, store.identifier(days.positions[19]));
+        Selection even = store.select("2022-03-02", "", EVEN, 5, 100);
+        assertEquals(95, even.numFound);
+        assertEquals(90, even.positions.length);
+        assertEquals(PREFIX + 20, store.identifier(even.positions[0]));
+        assertEquals(List.of("all", EVEN), store.setSpecs(even.positions[0]));
+        assertEquals(0, store.select("2022-03-05", FIRST_DAY, "", 0, 10).numFound);
+        assertEquals(0, store.select("2022-03-05", FIRST_DAY, EVEN, 0, 10).numFound);
+        assertEquals(0, store.select("", "", "odd", 0, 10).numFound);
+        Selection lastDays = store.selectAfter("2022-03-19", "", EVEN, RecordStore.cursor(datestamp(184), PREFIX + 184),
+                                               3);
+        assertEquals(10, lastDays.numFound);
+        assertArrayEquals(new int[] {186, 188, 190}, lastDays.positions);
+    }
+
+    @Test
+    public void shouldPageAfterCursorUntilTheEnd() throws IOException {
+        RecordStore store = RecordStore.open(write());
+        String cursor = "";
+        int seen = 0;
+        for (Selection page = store.selectAfter("", "", EVEN, cursor, 30); page.positions.length > 0;
+             page = store.selectAfter("", "", EVEN, cursor, 30)) {
+            assertEquals(RECORDS / 2, page.numFound);
+            assertEquals(PREFIX + seen * 2, store.identifier(page.positions[0]));
+            seen += page.positions.length;
+            int last = page.positions[page.positions.length - 1];
+            cursor = RecordStore.cursor(store.datestampAt(last), store.identifier(last));
+        }
+        assertEquals(RECORDS / 2, seen);
+        assertThrows(IllegalArgumentException.class, () -> store.selectAfter("", "", "", "unknown", 10));
+    }
+
+    @Test
+    public void shouldLookUpRecordByIdentifier() throws IOException {
+        RecordStore store = RecordStore.open(write());
+        OptionalInt position = store.position(PREFIX + 130);
+        assertEquals(130, position.orElseThrow());
+        assertThat(store.isDeleted(position.orElseThrow()), is(true));
+        assertThat(store.isDeleted(131), is(false));
+        ByteBuffer metadata = store.metadata(position.orElseThrow(), "qdc");
+        assertThat(metadata.isReadOnly(), is(true));
+        assertEquals("<title>130</title>".length(), metadata.remaining());
+        assertEquals(OptionalInt.empty(), store.position(PREFIX + RECORDS));
+    }
+
+    @Test
+    public void shouldUnmapFilesOfGenerationWhenClosed() throws IOException {
+        Path maps = Path.of("/proc/self/maps");
+        assumeTrue(Files.isReadable(maps));
+        RecordStore store = RecordStore.open(write());
+        String generation = store.getGeneration().toString();
+        assertThat(Files.readString(maps).contains(generation), is(true));
+        store.close();
+        store.close();
+        assertThat(Files.readString(maps).contains(generation), is(false));
+    }
+
+    @Test
+    public void shouldReplaceGenerationAndKeepOnlyThePreviousOne() throws IOException {
+        write();
+        RecordStore second = RecordStore.open(write());
+        RecordStore third = RecordStore.open(write());
+        assertThat(second.getGeneration().equals(third.getGeneration()), is(false));
+        assertEquals(List.of(second.getGeneration(), third.getGeneration()), generations());
+        assertEquals(PREFIX + 0, second.identifier(0));
+    }
+
+    @Test
+    public void shouldNotLeaveGenerationBehindWhenNotCommitted() throws IOException {
+        try (RecordStoreWriter writer = new RecordStoreWriter(folder)) {
+            writer.write(record(0, false));
+        }
+        assertEquals(List.of(), generations());
+        assertThrows(IOException.class, () -> RecordStore.open(folder));
+        assertThat(RecordStoreWriter.canUpdate(folder), is(false));
+        Path generation = Files.createDirectory(folder.resolve(RecordStore.GENERATION_PREFIX + "bad"));
+        Files.writeString(generation.resolve(RecordStore.HEADER), "not a record store header");
+        Files.writeString(folder.resolve(RecordStore.CURRENT), generation.getFileName().toString());
+        assertThrows(IOException.class, () -> RecordStore.open(folder));
+        assertThat(RecordStoreWriter.canUpdate(folder), is(false));
+    }
+
+    @Test
+    public void shouldUpdateGenerationByLinkingItsSegmentsAndReplacingRecords() throws IOException {
+        Path previous = RecordStore.open(write()).getGeneration();
+        assertThat(RecordStoreWriter.canUpdate(folder), is(true));
+        try (RecordStoreWriter writer = RecordStoreWriter.update(folder, SEGMENT_BYTES)) {
+            assertEquals(RECORDS, writer.getRecordCount());
+            assertEquals(datestamp(RECORDS - 1), writer.getNewestDatestamp());
+            assertThat(Files.isSameFile(RecordStore.segment(previous, "qdc", 0),
+                                        RecordStore.segment(writer.getGeneration(), "qdc", 0)), is(true));
+            assertThat(writer.isKept(record(5, false)), is(true));
+            assertThat(writer.isKept(record(130, false)), is(false));
+            assertThat(writer.isKept(new SnapshotRecord(PREFIX + 5, datestamp(5), datestamp(5) + 1, false,
+                                                        List.of("all"), Map.of())), is(false));
+            writer.write(new SnapshotRecord(PREFIX + 5, datestamp(RECORDS), false, List.of("all"),
+                                            Map.of("qdc", "<title>changed</title>")));
+            assertThat(writer.remove(PREFIX + 7), is(true));
+            assertThat(writer.remove(PREFIX + RECORDS), is(false));
+            assertEquals(RECORDS - 2, writer.getKeptCount());
+            assertEquals(datestamp(RECORDS), writer.getNewestDatestamp());
+            writer.commit();
+            assertEquals(RECORDS - 1, writer.getRecordCount());
+        }
+        RecordStore store = RecordStore.open(folder);
+        assertEquals(List.of(previous, store.getGeneration()), generations());
+        assertEquals(RECORDS - 1, store.size());
+        assertEquals(PREFIX + 5, store.identifier(RECORDS - 2));
+        assertEquals(datestamp(RECORDS), store.modifiedAt(RECORDS - 2));
+        assertEquals("<title>changed</title>", store.metadataString(RECORDS - 2, "qdc"));
+        assertEquals("", store.metadataString(RECORDS - 2, "oai_dc"));
+        int kept = store.position(PREFIX + 198).orElseThrow();
+        assertEquals("<dc>198</dc>", store.metadataString(kept, "oai_dc"));
+        assertEquals(List.of("all", EVEN), store.setSpecs(kept));
+        assertThat(store.isDeleted(store.position(PREFIX + 130).orElseThrow()), is(true));
+        assertEquals(OptionalInt.empty(), store.position(PREFIX + 7));
+    }
+
+    @Test
+    public void shouldCompactSegmentsWhenMostOfTheirMetadataIsReplaced() throws IOException {
+        write();
+        replaceAll();
+        long titles = 0;
+        for (int i = 0; i < RECORDS; i++) {
+            titles += ("<title>" + i + "</title>").length();
+        }
+        assertEquals(2 * titles, segmentBytes(RecordStore.open(folder).getGeneration(), "qdc"));
+        replaceAll();
+        RecordStore store = RecordStore.open(folder);
+        assertEquals(RECORDS, store.size());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals("<title>" + i + "</title>", store.metadataString(i, "qdc"));
+            assertEquals("<dc>" + i + "</dc>", store.metadataString(i, "oai_dc"));
+        }
+        assertEquals(titles, segmentBytes(store.getGeneration(), "qdc"));
+        assertThat(Files.exists(store.getGeneration().resolve("compacted")), is(false));
+    }
+
+    private Path write() throws IOException {
+        try (RecordStoreWriter writer = new RecordStoreWriter(folder, SEGMENT_BYTES)) {
+            for (int i = RECORDS - 1; i >= 0; i--) {
+                writer.write(record(i, i == 130));
+            }
+            writer.commit();
+            assertEquals(RECORDS, writer.getRecordCount());
+        }
+        return folder;
+    }
+
+    private void replaceAll() throws IOException {
+        try (RecordStoreWriter writer = RecordStoreWriter.update(folder, SEGMENT_BYTES)) {
+            for (int i = 0; i < RECORDS; i++) {
+                writer.write(record(i, false));
+            }
+            writer.commit();
+        }
+    }
+
+    private static long segmentBytes(Path generation, String prefix) throws IOException {
+        try (Stream<Path> children = Files.list(generation)) {
+            return children.filter(child -> child.getFileName().toString().startsWith(prefix + "."))
+                    .mapToLong(child -> child.toFile().length())
+                    .sum();
+        }
+    }
+
+    private List<Path> generations() throws IOException {
+        try (Stream<Path> children = Files.list(folder)) {
+            return children.filter(child -> child.getFileName().toString().startsWith(RecordStore.GENERATION_PREFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package no.sikt.oai.snapshot;
+
+import static no.sikt.oai.OaiConstants.RECORD_STORE_PATH_ENV;
+import static no.sikt.oai.OaiConstants.SNAPSHOT_EXPORT_PAGE_SIZE_ENV;
+import static no.sikt.oai.OaiConstants.SNAPSHOT_PATH_ENV;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import no.sikt.oai.adapter.DlrAdapter;
+import no.sikt.oai.exception.InternalOaiException;
+import no.sikt.oai.exception.OaiException;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotExporterTest {
+
+    public static final int RESOURCES = 5;
+    public static final int PAGE_SIZE = 2;
+    public static final String IDENTIFIER = "00000000-0000-0000-0000-00000000000";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<String> cursors = new ArrayList<>();
+
+    @TempDir
+    public Path folder;
+
+    @Test
+    public void shouldExportEveryRecordInEveryMetadataFormat() throws Exception {
+        Path target = folder.resolve("snapshot");
+        int exported = new SnapshotExporter(new PagedDlrAdapter(), PAGE_SIZE).export(target);
+        assertEquals(RESOURCES, exported);
+        assertEquals(List.of("", "2022-03-02T10:00:00Z," + IDENTIFIER + 1, "2022-03-04T10:00:00Z," + IDENTIFIER + 3),
+                     cursors);
+        try (Snapshot snapshot = Snapshot.open(target)) {
+            assertEquals(RESOURCES, snapshot.size());
+            SnapshotRecord record = mapper.readValue(snapshot.read("oai:dlr.unit.no:" + IDENTIFIER + 4).orElseThrow(),
+                                                     SnapshotRecord.class);
+            assertEquals(List.of("all", "unit"), record.setSpecs);
+            assertEquals(3, record.metadata.size());
+            assertThat(record.metadata.get("qdc"), is(containsString("Title 4")));
+            assertThat(record.metadata.get("oai_dc"), is(containsString("Title 4")));
+            assertThat(record.metadata.get("oai_datacite"), is(containsString("Title 4")));
+            assertEquals(2, snapshot.find("2022-03-04", "", "unit", 0, PAGE_SIZE).numFound);
+        }
+    }
+
+    @Test
+    public void shouldExportEmptyRepository() throws OaiException, InternalOaiException, IOException {
+        Path target = folder.resolve("empty");
+        DlrAdapter empty = new DlrAdapter(mock(Environment.class), (HttpClient) null) {
+            @Override
+            public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                                      String cursor, int pageSize) {
+                return CompletableFuture.completedFuture("{\"resourcesAsJson\":[],\"numFound\":0}");
+            }
+        };
+        assertEquals(0, new SnapshotExporter(empty, PAGE_SIZE).export(target));
+        try (Snapshot snapshot = Snapshot.open(target)) {
+            assertEquals(0, snapshot.find("", "", "", 0, PAGE_SIZE).numFound);
+        }
+    }
+
+    @Test
+    public void shouldFailInsteadOfLoopingWhenUpstreamIgnoresCursor() {
+        DlrAdapter ignoringCursor = new PagedDlrAdapter() {
+            @Override
+            public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                                      String cursor, int pageSize) {
+                return super.getRecordsListAfterAsync(from, until, setSpec, "", pageSize);
+            }
+        };
+        InternalOaiException exception = assertThrows(InternalOaiException.class,
+            () -> new SnapshotExporter(ignoringCursor, PAGE_SIZE).export(folder.resolve("looping")));
+        assertThat(exception.getMessage(), is(containsString("2022-03-02T10:00:00Z," + IDENTIFIER + 1)));
+        assertEquals(2, cursors.size());
+        assertThat(Files.exists(folder.resolve("looping")), is(false));
+    }
+
+    @Test
+    public void shouldExportToSnapshotPathWhenInvoked() {
+        Path target = folder.resolve("scheduled");
+        Environment environment = mock(Environment.class);
+        when(environment.readEnv(SNAPSHOT_PATH_ENV)).thenReturn(target.toString());
+        when(environment.readEnvOpt(SNAPSHOT_EXPORT_PAGE_SIZE_ENV)).thenReturn(Optional.of("3"));
+        String result = new SnapshotExportHandler(new PagedDlrAdapter(), environment)
+                .handleRequest(null, mock(Context.class));
+        assertEquals(String.format(SnapshotExportHandler.EXPORTED, RESOURCES, target), result);
+        assertEquals(List.of("", "2022-03-03T10:00:00Z," + IDENTIFIER + 2), cursors);
+    }
+
+    @Test
+    public void shouldExportNewRecordStoreGenerationWhenRecordStorePathIsSet() throws IOException {
+        Environment environment = mock(Environment.class);
+        when(environment.readEnvOpt(RECORD_STORE_PATH_ENV)).thenReturn(Optional.of(folder.toString()));
+        String result = new SnapshotExportHandler(new PagedDlrAdapter(), environment)
+                .handleRequest(null, mock(Context.class));
+        RecordStore store = RecordStore.open(folder);
+        assertEquals(String.format(SnapshotExportHandler.EXPORTED, RESOURCES, folder), result);
+        assertEquals(RESOURCES, store.size());
+        int position = store.position("oai:dlr.unit.no:" + IDENTIFIER + 4).orElseThrow();
+        assertThat(store.metadataString(position, "oai_datacite"), is(containsString("Title 4")));
+    }
+
+    private String resource(int index) throws JsonProcessingException {
+        return mapper.writeValueAsString(Map.of(
+                "identifier", IDENTIFIER + index,
+                "features", Map.of("dlr_title", "Title " + index,
+                                   "dlr_storage_id", "unit",
+                                   "dlr_time_updated", "2022-03-0" + (index + 1) + "T10:00:00Z"),
+                "creators", List.of(),
+                "contributors", List.of()));
+    }
+
+    /**
+     * Answers cursor searches from {@link #RESOURCES} resources, one updated each day.
+     */
+    private class PagedDlrAdapter extends DlrAdapter {
+
+        /* default */ PagedDlrAdapter() {
+            super(mock(Environment.class), (HttpClient) null);
+        }
+
+        @Override
+        public CompletableFuture<String> getRecordsListAfterAsync(String from, String until, String setSpec,
+                                                                  String cursor, int pageSize) {
+            cursors.add(cursor);
+            int start = cursor.isEmpty() ? 0 : Integer.parseInt(cursor.substring(cursor.length() - 1)) + 1;
+            try {
+                List<String> resources = new ArrayList<>();
+                for (int i = start; i < Math.min(RESOURCES, start + pageSize); i++) {
+                    resources.add(resource(i));
+                }
+                return CompletableFuture.completedFuture(mapper.writeValueAsString(
+                        Map.of("resourcesAsJson", resources, "numFound", RESOURCES)));
+            } catch (JsonProcessingException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+    }
+}
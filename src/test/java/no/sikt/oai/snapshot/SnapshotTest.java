@@ -0,0 +1,107 @@
+package no.sikt.oai.snapshot;
+
+import static no.sikt.oai.snapshot.TestRecords.EVEN;
+import static no.sikt.oai.snapshot.TestRecords.FIRST_DAY;
+import static no.sikt.oai.snapshot.TestRecords.PREFIX;
+import static no.sikt.oai.snapshot.TestRecords.RECORDS;
+import static no.sikt.oai.snapshot.TestRecords.datestamp;
+import static no.sikt.oai.snapshot.TestRecords.record;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import no.sikt.oai.snapshot.Snapshot.Page;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotTest {
+
+    @TempDir
+    public Path folder;
+
+    @Test
+    public void shouldFindRecordsInDatestampOrderAcrossBlocks() throws IOException {
+        try (Snapshot snapshot = Snapshot.open(write())) {
+            assertEquals(RECORDS, snapshot.size());
+            Page page = snapshot.find("", "", "", 60, 10);
+            assertEquals(RECORDS, page.numFound);
+            assertEquals(10, page.records.size());
+            assertThat(page.records.get(0), is(containsString(identifier(60))));
+            assertThat(page.records.get(9), is(containsString(identifier(69))));
+            assertThat(page.records.get(9), is(containsString("<title>69</title>")));
+        }
+    }
+
+    @Test
+    public void shouldLimitRecordsToDatestampRangeAndSet() throws IOException {
+        try (Snapshot snapshot = Snapshot.open(write())) {
+            Page days = snapshot.find(FIRST_DAY, "2022-03-02", "all", 0, RECORDS);
+            assertEquals(20, days.numFound);
+            assertThat(days.records.get(19), is(containsString(identifier(19))));
+            Page even = snapshot.find("2022-03-02", "", EVEN, 5, 100);
+            assertEquals(95, even.numFound);
+            assertEquals(90, even.records.size());
+            assertThat(even.records.get(0), is(containsString(identifier(20))));
+            assertEquals(0, snapshot.find("2022-03-05", FIRST_DAY, "", 0, 10).numFound);
+        }
+    }
+
+    @Test
+    public void shouldPageAfterCursorUntilTheEnd() throws IOException {
+        try (Snapshot snapshot = Snapshot.open(write())) {
+            String cursor = "";
+            int seen = 0;
+            for (Page page = snapshot.findAfter("", "", EVEN, cursor, 30); !page.records.isEmpty();
+                 page = snapshot.findAfter("", "", EVEN, cursor, 30)) {
+                assertEquals(RECORDS / 2, page.numFound);
+                int position = seen * 2;
+                assertThat(page.records.get(0), is(containsString(identifier(position))));
+                seen += page.records.size();
+                int last = position + (page.records.size() - 1) * 2;
+                cursor = Snapshot.cursor(datestamp(last), PREFIX + last);
+            }
+            assertEquals(RECORDS / 2, seen);
+            assertThrows(IllegalArgumentException.class, () -> snapshot.findAfter("", "", "", "unknown", 10));
+        }
+    }
+
+    @Test
+    public void shouldReadRecordByIdentifier() throws IOException {
+        try (Snapshot snapshot = Snapshot.open(write())) {
+            assertThat(snapshot.read(PREFIX + 130).orElseThrow(), is(containsString("<title>130</title>")));
+            assertEquals(Optional.empty(), snapshot.read(PREFIX + RECORDS));
+        }
+    }
+
+    @Test
+    public void shouldNotLeaveSnapshotBehindWhenNotCommitted() throws IOException {
+        Path target = folder.resolve("snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(target)) {
+            writer.write(record(0, false));
+        }
+        assertThat(Files.exists(target), is(false));
+        assertThat(Files.exists(folder.resolve("snapshot" + SnapshotWriter.TEMPORARY_SUFFIX)), is(false));
+        Files.writeString(target, "not a snapshot, but long enough to have a trailer");
+        assertThrows(IOException.class, () -> Snapshot.open(target));
+    }
+
+    private Path write() throws IOException {
+        Path target = folder.resolve("snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(target)) {
+            for (int i = RECORDS - 1; i >= 0; i--) {
+                writer.write(record(i, false));
+            }
+            writer.commit();
+        }
+        return target;
+    }
+
+    private static String identifier(int position) {
+        return "\"" + PREFIX + position + "\"";
+    }
+}
@@ -0,0 +1,40 @@
+package no.sikt.oai.snapshot;
+
+import java.util.List;
+import java.util.Map;
+import no.sikt.oai.TimeUtils;
+
+/**
+ * The records the snapshot and record store tests are written with. There are ten records a day from
+ * {@link #FIRST_DAY}, so records are ordered by datestamp first and identifier within a day, and every other record
+ * is in the set {@link #EVEN}.
+ */
+public final class TestRecords {
+
+    public static final int RECORDS = 200;
+    public static final String PREFIX = "oai:test:";
+    public static final String EVEN = "even";
+    public static final String FIRST_DAY = "2022-03-01";
+    public static final long DAY = 86_400_000L;
+
+    private TestRecords() {
+    }
+
+    /**
+     * Creates the record at a position, with metadata in qdc and oai_dc.
+     *
+     * @param position position of the record in datestamp order
+     * @param deleted  whether the record is deleted
+     * @return the record
+     */
+    public static SnapshotRecord record(int position, boolean deleted) {
+        List<String> setSpecs = position % 2 == 0 ? List.of("all", EVEN) : List.of("all");
+        Map<String, String> metadata = Map.of("qdc", "<title>" + position + "</title>",
+                                              "oai_dc", "<dc>" + position + "</dc>");
+        return new SnapshotRecord(PREFIX + position, datestamp(position), deleted, setSpecs, metadata);
+    }
+
+    public static long datestamp(int position) {
+        return TimeUtils.string2Date(FIRST_DAY, TimeUtils.FORMAT_ZULU_SHORT).getTime() + position / 10 * DAY;
+    }
+}
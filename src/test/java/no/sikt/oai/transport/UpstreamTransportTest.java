@@ -0,0 +1,100 @@
+package no.sikt.oai.transport;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static no.sikt.oai.OaiConstants.UPSTREAM_REQUEST_TIMEOUT_MILLIS_ENV;
+import static no.sikt.oai.OaiConstants.UPSTREAM_THREADS_ENV;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import no.unit.nva.stubs.WiremockHttpClient;
+import nva.commons.core.Environment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class UpstreamTransportTest {
+
+    public static final String SETS_PATH = "/sets";
+    public static final String SETS_JSON = "{\"institutions\":[\"sikt\",\"ntnu\"]}";
+
+    private WireMockServer httpServer;
+    private UpstreamTransport transport;
+
+    @BeforeEach
+    public void init() {
+        httpServer = new WireMockServer(options().dynamicHttpsPort());
+        httpServer.start();
+        transport = new UpstreamTransport(WiremockHttpClient.create(), Duration.ofMillis(500));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        httpServer.stop();
+    }
+
+    @Test
+    public void shouldDecodeGzippedResponse() throws IOException, InterruptedException {
+        httpServer.stubFor(get(urlPathEqualTo(SETS_PATH))
+                               .withHeader("Accept-Encoding", equalTo(UpstreamTransport.GZIP))
+                               .willReturn(aResponse().withHeader("Content-Encoding", UpstreamTransport.GZIP)
+                                               .withBody(gzip(SETS_JSON))));
+        var response = transport.send(transport.newRequest(setsUri()));
+        assertEquals(SETS_JSON, response.body());
+    }
+
+    @Test
+    public void shouldReturnResponseThatIsNotEncoded() throws IOException, InterruptedException {
+        httpServer.stubFor(get(urlPathEqualTo(SETS_PATH)).willReturn(ok().withBody(SETS_JSON)));
+        var response = transport.send(transport.newRequest(setsUri()));
+        assertEquals(SETS_JSON, response.body());
+    }
+
+    @Test
+    public void shouldFailWhenUpstreamIsSlowerThanRequestTimeout() {
+        httpServer.stubFor(get(urlPathEqualTo(SETS_PATH)).willReturn(ok().withBody(SETS_JSON)
+                                                                         .withFixedDelay(2000)));
+        assertThrows(HttpTimeoutException.class, () -> transport.send(transport.newRequest(setsUri())));
+    }
+
+    @Test
+    public void shouldCreatePooledHttp2ClientWithTimeoutsFromEnvironment() {
+        Environment environment = mock(Environment.class);
+        when(environment.readEnvOpt(UPSTREAM_REQUEST_TIMEOUT_MILLIS_ENV)).thenReturn(Optional.of("1500"));
+        when(environment.readEnvOpt(UPSTREAM_THREADS_ENV)).thenReturn(Optional.of("2"));
+        UpstreamTransport fromEnvironment = new UpstreamTransport(environment);
+        assertEquals(HttpClient.Version.HTTP_2, fromEnvironment.getClient().version());
+        assertEquals(Optional.of(UpstreamTransport.DEFAULT_CONNECT_TIMEOUT),
+                     fromEnvironment.getClient().connectTimeout());
+        assertEquals(Duration.ofMillis(1500), fromEnvironment.getRequestTimeout());
+        assertEquals(Optional.of(Duration.ofMillis(1500)),
+                     fromEnvironment.newRequest(setsUri()).build().timeout());
+    }
+
+    private URI setsUri() {
+        return URI.create(httpServer.baseUrl() + SETS_PATH);
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}